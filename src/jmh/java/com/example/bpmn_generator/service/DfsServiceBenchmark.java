@@ -0,0 +1,89 @@
+package com.example.bpmn_generator.service;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.builder.AbstractFlowNodeBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark enumerasi path DfsService pada model sintetis besar.
+ * Model: rantai "diamond" XOR (lebar {@code width}) diselingi blok AND fork/join,
+ * sehingga jumlah node ribuan dan jumlah path jauh melebihi maxPaths.
+ *
+ * Alokasi per path: bagi {@code gc.alloc.rate.norm} (profiler gc) dengan counter {@code paths}.
+ *
+ * Jalankan: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DfsServiceBenchmark {
+
+    @Param({"400"})
+    public int diamonds;
+
+    @Param({"3"})
+    public int width;
+
+    @Param({"20000"})
+    public int maxPaths;
+
+    private DfsService dfs;
+    private BpmnModelInstance model;
+    private DfsService.Options opt;
+
+    @Setup
+    public void setup() {
+        dfs = new DfsService();
+        model = buildLadder(diamonds, width);
+        opt = new DfsService.Options()
+                .maxPaths(maxPaths)
+                .maxDepth(diamonds * 8)
+                .timeLimitMillis(600_000);
+    }
+
+    /** Jumlah path yang diemit per operasi (dilaporkan JMH di samping skor). */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PathCounter {
+        public long paths;
+
+        @Setup(Level.Iteration)
+        public void reset() { paths = 0; }
+    }
+
+    @Benchmark
+    public void findAllPaths(Blackhole bh, PathCounter pc) {
+        dfs.streamAllPaths(model, opt, p -> { pc.paths++; bh.consume(p); });
+    }
+
+    @Benchmark
+    public void findAllPathsAnnotated(Blackhole bh, PathCounter pc) {
+        dfs.streamAllPathsAnnotated(model, opt, p -> { pc.paths++; bh.consume(p); });
+    }
+
+    /** start → [XOR diamond | AND fork/join] × n → end */
+    static BpmnModelInstance buildLadder(int n, int width) {
+        AbstractFlowNodeBuilder<?, ?> b = Bpmn.createExecutableProcess("bench")
+                .startEvent("start");
+        for (int i = 0; i < n; i++) {
+            boolean parallel = (i % 10 == 9);
+            String fork = "fork_" + i, join = "join_" + i;
+            b = parallel ? b.parallelGateway(fork) : b.exclusiveGateway(fork);
+            for (int w = 0; w < width; w++) {
+                if (w > 0) b = b.moveToNode(fork);
+                b = b.userTask("t_" + i + "_" + w).name("Task " + i + "." + w);
+                if (w == 0) {
+                    b = parallel ? b.parallelGateway(join) : b.exclusiveGateway(join);
+                } else {
+                    b = b.connectTo(join);
+                }
+            }
+            b = b.moveToNode(join);
+        }
+        return b.endEvent("end").done();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bpmn_generator.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client untuk API LLM: satu java.net.http.HttpClient bersama (koneksi keep-alive dipakai ulang,
+ * HTTP/2 jika server mendukung sehingga banyak request berbagi satu koneksi TLS), connect timeout,
+ * deadline per request, dan response gzip.
+ *
+ * Pool koneksi HTTP/1.1 milik JDK diatur lewat system property jdk.httpclient.connectionPoolSize /
+ * jdk.httpclient.keepalive.timeout; nilai dari konfigurasi hanya dipasang jika belum di-set dari JVM args.
+ */
+@Configuration
+public class LlmHttpClientConfig {
+
+    @Value("${llm.http.connect-timeout-seconds:10}")
+    private long connectTimeoutSeconds;
+
+    /** Deadline per request (sampai response diterima); completion panjang bisa > 1 menit. */
+    @Value("${llm.http.request-timeout-seconds:120}")
+    private long requestTimeoutSeconds;
+
+    /** Maks koneksi idle HTTP/1.1 yang disimpan (0 = tanpa batas). */
+    @Value("${llm.http.pool-size:16}")
+    private int poolSize;
+
+    @Value("${llm.http.keep-alive-seconds:60}")
+    private long keepAliveSeconds;
+
+    @Value("${llm.http.http2:true}")
+    private boolean http2;
+
+    @Value("${llm.http.io-threads:4}")
+    private int ioThreads;
+
+    @Bean
+    public RestTemplate llmRestTemplate() {
+        // dibaca JDK saat HttpClient pertama dibuat
+        setIfAbsent("jdk.httpclient.connectionPoolSize", Integer.toString(Math.max(0, poolSize)));
+        setIfAbsent("jdk.httpclient.keepalive.timeout", Long.toString(Math.max(1, keepAliveSeconds)));
+
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, ioThreads), r -> {
+            Thread t = new Thread(r, "llm-http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofSeconds(requestTimeoutSeconds));
+
+        RestTemplate restTemplate = new RestTemplate(factory);
+        restTemplate.getInterceptors().add(gzipInterceptor());
+
+        System.out.println("🌐 LLM HTTP client: " + httpClient.version() + ", connect " + connectTimeoutSeconds
+                + "s, deadline " + requestTimeoutSeconds + "s, pool " + System.getProperty("jdk.httpclient.connectionPoolSize"));
+        return restTemplate;
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) System.setProperty(key, value);
+    }
+
+    /** JDK HttpClient tidak men-decode gzip sendiri → minta gzip dan bungkus body response. */
+    static ClientHttpRequestInterceptor gzipInterceptor() {
+        return (request, body, execution) -> {
+            request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            ClientHttpResponse response = execution.execute(request, body);
+            String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            return (encoding != null && encoding.equalsIgnoreCase("gzip")) ? new GzipResponse(response) : response;
+        };
+    }
+
+    private static final class GzipResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private final HttpHeaders headers;
+        private InputStream body;
+
+        GzipResponse(ClientHttpResponse delegate) {
+            this.delegate = delegate;
+            this.headers = new HttpHeaders();
+            this.headers.putAll(delegate.getHeaders());
+            this.headers.remove(HttpHeaders.CONTENT_ENCODING);
+            this.headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                // body kosong (mis. response error) bukan stream gzip yang valid
+                PushbackInputStream in = new PushbackInputStream(delegate.getBody(), 1);
+                int first = in.read();
+                if (first == -1) {
+                    body = InputStream.nullInputStream();
+                } else {
+                    in.unread(first);
+                    body = new GZIPInputStream(in);
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.bpmn_generator.config;
+
+import com.example.bpmn_generator.service.LlmTokenizer;
+import com.example.bpmn_generator.service.OpenAiCompatibleGenerator;
+import com.example.bpmn_generator.service.ScenarioGenerator;
+import com.example.bpmn_generator.service.StubScenarioGenerator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Backend LLM yang tersedia untuk ApiService (ScenarioGenerator). Semua selalu dibuat; yang dipakai dipilih
+ * lewat llm.provider (streaming/interaktif) dan llm.provider.bulk (job generate seluruh path), mis. bulk ke
+ * model lokal yang lebih murah, atau "stub" untuk benchmark tanpa biaya.
+ */
+@Configuration
+public class LlmProviderConfig {
+
+    @Bean
+    public ScenarioGenerator openAiGenerator(@Qualifier("llmRestTemplate") RestTemplate restTemplate,
+                                             @Value("${openai.endpoint:https://api.openai.com/v1/chat/completions}") String endpoint,
+                                             @Value("${openai.api.key:}") String apiKey,
+                                             @Value("${openai.model:gpt-4o}") String model) {
+        return new OpenAiCompatibleGenerator("openai", endpoint, apiKey, model, true, restTemplate);
+    }
+
+    /** Server OpenAI-compatible sendiri (llama.cpp server, vLLM, Ollama); tanpa kuota RPM/TPM OpenAI. */
+    @Bean
+    public ScenarioGenerator localGenerator(@Qualifier("llmRestTemplate") RestTemplate restTemplate,
+                                            @Value("${llm.local.endpoint:http://localhost:8081/v1/chat/completions}") String endpoint,
+                                            @Value("${llm.local.api-key:}") String apiKey,
+                                            @Value("${llm.local.model:local}") String model) {
+        return new OpenAiCompatibleGenerator("local", endpoint, apiKey, model, false, restTemplate);
+    }
+
+    @Bean
+    public ScenarioGenerator stubGenerator(LlmTokenizer tokenizer,
+                                           @Value("${llm.stub.latency-ms:800}") long latencyMs,
+                                           @Value("${llm.stub.jitter-ms:200}") long jitterMs,
+                                           @Value("${llm.stub.error-rate:0}") double errorRate,
+                                           @Value("${llm.stub.throttle-rate:0}") double throttleRate,
+                                           @Value("${llm.stub.throttle-retry-after-ms:1000}") long throttleRetryAfterMs,
+                                           @Value("${llm.stub.invalid-field-rate:0}") double invalidFieldRate) {
+        return new StubScenarioGenerator(tokenizer, latencyMs, jitterMs, errorRate, throttleRate,
+                throttleRetryAfterMs, invalidFieldRate);
+    }
+}
@@ -7,13 +7,18 @@ import com.example.bpmn_generator.repository.UserRepository;
 import com.example.bpmn_generator.service.ApiService;
 import com.example.bpmn_generator.service.BpmnResultService;
 import com.example.bpmn_generator.service.BpmnService;
+import com.example.bpmn_generator.service.DfsService;
 import com.example.bpmn_generator.service.ExportService;
+import com.example.bpmn_generator.service.LlmResilience;
+import com.example.bpmn_generator.service.LlmResponseCache;
+import com.example.bpmn_generator.service.LlmUsageTracker;
+import com.example.bpmn_generator.service.ModelAnalysis;
+import com.example.bpmn_generator.service.ScenarioJobService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.camunda.bpm.model.bpmn.Bpmn;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.FlowElement;
 import org.camunda.bpm.model.bpmn.instance.FlowNode;
-import org.camunda.bpm.model.bpmn.instance.Lane;
 import org.camunda.bpm.model.bpmn.instance.SequenceFlow;
 import org.springframework.core.io.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,9 +30,13 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.http.HttpStatus;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -53,6 +62,16 @@ public class BpmnController {
     private BpmnResultService bpmnResultService;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ScenarioJobService scenarioJobService;
+    @Autowired
+    private LlmResponseCache llmResponseCache;
+    @Autowired
+    private LlmResilience llmResilience;
+    @Autowired
+    private LlmUsageTracker llmUsageTracker;
 
     private String currentUsername() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
@@ -83,28 +102,139 @@ public class BpmnController {
     }
 
 
+    /**
+     * Antrikan generate scenario sebagai job background dan langsung balas 202 + jobId.
+     * Progress: GET /jobs/{jobId} (polling) atau GET /jobs/{jobId}/events (SSE).
+     * Path yang tidak berubah sejak generate terakhir dipakai ulang; {@code full=true} generate ulang semua.
+     */
     @PostMapping("/files/{id}/generateScenario")
-    public ResponseEntity<Map<String, String>> generateScenarios(@PathVariable Long id) {
-        Map<String, String> response = new HashMap<>();
+    public ResponseEntity<Map<String, Object>> generateScenarios(@PathVariable Long id,
+                                                                 @RequestParam(defaultValue = "false") boolean full) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
+        Optional<BpmnFile> fileOpt = bpmnRepository.findById(id);
+        if (fileOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!isOwner(fileOpt.get(), username)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        System.out.println("Controller: Queue generateScenario for fileId: " + id);
+        ScenarioJobService.ScenarioJob active = scenarioJobService.activeJobForFile(id);
+        ScenarioJobService.ScenarioJob job;
         try {
-            System.out.println("Controller: Starting generateScenario for fileId: " + id);
+            job = (active != null) ? active : scenarioJobService.submit(id, username, full);
+        } catch (LlmUsageTracker.QuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("message", e.getMessage()));
+        } catch (ScenarioJobService.FileBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        }
 
-            // Call instance method, not static
-            bpmnResultService.generateScenario(id);
+        Map<String, Object> response = new LinkedHashMap<>(job.snapshot());
+        response.put("message", (active != null)
+                ? "Generate untuk file ini masih berjalan."
+                : "Generate scenario diantrikan.");
+        response.put("statusUrl", "/api/bpmn/jobs/" + job.getId());
+        response.put("eventsUrl", "/api/bpmn/jobs/" + job.getId() + "/events");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
 
-            response.put("status", "success");
-            response.put("message", "Deskripsi & data pengujian berhasil digenerate.");
-            return ResponseEntity.ok(response);
+    /** Job generate terbaru untuk file (aktif atau sudah selesai). */
+    @GetMapping("/files/{id}/job")
+    public ResponseEntity<Map<String, Object>> getLatestJob(@PathVariable Long id) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
-        } catch (Exception e) {
-            System.err.println("Controller Error: " + e.getMessage());
-            e.printStackTrace();
+        return scenarioJobService.latestJobForFile(id)
+                .filter(job -> username.equals(job.getOwner()))
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /** Metrik cache response LLM: hit memori/DB, miss, hit rate, eviction. */
+    @GetMapping("/llm/cache/stats")
+    public ResponseEntity<Map<String, Object>> getLlmCacheStats() {
+        if (currentUsername() == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return ResponseEntity.ok(llmResponseCache.stats());
+    }
+
+    /** Status circuit breaker LLM dan counter retry/throttle/hedging. */
+    @GetMapping("/llm/resilience/stats")
+    public ResponseEntity<Map<String, Object>> getLlmResilienceStats() {
+        if (currentUsername() == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return ResponseEntity.ok(llmResilience.stats());
+    }
+
+    /** Pemakaian LLM user yang login (token, latency, retry) beserta status kuotanya. */
+    @GetMapping({"/llm/usage/me", "/llm/usage"})
+    public ResponseEntity<Map<String, Object>> getLlmUsage() {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return ResponseEntity.ok(llmUsageTracker.userUsage(username));
+    }
+
+    /** Total pemakaian LLM semua user sejak aplikasi start. */
+    @GetMapping("/llm/usage/stats")
+    public ResponseEntity<Map<String, Object>> getLlmUsageStats() {
+        if (currentUsername() == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return ResponseEntity.ok(llmUsageTracker.stats());
+    }
+
+    /** Pemakaian LLM untuk generate file ini (semua job dan generate ulang path). */
+    @GetMapping("/files/{id}/llm/usage")
+    public ResponseEntity<Map<String, Object>> getFileLlmUsage(@PathVariable Long id) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        Optional<BpmnFile> fileOpt = bpmnRepository.findById(id);
+        if (fileOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!isOwner(fileOpt.get(), username)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(llmUsageTracker.fileUsage(id));
+    }
+
+    /** Counter structured output: response JSON, request perbaikan, field yang diperbaiki / diganti default. */
+    @GetMapping("/llm/structured/stats")
+    public ResponseEntity<Map<String, Object>> getLlmStructuredStats() {
+        if (currentUsername() == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        return ResponseEntity.ok(apiService.structuredOutputStats());
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        Optional<ScenarioJobService.ScenarioJob> jobOpt = scenarioJobService.find(jobId);
+        if (jobOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!username.equals(jobOpt.get().getOwner())) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        return ResponseEntity.ok(jobOpt.get().snapshot());
+    }
+
+    /** SSE: event "progress" tiap path selesai, "done" saat job COMPLETED/FAILED/CANCELLED. */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJobEvents(@PathVariable String jobId) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        Optional<ScenarioJobService.ScenarioJob> jobOpt = scenarioJobService.find(jobId);
+        if (jobOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!username.equals(jobOpt.get().getOwner())) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        return ResponseEntity.ok(scenarioJobService.subscribe(jobOpt.get()));
+    }
+
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String jobId) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        Optional<ScenarioJobService.ScenarioJob> jobOpt = scenarioJobService.find(jobId);
+        if (jobOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!username.equals(jobOpt.get().getOwner())) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
 
-            response.put("status", "error");
-            response.put("message", "Error: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        if (!scenarioJobService.cancel(jobOpt.get())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(jobOpt.get().snapshot());
         }
+        return ResponseEntity.accepted().body(jobOpt.get().snapshot());
     }
 
     @GetMapping("/files/{id}")
@@ -134,28 +264,39 @@ public class BpmnController {
 
 
     /* ================= Upload (owner = current user) ================= */
+    /** {@code replaceFileId}: upload versi baru model ke file itu; hasil scenario lama disimpan untuk generate incremental. */
     @PostMapping("/upload")
-    public ResponseEntity<Map<String, Object>> uploadBpmn(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Map<String, Object>> uploadBpmn(@RequestParam("file") MultipartFile file,
+                                                          @RequestParam(value = "replaceFileId", required = false) Long replaceFileId) {
         Map<String, Object> response = new LinkedHashMap<>();
         String username = currentUsername();
         if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
+        BpmnFile replaced = null;
+        if (replaceFileId != null) {
+            Optional<BpmnFile> existingOpt = bpmnRepository.findById(replaceFileId);
+            if (existingOpt.isEmpty()) return ResponseEntity.notFound().build();
+            if (!isOwner(existingOpt.get(), username)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            if (scenarioJobService.isFileBusy(replaceFileId)) {
+                response.put("error", "Generate untuk file ini masih berjalan.");
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            }
+            replaced = existingOpt.get();
+        }
+
         try (InputStream inputStream = file.getInputStream()) {
             BpmnModelInstance modelInstance = Bpmn.readModelFromStream(inputStream);
+            // satu analisis dipakai bersama: scan elemen, graf DFS & path tidak diulang
+            ModelAnalysis analysis = bpmnService.analyze(modelInstance);
+
+            // estimasi jumlah path (tanpa enumerasi) → client bisa pilih cap / paging
+            DfsService.PathEstimate pathEstimate = bpmnService.estimatePathCount(analysis);
 
             // lanes → mapping node → lane
-            Map<String, String> taskToLane = new HashMap<>();
-            Collection<Lane> lanes = modelInstance.getModelElementsByType(Lane.class);
-            for (Lane lane : lanes) {
-                String laneName = lane.getName();
-                if (laneName == null || laneName.isBlank()) continue;
-                for (FlowNode node : lane.getFlowNodeRefs()) {
-                    taskToLane.put(node.getId(), laneName.trim());
-                }
-            }
+            Map<String, String> taskToLane = analysis.laneRefs();
 
             // elements meta + id→name
-            Collection<FlowElement> flowElements = modelInstance.getModelElementsByType(FlowElement.class);
+            Collection<FlowElement> flowElements = analysis.flowElements();
             List<Map<String, Object>> elementMetadata = new ArrayList<>();
             Map<String, String> idToName = new HashMap<>();
             for (FlowElement el : flowElements) {
@@ -176,16 +317,16 @@ public class BpmnController {
             }
 
             // paths
-            List<List<String>> pathsToUse = (lanes.isEmpty())
-                    ? bpmnService.findAllPaths(modelInstance)
-                    : bpmnService.PathsWithLane(modelInstance);
+            List<List<String>> pathsToUse = (!analysis.hasLanes())
+                    ? bpmnService.findAllPaths(analysis)
+                    : bpmnService.PathsWithLane(analysis);
 
             List<String> flatPaths = pathsToUse.stream()
                     .map(path -> String.join(" -> ", path))
                     .collect(Collectors.toList());
 
             // scenarios
-            List<Map<String, Object>> testScenarios = bpmnService.generateTestScenarios(modelInstance, taskToLane);
+            List<Map<String, Object>> testScenarios = bpmnService.generateTestScenarios(analysis, taskToLane);
             for (Map<String, Object> scenario : testScenarios) {
                 @SuppressWarnings("unchecked")
                 List<String> rawPath = (List<String>) scenario.get("rawPath");
@@ -210,14 +351,15 @@ public class BpmnController {
             User owner = userRepository.findByUsername(username)
                     .orElseThrow(() -> new RuntimeException("User not found: " + username));
 
-            BpmnFile savedFile = bpmnService.saveAndReturnEntity(
-                    file, elementMetadata, flatPaths, testScenarios, bpmnXml, owner
-            );
+            BpmnFile savedFile = (replaced != null)
+                    ? bpmnService.replaceModel(replaced, file, elementMetadata, flatPaths, testScenarios, bpmnXml)
+                    : bpmnService.saveAndReturnEntity(file, elementMetadata, flatPaths, testScenarios, bpmnXml, owner);
 
             response.put("id", savedFile.getId());
             response.put("fileName", savedFile.getOriginalFileName());
             response.put("elements", elementMetadata);
             response.put("paths", flatPaths);
+            response.put("pathEstimate", pathEstimate);
             response.put("testScenarios", testScenarios);
             response.put("bpmnXml", bpmnXml);
 
@@ -233,6 +375,21 @@ public class BpmnController {
 
 
 
+    /** Estimasi jumlah path sebelum upload/generate: file tidak disimpan, DFS tidak dijalankan. */
+    @PostMapping("/estimate")
+    public ResponseEntity<Map<String, Object>> estimatePaths(@RequestParam("file") MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            BpmnModelInstance modelInstance = Bpmn.readModelFromStream(inputStream);
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("fileName", file.getOriginalFilename());
+            response.put("pathEstimate", bpmnService.estimatePathCount(modelInstance));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.badRequest().body(Map.of("error", "Gagal membaca file BPMN: " + e.getMessage()));
+        }
+    }
+
     @PostMapping("/files/download/{id}")
     public ResponseEntity<Resource> downloadScenario(
             @PathVariable Long id,
@@ -440,8 +597,42 @@ public class BpmnController {
         return ResponseEntity.ok("Skenario berhasil diperbarui!");
     }
 
+    /**
+     * Generate ulang satu path dengan streaming: section scenario (summary, description, scenario_step, ...)
+     * dikirim lewat SSE begitu selesai ditulis model, event "done" berisi scenario final yang sudah disimpan.
+     */
+    @PostMapping(value = "/files/{fileId}/scenarios/{pathId}/regenerate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> regeneratePathStream(@PathVariable Long fileId, @PathVariable String pathId) {
+        String username = currentUsername();
+        if (username == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        Optional<BpmnFile> fileOpt = bpmnRepository.findById(fileId);
+        if (fileOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!isOwner(fileOpt.get(), username)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        List<String> paths = fileOpt.get().getPathsJson();
+        if (paths == null || !pathId.matches("[Pp]\\d{1,9}") || Integer.parseInt(pathId.substring(1)) < 1
+                || Integer.parseInt(pathId.substring(1)) > paths.size()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (llmUsageTracker.isTokenQuotaExceeded(username)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+
+        // job generate penuh / generate ulang path lain akan saling menimpa hasil file ini
+        try {
+            return ResponseEntity.ok(scenarioJobService.streamPath(fileId, pathId));
+        } catch (ScenarioJobService.FileBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     @GetMapping("/files/{id}/flow-sequences")
-    public ResponseEntity<Map<String, Object>> getFlowSequences(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> getFlowSequences(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
         Optional<BpmnFile> optionalFile = bpmnService.getFileById(id);
         if (optionalFile.isEmpty()) return ResponseEntity.notFound().build();
 
@@ -451,20 +642,25 @@ public class BpmnController {
                     new java.io.ByteArrayInputStream(file.getBpmnXml().getBytes())
             );
 
-            List<List<String>> rawPaths = bpmnService.findAllPaths(modelInstance);
-            Map<String, FlowNode> nodeMap = new HashMap<>();
-            for (FlowNode node : modelInstance.getModelElementsByType(FlowNode.class)) {
-                nodeMap.put(node.getId(), node);
+            // Mode paginasi: ?limit=N[&cursor=...] → satu halaman + nextCursor
+            if (cursor != null || limit != null) {
+                int pageSize = Math.min(Math.max(limit != null ? limit : 100, 1), 1000);
+                DfsService.PathPage page = bpmnService.findPathsPage(modelInstance, cursor, pageSize);
+
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("fileId", file.getId());
+                response.put("fileName", file.getOriginalFileName());
+                response.put("count", page.paths.size());
+                response.put("emitted", page.emitted);
+                response.put("flowSequences", toReadablePaths(modelInstance, page.paths));
+                response.put("nextCursor", page.nextCursor);
+                response.put("hasMore", page.nextCursor != null);
+                response.put("timedOut", page.timedOut);
+                return ResponseEntity.ok(response);
             }
 
-            List<List<String>> readablePaths = rawPaths.stream()
-                    .map(path -> path.stream()
-                            .map(nodeId -> {
-                                FlowNode node = nodeMap.get(nodeId);
-                                String name = node.getName();
-                                return (name != null && !name.isBlank()) ? name : node.getElementType().getTypeName();
-                            }).toList())
-                    .toList();
+            List<List<String>> rawPaths = bpmnService.findAllPaths(modelInstance);
+            List<List<String>> readablePaths = toReadablePaths(modelInstance, rawPaths);
 
             Map<String, Object> response = new LinkedHashMap<>();
             response.put("fileId", file.getId());
@@ -473,12 +669,76 @@ public class BpmnController {
             response.put("flowSequences", readablePaths);
             return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().body(Map.of("error", "Gagal memproses BPMN XML"));
         }
     }
 
+    /**
+     * NDJSON: satu baris {"index":n,"path":[...]} per path, ditulis begitu DFS mengemitnya.
+     * Tidak ada list path di memori, jadi heap tetap konstan berapapun jumlah path-nya.
+     */
+    @GetMapping(value = "/files/{id}/flow-sequences/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamFlowSequences(@PathVariable Long id) {
+        Optional<BpmnFile> optionalFile = bpmnService.getFileById(id);
+        if (optionalFile.isEmpty()) return ResponseEntity.notFound().build();
+
+        BpmnModelInstance modelInstance;
+        try {
+            modelInstance = Bpmn.readModelFromStream(
+                    new java.io.ByteArrayInputStream(optionalFile.get().getBpmnXml().getBytes())
+            );
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().build();
+        }
+
+        StreamingResponseBody body = (OutputStream out) -> {
+            long[] index = {0};
+            try {
+                bpmnService.streamPathLabels(modelInstance, path -> {
+                    try {
+                        Map<String, Object> line = new LinkedHashMap<>();
+                        line.put("index", index[0]++);
+                        line.put("path", path);
+                        out.write(objectMapper.writeValueAsBytes(line));
+                        out.write('\n');
+                        if ((index[0] & 63) == 0) out.flush();
+                    } catch (java.io.IOException e) {
+                        // client putus → hentikan DFS
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    private List<List<String>> toReadablePaths(BpmnModelInstance modelInstance, List<List<String>> rawPaths) {
+        Map<String, FlowNode> nodeMap = new HashMap<>();
+        for (FlowNode node : modelInstance.getModelElementsByType(FlowNode.class)) {
+            nodeMap.put(node.getId(), node);
+        }
+
+        return rawPaths.stream()
+                .map(path -> path.stream()
+                        .map(nodeId -> {
+                            FlowNode node = nodeMap.get(nodeId);
+                            String name = node.getName();
+                            return (name != null && !name.isBlank()) ? name : node.getElementType().getTypeName();
+                        }).toList())
+                .toList();
+    }
+
     @GetMapping("/files/{id}/scenarios")
     public ResponseEntity<List<Map<String, Object>>> getScenarios(@PathVariable Long id) {
         Optional<BpmnFile> fileOpt = bpmnRepository.findById(id);
@@ -517,7 +777,8 @@ public class BpmnController {
         System.out.println("Found owned files: " + owned.size());
         System.out.println("Requested IDs: " + ids);
 
-        if (owned.stream().anyMatch(f -> Boolean.TRUE.equals(f.isGeneratingScenario()))) {
+        if (owned.stream().anyMatch(f -> Boolean.TRUE.equals(f.isGeneratingScenario())
+                || scenarioJobService.isFileBusy(f.getId()))) {
             return ResponseEntity.status(HttpStatus.CONFLICT)
                     .body(Map.of("error", "Ada file yang sedang generate. Batalkan/selesaikan dulu."));
         }
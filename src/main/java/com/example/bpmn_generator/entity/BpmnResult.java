@@ -11,13 +11,28 @@ import java.time.LocalDateTime;
 @Table(name = "bpmn_results")
 public class BpmnResult {
 
+    // Sequence milik kolom identity (bpmn_results_id_seq) → id diambil sebelum INSERT sehingga Hibernate bisa
+    // JDBC batch insert (IDENTITY mematikan batching). allocationSize 1 = increment sequence yang sudah ada.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "bpmn_results_id_seq")
+    @SequenceGenerator(name = "bpmn_results_id_seq", sequenceName = "bpmn_results_id_seq", allocationSize = 1)
     private Long id;
 
     @Column(name = "path_id", nullable = false)
     private String pathId;
 
+    // Identitas path yang stabil (hash urutan node id), tidak bergantung pada posisi P1..Pn
+    @Column(name = "path_key", length = 64)
+    private String pathKey;
+
+    // Hash konteks proses + langkah yang dikirim ke GPT; sama → hasil boleh dipakai ulang saat generate ulang
+    @Column(name = "path_fingerprint", length = 64)
+    private String pathFingerprint;
+
+    // Disimpan checkpoint generate yang belum selesai; baru tampil (false) setelah generate sukses
+    @Column(name = "pending", nullable = false, columnDefinition = "boolean default false")
+    private boolean pending = false;
+
     @Column(length = 2000)
     private String summary;
 
@@ -78,6 +93,30 @@ public class BpmnResult {
         this.pathId = pathId;
     }
 
+    public String getPathKey() {
+        return pathKey;
+    }
+
+    public void setPathKey(String pathKey) {
+        this.pathKey = pathKey;
+    }
+
+    public String getPathFingerprint() {
+        return pathFingerprint;
+    }
+
+    public void setPathFingerprint(String pathFingerprint) {
+        this.pathFingerprint = pathFingerprint;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
     public String getSummary() {
         return summary;
     }
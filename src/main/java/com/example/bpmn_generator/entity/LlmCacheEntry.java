@@ -0,0 +1,53 @@
+package com.example.bpmn_generator.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Cache response LLM (tier Postgres) dengan key fingerprint SHA-256 dari
+ * model + temperature + max_tokens + system prompt + user prompt.
+ * Disimpan konten mentah dari OpenAI; parsing dijalankan ulang saat cache hit.
+ */
+@Entity
+@Table(name = "llm_cache", indexes = @Index(name = "idx_llm_cache_last_hit", columnList = "last_hit_at"))
+public class LlmCacheEntry {
+
+    @Id
+    @Column(length = 64)
+    private String fingerprint;
+
+    @Column(length = 100)
+    private String model;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String content;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_hit_at", nullable = false)
+    private LocalDateTime lastHitAt;
+
+    @Column(name = "hit_count")
+    private long hitCount;
+
+    public LlmCacheEntry() {
+    }
+
+    public LlmCacheEntry(String fingerprint, String model, String content) {
+        this.fingerprint = fingerprint;
+        this.model = model;
+        this.content = content;
+        this.createdAt = LocalDateTime.now();
+        this.lastHitAt = this.createdAt;
+    }
+
+    public String getFingerprint() { return fingerprint; }
+    public String getModel() { return model; }
+    public String getContent() { return content; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getLastHitAt() { return lastHitAt; }
+    public void setLastHitAt(LocalDateTime lastHitAt) { this.lastHitAt = lastHitAt; }
+    public long getHitCount() { return hitCount; }
+    public void setHitCount(long hitCount) { this.hitCount = hitCount; }
+}
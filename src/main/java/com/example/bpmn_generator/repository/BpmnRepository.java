@@ -23,4 +23,8 @@ public interface BpmnRepository extends JpaRepository<BpmnFile, Long> {
 
     @Query("SELECT b FROM BpmnFile b WHERE b.id = :id AND b.owner.username = :username")
     Optional<BpmnFile> findByIdAndOwnerUsernameCustom(@Param("id") Long id, @Param("username") String username);
+
+    // Username pemilik tanpa memuat relasi owner (LAZY) di luar transaksi, untuk kuota & akuntansi LLM
+    @Query("SELECT b.owner.username FROM BpmnFile b WHERE b.id = :id")
+    Optional<String> findOwnerUsername(@Param("id") Long id);
 }
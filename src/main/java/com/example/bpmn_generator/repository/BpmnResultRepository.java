@@ -2,6 +2,7 @@ package com.example.bpmn_generator.repository;
 
 import com.example.bpmn_generator.entity.BpmnResult;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -17,51 +18,31 @@ import java.util.Optional;
 public interface BpmnResultRepository extends JpaRepository<BpmnResult, Long> {
 
     /**
-     * Mencari semua BpmnResult berdasarkan BPMN file ID
+     * Mencari semua BpmnResult berdasarkan BPMN file ID, termasuk hasil checkpoint yang masih pending
+     * (hanya untuk generate incremental / penggantian baris; tampilan memakai query tanpa pending)
      */
     List<BpmnResult> findByBpmnFileId(Long bpmnFileId);
 
     /**
-     * Mencari BpmnResult berdasarkan path ID
+     * Mencari BpmnResult berdasarkan BPMN file ID dan path ID (tanpa hasil checkpoint yang masih pending)
      */
-    List<BpmnResult> findByPathId(String pathId);
+    Optional<BpmnResult> findByBpmnFileIdAndPathIdAndPendingFalse(Long bpmnFileId, String pathId);
 
     /**
-     * Mencari BpmnResult berdasarkan BPMN file ID dan path ID
+     * Mencari semua BpmnResult berdasarkan BPMN file ID dan diurutkan berdasarkan path ID (tanpa yang pending)
      */
-    Optional<BpmnResult> findByBpmnFileIdAndPathId(Long bpmnFileId, String pathId);
-
-    /**
-     * Mencari semua BpmnResult berdasarkan BPMN file ID dan diurutkan berdasarkan path ID
-     */
-    @Query("SELECT br FROM BpmnResult br WHERE br.bpmnFile.id = :fileId ORDER BY br.pathId")
+    @Query("SELECT br FROM BpmnResult br WHERE br.bpmnFile.id = :fileId AND br.pending = false ORDER BY br.pathId")
     List<BpmnResult> findByBpmnFileIdOrderByPathId(@Param("fileId") Long fileId);
 
     /**
-     * Menghitung jumlah BpmnResult berdasarkan BPMN file ID
+     * Menandai hasil checkpoint sebagai final setelah generate sukses
      */
-    long countByBpmnFileId(Long bpmnFileId);
+    @Modifying
+    @Query("UPDATE BpmnResult br SET br.pending = false WHERE br.id IN :ids")
+    int promotePending(@Param("ids") List<Long> ids);
 
     /**
      * Menghapus semua BpmnResult berdasarkan BPMN file ID
      */
     void deleteByBpmnFileId(Long bpmnFileId);
-
-    /**
-     * Mencari BpmnResult berdasarkan summary yang mengandung keyword tertentu
-     */
-    @Query("SELECT br FROM BpmnResult br WHERE br.summary LIKE %:keyword%")
-    List<BpmnResult> findBySummaryContaining(@Param("keyword") String keyword);
-
-    /**
-     * Mencari BpmnResult terbaru berdasarkan BPMN file ID
-     */
-    @Query("SELECT br FROM BpmnResult br WHERE br.bpmnFile.id = :fileId ORDER BY br.createdAt DESC")
-    List<BpmnResult> findByBpmnFileIdOrderByCreatedAtDesc(@Param("fileId") Long fileId);
-
-    /**
-     * Mencari BpmnResult berdasarkan status (jika ada field status di masa depan)
-     */
-    @Query("SELECT br FROM BpmnResult br WHERE br.bpmnFile.id = :fileId AND br.description IS NOT NULL")
-    List<BpmnResult> findCompletedResultsByFileId(@Param("fileId") Long fileId);
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.example.bpmn_generator.repository;
+
+import com.example.bpmn_generator.entity.LlmCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface LlmCacheRepository extends JpaRepository<LlmCacheEntry, String> {
+
+    /** Catat {@code hits} hit tanpa load-modify-save (dipanggil paralel dari thread generate). */
+    @Modifying
+    @Transactional
+    @Query("UPDATE LlmCacheEntry e SET e.lastHitAt = :now, e.hitCount = e.hitCount + :hits WHERE e.fingerprint = :fingerprint")
+    int touch(@Param("fingerprint") String fingerprint, @Param("now") LocalDateTime now, @Param("hits") long hits);
+
+    /** TTL: hapus entry yang dibuat sebelum cutoff. */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LlmCacheEntry e WHERE e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    /** Batas ukuran: sisakan maxEntries entry yang paling baru dipakai. */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM llm_cache WHERE fingerprint IN " +
+            "(SELECT fingerprint FROM llm_cache ORDER BY last_hit_at DESC OFFSET :maxEntries)", nativeQuery = true)
+    int deleteBeyondNewest(@Param("maxEntries") long maxEntries);
+}
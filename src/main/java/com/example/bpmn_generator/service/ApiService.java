@@ -1,156 +1,1016 @@
     package com.example.bpmn_generator.service;
 
+    import com.fasterxml.jackson.databind.JsonNode;
+    import com.fasterxml.jackson.databind.node.ObjectNode;
+    import jakarta.annotation.PostConstruct;
+    import org.springframework.beans.factory.annotation.Autowired;
     import org.springframework.beans.factory.annotation.Value;
-    import org.springframework.http.*;
     import org.springframework.stereotype.Service;
-    import org.springframework.web.client.RestTemplate;
 
     import java.util.*;
+    import java.util.concurrent.atomic.AtomicLong;
+    import java.util.function.BiConsumer;
     import java.util.regex.Pattern;
     import java.util.regex.Matcher;
 
     @Service
     public class ApiService {
 
-        @Value("${openai.api.key}")
-        private String apiKey;
+        /** Semua backend LLM (LlmProviderConfig): openai, local, stub. */
+        @Autowired
+        private List<ScenarioGenerator> generators;
 
-        private final RestTemplate restTemplate = new RestTemplate();
+        /** Backend untuk request interaktif (streaming satu path). */
+        @Value("${llm.provider:openai}")
+        private String provider;
+
+        /** Backend untuk job generate seluruh path (single, batch, narasi prefix); kosong = sama dengan llm.provider. */
+        @Value("${llm.provider.bulk:}")
+        private String bulkProvider;
+
+        private ScenarioGenerator interactive;
+        private ScenarioGenerator bulk;
+
+        @Autowired
+        private LlmRateLimiter rateLimiter;
+
+        @Autowired
+        private LlmResponseCache responseCache;
+
+        @Autowired
+        private LlmResilience resilience;
+
+        @Autowired
+        private LlmTokenizer tokenizer;
+
+        @Autowired
+        private LlmUsageTracker usageTracker;
+
+        /**
+         * Flag di hasil error: request gagal di transport (HTTP/koneksi/circuit breaker, sudah di-retry LlmResilience),
+         * dibatalkan, atau backend tidak terkonfigurasi. Pemanggil tidak perlu mengulang; hanya hasil rusak yang diulang.
+         */
+        public static final String TRANSPORT_ERROR = "transport_error";
+
+        private static final double TEMPERATURE = 0.1;
+        private static final String SYSTEM_PROMPT = "Anda adalah asisten QA profesional yang sangat terstruktur. Ikuti format yang diminta dengan tepat dan konsisten.";
+        private static final String STRUCTURED_SYSTEM_PROMPT = "Anda adalah asisten QA profesional yang sangat terstruktur. Jawab hanya dengan objek JSON sesuai schema.";
+
+        /** Maks path per request batch; 1 = mode batch mati. */
+        @Value("${llm.batch.max-paths:5}")
+        private int batchMaxPaths;
+
+        @Value("${llm.batch.max-prompt-tokens:6000}")
+        private int batchMaxPromptTokens;
+
+        @Value("${llm.batch.max-output-tokens:12000}")
+        private int batchMaxOutputTokens;
+
+        /** max_tokens satu path = base (summary, deskripsi, data uji) + per-step × jumlah langkah. */
+        @Value("${llm.prompt.output-base-tokens:600}")
+        private int outputBaseTokens;
+
+        @Value("${llm.prompt.output-tokens-per-step:90}")
+        private int outputTokensPerStep;
+
+        /** Batas max_tokens satu request; path yang butuh lebih dari ini dipecah per chunk langkah. */
+        @Value("${llm.prompt.max-output-tokens:4000}")
+        private int maxOutputTokens;
+
+        /** Batas token prompt satu request (dihitung tokenizer lokal). */
+        @Value("${llm.prompt.max-prompt-tokens:6000}")
+        private int maxPromptTokens;
+
+        /** Jumlah langkah terakhir yang sudah ditulis yang tetap dikirim sebagai konteks lanjutan. */
+        @Value("${llm.prompt.context-lines:3}")
+        private int contextLines;
+
+        /** Structured output (response_format json_schema) untuk generate satu path dan batch; streaming tetap format section. */
+        @Value("${llm.structured.enabled:false}")
+        private boolean structuredEnabled;
+
+        /** Maks putaran perbaikan field tidak valid per skenario; field yang masih salah diganti default. */
+        @Value("${llm.structured.max-repairs:1}")
+        private int structuredMaxRepairs;
+
+        private final AtomicLong structuredResponses = new AtomicLong();
+        private final AtomicLong structuredUnparseable = new AtomicLong();
+        private final AtomicLong repairCalls = new AtomicLong();
+        private final AtomicLong repairedFields = new AtomicLong();
+        private final AtomicLong unrepairedFields = new AtomicLong();
+
+        @PostConstruct
+        void selectGenerators() {
+            interactive = generator(provider);
+            bulk = (bulkProvider == null || bulkProvider.isBlank()) ? interactive : generator(bulkProvider);
+            System.out.println("🤖 LLM provider: " + interactive.name() + " (" + interactive.model() + "), bulk: "
+                    + bulk.name() + " (" + bulk.model() + ")");
+        }
+
+        private ScenarioGenerator generator(String name) {
+            return generators.stream()
+                    .filter(g -> g.name().equalsIgnoreCase(name.trim()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("llm.provider tidak dikenal: " + name + " (tersedia: "
+                            + generators.stream().map(ScenarioGenerator::name).toList() + ")"));
+        }
 
         public Map<String, String> generate_bpmn(List<String> pathLabels, String context) {
+            return generateSingle(bulk, pathLabels, context);
+        }
+
+        private Map<String, String> generateSingle(ScenarioGenerator generator, List<String> pathLabels, String context) {
             // 🔍 DEBUG: Log input parameters
             System.out.println("🔍 DEBUG: ApiService.generate_bpmn called");
             System.out.println("🔍 DEBUG: pathLabels = " + pathLabels);
             System.out.println("🔍 DEBUG: context = " + context);
 
-            // 🔍 DEBUG: Check API key
-            if (apiKey == null || apiKey.isEmpty() || apiKey.equals("${openai.api.key}")) {
-                System.err.println("❌ ERROR: API Key tidak terkonfigurasi dengan benar!");
-                System.err.println("❌ Current apiKey value: '" + apiKey + "'");
-                return createErrorResponse("API Key tidak terkonfigurasi");
+            // 🔍 DEBUG: Check backend
+            if (!generator.isConfigured()) {
+                System.err.println("❌ ERROR: Provider " + generator.name() + " tidak terkonfigurasi dengan benar (API key/endpoint)!");
+                return createTransportErrorResponse("API Key tidak terkonfigurasi");
             }
 
-            System.out.println("✅ DEBUG: API Key tersedia (length: " + apiKey.length() + ")");
-
-            String readablePath = String.join(" -> ", pathLabels);
-            boolean hasLanes = pathLabels.stream().anyMatch(label -> label.contains("[") && label.contains("]"));
-            String cleanPathForDescription = createCleanPathForDescription(pathLabels);
-            String prompt = createOptimizedPrompt(context, readablePath, cleanPathForDescription, hasLanes);
+            boolean hasLanes = hasLanes(pathLabels);
+            String prompt = createOptimizedPrompt(context, pathLabels, hasLanes);
+            int promptTokens = tokenizer.countChat(SYSTEM_PROMPT, prompt);
+            if (exceedsBudget(pathLabels.size(), promptTokens)) {
+                System.out.println("✂️ DEBUG: Path " + pathLabels.size() + " langkah (" + promptTokens
+                        + " token prompt) melebihi budget, dipecah per chunk");
+                return generateChunked(generator, pathLabels, List.of(), context);
+            }
+            if (structuredEnabled) return generateStructured(generator, pathLabels, context, hasLanes);
+            ScenarioGenerator.Request request = request(ScenarioGenerator.Kind.SCENARIO, prompt,
+                    outputTokens(pathLabels.size()), List.of(pathLabels), 1);
 
             // 🔍 DEBUG: Log prompt
-            System.out.println("🔍 DEBUG: Generated prompt length: " + prompt.length());
+            System.out.println("🔍 DEBUG: Generated prompt: " + promptTokens + " token, max_tokens " + request.maxTokens());
             System.out.println("🔍 DEBUG: Prompt preview: " + prompt.substring(0, Math.min(200, prompt.length())));
 
-            // 🔍 DEBUG: Prepare request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
+            // Prompt identik (model/temperature/prompt sama) → pakai response yang sudah pernah dibayar
+            String fingerprint = fingerprint(generator, request);
+            String cachedContent = cacheGet(generator, fingerprint);
+            if (cachedContent != null) {
+                System.out.println("♻️ DEBUG: Cache hit " + fingerprint.substring(0, 12) + ", LLM tidak dipanggil");
+                return toResult(cachedContent, pathLabels, hasLanes);
+            }
+
+            try {
+                String content = requestCompletion(generator, request);
+                if (content == null) {
+                    System.err.println("❌ ERROR: Unexpected response structure");
+                    return createErrorResponse("Response structure tidak valid");
+                }
+
+                // Hanya response dengan format section yang di-cache (jawaban rusak tidak diulang)
+                if (content.contains("===SCENARIO_STEP===")) {
+                    cachePut(generator, fingerprint, content);
+                }
+
+                Map<String, String> result = toResult(content, pathLabels, hasLanes);
+                System.out.println("✅ DEBUG: Successfully processed API response");
+                return result;
+
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+            } catch (Exception e) {
+                logApiError(e);
+                return createTransportErrorResponse("API call gagal: " + e.getMessage());
+            }
+        }
 
-            Map<String, Object> body = new HashMap<>();
-            body.put("model", "gpt-4o");
-            body.put("temperature", 0.1);
-            body.put("max_tokens", 2000); 
-            body.put("messages", List.of(
-                    Map.of("role", "system", "content", "Anda adalah asisten QA profesional yang sangat terstruktur. Ikuti format yang diminta dengan tepat dan konsisten."),
-                    Map.of("role", "user", "content", prompt)
-            ));
+        /**
+         * Mode batch: beberapa path dalam satu chat completion dengan preamble (konteks, instruksi, format)
+         * yang dikirim sekali. Hasil dipecah per blok ===PATH n===; path yang bloknya hilang/rusak
+         * di-generate ulang lewat {@link #generate_bpmn(List, String)}. Jika request batch gagal di transport,
+         * semua path mendapat error transport tanpa request per path (retry sudah dilakukan LlmResilience).
+         * Return list sejajar dengan {@code pathsLabels}.
+         */
+        public List<Map<String, String>> generate_bpmn_batch(List<List<String>> pathsLabels, String context) {
+            if (pathsLabels.size() == 1) {
+                return List.of(generate_bpmn(pathsLabels.get(0), context));
+            }
+            if (structuredEnabled) return generateStructuredBatch(pathsLabels, context);
+            System.out.println("📦 DEBUG: Batch generate " + pathsLabels.size() + " paths dalam satu request");
+
+            Map<Integer, String> blocks = Map.of();
+            Map<String, String> transportError = null;
+            if (bulk.isConfigured()) {
+                boolean anyLanes = pathsLabels.stream().anyMatch(this::hasLanes);
+                String prompt = createBatchPrompt(context, pathsLabels, anyLanes);
+                ScenarioGenerator.Request request = request(ScenarioGenerator.Kind.BATCH, prompt,
+                        batchMaxTokens(pathsLabels), pathsLabels, 1);
+
+                String fingerprint = fingerprint(bulk, request);
+                String content = cacheGet(bulk, fingerprint);
+                try {
+                    if (content != null) {
+                        System.out.println("♻️ DEBUG: Cache hit batch " + fingerprint.substring(0, 12));
+                    } else {
+                        content = requestCompletion(bulk, request);
+                    }
+                    blocks = splitBatchBlocks(content, pathsLabels.size());
+                    // cache hanya jika semua blok lengkap
+                    if (blocks.size() == pathsLabels.size()) {
+                        cachePut(bulk, fingerprint, content);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    transportError = createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+                } catch (Exception e) {
+                    logApiError(e);
+                    transportError = createTransportErrorResponse("API call gagal: " + e.getMessage());
+                }
+            }
 
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
+            List<Map<String, String>> results = new ArrayList<>(pathsLabels.size());
+            for (int i = 0; i < pathsLabels.size(); i++) {
+                List<String> labels = pathsLabels.get(i);
+                String block = blocks.get(i + 1);
+                if (block != null) {
+                    results.add(toResult(block, labels, hasLanes(labels)));
+                } else if (transportError != null) {
+                    results.add(new HashMap<>(transportError));
+                } else {
+                    System.out.println("↩️ DEBUG: Blok path " + (i + 1) + " tidak valid, fallback ke request tunggal");
+                    results.add(generate_bpmn(labels, context));
+                }
+            }
+            return results;
+        }
 
-            System.out.println("🚀 DEBUG: Sending request to OpenAI API...");
+        /**
+         * Structured output satu path: response berupa JSON sesuai {@link ScenarioSchema#scenario()}. Field yang tidak
+         * lolos validasi diminta ulang sendiri-sendiri (request REPAIR kecil) alih-alih mengulang seluruh skenario.
+         * Response yang bukan JSON → error response, sehingga pemanggil mengulang seperti biasa.
+         */
+        private Map<String, String> generateStructured(ScenarioGenerator generator, List<String> pathLabels,
+                                                       String context, boolean hasLanes) {
+            ScenarioGenerator.Request request = structuredRequest(ScenarioGenerator.Kind.SCENARIO,
+                    createStructuredPrompt(context, pathLabels, hasLanes), outputTokens(pathLabels.size()),
+                    List.of(pathLabels), ScenarioSchema.scenario());
+
+            String fingerprint = fingerprint(generator, request);
+            ObjectNode cached = ScenarioSchema.read(cacheGet(generator, fingerprint));
+            if (cached != null && ScenarioSchema.validate(cached, pathLabels.size()).isEmpty()) {
+                System.out.println("♻️ DEBUG: Cache hit " + fingerprint.substring(0, 12) + ", LLM tidak dipanggil");
+                return toResult(ScenarioSchema.toSections(cached), pathLabels, hasLanes);
+            }
 
             try {
-                // 🔍 DEBUG: Make API call with detailed logging
-                ResponseEntity<Map> response = restTemplate.postForEntity(
-                        "https://api.openai.com/v1/chat/completions", request, Map.class
-                );
-
-                System.out.println("✅ DEBUG: API call successful!");
-                System.out.println("🔍 DEBUG: Response status: " + response.getStatusCode());
-                System.out.println("🔍 DEBUG: Response body type: " + response.getBody().getClass());
-
-                // 🔍 DEBUG: Log response structure
-                Map responseBody = response.getBody();
-                if (responseBody != null) {
-                    System.out.println("🔍 DEBUG: Response keys: " + responseBody.keySet());
-
-                    if (responseBody.containsKey("choices")) {
-                        List<Map> choices = (List<Map>) responseBody.get("choices");
-                        System.out.println("🔍 DEBUG: Choices count: " + choices.size());
-
-                        if (!choices.isEmpty()) {
-                            Map firstChoice = choices.get(0);
-                            System.out.println("🔍 DEBUG: First choice keys: " + firstChoice.keySet());
-
-                            if (firstChoice.containsKey("message")) {
-                                Map message = (Map) firstChoice.get("message");
-                                String content = message.get("content").toString();
-                                System.out.println("🔍 DEBUG: Content length: " + content.length());
-                                System.out.println("🔍 DEBUG: Content preview: " + content.substring(0, Math.min(300, content.length())));
-
-                                // Parse result
-                                Map<String, String> result = parseImprovedResult(content);
-                                System.out.println("🔍 DEBUG: Parsed result keys: " + result.keySet());
-
-                                // Fix format
-                                if (hasLanes) {
-                                    result = fixLaneFormat(result, pathLabels);
-                                } else {
-                                    result = fixNonLaneFormat(result, pathLabels);
-                                }
-
-                                System.out.println("✅ DEBUG: Successfully processed API response");
-                                return result;
+                ObjectNode node = ScenarioSchema.read(requestCompletion(generator, request));
+                if (node == null) {
+                    structuredUnparseable.incrementAndGet();
+                    System.err.println("❌ ERROR: Response bukan objek JSON sesuai schema");
+                    return createErrorResponse("Response structure tidak valid");
+                }
+                structuredResponses.incrementAndGet();
+
+                // Hanya skenario yang seluruh field-nya valid yang di-cache
+                if (repairInvalidFields(generator, node, pathLabels, context)) {
+                    cachePut(generator, fingerprint, node.toString());
+                }
+                return toResult(ScenarioSchema.toSections(node), pathLabels, hasLanes);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+            } catch (Exception e) {
+                logApiError(e);
+                return createTransportErrorResponse("API call gagal: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Batch dengan structured output: {"paths": [{"path": n, ...}]}. Item dicocokkan lewat nomor jalur dan
+         * divalidasi sendiri-sendiri; field yang salah diperbaiki per jalur, jalur yang hilang di-generate ulang
+         * lewat {@link #generate_bpmn(List, String)}, kecuali request gagal di transport (lihat generate_bpmn_batch).
+         */
+        private List<Map<String, String>> generateStructuredBatch(List<List<String>> pathsLabels, String context) {
+            System.out.println("📦 DEBUG: Batch structured " + pathsLabels.size() + " paths dalam satu request");
+
+            Map<Integer, ObjectNode> items = new HashMap<>();
+            Map<String, String> transportError = null;
+            if (bulk.isConfigured()) {
+                boolean anyLanes = pathsLabels.stream().anyMatch(this::hasLanes);
+                ScenarioGenerator.Request request = structuredRequest(ScenarioGenerator.Kind.BATCH,
+                        createStructuredBatchPrompt(context, pathsLabels, anyLanes), batchMaxTokens(pathsLabels),
+                        pathsLabels, ScenarioSchema.batch());
+
+                String fingerprint = fingerprint(bulk, request);
+                String content = cacheGet(bulk, fingerprint);
+                try {
+                    boolean cached = content != null;
+                    if (cached) {
+                        System.out.println("♻️ DEBUG: Cache hit batch " + fingerprint.substring(0, 12));
+                    } else {
+                        content = requestCompletion(bulk, request);
+                    }
+                    ObjectNode root = ScenarioSchema.read(content);
+                    if (root == null) {
+                        structuredUnparseable.incrementAndGet();
+                    } else {
+                        if (!cached) structuredResponses.incrementAndGet();
+                        for (JsonNode item : root.path("paths")) {
+                            int number = item.path("path").asInt(0);
+                            if (number >= 1 && number <= pathsLabels.size() && item instanceof ObjectNode object) {
+                                items.putIfAbsent(number, object);
                             }
                         }
                     }
+
+                    // perbaikan mengubah item di dalam root, jadi root yang di-cache sudah berisi field hasil perbaikan
+                    boolean complete = items.size() == pathsLabels.size();
+                    for (Map.Entry<Integer, ObjectNode> item : items.entrySet()) {
+                        complete &= repairInvalidFields(bulk, item.getValue(), pathsLabels.get(item.getKey() - 1), context);
+                    }
+                    if (complete && !cached) cachePut(bulk, fingerprint, root.toString());
+                    System.out.println("🔍 DEBUG: Batch items valid: " + items.size() + "/" + pathsLabels.size());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    transportError = createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+                } catch (Exception e) {
+                    logApiError(e);
+                    transportError = createTransportErrorResponse("API call gagal: " + e.getMessage());
                 }
+            }
+
+            List<Map<String, String>> results = new ArrayList<>(pathsLabels.size());
+            for (int i = 0; i < pathsLabels.size(); i++) {
+                List<String> labels = pathsLabels.get(i);
+                ObjectNode item = items.get(i + 1);
+                if (item != null) {
+                    results.add(toResult(ScenarioSchema.toSections(item), labels, hasLanes(labels)));
+                } else if (transportError != null) {
+                    results.add(new HashMap<>(transportError));
+                } else {
+                    System.out.println("↩️ DEBUG: Item path " + (i + 1) + " tidak ada, fallback ke request tunggal");
+                    results.add(generate_bpmn(labels, context));
+                }
+            }
+            return results;
+        }
 
-                System.err.println("❌ ERROR: Unexpected response structure");
-                return createErrorResponse("Response structure tidak valid");
+        /**
+         * Minta ulang hanya field yang tidak valid (schema subset, max_tokens sesuai field) lalu gabungkan ke
+         * {@code node}; maksimal llm.structured.max-repairs putaran. Return true jika semua field akhirnya valid.
+         */
+        private boolean repairInvalidFields(ScenarioGenerator generator, ObjectNode node, List<String> pathLabels,
+                                            String context) throws InterruptedException {
+            Map<String, String> invalid = ScenarioSchema.validate(node, pathLabels.size());
+            for (int round = 0; !invalid.isEmpty() && round < structuredMaxRepairs; round++) {
+                System.out.println("🩹 DEBUG: Perbaiki field " + invalid);
+                repairCalls.incrementAndGet();
+                ScenarioGenerator.Request request = structuredRequest(ScenarioGenerator.Kind.REPAIR,
+                        createRepairPrompt(context, pathLabels, invalid), repairTokens(invalid.keySet(), pathLabels.size()),
+                        List.of(pathLabels), ScenarioSchema.subset(invalid.keySet()));
+                ObjectNode patch;
+                try {
+                    patch = ScenarioSchema.read(requestCompletion(generator, request));
+                } catch (RuntimeException e) {
+                    logApiError(e);
+                    break;
+                }
+                if (patch == null) continue;
+
+                for (String field : invalid.keySet()) {
+                    if (patch.has(field)) node.set(field, patch.get(field));
+                }
+                int before = invalid.size();
+                invalid = ScenarioSchema.validate(node, pathLabels.size());
+                repairedFields.addAndGet(before - invalid.size());
+            }
+            if (!invalid.isEmpty()) {
+                unrepairedFields.addAndGet(invalid.size());
+                System.out.println("⚠️ DEBUG: Field tetap tidak valid, dipakai default: " + invalid.keySet());
+            }
+            return invalid.isEmpty();
+        }
 
+        /** max_tokens request perbaikan: langkah sesuai jumlah langkah, field teks/JSON cukup beberapa ratus token. */
+        private int repairTokens(Set<String> fields, int steps) {
+            int tokens = 50;
+            for (String field : fields) {
+                tokens += field.equals(ScenarioSchema.STEPS) ? steps * outputTokensPerStep + 100 : 300;
+            }
+            return Math.min(maxOutputTokens, tokens);
+        }
+
+        /** Counter structured output: response JSON, request perbaikan, field yang diperbaiki / diganti default. */
+        public Map<String, Object> structuredOutputStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", structuredEnabled);
+            stats.put("responses", structuredResponses.get());
+            stats.put("unparseable", structuredUnparseable.get());
+            stats.put("repairCalls", repairCalls.get());
+            stats.put("repairedFields", repairedFields.get());
+            stats.put("unrepairedFields", unrepairedFields.get());
+            return stats;
+        }
+
+        /**
+         * Narasi langkah pengujian untuk {@code steps} yang belum ada di {@code describedLines}
+         * (prefix bersama beberapa path, lihat PrefixTrie). Return baris baru tanpa nomor,
+         * atau null jika jumlah langkah dari model tidak cocok.
+         */
+        public List<String> generate_step_narrative(List<String> steps, List<String> describedLines, String context) {
+            return generateNarrative(bulk, steps, describedLines, context);
+        }
+
+        private List<String> generateNarrative(ScenarioGenerator generator, List<String> steps,
+                                               List<String> describedLines, String context) {
+            try {
+                return narrate(generator, steps, describedLines, context);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
             } catch (Exception e) {
-                System.err.println("❌ ERROR: Exception during API call");
-                System.err.println("❌ Exception type: " + e.getClass().getSimpleName());
-                System.err.println("❌ Exception message: " + e.getMessage());
-                e.printStackTrace();
+                logApiError(e);
+                return null;
+            }
+        }
+
+        /** Seperti {@link #generateNarrative}, tetapi request yang gagal dilempar (null = jumlah langkah tidak cocok). */
+        private List<String> narrate(ScenarioGenerator generator, List<String> steps,
+                                     List<String> describedLines, String context) throws Exception {
+            int from = describedLines.size();
+            if (from >= steps.size()) return new ArrayList<>();
+            if (!generator.isConfigured()) return null;
+
+            boolean hasLanes = hasLanes(steps);
+            String prompt = createNarrativePrompt(context, steps, describedLines, hasLanes);
+            int maxTokens = Math.min(maxOutputTokens, 150 + (steps.size() - from) * outputTokensPerStep);
+            System.out.println("🧩 DEBUG: Narasi prefix langkah " + (from + 1) + ".." + steps.size());
+
+            String content = cachedCompletion(generator,
+                    request(ScenarioGenerator.Kind.NARRATIVE, prompt, maxTokens, List.of(steps), from + 1));
+            List<String> lines = stripNumbering(ScenarioSectionParser.parse(content).get("scenario_step"));
+            if (lines.size() != steps.size() - from) {
+                System.out.println("⚠️ DEBUG: Narasi prefix " + lines.size() + " langkah, diharapkan " + (steps.size() - from));
+                return null;
+            }
+            return lines;
+        }
+
+        /**
+         * Seperti {@link #generate_bpmn(List, String)}, tetapi langkah 1..k sudah dinarasikan ({@code prefixLines});
+         * model hanya menulis langkah k+1..n plus summary, deskripsi dan data uji untuk seluruh jalur.
+         */
+        public Map<String, String> generate_bpmn_with_prefix(List<String> pathLabels, List<String> prefixLines, String context) {
+            return generateWithPrefix(bulk, pathLabels, prefixLines, context);
+        }
+
+        private Map<String, String> generateWithPrefix(ScenarioGenerator generator, List<String> pathLabels,
+                                                       List<String> prefixLines, String context) {
+            if (!generator.isConfigured()) return createTransportErrorResponse("API Key tidak terkonfigurasi");
+
+            boolean hasLanes = hasLanes(pathLabels);
+            int suffixSteps = pathLabels.size() - prefixLines.size();
+            if (suffixSteps > stepsPerCall()) return generateChunked(generator, pathLabels, prefixLines, context);
+            String prompt = createPrefixedPrompt(context, pathLabels, prefixLines, hasLanes);
+            System.out.println("🧩 DEBUG: Generate dengan prefix " + prefixLines.size() + " langkah, sisa " + suffixSteps);
+
+            try {
+                String content = cachedCompletion(generator, request(ScenarioGenerator.Kind.PREFIXED, prompt,
+                        outputTokens(suffixSteps), List.of(pathLabels), prefixLines.size() + 1));
+                if (content == null) return createErrorResponse("Response structure tidak valid");
+
+                Map<String, String> result = parseImprovedResult(content);
+                List<String> suffix = stripNumbering(result.getOrDefault("scenario_step", ""));
+                if (suffix.size() != suffixSteps) {
+                    return createErrorResponse("Jumlah langkah lanjutan " + suffix.size() + ", diharapkan " + suffixSteps);
+                }
+
+                List<String> merged = new ArrayList<>(prefixLines);
+                merged.addAll(suffix);
+                StringBuilder steps = new StringBuilder();
+                for (int i = 0; i < merged.size(); i++) {
+                    if (i > 0) steps.append('\n');
+                    steps.append(i + 1).append(". ").append(merged.get(i));
+                }
+                result.put("scenario_step", steps.toString());
+
+                return hasLanes ? fixLaneFormat(result, pathLabels) : fixNonLaneFormat(result, pathLabels);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+            } catch (Exception e) {
+                logApiError(e);
+                return createTransportErrorResponse("API call gagal: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Path yang tidak muat dalam satu request: langkah dinarasikan per chunk (konteks hanya beberapa langkah
+         * terakhir), request terakhir menulis sisa langkah + summary, deskripsi dan data uji seluruh jalur.
+         */
+        private Map<String, String> generateChunked(ScenarioGenerator generator, List<String> pathLabels,
+                                                    List<String> prefixLines, String context) {
+            int perCall = stepsPerCall();
+            int chunk = Math.min(perCall, Math.max(1, (pathLabels.size() - prefixLines.size() + 1) / 2));
+            List<String> described = new ArrayList<>(prefixLines);
+            // minimal satu chunk dulu: request terakhir selalu lebih kecil dari request yang melebihi budget
+            do {
+                int end = Math.min(described.size() + chunk, pathLabels.size() - 1);
+                if (end <= described.size()) break;
+                List<String> lines;
+                try {
+                    lines = narrate(generator, pathLabels.subList(0, end), described, context);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+                } catch (Exception e) {
+                    logApiError(e);
+                    return createTransportErrorResponse("API call gagal: " + e.getMessage());
+                }
+                if (lines == null) {
+                    return createErrorResponse("Narasi langkah " + (described.size() + 1) + ".." + end + " gagal");
+                }
+                described.addAll(lines);
+            } while (pathLabels.size() - described.size() > perCall);
+            System.out.println("✂️ DEBUG: " + (described.size() - prefixLines.size()) + " langkah dinarasikan per chunk, sisa "
+                    + (pathLabels.size() - described.size()) + " di request terakhir");
+            return generateWithPrefix(generator, pathLabels, described, context);
+        }
+
+        /** max_tokens untuk menulis {@code steps} langkah plus summary, deskripsi dan data uji. */
+        private int outputTokens(int steps) {
+            return outputBaseTokens + steps * outputTokensPerStep;
+        }
+
+        /** Maks langkah yang bisa ditulis dalam satu response (≤ llm.prompt.max-output-tokens). */
+        private int stepsPerCall() {
+            return Math.max(1, (maxOutputTokens - outputBaseTokens) / Math.max(1, outputTokensPerStep));
+        }
+
+        private boolean exceedsBudget(int steps, int promptTokens) {
+            return steps > stepsPerCall() || promptTokens > maxPromptTokens;
+        }
+
+        /** Completion lewat cache fingerprint; response yang berisi ===SCENARIO_STEP=== disimpan. */
+        private String cachedCompletion(ScenarioGenerator generator, ScenarioGenerator.Request request) throws InterruptedException {
+            String fingerprint = fingerprint(generator, request);
+            String content = cacheGet(generator, fingerprint);
+            if (content != null) {
+                System.out.println("♻️ DEBUG: Cache hit " + fingerprint.substring(0, 12));
+                return content;
+            }
+            content = requestCompletion(generator, request);
+            if (content != null && content.contains("===SCENARIO_STEP===")) {
+                cachePut(generator, fingerprint, content);
+            }
+            return content;
+        }
+
+        private ScenarioGenerator.Request request(ScenarioGenerator.Kind kind, String prompt, int maxTokens,
+                                                  List<List<String>> paths, int firstStep) {
+            return new ScenarioGenerator.Request(kind, SYSTEM_PROMPT, prompt, maxTokens, TEMPERATURE, paths, firstStep, null);
+        }
+
+        private ScenarioGenerator.Request structuredRequest(ScenarioGenerator.Kind kind, String prompt, int maxTokens,
+                                                            List<List<String>> paths, Map<String, Object> schema) {
+            return new ScenarioGenerator.Request(kind, STRUCTURED_SYSTEM_PROMPT, prompt, maxTokens, TEMPERATURE, paths, 1, schema);
+        }
+
+        /**
+         * Fingerprint cache memuat nama model, jadi response model lokal tidak tertukar dengan gpt-4o;
+         * schema ikut di-hash supaya JSON lama tidak dipakai setelah schema berubah.
+         */
+        private String fingerprint(ScenarioGenerator generator, ScenarioGenerator.Request request) {
+            return responseCache.fingerprint(generator.model(), request.temperature(), request.maxTokens(),
+                    systemText(request), request.prompt());
+        }
+
+        /** System prompt request beserta schema structured output (ikut terkirim lewat response_format). */
+        private static String systemText(ScenarioGenerator.Request request) {
+            return request.responseSchema() == null ? request.systemPrompt()
+                    : request.systemPrompt() + "\n" + request.responseSchema();
+        }
+
+        private String cacheGet(ScenarioGenerator generator, String fingerprint) {
+            return generator.isCacheable() ? responseCache.get(fingerprint) : null;
+        }
+
+        private void cachePut(ScenarioGenerator generator, String fingerprint, String content) {
+            if (generator.isCacheable()) responseCache.put(fingerprint, generator.model(), content);
+        }
+
+        private List<String> stripNumbering(String numberedSteps) {
+            List<String> lines = new ArrayList<>();
+            if (numberedSteps == null) return lines;
+            for (String line : numberedSteps.split("\n")) {
+                String clean = line.trim().replaceAll("^\\d+\\.\\s*", "").trim();
+                if (!clean.isEmpty()) lines.add(clean);
+            }
+            return lines;
+        }
+
+        private String numberedLines(List<String> lines, int firstNumber) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < lines.size(); i++) {
+                sb.append("\n    ").append(firstNumber + i).append(". ").append(lines.get(i));
+            }
+            return sb.toString();
+        }
+
+        /** Langkah yang sudah ditulis sebagai konteks lanjutan: hanya llm.prompt.context-lines baris terakhir. */
+        private String writtenTail(List<String> lines) {
+            if (lines.isEmpty()) return "\n    (belum ada)";
+            int from = Math.max(0, lines.size() - Math.max(1, contextLines));
+            String skipped = (from > 0) ? "\n    (langkah 1-" + from + " sudah ditulis, tidak ditampilkan)" : "";
+            return skipped + numberedLines(lines.subList(from, lines.size()), from + 1);
+        }
+
+        /**
+         * Jalur dalam satu baris; jika lebih dari separuh budget prompt, bagian tengah diringkas
+         * (langkah awal & akhir tetap tampil) karena hanya dipakai untuk summary/deskripsi.
+         */
+        private String summarizedPath(List<String> labels) {
+            String full = String.join(" -> ", labels);
+            int budget = maxPromptTokens / 2;
+            if (labels.size() <= 2 || tokenizer.count(full) <= budget) return full;
+            int keep = labels.size() / 2;
+            String summarized;
+            do {
+                keep = Math.max(1, keep / 2);
+                summarized = String.join(" -> ", labels.subList(0, keep))
+                        + " -> … (" + (labels.size() - 2 * keep) + " langkah) … -> "
+                        + String.join(" -> ", labels.subList(labels.size() - keep, labels.size()));
+            } while (keep > 1 && tokenizer.count(summarized) > budget);
+            return summarized;
+        }
+
+        // 🔹 Prompt narasi prefix: hanya langkah baru, melanjutkan langkah yang sudah ditulis
+        private String createNarrativePrompt(String context, List<String> steps, List<String> describedLines, boolean hasLanes) {
+            int from = describedLines.size();
+            return String.format("""
+    Anda adalah asisten QA yang menulis langkah-langkah pengujian untuk proses bisnis BPMN.
+    
+    KONTEKS PROSES: %s
+    
+    LANGKAH YANG SUDAH DITULIS (jangan diulang):%s
+    
+    LANGKAH BERIKUTNYA YANG HARUS DITULIS (%d langkah, lanjutkan penomoran):%s%s
+    
+    WAJIB MENGIKUTI FORMAT INI PERSIS, satu baris bernomor per langkah, tanpa section lain:
+    
+    ===SCENARIO_STEP===
+    %d. [Penjelasan detail tindakan yang dilakukan pada langkah ini]
+    dst...
+    %s
+    """, context, writtenTail(describedLines),
+                    steps.size() - from, numberedLines(steps.subList(from, steps.size()), from + 1),
+                    laneInstruction(hasLanes), from + 1, stepExamples(hasLanes));
+        }
+
+        // 🔹 Prompt path dengan prefix yang sudah dinarasikan: SCENARIO_STEP hanya untuk sisa langkah
+        private String createPrefixedPrompt(String context, List<String> pathLabels, List<String> prefixLines, boolean hasLanes) {
+            int k = prefixLines.size();
+            return String.format("""
+    Anda adalah asisten QA yang membuat skenario pengujian untuk proses bisnis BPMN.
+    
+    KONTEKS PROSES: %s
+    
+    JALUR LANGKAH 1 SAMPAI %d: %s
+    
+    LANGKAH 1 SAMPAI %d SUDAH DITULIS (jangan diulang):%s
+    
+    LANGKAH %d SAMPAI %d YANG HARUS DITULIS:%s
+    %s
+    
+    INSTRUKSI:
+    1. Buat deskripsi skenario untuk SELURUH jalur secara naratif dan mengalir tanpa menyebutkan format teknis [Lane]
+    2. Di SCENARIO_STEP tulis HANYA langkah %d sampai %d (%d langkah), NARATIF dan DETAIL, lanjutkan penomoran
+    3. Berikan contoh data input dalam format JSON yang valid
+    4. Berikan expected result dalam format JSON yang valid
+    5. Ringkas deskripsi tersebut menjadi satu paragraf ringkasan yang bernaratif dan mudah dipahami(===SUMMARY===)
+    WAJIB MENGIKUTI FORMAT INI PERSIS:
+    
+    ===SUMMARY===
+    [deskripsi singkat alur proses seluruh jalur dari awal hingga akhir secara naratif]
+    
+    ===DESKRIPSI===
+    [deskripsi skenario pengujian seluruh jalur yang mengalir secara naratif, tanpa format [Lane]]
+    
+    ===SCENARIO_STEP===
+    %d. [Penjelasan detail tindakan yang dilakukan pada langkah %d]
+    dst...
+    
+    ===INPUT_DATA===
+    {
+      "field1": "value1"
+    }
+    
+    ===EXPECTED_RESULT===
+    {
+      "status": "success",
+      "message": "Proses berhasil",
+      "data": {}
+    }
+    %s
+    """, context, k, summarizedPath(pathLabels.subList(0, k)), k, writtenTail(prefixLines),
+                    k + 1, pathLabels.size(), numberedLines(pathLabels.subList(k, pathLabels.size()), k + 1),
+                    laneInstruction(hasLanes), k + 1, pathLabels.size(), pathLabels.size() - k, k + 1, k + 1,
+                    stepExamples(hasLanes));
+        }
+
+        /**
+         * Bagi path (urut) menjadi batch berurutan di bawah budget: maks {@code llm.batch.max-paths} path,
+         * token prompt ≤ {@code llm.batch.max-prompt-tokens}, output ≤ {@code llm.batch.max-output-tokens}.
+         * Path yang bertetangga umumnya berbagi prefix, jadi tetap satu batch. Path yang harus dipecah
+         * per chunk (lihat generate_bpmn) selalu sendiri.
+         */
+        public List<List<Integer>> planBatches(List<List<String>> pathsLabels) {
+            List<List<Integer>> batches = new ArrayList<>();
+            int preambleTokens = tokenizer.countChat(SYSTEM_PROMPT, createBatchPrompt("", List.of(), true));
+
+            List<Integer> current = new ArrayList<>();
+            long promptTokens = preambleTokens;
+            long outputTokens = 0;
+            boolean currentAlone = false;
+            for (int i = 0; i < pathsLabels.size(); i++) {
+                List<String> labels = pathsLabels.get(i);
+                long pathTokens = tokenizer.count(String.join(" -> ", labels)) + 10;   // + "JALUR n (m langkah):"
+                long pathOutput = outputTokens(labels.size());
+                boolean alone = labels.size() > stepsPerCall();
+                boolean full = currentAlone || alone || current.size() >= batchMaxPaths
+                        || promptTokens + pathTokens > batchMaxPromptTokens
+                        || outputTokens + pathOutput > batchMaxOutputTokens;
+                if (!current.isEmpty() && full) {
+                    batches.add(current);
+                    current = new ArrayList<>();
+                    promptTokens = preambleTokens;
+                    outputTokens = 0;
+                }
+                current.add(i);
+                currentAlone = alone;
+                promptTokens += pathTokens;
+                outputTokens += pathOutput;
+            }
+            if (!current.isEmpty()) batches.add(current);
+            return batches;
+        }
+
+        public boolean isBatchEnabled() {
+            return batchMaxPaths > 1;
+        }
+
+        private int batchMaxTokens(List<List<String>> pathsLabels) {
+            int total = 0;
+            for (List<String> labels : pathsLabels) total += outputTokens(labels.size());
+            return Math.min(batchMaxOutputTokens, total);
+        }
+
+        /**
+         * Kirim satu chat completion ke backend (rate limiter → request → settle usage).
+         * Return konten pesan pertama, atau null jika struktur response tidak dikenali.
+         * Token, latency dan jumlah attempt dicatat LlmUsageTracker untuk file/user yang sedang di-generate.
+         */
+        private String requestCompletion(ScenarioGenerator generator, ScenarioGenerator.Request request) throws InterruptedException {
+            LlmUsageTracker.Call call = usageTracker.start(request.kind());
+            String content = null;
+            try {
+                // retry/backoff, Retry-After, circuit breaker & hedging di LlmResilience
+                content = resilience.call(() -> sendCompletion(generator, request, call), true);
+                return content;
+            } finally {
+                call.finish(content != null);
+            }
+        }
+
+        private String sendCompletion(ScenarioGenerator generator, ScenarioGenerator.Request request,
+                                      LlmUsageTracker.Call call) throws Exception {
+            // Kuota RPM/TPM dibagi semua thread generate → tunggu giliran sebelum kirim
+            long reservedTokens = generator.isRateLimited()
+                    ? rateLimiter.acquire(estimateTokens(request)) : 0;
+            ScenarioGenerator.Completion completion = null;
+            try {
+                call.attempt();
+                completion = generator.complete(request);
+            } finally {
+                // request gagal → seluruh reservasi dikembalikan ke bucket
+                if (generator.isRateLimited()) rateLimiter.settle(reservedTokens, completion != null ? completion.totalTokens() : 0);
+            }
+            recordTokens(call, request, completion);
+            return completion.content();
+        }
+
+        /** Usage dari backend; jika tidak dilaporkan (server lokal tertentu) dihitung tokenizer lokal. */
+        private void recordTokens(LlmUsageTracker.Call call, ScenarioGenerator.Request request,
+                                  ScenarioGenerator.Completion completion) {
+            long prompt = completion.promptTokens() >= 0 ? completion.promptTokens()
+                    : tokenizer.countChat(systemText(request), request.prompt());
+            long output = completion.completionTokens() >= 0 ? completion.completionTokens()
+                    : (completion.content() != null ? tokenizer.count(completion.content()) : 0);
+            call.tokens(prompt, output);
+        }
 
-                // 🔍 DEBUG: Log specific error types
-                if (e.getMessage() != null) {
-                    if (e.getMessage().contains("401")) {
-                        System.err.println("🚨 LIKELY CAUSE: Invalid API Key");
-                    } else if (e.getMessage().contains("403")) {
-                        System.err.println("🚨 LIKELY CAUSE: API access forbidden");
-                    } else if (e.getMessage().contains("timeout")) {
-                        System.err.println("🚨 LIKELY CAUSE: Network timeout");
-                    } else if (e.getMessage().contains("ConnectException")) {
-                        System.err.println("🚨 LIKELY CAUSE: Network connectivity issue");
+        /**
+         * Mode streaming: sama dengan {@link #generate_bpmn(List, String)} (prompt & cache sama), tetapi response
+         * dibaca sebagai SSE chat-completions dan setiap section yang selesai langsung dikirim ke {@code onSection}
+         * (key: summary, description, scenario_step, input_data, expected_result). Return hasil akhir yang sudah divalidasi.
+         */
+        public Map<String, String> generate_bpmn_streaming(List<String> pathLabels, String context,
+                                                           BiConsumer<String, String> onSection) {
+            if (!interactive.isConfigured()) return createTransportErrorResponse("API Key tidak terkonfigurasi");
+
+            boolean hasLanes = hasLanes(pathLabels);
+            String prompt = createOptimizedPrompt(context, pathLabels, hasLanes);
+            if (exceedsBudget(pathLabels.size(), tokenizer.countChat(SYSTEM_PROMPT, prompt))) {
+                // path dipecah per chunk → tidak di-stream; section dikirim setelah hasil lengkap
+                Map<String, String> result = generateSingle(interactive, pathLabels, context);
+                for (String section : List.of("summary", "description", "scenario_step", "input_data", "expected_result")) {
+                    if (result.get(section) != null) onSection.accept(section, result.get(section));
+                }
+                return result;
+            }
+            ScenarioGenerator.Request request = request(ScenarioGenerator.Kind.SCENARIO, prompt,
+                    outputTokens(pathLabels.size()), List.of(pathLabels), 1);
+            ScenarioSectionParser parser = new ScenarioSectionParser(
+                    (section, value) -> onSection.accept(section, withDefault(section, value)));
+
+            String fingerprint = fingerprint(interactive, request);
+            String cachedContent = cacheGet(interactive, fingerprint);
+            if (cachedContent != null) {
+                System.out.println("♻️ DEBUG: Cache hit " + fingerprint.substring(0, 12) + " (stream)");
+                parser.feed(cachedContent);
+                parser.finish();
+                return toResult(parser.sections(), pathLabels, hasLanes);
+            }
+
+            try {
+                String content = streamCompletion(interactive, request, parser);
+                if (content.isBlank()) return createErrorResponse("Response stream kosong");
+                if (content.contains("===SCENARIO_STEP===")) {
+                    cachePut(interactive, fingerprint, content);
+                }
+                // section sudah di-parse selama stream, tidak di-parse ulang
+                return toResult(parser.sections(), pathLabels, hasLanes);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return createTransportErrorResponse("Dibatalkan saat menunggu kuota API");
+            } catch (Exception e) {
+                logApiError(e);
+                return createTransportErrorResponse("API call gagal: " + e.getMessage());
+            }
+        }
+
+        /** Chat completion streaming: setiap delta konten diumpankan ke parser section. */
+        private String streamCompletion(ScenarioGenerator generator, ScenarioGenerator.Request request,
+                                        ScenarioSectionParser parser) throws InterruptedException {
+            LlmUsageTracker.Call call = usageTracker.start(request.kind());
+            String content = null;
+            try {
+                // retry hanya selama belum ada konten yang diteruskan ke client; tanpa hedging
+                content = resilience.call(() -> {
+                    try {
+                        return sendStreamingCompletion(generator, request, parser, call);
+                    } catch (Exception e) {
+                        if (parser.text().isEmpty() || e instanceof InterruptedException) throw e;
+                        throw new IllegalStateException("Stream terputus setelah konten diterima: " + e.getMessage(), e);
                     }
+                }, false);
+                return content;
+            } finally {
+                call.finish(content != null);
+            }
+        }
+
+        private String sendStreamingCompletion(ScenarioGenerator generator, ScenarioGenerator.Request request,
+                                               ScenarioSectionParser parser, LlmUsageTracker.Call call) throws Exception {
+            long reservedTokens = generator.isRateLimited()
+                    ? rateLimiter.acquire(estimateTokens(request)) : 0;
+            ScenarioGenerator.Completion completion = null;
+            try {
+                call.attempt();
+                completion = generator.stream(request, parser::feed);
+            } finally {
+                if (generator.isRateLimited()) rateLimiter.settle(reservedTokens, completion != null ? completion.totalTokens() : 0);
+            }
+            recordTokens(call, request, completion);
+            parser.finish();
+            return parser.text();
+        }
+
+        private void logApiError(Exception e) {
+            if (e instanceof LlmResilience.CircuitOpenException) {
+                System.err.println("⚡ " + e.getMessage());
+                return;
+            }
+            System.err.println("❌ ERROR: Exception during API call");
+            System.err.println("❌ Exception type: " + e.getClass().getSimpleName());
+            System.err.println("❌ Exception message: " + e.getMessage());
+            e.printStackTrace();
+
+            // 🔍 DEBUG: Log specific error types
+            if (e.getMessage() != null) {
+                if (e.getMessage().contains("401")) {
+                    System.err.println("🚨 LIKELY CAUSE: Invalid API Key");
+                } else if (e.getMessage().contains("403")) {
+                    System.err.println("🚨 LIKELY CAUSE: API access forbidden");
+                } else if (e.getMessage().contains("timeout") || e.getMessage().contains("timed out")) {
+                    System.err.println("🚨 LIKELY CAUSE: Network timeout");
+                } else if (e.getMessage().contains("ConnectException")) {
+                    System.err.println("🚨 LIKELY CAUSE: Network connectivity issue");
                 }
+            }
+        }
 
-                return createErrorResponse("API call gagal: " + e.getMessage());
+        private boolean hasLanes(List<String> pathLabels) {
+            return pathLabels.stream().anyMatch(label -> label.contains("[") && label.contains("]"));
+        }
+
+        private static final Pattern BATCH_BLOCK = Pattern.compile("===PATH\\s+(\\d+)===");
+
+        /** Pecah output batch menjadi blok per nomor path; blok tanpa ===SCENARIO_STEP=== dibuang. */
+        private Map<Integer, String> splitBatchBlocks(String content, int expected) {
+            Map<Integer, String> blocks = new HashMap<>();
+            if (content == null) return blocks;
+
+            Matcher m = BATCH_BLOCK.matcher(content);
+            int number = -1;
+            int bodyStart = -1;
+            while (true) {
+                boolean found = m.find();
+                if (number > 0) {
+                    String block = content.substring(bodyStart, found ? m.start() : content.length());
+                    int end = block.indexOf("===END_PATH===");
+                    if (end >= 0) block = block.substring(0, end);
+                    if (number <= expected && block.contains("===SCENARIO_STEP===")) {
+                        blocks.putIfAbsent(number, block.trim());
+                    }
+                }
+                if (!found) break;
+                number = Integer.parseInt(m.group(1));
+                bodyStart = m.end();
             }
+            System.out.println("🔍 DEBUG: Batch blocks valid: " + blocks.size() + "/" + expected);
+            return blocks;
         }
-        // 🔹 Buat path yang bersih untuk deskripsi (tanpa format lane)
-        private String createCleanPathForDescription(List<String> pathLabels) {
-            return pathLabels.stream()
-                    .map(label -> {
-                        // Remove lane format dari deskripsi
-                        if (label.contains("[") && label.contains("]")) {
-                            return label.replaceAll("\\[.*?\\]\\s*", "").trim();
-                        }
-                        return label;
-                    })
-                    .collect(java.util.stream.Collectors.joining(" -> "));
+
+        // 🔹 Buat prompt yang dioptimalkan: jalur dikirim sekali (deskripsi cukup diminta tanpa [Lane])
+        private String createOptimizedPrompt(String context, List<String> pathLabels, boolean hasLanes) {
+            String laneInstruction = laneInstruction(hasLanes);
+            String stepExamples = stepExamples(hasLanes);
+
+            return String.format("""
+    Anda adalah asisten QA yang membuat skenario pengujian untuk proses bisnis BPMN.
+    
+    KONTEKS PROSES: %s
+    
+    JALUR (%d langkah): %s%s
+    
+    INSTRUKSI:
+    1. Buat deskripsi skenario yang menjelaskan alur proses secara naratif dan mengalir tanpa menyebutkan format teknis [Lane]
+    2. Buat langkah-langkah pengujian yang NARATIF dan DETAIL - jelaskan tindakan yang dilakukan, bukan hanya nama aktivitas
+    3. Berikan contoh data input dalam format JSON yang valid
+    4. Berikan expected result dalam format JSON yang valid
+    5. Ringkas deskripsi tersebut menjadi satu paragraf ringkasan yang bernaratif dan mudah dipahami(===SUMMARY===)
+    WAJIB MENGIKUTI FORMAT INI PERSIS:
+    
+    ===SUMMARY===
+    [tuliskan deskripsi singkat tentang alur proses bisnis proses awal hingga akhir yang menggambarakan keseluruhan proses di suatu path buat jadi naratif yaa]
+    
+    ===DESKRIPSI===
+    [Tuliskan deskripsi skenario pengujian yang mengalir secara naratif. Fokus pada alur proses bisnis, bukan format teknis. Jangan sebutkan format [Lane] dalam deskripsi]
+    
+    ===SCENARIO_STEP===
+    [Buat langkah-langkah yang numbered, naratif, dan menjelaskan tindakan yang dilakukan secara detail]
+    1. [Penjelasan detail tindakan yang dilakukan pada langkah pertama]
+    2. [Penjelasan detail tindakan yang dilakukan pada langkah kedua]
+    dst...
+    
+    ===INPUT_DATA===
+    {
+      "field1": "value1",
+      "field2": "value2"
+    }
+    
+    ===EXPECTED_RESULT===
+    {
+      "status": "success",
+      "message": "Proses berhasil",
+      "data": {}
+    }
+    
+    %s
+    
+    PENTING: 
+    - Deskripsi harus mengalir secara naratif tanpa format teknis
+    - Scenario_step harus NARATIF dan menjelaskan tindakan yang dilakukan secara detail
+    - Jangan hanya menyebutkan nama aktivitas, tapi jelaskan apa yang dilakukan
+    - Setiap step harus menjelaskan HOW dan WHAT, bukan hanya WHAT
+    """, context, pathLabels.size(), String.join(" -> ", pathLabels), laneInstruction, stepExamples);
         }
 
-        // 🔹 Buat prompt yang dioptimalkan
-        private String createOptimizedPrompt(String context, String readablePath, String cleanPath, boolean hasLanes) {
-            String laneInstruction = hasLanes ?
+        private String laneInstruction(boolean hasLanes) {
+            return hasLanes ?
                     "\n\nPENTING UNTUK SCENARIO_STEP: Dalam langkah-langkah SCENARIO_STEP, WAJIB gunakan format yang sama dengan jalur yang diberikan. Jika ada [Lane], pertahankan format [Lane] dan buat kalimat yang menjelaskan apa yang dilakukan oleh lane tersebut secara detail dan naratif." :
                     "\n\nPENTING UNTUK SCENARIO_STEP: Buat langkah-langkah yang naratif dan menjelaskan tindakan yang dilakukan secara detail. Jangan hanya sebutkan nama aktivitas, tapi jelaskan apa yang dilakukan.";
+        }
 
-            String stepExamples = hasLanes ?
+        private String stepExamples(boolean hasLanes) {
+            return hasLanes ?
                     """
                     
         CONTOH FORMAT SCENARIO_STEP YANG BENAR:
@@ -179,39 +1039,47 @@
         - "1. Lakukan pengiriman barang ke alamat tujuan dengan memastikan dokumentasi lengkap" 
         - "2. Siapkan barang untuk dijemput dengan melakukan pengecekan kualitas terlebih dahulu" 
                     """;
+        }
+
+        // 🔹 Prompt batch: preamble sekali, lalu daftar jalur bernomor; output satu blok ===PATH n=== per jalur
+        private String createBatchPrompt(String context, List<List<String>> pathsLabels, boolean hasLanes) {
+            StringBuilder paths = new StringBuilder();
+            for (int i = 0; i < pathsLabels.size(); i++) {
+                List<String> labels = pathsLabels.get(i);
+                paths.append("\n    JALUR ").append(i + 1).append(" (").append(labels.size()).append(" langkah): ")
+                        .append(String.join(" -> ", labels));
+            }
 
             return String.format("""
     Anda adalah asisten QA yang membuat skenario pengujian untuk proses bisnis BPMN.
+    Buat skenario pengujian TERPISAH untuk SETIAP jalur di bawah ini (%d jalur).
     
     KONTEKS PROSES: %s
+    %s%s
     
-    JALUR UNTUK SCENARIO_STEP: %s
-    JALUR UNTUK DESKRIPSI: %s%s
-    
-    INSTRUKSI:
+    INSTRUKSI (berlaku untuk setiap jalur):
     1. Buat deskripsi skenario yang menjelaskan alur proses secara naratif dan mengalir tanpa menyebutkan format teknis [Lane]
     2. Buat langkah-langkah pengujian yang NARATIF dan DETAIL - jelaskan tindakan yang dilakukan, bukan hanya nama aktivitas
     3. Berikan contoh data input dalam format JSON yang valid
     4. Berikan expected result dalam format JSON yang valid
     5. Ringkas deskripsi tersebut menjadi satu paragraf ringkasan yang bernaratif dan mudah dipahami(===SUMMARY===)
-    WAJIB MENGIKUTI FORMAT INI PERSIS:
+    WAJIB MENGIKUTI FORMAT INI PERSIS, satu blok per jalur, berurutan sesuai nomor jalur:
     
+    ===PATH 1===
     ===SUMMARY===
-    [tuliskan deskripsi singkat tentang alur proses bisnis proses awal hingga akhir yang menggambarakan keseluruhan proses di suatu path buat jadi naratif yaa]
+    [deskripsi singkat alur proses jalur 1 dari awal hingga akhir secara naratif]
     
     ===DESKRIPSI===
-    [Tuliskan deskripsi skenario pengujian yang mengalir secara naratif. Fokus pada alur proses bisnis, bukan format teknis. Jangan sebutkan format [Lane] dalam deskripsi]
+    [deskripsi skenario pengujian jalur 1 yang mengalir secara naratif, tanpa format [Lane]]
     
     ===SCENARIO_STEP===
-    [Buat langkah-langkah yang numbered, naratif, dan menjelaskan tindakan yang dilakukan secara detail]
     1. [Penjelasan detail tindakan yang dilakukan pada langkah pertama]
     2. [Penjelasan detail tindakan yang dilakukan pada langkah kedua]
     dst...
     
     ===INPUT_DATA===
     {
-      "field1": "value1",
-      "field2": "value2"
+      "field1": "value1"
     }
     
     ===EXPECTED_RESULT===
@@ -220,15 +1088,101 @@
       "message": "Proses berhasil",
       "data": {}
     }
+    ===END_PATH===
+    
+    ===PATH 2===
+    [format yang sama untuk jalur 2, dan seterusnya]
+    ===END_PATH===
     
     %s
     
     PENTING: 
+    - Setiap blok hanya membahas jalurnya sendiri; jumlah langkah SCENARIO_STEP sama dengan jumlah langkah jalur tersebut
     - Deskripsi harus mengalir secara naratif tanpa format teknis
     - Scenario_step harus NARATIF dan menjelaskan tindakan yang dilakukan secara detail
-    - Jangan hanya menyebutkan nama aktivitas, tapi jelaskan apa yang dilakukan
     - Setiap step harus menjelaskan HOW dan WHAT, bukan hanya WHAT
-    """, context, readablePath, cleanPath, laneInstruction, stepExamples);
+    """, pathsLabels.size(), context, paths, laneInstruction(hasLanes), stepExamples(hasLanes));
+        }
+
+        /** Instruksi per field untuk prompt structured dan prompt perbaikan; %s = jumlah langkah. */
+        private static final Map<String, String> FIELD_INSTRUCTIONS = Map.of(
+                ScenarioSchema.SUMMARY, "satu paragraf ringkasan naratif alur proses jalur dari awal hingga akhir",
+                ScenarioSchema.DESCRIPTION, "deskripsi skenario pengujian yang mengalir secara naratif, fokus pada alur proses bisnis, tanpa format [Lane]",
+                ScenarioSchema.STEPS, "array kalimat sebanyak %s, satu per langkah jalur sesuai urutan, NARATIF dan DETAIL (HOW dan WHAT), tanpa nomor",
+                ScenarioSchema.INPUT_DATA, "contoh data input berupa objek JSON yang di-encode sebagai string, mis. \"{\\\"field1\\\": \\\"value1\\\"}\"",
+                ScenarioSchema.EXPECTED_RESULT, "objek JSON {\"status\", \"message\", \"data\"} yang di-encode sebagai string"
+        );
+
+        private String fieldInstructions(Collection<String> fields, String steps) {
+            StringBuilder instructions = new StringBuilder();
+            for (String field : fields) {
+                instructions.append("\n    - ").append(field).append(": ")
+                        .append(String.format(FIELD_INSTRUCTIONS.get(field), steps));
+            }
+            return instructions.toString();
+        }
+
+        // 🔹 Prompt structured output: instruksi sama dengan createOptimizedPrompt, format diatur response_format
+        private String createStructuredPrompt(String context, List<String> pathLabels, boolean hasLanes) {
+            return String.format("""
+    Anda adalah asisten QA yang membuat skenario pengujian untuk proses bisnis BPMN.
+    
+    KONTEKS PROSES: %s
+    
+    JALUR (%d langkah): %s%s
+    
+    Jawab dengan objek JSON berisi field:%s
+    %s
+    PENTING: 
+    - Deskripsi harus mengalir secara naratif tanpa format teknis
+    - Jangan hanya menyebutkan nama aktivitas, tapi jelaskan apa yang dilakukan
+    """, context, pathLabels.size(), String.join(" -> ", pathLabels), laneInstruction(hasLanes),
+                    fieldInstructions(ScenarioSchema.fieldNames(), "TEPAT " + pathLabels.size()), stepExamples(hasLanes));
+        }
+
+        // 🔹 Prompt batch structured: daftar jalur bernomor, satu item "paths" per jalur
+        private String createStructuredBatchPrompt(String context, List<List<String>> pathsLabels, boolean hasLanes) {
+            StringBuilder paths = new StringBuilder();
+            for (int i = 0; i < pathsLabels.size(); i++) {
+                List<String> labels = pathsLabels.get(i);
+                paths.append("\n    JALUR ").append(i + 1).append(" (").append(labels.size()).append(" langkah): ")
+                        .append(String.join(" -> ", labels));
+            }
+
+            return String.format("""
+    Anda adalah asisten QA yang membuat skenario pengujian untuk proses bisnis BPMN.
+    Buat skenario pengujian TERPISAH untuk SETIAP jalur di bawah ini (%d jalur).
+    
+    KONTEKS PROSES: %s
+    %s%s
+    
+    Jawab dengan objek JSON {"paths": [...]}: satu item per jalur, berurutan, dengan field "path" = nomor jalur dan:%s
+    %s
+    PENTING: 
+    - Setiap item hanya membahas jalurnya sendiri; jumlah scenario_steps sama dengan jumlah langkah jalur tersebut
+    - Deskripsi harus mengalir secara naratif tanpa format teknis
+    """, pathsLabels.size(), context, paths, laneInstruction(hasLanes),
+                    fieldInstructions(ScenarioSchema.fieldNames(), "jumlah langkah jalur tersebut"),
+                    stepExamples(hasLanes));
+        }
+
+        // 🔹 Prompt perbaikan: hanya field yang tidak valid beserta alasannya
+        private String createRepairPrompt(String context, List<String> pathLabels, Map<String, String> invalid) {
+            StringBuilder reasons = new StringBuilder();
+            invalid.forEach((field, reason) -> reasons.append("\n    - ").append(field).append(": ").append(reason));
+
+            return String.format("""
+    Anda adalah asisten QA yang membuat skenario pengujian untuk proses bisnis BPMN.
+    
+    KONTEKS PROSES: %s
+    
+    JALUR (%d langkah): %s
+    
+    Field berikut pada jawaban sebelumnya tidak valid:%s
+    
+    Tulis ulang HANYA field tersebut sebagai objek JSON:%s
+    """, context, pathLabels.size(), String.join(" -> ", pathLabels), reasons,
+                    fieldInstructions(invalid.keySet(), "TEPAT " + pathLabels.size()));
         }
 
         // 🔹 Method untuk memperbaiki format lane
@@ -393,200 +1347,57 @@
             return result;
         }
 
-        // 🔹 FIXED: Method untuk parsing result dengan perbaikan handling summary
-        private Map<String, String> parseImprovedResult(String gptOutput) {
-            Map<String, String> result = new HashMap<>();
+        private static final String DEFAULT_SUMMARY = "Pengujian alur proses bisnis end-to-end untuk memastikan setiap langkah berjalan sesuai prosedur yang telah ditetapkan.";
+        private static final String DEFAULT_DESCRIPTION = "Skenario pengujian untuk proses bisnis yang mencakup serangkaian langkah pengujian yang harus dilakukan secara berurutan untuk memastikan proses berjalan dengan benar.";
 
+        // 🔹 Parsing result: semua marker, isi section dan pembersihan dalam satu scan (ScenarioSectionParser)
+        private Map<String, String> parseImprovedResult(String gptOutput) {
             try {
-                // 🔹 Debug output untuk troubleshooting
-                System.out.println("🔍 GPT Output length: " + gptOutput.length());
-                System.out.println("🔍 GPT Output preview: " + gptOutput.substring(0, Math.min(500, gptOutput.length())));
-
-                // 🔹 Parsing dengan regex yang lebih robust
-                String summary = extractSection(gptOutput, "===SUMMARY===", "===DESKRIPSI===");
-                System.out.println("🔍 Extracted summary (method 1): '" + summary + "'");
-
-                if (summary == null || summary.isBlank()) {
-                    summary = extractSection(gptOutput, "===SUMMARY===", "===DESCRIPTION===");
-                    System.out.println("🔍 Extracted summary (method 2): '" + summary + "'");
-                }
-
-                if (summary == null || summary.isBlank()) {
-                    summary = extractSection(gptOutput, "===SUMMARY===", null);
-                    System.out.println("🔍 Extracted summary (method 3): '" + summary + "'");
-                }
-
-                String description = extractSection(gptOutput, "===DESKRIPSI===", "===SCENARIO_STEP===");
-                if (description == null || description.isBlank()) {
-                    description = extractSection(gptOutput, "===DESCRIPTION===", "===SCENARIO_STEP===");
-                }
-
-                String scenarioStep = extractSection(gptOutput, "===SCENARIO_STEP===", "===INPUT_DATA===");
-                String inputData = extractSection(gptOutput, "===INPUT_DATA===", "===EXPECTED_RESULT===");
-                String expectedResult = extractSection(gptOutput, "===EXPECTED_RESULT===", null);
-
-                // 🔹 Validasi dan clean up dengan method yang tepat
-                result.put("description", cleanDescription(description));
-                result.put("scenario_step", cleanScenarioSteps(scenarioStep));
-                result.put("input_data", cleanJson(inputData));
-                result.put("expected_result", cleanJson(expectedResult));
-                result.put("summary", cleanSummary(summary)); // ✅ FIXED: Gunakan cleanSummary bukan cleanJson
-
-                System.out.println("🔍 Final summary in result: '" + result.get("summary") + "'");
-
-                // 🔹 Validasi apakah semua field terisi
-                if (result.get("description").trim().isEmpty()) {
-                    result.put("description", "Skenario pengujian untuk proses bisnis yang mencakup serangkaian langkah pengujian yang harus dilakukan secara berurutan untuk memastikan proses berjalan dengan benar.");
-                }
-
-                if (result.get("summary").trim().isEmpty()) {
-                    result.put("summary", "Pengujian alur proses bisnis end-to-end untuk memastikan setiap langkah berjalan sesuai prosedur yang telah ditetapkan.");
-                }
-
-                System.out.println("✅ Parsing berhasil untuk response GPT");
-
-            } catch (Exception e) {
+                Map<String, String> sections = ScenarioSectionParser.parse(gptOutput);
+                System.out.println("🔍 GPT Output length: " + (gptOutput == null ? 0 : gptOutput.length())
+                        + ", section terisi: " + sections.entrySet().stream()
+                        .filter(e -> !e.getValue().isEmpty() && !e.getValue().equals("{}")).map(Map.Entry::getKey).toList());
+                return withDefaults(sections);
+            } catch (RuntimeException e) {
                 System.err.println("❌ Error parsing GPT response: " + e.getMessage());
                 e.printStackTrace();
                 return createErrorResponse("Gagal parsing response GPT: " + e.getMessage());
             }
+        }
 
+        /** Salinan yang bisa diubah (fixLaneFormat) dengan summary/description default jika kosong. */
+        private Map<String, String> withDefaults(Map<String, String> sections) {
+            Map<String, String> result = new HashMap<>();
+            sections.forEach((section, value) -> result.put(section, withDefault(section, value)));
             return result;
         }
 
-        // 🔹 NEW: Method khusus untuk membersihkan summary
-        private String cleanSummary(String summary) {
-            if (summary == null || summary.trim().isEmpty()) {
-                return "Pengujian alur proses bisnis end-to-end untuk memastikan setiap langkah berjalan sesuai prosedur yang telah ditetapkan.";
-            }
-
-            try {
-                // Remove markdown formatting dan section markers
-                String cleaned = summary.trim()
-                        .replaceAll("\\*\\*.*?\\*\\*", "") // Remove bold formatting
-                        .replaceAll("\\*(.+?)\\*", "$1") // Remove italic formatting
-                        .replaceAll("===.*?===", "") // Remove section markers
-                        .replaceAll("```.*?```", "") // Remove code blocks
-                        .replaceAll("\\n\\s*\\n", " ") // Replace multiple newlines with space
-                        .replaceAll("\\s+", " ") // Replace multiple spaces with single space
-                        .trim();
-
-                // Pastikan tidak kosong setelah cleaning
-                if (cleaned.isEmpty()) {
-                    return "Pengujian alur proses bisnis end-to-end untuk memastikan setiap langkah berjalan sesuai prosedur yang telah ditetapkan.";
-                }
-
-                return cleaned;
-            } catch (Exception e) {
-                System.err.println("❌ Error cleaning summary: " + e.getMessage());
-                return "Pengujian alur proses bisnis end-to-end untuk memastikan setiap langkah berjalan sesuai prosedur yang telah ditetapkan.";
-            }
+        private String withDefault(String section, String value) {
+            if (value.isBlank() && section.equals("summary")) return DEFAULT_SUMMARY;
+            if (value.isBlank() && section.equals("description")) return DEFAULT_DESCRIPTION;
+            return value;
         }
 
-        // 🔹 IMPROVED: Method extractSection dengan better error handling
-        private String extractSection(String text, String startMarker, String endMarker) {
-            try {
-                if (text == null || text.trim().isEmpty()) {
-                    return "";
-                }
-
-                int startIndex = text.indexOf(startMarker);
-                if (startIndex == -1) {
-                    System.out.println("🔍 Marker not found: " + startMarker);
-                    return "";
-                }
-
-                startIndex += startMarker.length();
-
-                int endIndex;
-                if (endMarker != null) {
-                    endIndex = text.indexOf(endMarker, startIndex);
-                    if (endIndex == -1) {
-                        endIndex = text.length();
-                    }
-                } else {
-                    endIndex = text.length();
-                }
-
-                String extracted = text.substring(startIndex, endIndex).trim();
-                System.out.println("🔍 Extracted section for " + startMarker + ": '" + extracted.substring(0, Math.min(100, extracted.length())) + "...'");
-
-                return extracted;
-            } catch (Exception e) {
-                System.err.println("❌ Error extracting section " + startMarker + ": " + e.getMessage());
-                return "";
-            }
+        // 🔹 Parse konten GPT + perbaiki format step (dipakai untuk response baru maupun cache hit)
+        private Map<String, String> toResult(String content, List<String> pathLabels, boolean hasLanes) {
+            return fixFormat(parseImprovedResult(content), pathLabels, hasLanes);
         }
 
-        private String cleanDescription(String description) {
-            if (description == null || description.trim().isEmpty()) return "";
-
-            // Remove any unwanted formatting and make it flow naturally
-            return description.trim()
-                    .replaceAll("\\*\\*.*?\\*\\*", "") // Remove bold formatting
-                    .replaceAll("\\n\\s*\\n", "\n") // Remove extra newlines
-                    .replaceAll("- Jika jalur:.*?→.*?\\n", "") // Remove technical format examples
-                    .replaceAll("===.*?===", "") // Remove any leaked section markers
-                    .replaceAll("```.*?```", "") // Remove code blocks
-                    .trim();
+        private Map<String, String> toResult(Map<String, String> sections, List<String> pathLabels, boolean hasLanes) {
+            return fixFormat(withDefaults(sections), pathLabels, hasLanes);
         }
 
-        private String cleanScenarioSteps(String steps) {
-            if (steps == null || steps.trim().isEmpty()) return "";
-
-            // 🔹 Pastikan format step yang konsisten
-            String[] lines = steps.split("\n");
-            StringBuilder cleanSteps = new StringBuilder();
-
-            int stepNumber = 1;
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-
-                // Remove any unwanted formatting
-                line = line.replaceAll("\\*\\*", ""); // Remove bold
-                line = line.replaceAll("===.*?===", ""); // Remove section markers
-                line = line.replaceAll("```.*?```", ""); // Remove code blocks
-
-                // 🔹 Standardize numbering
-                if (line.matches("^\\d+\\.\\s*.*")) {
-                    String content = line.replaceAll("^\\d+\\.\\s*", "").trim();
-                    if (!content.isEmpty()) {
-                        cleanSteps.append(stepNumber).append(". ").append(content).append("\n");
-                        stepNumber++;
-                    }
-                } else if (line.startsWith("-")) {
-                    String content = line.replaceAll("^-\\s*", "").trim();
-                    if (!content.isEmpty()) {
-                        cleanSteps.append(stepNumber).append(". ").append(content).append("\n");
-                        stepNumber++;
-                    }
-                } else if (!line.isEmpty()) {
-                    cleanSteps.append(stepNumber).append(". ").append(line).append("\n");
-                    stepNumber++;
-                }
+        private Map<String, String> fixFormat(Map<String, String> result, List<String> pathLabels, boolean hasLanes) {
+            if (hasLanes) {
+                return fixLaneFormat(result, pathLabels);
             }
-
-            return cleanSteps.toString().trim();
+            return fixNonLaneFormat(result, pathLabels);
         }
 
-        private String cleanJson(String json) {
-            if (json == null || json.trim().isEmpty()) return "{}";
-
-            try {
-                // 🔹 Remove markdown code blocks and unwanted formatting
-                json = json.replaceAll("```json", "").replaceAll("```", "").trim();
-                json = json.replaceAll("===.*?===", "").trim();
-
-                // 🔹 Basic validation - check if it looks like JSON
-                if (!json.startsWith("{") || !json.endsWith("}")) {
-                    return "{}";
-                }
-
-                return json;
-            } catch (Exception e) {
-                return "{}";
-            }
+        /** Token request untuk reservasi kuota TPM: prompt + system (tokenizer lokal) ditambah max_tokens. */
+        /** Reservasi TPM: system prompt (+ schema) milik request yang benar-benar dikirim, prompt, dan max_tokens. */
+        private long estimateTokens(ScenarioGenerator.Request request) {
+            return tokenizer.countChat(systemText(request), request.prompt()) + request.maxTokens();
         }
 
         private Map<String, String> createErrorResponse(String errorMessage) {
@@ -598,4 +1409,15 @@
             error.put("summary", "Terjadi kesalahan dalam generate skenario pengujian");
             return error;
         }
+
+        private Map<String, String> createTransportErrorResponse(String errorMessage) {
+            Map<String, String> error = createErrorResponse(errorMessage);
+            error.put(TRANSPORT_ERROR, "true");
+            return error;
+        }
+
+        /** true jika {@code result} adalah error transport (lihat {@link #TRANSPORT_ERROR}). */
+        public static boolean isTransportError(Map<String, String> result) {
+            return result != null && "true".equals(result.get(TRANSPORT_ERROR));
+        }
     }
\ No newline at end of file
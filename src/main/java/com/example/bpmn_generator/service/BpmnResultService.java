@@ -6,11 +6,30 @@ import com.example.bpmn_generator.repository.BpmnRepository;
 import com.example.bpmn_generator.repository.BpmnResultRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,160 +45,239 @@ public class BpmnResultService {
     @Autowired
     private ApiService apiService;
 
+    @Autowired
+    private LlmResilience llmResilience;
+
+    @Autowired
+    private LlmUsageTracker usageTracker;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /** Maksimum request LLM yang berjalan bersamaan (semua file berbagi pool yang sama). */
+    @Value("${llm.generation.concurrency:8}")
+    private int generationConcurrency;
+
+    /** Narasi prefix bersama antar path di-generate sekali (lihat PrefixTrie). */
+    @Value("${llm.prefix.enabled:true}")
+    private boolean prefixDedupEnabled;
+
+    @Value("${llm.prefix.min-shared-steps:3}")
+    private int prefixMinSharedSteps;
+
+    /** Generate ulang hanya path yang berubah; hasil path lain dipakai ulang. */
+    @Value("${llm.incremental.enabled:true}")
+    private boolean incrementalEnabled;
+
+    /** BpmnResult baru disimpan per chunk selama generate (lihat ResultCheckpoint). */
+    @Value("${llm.persist.chunk-size:20}")
+    private int persistChunkSize;
+
+    /** Chunk yang belum penuh tetap disimpan jika checkpoint terakhir sudah selama ini. */
+    @Value("${llm.persist.max-delay-ms:5000}")
+    private long persistMaxDelayMs;
+
+    /** Generate ulang path (streaming) menunggu slot request LLM user paling lama ini sebelum ditolak. */
+    @Value("${llm.quota.user.slot-wait-seconds:60}")
+    private long slotWaitSeconds;
+
+    private ExecutorService generationPool;
+
+    @PostConstruct
+    void initGenerationPool() {
+        AtomicInteger seq = new AtomicInteger();
+        generationPool = Executors.newFixedThreadPool(Math.max(1, generationConcurrency), r -> {
+            Thread t = new Thread(r, "llm-gen-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdownGenerationPool() {
+        generationPool.shutdownNow();
+    }
+
+    /**
+     * Callback progress generate (dipakai ScenarioJobService). onPathDone dipanggil dari thread
+     * generationPool begitu satu path selesai, tidak berurutan.
+     */
+    public interface GenerationListener {
+        GenerationListener NONE = new GenerationListener() {};
+
+        default void onStart(int totalPaths) {}
+
+        default void onPathDone(int index, boolean fallback) {}
+
+        /** Path tidak berubah sejak generate sebelumnya; hasil lama dipakai tanpa request LLM. */
+        default void onPathReused(int index) { onPathDone(index, false); }
+
+        /**
+         * true → path yang belum jalan dilewati dan generate berhenti. Hasil lama tetap tampil; path yang sudah
+         * selesai tetap tersimpan sebagai pending (tidak tampil) dan dipakai ulang oleh generate berikutnya.
+         */
+        default boolean isCancelled() { return false; }
+    }
+
     /**
      * Update method untuk generateScenario dengan penyimpanan ke BpmnResult
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void generateScenario(Long fileId) {
+        generateScenario(fileId, GenerationListener.NONE);
+    }
+
+    /**
+     * Generate scenario semua path dengan laporan progress ke {@code listener}.
+     * Return true jika hasil tersimpan; false jika file tidak ada, gagal, atau dibatalkan.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean generateScenario(Long fileId, GenerationListener listener) {
+        return generateScenario(fileId, listener, false);
+    }
+
+    /**
+     * Seperti {@link #generateScenario(Long, GenerationListener)}; kecuali {@code forceFull}, hasil path yang
+     * fingerprint-nya tidak berubah (konteks proses + langkah yang dikirim ke GPT) dipakai ulang tanpa memanggil LLM.
+     *
+     * Berjalan tanpa transaksi: koneksi DB tidak ditahan selama request LLM. Hasil baru disimpan per chunk
+     * begitu path selesai, penggantian hasil lama + update file di satu transaksi pendek di akhir.
+     *
+     * Kuota pemilik file (LlmUsageTracker): grup dikirim ke generationPool hanya jika user masih punya slot
+     * request bersamaan, dan generate berhenti (hasil yang sudah selesai tetap tersimpan) saat kuota token habis.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean generateScenario(Long fileId, GenerationListener listener, boolean forceFull) {
         Optional<BpmnFile> fileOpt = bpmnRepository.findById(fileId);
         if (fileOpt.isEmpty()) {
             System.err.println("❌ File dengan ID " + fileId + " tidak ditemukan");
-            return;
+            return false;
         }
 
         BpmnFile file = fileOpt.get();
+        String owner = bpmnRepository.findOwnerUsername(fileId).orElse(null);
         file.setGeneratingScenario(true);
         file.setScenarioReady(false);
         bpmnRepository.save(file);
 
+        ResultCheckpoint checkpoint = new ResultCheckpoint();
         try {
-            // Clear existing BPMN results for this file
+            usageTracker.checkTokenQuota(owner);
+            GenerationRun run = prepareRun(file);
+            List<String> allPaths = run.allPaths;
+            System.out.println("🔄 Memproses " + allPaths.size() + " paths (paralel, maks " + generationConcurrency + " request)...");
+            listener.onStart(allPaths.size());
+
+            // Path yang tidak berubah memakai hasil lama (termasuk checkpoint pending dari generate yang batal/gagal);
+            // hanya path baru/berubah yang dikirim ke LLM
             List<BpmnResult> existingResults = bpmnResultRepository.findByBpmnFileId(fileId);
-            if (!existingResults.isEmpty()) {
-                bpmnResultRepository.deleteAll(existingResults);
-                System.out.println("🗑️ Menghapus " + existingResults.size() + " BPMN results lama");
-            }
-
-            String context = getAutoProcessContext(file);
-            System.out.println("📋 Context: " + context);
-
-            // Build mappings (same as original code)
-            Map<String, String> idToLabel = new HashMap<>();
-            Map<String, String> idToTaskType = new HashMap<>();
-            Map<String, Map<String, Object>> taskDetails = new HashMap<>();
-
-            for (Map<String, Object> element : file.getElementsJson()) {
-                String id = (String) element.get("id");
-                String name = (String) element.getOrDefault("name", "");
-                String type = (String) element.getOrDefault("type", "");
-
-                if (id != null && !id.isBlank()) {
-                    String taskType = determineTaskType(type, element);
-                    idToTaskType.put(id, taskType);
-                    taskDetails.put(id, new HashMap<>(element));
-                    String baseLabel = (name != null && !name.isBlank()) ? name :
-                            (type != null && !type.isBlank()) ? type : id;
-                    String labelWithType = enhanceLabelWithTaskType(baseLabel, taskType);
-                    idToLabel.put(id, labelWithType);
-                    System.out.println("🏷️ Task: " + id + " -> " + labelWithType + " [" + taskType + "]");
+            PathGeneration[] byIndex = new PathGeneration[allPaths.size()];
+            if (incrementalEnabled && !forceFull) {
+                reuseUnchanged(run, existingResults, byIndex);
+            }
+            List<List<String>> toGenerate = new ArrayList<>(run.stepsPerPath);
+            for (int i = 0; i < byIndex.length; i++) {
+                if (byIndex[i] != null) {
+                    toGenerate.set(i, null);
+                    listener.onPathReused(i);
                 }
             }
 
-            // Build lane mapping
-            Map<String, String> taskToLane = new HashMap<>();
-            Set<String> uniqueLanes = new HashSet<>();
-
-            for (Map<String, Object> element : file.getElementsJson()) {
-                if (element.containsKey("lane")) {
-                    String nodeId = (String) element.get("id");
-                    String laneName = (String) element.get("lane");
-                    if (nodeId != null && laneName != null && !laneName.isBlank()) {
-                        taskToLane.put(nodeId, laneName);
-                        uniqueLanes.add(laneName);
-                    }
+            // Batch dulu (preamble + RPM dihemat per request); narasi prefix bersama hanya untuk path yang tetap
+            // dikirim sendiri (batch nonaktif, path terlalu panjang untuk batch, sisa grup)
+            List<List<Integer>> groups = new ArrayList<>();
+            for (List<Integer> group : planGroups(toGenerate)) {
+                if (group.size() > 1 || byIndex[group.get(0)] == null) groups.add(group);
+            }
+            if (prefixDedupEnabled) {
+                List<List<String>> singles = new ArrayList<>(Collections.nCopies(allPaths.size(), (List<String>) null));
+                for (List<Integer> group : groups) {
+                    if (group.size() == 1) singles.set(group.get(0), toGenerate.get(group.get(0)));
                 }
+                run.trie = new PrefixTrie(singles, prefixMinSharedSteps);
+                System.out.println("🌳 Prefix bersama: " + run.trie.sharedPathCount() + " paths, ±"
+                        + run.trie.savedSteps() + " langkah tidak dinarasikan ulang");
             }
+            System.out.println("📦 " + allPaths.size() + " paths → " + groups.size() + " grup request LLM");
 
-            List<String> lanes = new ArrayList<>(uniqueLanes);
-            boolean hasMultipleLanes = lanes.size() > 1;
-            System.out.println("🏊 Lanes detected: " + lanes.size() + " lanes -> " + lanes);
-
-            // Print task type summary
-            printTaskTypeSummary(idToTaskType);
-
-            List<String> allPaths = file.getPathsJson();
-            System.out.println("🔄 Memproses " + allPaths.size() + " paths...");
-
-            List<Map<String, Object>> scenarios = new ArrayList<>();
-            List<BpmnResult> bpmnResults = new ArrayList<>();
-
-            for (int i = 0; i < allPaths.size(); i++) {
-                String pathStr = allPaths.get(i);
-                System.out.println("🔄 Processing path " + (i + 1) + "/" + allPaths.size() + ": " + pathStr);
-
-                try {
-                    List<String> rawPath = Arrays.stream(pathStr.split("->"))
-                            .map(String::trim)
-                            .collect(Collectors.toList());
-
-                    List<String> stepsForGPT = buildStepsForGPTWithTaskTypes(rawPath, idToLabel,
-                            idToTaskType, taskToLane, hasMultipleLanes);
-
-                    System.out.println("📝 Steps for GPT: " + stepsForGPT);
-
-                    Map<String, String> gptResult = generateWithRetry(stepsForGPT, context, 3);
-                    String scenarioStep = gptResult.get("scenario_step");
-                    String validatedScenarioStep = validateAndFixScenarioStep(scenarioStep, stepsForGPT, hasMultipleLanes);
-                    gptResult.put("scenario_step", validatedScenarioStep);
-
-                    Map<String, Object> inputData = parseJsonSafely(gptResult.get("input_data"));
-                    Map<String, Object> expectedResult = parseJsonSafely(gptResult.get("expected_result"));
-
-                    String pathId = "P" + (i + 1);
-
-                    // Simpan ke BpmnResult
-                    BpmnResult bpmnResult = new BpmnResult();
-                    bpmnResult.setBpmnFile(file);
-                    bpmnResult.setPathId(pathId);
-                    bpmnResult.setSummary(gptResult.getOrDefault("summary", "Pengujian alur proses end-to-end"));
-                    bpmnResult.setDescription(gptResult.get("description")); // langsung dari "description"
-                    bpmnResult.setScenarioStep(validatedScenarioStep);
-                    bpmnResult.setTestData(objectMapper.writeValueAsString(inputData)); // inputData -> testData
-                    bpmnResult.setExpectedResult(objectMapper.writeValueAsString(expectedResult));
+            // Tiap grup di-generate di pool terbatas (kuota RPM/TPM dijaga LlmRateLimiter di ApiService);
+            // hasil ditaruh per index sehingga tetap urut P1..Pn
+            List<Future<List<PathGeneration>>> futures = new ArrayList<>(groups.size());
+            // slot user milik task begitu task mulai; task yang batal sebelum jalan dilepas di sini
+            List<AtomicBoolean> slotClaims = new ArrayList<>(groups.size());
+            try {
+                for (List<Integer> group : groups) {
+                    // slot user diambil di thread job, jadi grup user lain tetap bisa masuk antrean pool
+                    while (!usageTracker.tryAcquireSlot(owner, 1, TimeUnit.SECONDS)) {
+                        if (listener.isCancelled()) throw new CancellationException("Generate dibatalkan");
+                    }
+                    AtomicBoolean slotClaim = new AtomicBoolean();
+                    slotClaims.add(slotClaim);
+                    futures.add(generationPool.submit(() -> {
+                        if (!slotClaim.compareAndSet(false, true)) throw new CancellationException("Generate dibatalkan");
+                        try (LlmUsageTracker.Scope scope = usageTracker.attribute(fileId, owner)) {
+                            if (listener.isCancelled()) throw new CancellationException("Generate dibatalkan");
+                            usageTracker.checkTokenQuota(owner);
+                            List<PathGeneration> generated = (group.size() == 1)
+                                    ? List.of(generateSingle(run, group.get(0)))
+                                    : generateBatch(run, group);
+                            checkpoint.add(generated);
+                            for (int k = 0; k < group.size(); k++) {
+                                listener.onPathDone(group.get(k), generated.get(k).fallback);
+                            }
+                            return generated;
+                        } finally {
+                            usageTracker.releaseSlot(owner);
+                        }
+                    }));
+                }
 
-                    bpmnResults.add(bpmnResult);
-
-                    // Build scenario object untuk backward compatibility
-                    Map<String, Object> scenario = new LinkedHashMap<>();
-                    scenario.put("path_id", pathId);
-                    scenario.put("scenario_path", pathStr);
-                    scenario.put("rawPath", rawPath);
-                    scenario.put("task_types", getTaskTypesForPath(rawPath, idToTaskType));
-                    scenario.put("scenario_step", validatedScenarioStep);
-                    scenario.put("readable_description", gptResult.get("description")); // readable_description untuk backward compatibility
-                    scenario.put("input_data", inputData); // input_data untuk backward compatibility
-                    scenario.put("expected_result", expectedResult);
-                    scenario.put("summary", gptResult.getOrDefault("summary", "Pengujian alur proses end-to-end"));
-
-                    scenarios.add(scenario);
-                    System.out.println("✅ Path " + (i + 1) + " berhasil diproses");
-
-                } catch (Exception e) {
-                    System.err.println("❌ Error processing path " + (i + 1) + ": " + e.getMessage());
-
-                    // Create fallback for both scenarios and BPMN results
-                    Map<String, Object> fallbackScenario = createFallbackScenarioWithTaskTypes(pathStr, i + 1,
-                            idToLabel, idToTaskType, taskToLane, hasMultipleLanes);
-                    scenarios.add(fallbackScenario);
-
-                    // Create fallback BPMN result
-                    BpmnResult fallbackBpmnResult = new BpmnResult();
-                    fallbackBpmnResult.setBpmnFile(file);
-                    fallbackBpmnResult.setPathId("P" + (i + 1));
-                    fallbackBpmnResult.setSummary("Fallback scenario");
-                    fallbackBpmnResult.setDescription("Scenario dibuat otomatis karena error dalam generate");
-                    fallbackBpmnResult.setScenarioStep("1. Jalankan path: " + pathStr);
-                    fallbackBpmnResult.setTestData("{}");
-                    fallbackBpmnResult.setExpectedResult("{\"status\":\"success\"}");
-
-                    bpmnResults.add(fallbackBpmnResult);
+                for (int g = 0; g < groups.size(); g++) {
+                    List<PathGeneration> generated = futures.get(g).get();
+                    if (listener.isCancelled()) throw new CancellationException("Generate dibatalkan");
+                    for (int k = 0; k < generated.size(); k++) {
+                        byIndex[groups.get(g).get(k)] = generated.get(k);
+                    }
                 }
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                for (int g = 0; g < futures.size(); g++) {
+                    futures.get(g).cancel(true);
+                    if (slotClaims.get(g).compareAndSet(false, true)) usageTracker.releaseSlot(owner);
+                }
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                throw new RuntimeException("Generate scenario terhenti: " + e.getMessage(), e);
+            }
+
+            List<Map<String, Object>> scenarios = new ArrayList<>(byIndex.length);
+            List<BpmnResult> bpmnResults = new ArrayList<>(byIndex.length);
+            for (PathGeneration generated : byIndex) {
+                scenarios.add(generated.scenario);
+                bpmnResults.add(generated.result);
             }
 
-            // Batch save BPMN results
-            bpmnResultRepository.saveAll(bpmnResults);
-            System.out.println("💾 Menyimpan " + bpmnResults.size() + " BPMN results ke database");
+            checkpoint.close();
+
+            // Hasil lama baru dihapus setelah semua path selesai → batal/gagal tidak menghilangkan hasil sebelumnya.
+            // Baris yang dipakai ulang tetap (pathId-nya bisa bergeser); hasil fallback disimpan di sini.
+            // Hasil checkpoint (pending) dipromosikan di transaksi yang sama sehingga tiap pathId hanya punya satu baris
+            Set<BpmnResult> previous = Collections.newSetFromMap(new IdentityHashMap<>());
+            previous.addAll(existingResults);
+            Set<BpmnResult> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            kept.addAll(bpmnResults);
+            List<Long> obsoleteIds = existingResults.stream()
+                    .filter(r -> !kept.contains(r))
+                    .map(BpmnResult::getId)
+                    .toList();
+            bpmnResults.forEach(r -> r.setPending(false));
+            List<BpmnResult> remaining = bpmnResults.stream()
+                    .filter(r -> previous.contains(r) || !checkpoint.isPersisted(r))
+                    .toList();
+            List<Long> promotedIds = bpmnResults.stream()
+                    .filter(r -> !previous.contains(r) && checkpoint.isPersisted(r))
+                    .map(BpmnResult::getId)
+                    .toList();
 
             String summary = scenarios.stream()
                     .map(s -> (String) s.get("summary"))
@@ -192,20 +290,630 @@ public class BpmnResultService {
             file.setTestScenariosJson(scenarios);
             file.setGeneratingScenario(false);
             file.setScenarioReady(true);
-            bpmnRepository.save(file);
+
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!obsoleteIds.isEmpty()) bpmnResultRepository.deleteAllByIdInBatch(obsoleteIds);
+                if (!promotedIds.isEmpty()) bpmnResultRepository.promotePending(promotedIds);
+                bpmnResultRepository.saveAll(remaining);
+                bpmnRepository.save(file);
+            });
+            if (!obsoleteIds.isEmpty()) System.out.println("🗑️ Menghapus " + obsoleteIds.size() + " BPMN results lama");
+            System.out.println("💾 Menyimpan " + bpmnResults.size() + " BPMN results ke database ("
+                    + checkpoint.persistedCount() + " lewat checkpoint)");
 
             System.out.println("✅ Generate scenario selesai! Total: " + scenarios.size() + " scenarios, " + bpmnResults.size() + " BPMN results disimpan");
+            return true;
 
         } catch (Exception e) {
-            System.err.println("❌ Fatal error dalam generate scenario: " + e.getMessage());
-            e.printStackTrace();
+            // path yang sudah selesai tetap tersimpan sebagai pending → tidak tampil berdampingan dengan hasil lama,
+            // tapi generate berikutnya memakainya ulang (incremental)
+            checkpoint.close();
+
+            if (listener.isCancelled()) {
+                System.out.println("⏹️ Generate scenario file " + fileId + " dibatalkan");
+            } else {
+                System.err.println("❌ Fatal error dalam generate scenario: " + e.getMessage());
+                e.printStackTrace();
+            }
 
             file.setGeneratingScenario(false);
             file.setScenarioReady(false);
             bpmnRepository.save(file);
+            return false;
+        }
+    }
+
+    /**
+     * Generate ulang satu path dengan response LLM streaming: tiap section (summary, description, scenario_step,
+     * input_data, expected_result) dikirim ke {@code onSection} begitu selesai. Hasil akhir disimpan
+     * menggantikan path tersebut (BpmnResult + testScenariosJson) dan dikembalikan. Request LLM-nya memakai slot
+     * user yang sama dengan generate job, jadi tetap terhitung di batas request bersamaan per user.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Map<String, Object> regeneratePathStreaming(Long fileId, String pathId, BiConsumer<String, String> onSection) {
+        BpmnFile file = bpmnRepository.findById(fileId)
+                .orElseThrow(() -> new IllegalArgumentException("File dengan ID " + fileId + " tidak ditemukan"));
+        List<String> allPaths = file.getPathsJson();
+        int i = pathIndex(pathId);
+        if (allPaths == null || i < 0 || i >= allPaths.size()) {
+            throw new IllegalArgumentException("Path " + pathId + " tidak ada di file " + fileId);
+        }
+
+        String owner = bpmnRepository.findOwnerUsername(fileId).orElse(null);
+        usageTracker.checkTokenQuota(owner);
+
+        GenerationRun run = prepareRun(file);
+        List<String> steps = run.stepsPerPath.get(i);
+        System.out.println("📡 Streaming generate path " + pathId + ": " + allPaths.get(i));
+
+        PathGeneration generated;
+        if (steps == null) {
+            generated = fallbackPathGeneration(run, i);
+        } else {
+            acquireSlot(owner);
+            try (LlmUsageTracker.Scope scope = usageTracker.attribute(fileId, owner)) {
+                Map<String, String> gptResult = apiService.generate_bpmn_streaming(steps, run.context, onSection);
+                if (!isValidAiResult(gptResult)) {
+                    generated = regenerateInvalid(run, i, gptResult);
+                } else {
+                    try {
+                        generated = toPathGeneration(run, i, splitPath(allPaths.get(i)), steps, gptResult);
+                    } catch (Exception e) {
+                        System.err.println("❌ Error processing path " + (i + 1) + ": " + e.getMessage());
+                        generated = fallbackPathGeneration(run, i);
+                    }
+                }
+            } finally {
+                usageTracker.releaseSlot(owner);
+            }
+        }
+
+        PathGeneration result = generated;
+        List<Long> replacedIds = bpmnResultRepository.findByBpmnFileId(fileId).stream()
+                .filter(r -> result.result.getPathId().equals(r.getPathId()))
+                .map(BpmnResult::getId)
+                .toList();
+
+        List<Map<String, Object>> scenarios = (file.getTestScenariosJson() != null)
+                ? new ArrayList<>(file.getTestScenariosJson()) : new ArrayList<>();
+        boolean replaced = false;
+        for (int k = 0; k < scenarios.size(); k++) {
+            if (generated.result.getPathId().equals(scenarios.get(k).get("path_id"))) {
+                scenarios.set(k, generated.scenario);
+                replaced = true;
+                break;
+            }
+        }
+        if (!replaced) scenarios.add(generated.scenario);
+        file.setTestScenariosJson(scenarios);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!replacedIds.isEmpty()) bpmnResultRepository.deleteAllByIdInBatch(replacedIds);
+            bpmnResultRepository.save(result.result);
+            bpmnRepository.save(file);
+        });
+
+        System.out.println("✅ Path " + pathId + " selesai di-generate ulang" + (generated.fallback ? " (fallback)" : ""));
+        return generated.scenario;
+    }
+
+    /** Slot request LLM user untuk generate ulang path; ditolak jika slot user tetap penuh selama slotWaitSeconds. */
+    private void acquireSlot(String owner) {
+        try {
+            if (!usageTracker.tryAcquireSlot(owner, slotWaitSeconds, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Request LLM user " + owner + " sedang penuh, coba lagi nanti");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Dibatalkan saat menunggu slot request LLM", e);
+        }
+    }
+
+    /** "P3" → 2; -1 jika format tidak dikenal. */
+    private int pathIndex(String pathId) {
+        if (pathId == null || !pathId.matches("[Pp]\\d+")) return -1;
+        return Integer.parseInt(pathId.substring(1)) - 1;
+    }
+
+    /** Context, mapping label/tipe/lane dan steps GPT semua path file (dihitung sekali per generate). */
+    private GenerationRun prepareRun(BpmnFile file) {
+        String context = getAutoProcessContext(file);
+        System.out.println("📋 Context: " + context);
+
+        // Build mappings (same as original code)
+        Map<String, String> idToLabel = new HashMap<>();
+        Map<String, String> idToTaskType = new HashMap<>();
+        Map<String, Map<String, Object>> taskDetails = new HashMap<>();
+
+        for (Map<String, Object> element : file.getElementsJson()) {
+            String id = (String) element.get("id");
+            String name = (String) element.getOrDefault("name", "");
+            String type = (String) element.getOrDefault("type", "");
+
+            if (id != null && !id.isBlank()) {
+                String taskType = determineTaskType(type, element);
+                idToTaskType.put(id, taskType);
+                taskDetails.put(id, new HashMap<>(element));
+                String baseLabel = (name != null && !name.isBlank()) ? name :
+                        (type != null && !type.isBlank()) ? type : id;
+                String labelWithType = enhanceLabelWithTaskType(baseLabel, taskType);
+                idToLabel.put(id, labelWithType);
+                System.out.println("🏷️ Task: " + id + " -> " + labelWithType + " [" + taskType + "]");
+            }
+        }
+
+        // Build lane mapping
+        Map<String, String> taskToLane = new HashMap<>();
+        Set<String> uniqueLanes = new HashSet<>();
+
+        for (Map<String, Object> element : file.getElementsJson()) {
+            if (element.containsKey("lane")) {
+                String nodeId = (String) element.get("id");
+                String laneName = (String) element.get("lane");
+                if (nodeId != null && laneName != null && !laneName.isBlank()) {
+                    taskToLane.put(nodeId, laneName);
+                    uniqueLanes.add(laneName);
+                }
+            }
+        }
+
+        List<String> lanes = new ArrayList<>(uniqueLanes);
+        boolean hasMultipleLanes = lanes.size() > 1;
+        System.out.println("🏊 Lanes detected: " + lanes.size() + " lanes -> " + lanes);
+
+        // Print task type summary
+        printTaskTypeSummary(idToTaskType);
+
+        List<String> allPaths = file.getPathsJson();
+
+        // Steps GPT dihitung sekali di depan: dipakai untuk rencana batch dan oleh task generate
+        List<List<String>> stepsPerPath = new ArrayList<>(allPaths.size());
+        for (String pathStr : allPaths) {
+            List<String> steps = null;
+            try {
+                steps = buildStepsForGPTWithTaskTypes(splitPath(pathStr), idToLabel,
+                        idToTaskType, taskToLane, hasMultipleLanes);
+            } catch (Exception e) {
+                // dibiarkan null → path diproses sendiri dan jatuh ke fallback
+            }
+            stepsPerPath.add(steps);
+        }
+        return new GenerationRun(file, allPaths, stepsPerPath, context,
+                idToLabel, idToTaskType, taskToLane, hasMultipleLanes);
+    }
+
+    /**
+     * Menyimpan BpmnResult baru per chunk begitu path selesai (saveAll = satu transaksi pendek, JDBC batch insert),
+     * sehingga hasil yang sudah jadi tidak hilang jika generate gagal di tengah. Baris disimpan pending (tidak tampil)
+     * sampai generate sukses. Hasil fallback tidak di-checkpoint.
+     */
+    private final class ResultCheckpoint {
+        private final List<BpmnResult> pending = new ArrayList<>();
+        private final Set<BpmnResult> persisted = Collections.newSetFromMap(new IdentityHashMap<>());
+        private long lastFlush = System.currentTimeMillis();
+        private boolean closed;
+
+        void add(List<PathGeneration> generated) {
+            List<BpmnResult> chunk;
+            synchronized (this) {
+                if (closed) return;
+                for (PathGeneration g : generated) {
+                    if (g.fallback) continue;
+                    g.result.setPending(true);
+                    pending.add(g.result);
+                }
+                if (pending.size() < persistChunkSize && System.currentTimeMillis() - lastFlush < persistMaxDelayMs) return;
+                chunk = drain();
+            }
+            write(chunk);
+        }
+
+        /** Simpan sisa chunk; setelah ini add() diabaikan (task yang masih jalan setelah batal/gagal). */
+        void close() {
+            List<BpmnResult> chunk;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                chunk = drain();
+            }
+            write(chunk);
+        }
+
+        synchronized boolean isPersisted(BpmnResult result) {
+            return persisted.contains(result);
+        }
+
+        synchronized int persistedCount() {
+            return persisted.size();
+        }
+
+        private List<BpmnResult> drain() {
+            List<BpmnResult> chunk = new ArrayList<>(pending);
+            pending.clear();
+            lastFlush = System.currentTimeMillis();
+            return chunk;
+        }
+
+        private void write(List<BpmnResult> chunk) {
+            if (chunk.isEmpty()) return;
+            try {
+                bpmnResultRepository.saveAll(chunk);
+                synchronized (this) {
+                    persisted.addAll(chunk);
+                }
+                System.out.println("💾 Checkpoint: " + chunk.size() + " BPMN results disimpan");
+            } catch (Exception e) {
+                // belum tersimpan → ikut disimpan di transaksi akhir. Id sequence yang sudah diberikan persist tetap
+                // menempel setelah rollback; tanpa direset, saveAll akhir melakukan merge ke baris yang tidak ada
+                // (OptimisticLockException) dan seluruh transaksi akhir gagal
+                for (BpmnResult result : chunk) {
+                    result.setId(null);
+                    result.setPending(false);
+                }
+                System.err.println("⚠️ Checkpoint gagal (" + chunk.size() + " results): " + e.getMessage());
+            }
+        }
+    }
+
+    /** Hasil generate satu path: scenario (testScenariosJson) + entity BpmnResult yang belum disimpan. */
+    private static final class PathGeneration {
+        final Map<String, Object> scenario;
+        final BpmnResult result;
+        final boolean fallback;   // AI gagal → isi scenario dari fallback
+
+        PathGeneration(Map<String, Object> scenario, BpmnResult result, boolean fallback) {
+            this.scenario = scenario;
+            this.result = result;
+            this.fallback = fallback;
+        }
+    }
+
+    /** State satu kali generateScenario yang dibaca bersama oleh task di generationPool. */
+    private static final class GenerationRun {
+        final BpmnFile file;
+        final List<String> allPaths;
+        final List<List<String>> stepsPerPath;
+        final String context;
+        final Map<String, String> idToLabel;
+        final Map<String, String> idToTaskType;
+        final Map<String, String> taskToLane;
+        final boolean hasMultipleLanes;
+        final String[] pathKeys;       // hash urutan node id → identitas path yang stabil
+        final String[] fingerprints;   // hash konteks + steps GPT → input LLM path; null jika steps gagal dibuat
+        PrefixTrie trie;
+        // narasi per node prefix; thread pertama yang butuh node menghitungnya, yang lain menunggu
+        final Map<PrefixTrie.Node, CompletableFuture<List<String>>> narratives = new ConcurrentHashMap<>();
+
+        GenerationRun(BpmnFile file, List<String> allPaths, List<List<String>> stepsPerPath, String context,
+                      Map<String, String> idToLabel, Map<String, String> idToTaskType,
+                      Map<String, String> taskToLane, boolean hasMultipleLanes) {
+            this.file = file;
+            this.allPaths = allPaths;
+            this.stepsPerPath = stepsPerPath;
+            this.context = context;
+            this.idToLabel = idToLabel;
+            this.idToTaskType = idToTaskType;
+            this.taskToLane = taskToLane;
+            this.hasMultipleLanes = hasMultipleLanes;
+            this.pathKeys = new String[allPaths.size()];
+            this.fingerprints = new String[allPaths.size()];
+            for (int i = 0; i < allPaths.size(); i++) {
+                StringBuilder key = new StringBuilder();
+                for (String raw : allPaths.get(i).split("->")) key.append(raw.trim()).append('\n');
+                pathKeys[i] = sha256(key.toString());
+
+                // semua yang masuk prompt: konteks (nama file/proses) dan steps (label, tipe task, format lane)
+                List<String> steps = stepsPerPath.get(i);
+                if (steps == null) continue;
+                StringBuilder content = new StringBuilder(context).append('\n').append(key);
+                for (String step : steps) content.append('\t').append(step).append('\n');
+                fingerprints[i] = sha256(content.toString());
+            }
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 tidak tersedia", e);
         }
     }
 
+    /**
+     * Isi {@code byIndex} untuk path yang fingerprint-nya sama dengan BpmnResult lama. Hasil fallback
+     * tidak punya fingerprint sehingga selalu di-generate ulang.
+     */
+    private void reuseUnchanged(GenerationRun run, List<BpmnResult> existingResults, PathGeneration[] byIndex) {
+        Map<String, Deque<BpmnResult>> byFingerprint = new HashMap<>();
+        Set<String> oldKeys = new HashSet<>();
+        for (BpmnResult r : existingResults) {
+            if (r.getPathKey() != null) oldKeys.add(r.getPathKey());
+            if (r.getPathFingerprint() != null) {
+                byFingerprint.computeIfAbsent(r.getPathFingerprint(), k -> new ArrayDeque<>()).add(r);
+            }
+        }
+
+        int reused = 0, changed = 0, added = 0;
+        for (int i = 0; i < byIndex.length; i++) {
+            Deque<BpmnResult> candidates = byFingerprint.get(run.fingerprints[i]);
+            BpmnResult previous = (candidates != null) ? candidates.poll() : null;
+            if (previous != null) {
+                byIndex[i] = reusedPathGeneration(run, i, previous);
+                reused++;
+            } else if (oldKeys.contains(run.pathKeys[i])) {
+                changed++;
+            } else {
+                added++;
+            }
+        }
+        System.out.println("♻️ Incremental: " + reused + " paths dipakai ulang, " + changed + " berubah, " + added + " baru");
+    }
+
+    /** Scenario dibangun ulang dari BpmnResult lama; pathId mengikuti posisi path sekarang. */
+    private PathGeneration reusedPathGeneration(GenerationRun run, int i, BpmnResult previous) {
+        List<String> rawPath = splitPath(run.allPaths.get(i));
+        String pathId = "P" + (i + 1);
+        previous.setPathId(pathId);
+        previous.setPathKey(run.pathKeys[i]);
+
+        Map<String, Object> scenario = new LinkedHashMap<>();
+        scenario.put("path_id", pathId);
+        scenario.put("path_key", run.pathKeys[i]);
+        scenario.put("scenario_path", run.allPaths.get(i));
+        scenario.put("rawPath", rawPath);
+        scenario.put("task_types", getTaskTypesForPath(rawPath, run.idToTaskType));
+        scenario.put("scenario_step", previous.getScenarioStep());
+        scenario.put("readable_description", previous.getDescription());
+        scenario.put("input_data", parseJsonSafely(previous.getTestData()));
+        scenario.put("expected_result", parseJsonSafely(previous.getExpectedResult()));
+        scenario.put("summary", previous.getSummary());
+        return new PathGeneration(scenario, previous, false);
+    }
+
+    /** Satu path: lewat prefix bersama jika ada di trie, selain itu generate penuh. */
+    private PathGeneration generateSingle(GenerationRun run, int i) {
+        PrefixTrie.Node shared = (run.trie != null) ? run.trie.sharedPrefix(i) : null;
+        return (shared != null) ? generatePathWithPrefix(run, i, shared) : generatePath(run, i);
+    }
+
+    /**
+     * Generate satu path (dijalankan di generationPool). Tidak menyentuh database;
+     * error apa pun menghasilkan fallback scenario seperti sebelumnya.
+     */
+    private PathGeneration generatePath(GenerationRun run, int i) {
+        String pathStr = run.allPaths.get(i);
+        System.out.println("🔄 Processing path " + (i + 1) + "/" + run.allPaths.size() + ": " + pathStr);
+
+        try {
+            List<String> rawPath = splitPath(pathStr);
+            List<String> stepsForGPT = run.stepsPerPath.get(i);
+            if (stepsForGPT == null) {
+                stepsForGPT = buildStepsForGPTWithTaskTypes(rawPath, run.idToLabel,
+                        run.idToTaskType, run.taskToLane, run.hasMultipleLanes);
+            }
+
+            System.out.println("📝 Steps for GPT: " + stepsForGPT);
+
+            Map<String, String> gptResult = generateWithRetry(stepsForGPT, run.context, 3);
+            return toPathGeneration(run, i, rawPath, stepsForGPT, gptResult);
+
+        } catch (Exception e) {
+            System.err.println("❌ Error processing path " + (i + 1) + ": " + e.getMessage());
+            return fallbackPathGeneration(run, i);
+        }
+    }
+
+    /**
+     * Path dengan prefix bersama: narasi prefix diambil dari {@link #prefixNarrative}, model hanya menulis
+     * sisa langkah. Jika narasi/hasil tidak valid, jatuh ke {@link #generatePath} biasa.
+     */
+    private PathGeneration generatePathWithPrefix(GenerationRun run, int i, PrefixTrie.Node shared) {
+        List<String> steps = run.stepsPerPath.get(i);
+        List<String> prefixLines = prefixNarrative(run, shared);
+        if (prefixLines == null) return generatePath(run, i);
+
+        System.out.println("🔄 Processing path " + (i + 1) + "/" + run.allPaths.size() + " (prefix "
+                + prefixLines.size() + "/" + steps.size() + " langkah dipakai ulang)");
+        Map<String, String> gptResult = null;
+        try {
+            gptResult = apiService.generate_bpmn_with_prefix(steps, prefixLines, run.context);
+        } catch (Exception e) {
+            System.err.println("❌ Generate dengan prefix gagal: " + e.getMessage());
+        }
+        if (!isValidAiResult(gptResult)) return regenerateInvalid(run, i, gptResult);
+
+        try {
+            return toPathGeneration(run, i, splitPath(run.allPaths.get(i)), steps, gptResult);
+        } catch (Exception e) {
+            System.err.println("❌ Error processing path " + (i + 1) + ": " + e.getMessage());
+            return fallbackPathGeneration(run, i);
+        }
+    }
+
+    /**
+     * Hasil batch/prefix/stream yang tidak valid: gagal di transport (sudah di-retry LlmResilience) → langsung
+     * fallback tanpa request lagi; hasil rusak → {@link #generatePath} (ulang per path).
+     */
+    private PathGeneration regenerateInvalid(GenerationRun run, int i, Map<String, String> gptResult) {
+        if (!ApiService.isTransportError(gptResult)) return generatePath(run, i);
+        System.err.println("⚡ Path " + (i + 1) + " memakai fallback: " + gptResult.get("description"));
+        try {
+            List<String> steps = run.stepsPerPath.get(i);
+            return toPathGeneration(run, i, splitPath(run.allPaths.get(i)), steps,
+                    aiFallback(steps, gptResult.get("description")));
+        } catch (Exception e) {
+            System.err.println("❌ Error processing path " + (i + 1) + ": " + e.getMessage());
+            return fallbackPathGeneration(run, i);
+        }
+    }
+
+    /**
+     * Narasi langkah 1..depth untuk node prefix (memo per run). Dibangun dari narasi node naratif di atasnya
+     * + langkah tambahan; null jika gagal.
+     */
+    private List<String> prefixNarrative(GenerationRun run, PrefixTrie.Node node) {
+        CompletableFuture<List<String>> mine = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = run.narratives.putIfAbsent(node, mine);
+        if (existing != null) return existing.join();
+
+        List<String> lines = null;
+        try {
+            PrefixTrie.Node base = run.trie.narratedAncestor(node);
+            List<String> baseLines = (base != null) ? prefixNarrative(run, base) : null;
+            if (baseLines == null) baseLines = List.of();
+
+            List<String> delta = apiService.generate_step_narrative(run.trie.steps(node), baseLines, run.context);
+            if (delta != null) {
+                lines = new ArrayList<>(baseLines);
+                lines.addAll(delta);
+                lines = Collections.unmodifiableList(lines);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Narasi prefix gagal: " + e.getMessage());
+        } finally {
+            mine.complete(lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Generate beberapa path dalam satu request LLM (ApiService.generate_bpmn_batch).
+     * Path yang hasil batch-nya tidak valid diulang lewat {@link #regenerateInvalid} (fallback jika gagal di transport).
+     */
+    private List<PathGeneration> generateBatch(GenerationRun run, List<Integer> indexes) {
+        System.out.println("📦 Processing batch path " + (indexes.get(0) + 1) + ".." + (indexes.get(indexes.size() - 1) + 1)
+                + "/" + run.allPaths.size());
+        List<List<String>> batchSteps = new ArrayList<>(indexes.size());
+        for (int i : indexes) batchSteps.add(run.stepsPerPath.get(i));
+
+        List<Map<String, String>> gptResults = null;
+        try {
+            gptResults = apiService.generate_bpmn_batch(batchSteps, run.context);
+        } catch (Exception e) {
+            System.err.println("❌ Batch request gagal: " + e.getMessage());
+        }
+
+        List<PathGeneration> out = new ArrayList<>(indexes.size());
+        for (int k = 0; k < indexes.size(); k++) {
+            int i = indexes.get(k);
+            Map<String, String> gptResult = (gptResults != null) ? gptResults.get(k) : null;
+            if (!isValidAiResult(gptResult)) {
+                out.add(regenerateInvalid(run, i, gptResult));
+                continue;
+            }
+            try {
+                out.add(toPathGeneration(run, i, splitPath(run.allPaths.get(i)), batchSteps.get(k), gptResult));
+            } catch (Exception e) {
+                System.err.println("❌ Error processing path " + (i + 1) + ": " + e.getMessage());
+                out.add(fallbackPathGeneration(run, i));
+            }
+        }
+        return out;
+    }
+
+    /** Grup index path per request LLM: batch dari ApiService jika aktif, selain itu satu path per request. */
+    private List<List<Integer>> planGroups(List<List<String>> stepsPerPath) {
+        List<List<Integer>> groups = new ArrayList<>();
+        if (!apiService.isBatchEnabled()) {
+            for (int i = 0; i < stepsPerPath.size(); i++) groups.add(List.of(i));
+            return groups;
+        }
+
+        // path tanpa steps diproses sendiri; sisanya dibagi per run berurutan
+        List<Integer> run = new ArrayList<>();
+        for (int i = 0; i <= stepsPerPath.size(); i++) {
+            boolean end = i == stepsPerPath.size() || stepsPerPath.get(i) == null;
+            if (!end) {
+                run.add(i);
+                continue;
+            }
+            if (!run.isEmpty()) {
+                List<List<String>> runSteps = new ArrayList<>(run.size());
+                for (int r : run) runSteps.add(stepsPerPath.get(r));
+                for (List<Integer> batch : apiService.planBatches(runSteps)) {
+                    List<Integer> group = new ArrayList<>(batch.size());
+                    for (int b : batch) group.add(run.get(b));
+                    groups.add(group);
+                }
+                run = new ArrayList<>();
+            }
+            if (i < stepsPerPath.size()) groups.add(List.of(i));
+        }
+        return groups;
+    }
+
+    private List<String> splitPath(String pathStr) {
+        return Arrays.stream(pathStr.split("->"))
+                .map(String::trim)
+                .collect(Collectors.toList());
+    }
+
+    /** Hasil AI dari satu path → scenario + BpmnResult (step divalidasi ulang terhadap jalur). */
+    private PathGeneration toPathGeneration(GenerationRun run, int i, List<String> rawPath,
+                                            List<String> stepsForGPT, Map<String, String> gptResult) throws Exception {
+        BpmnFile file = run.file;
+        String pathStr = run.allPaths.get(i);
+        String validatedScenarioStep = validateAndFixScenarioStep(gptResult.get("scenario_step"), stepsForGPT, run.hasMultipleLanes);
+        gptResult.put("scenario_step", validatedScenarioStep);
+
+        Map<String, Object> inputData = parseJsonSafely(gptResult.get("input_data"));
+        Map<String, Object> expectedResult = parseJsonSafely(gptResult.get("expected_result"));
+
+        String pathId = "P" + (i + 1);
+
+        // Simpan ke BpmnResult
+        BpmnResult bpmnResult = new BpmnResult();
+        bpmnResult.setBpmnFile(file);
+        bpmnResult.setPathId(pathId);
+        bpmnResult.setPathKey(run.pathKeys[i]);
+        if (!gptResult.containsKey("fallback")) bpmnResult.setPathFingerprint(run.fingerprints[i]);
+        bpmnResult.setSummary(gptResult.getOrDefault("summary", "Pengujian alur proses end-to-end"));
+        bpmnResult.setDescription(gptResult.get("description")); // langsung dari "description"
+        bpmnResult.setScenarioStep(validatedScenarioStep);
+        bpmnResult.setTestData(objectMapper.writeValueAsString(inputData)); // inputData -> testData
+        bpmnResult.setExpectedResult(objectMapper.writeValueAsString(expectedResult));
+
+        // Build scenario object untuk backward compatibility
+        Map<String, Object> scenario = new LinkedHashMap<>();
+        scenario.put("path_id", pathId);
+        scenario.put("path_key", run.pathKeys[i]);
+        scenario.put("scenario_path", pathStr);
+        scenario.put("rawPath", rawPath);
+        scenario.put("task_types", getTaskTypesForPath(rawPath, run.idToTaskType));
+        scenario.put("scenario_step", validatedScenarioStep);
+        scenario.put("readable_description", gptResult.get("description")); // readable_description untuk backward compatibility
+        scenario.put("input_data", inputData); // input_data untuk backward compatibility
+        scenario.put("expected_result", expectedResult);
+        scenario.put("summary", gptResult.getOrDefault("summary", "Pengujian alur proses end-to-end"));
+
+        System.out.println("✅ Path " + (i + 1) + " berhasil diproses");
+        return new PathGeneration(scenario, bpmnResult, gptResult.containsKey("fallback"));
+    }
+
+    /** Fallback scenario + BpmnResult jika generate path gagal. */
+    private PathGeneration fallbackPathGeneration(GenerationRun run, int i) {
+        String pathStr = run.allPaths.get(i);
+        // Create fallback for both scenarios and BPMN results
+        Map<String, Object> fallbackScenario = createFallbackScenarioWithTaskTypes(pathStr, i + 1,
+                run.idToLabel, run.idToTaskType, run.taskToLane, run.hasMultipleLanes);
+
+        // Create fallback BPMN result
+        BpmnResult fallbackBpmnResult = new BpmnResult();
+        fallbackBpmnResult.setBpmnFile(run.file);
+        fallbackBpmnResult.setPathId("P" + (i + 1));
+        fallbackBpmnResult.setPathKey(run.pathKeys[i]);
+        fallbackScenario.put("path_key", run.pathKeys[i]);
+        fallbackBpmnResult.setSummary("Fallback scenario");
+        fallbackBpmnResult.setDescription("Scenario dibuat otomatis karena error dalam generate");
+        fallbackBpmnResult.setScenarioStep("1. Jalankan path: " + pathStr);
+        fallbackBpmnResult.setTestData("{}");
+        fallbackBpmnResult.setExpectedResult("{\"status\":\"success\"}");
+
+        return new PathGeneration(fallbackScenario, fallbackBpmnResult, true);
+    }
+
     /**
      * Menyimpan hasil BPMN baru
      */
@@ -306,7 +1014,7 @@ public class BpmnResultService {
      * Mengambil BPMN result berdasarkan path ID
      */
     public Optional<BpmnResult> getBpmnResultByPathId(Long fileId, String pathId) {
-        return bpmnResultRepository.findByBpmnFileIdAndPathId(fileId, pathId);
+        return bpmnResultRepository.findByBpmnFileIdAndPathIdAndPendingFalse(fileId, pathId);
     }
 
     /**
@@ -460,13 +1168,27 @@ public class BpmnResultService {
         return steps;
     }
 
+    /** Hasil AI terpakai: ada description dan bukan pesan error ApiService (diawali ❌). */
+    private boolean isValidAiResult(Map<String, String> result) {
+        return result != null && !result.isEmpty() &&
+                result.get("description") != null &&
+                !result.get("description").startsWith("❌");
+    }
+
     /**
-     * FIXED: Method untuk memanggil AI dengan retry logic
+     * Panggil AI dan ulang hanya jika hasilnya rusak (format/parse). Error transport sudah di-retry LlmResilience
+     * di dalam ApiService, jadi langsung fallback tanpa mengulang lagi.
      */
     private Map<String, String> generateWithRetry(List<String> stepsForGPT, String context, int retries) {
         Exception lastException = null;
 
         for (int attempt = 1; attempt <= retries; attempt++) {
+            // error HTTP sudah di-retry di LlmResilience; saat circuit breaker open langsung ke fallback
+            if (!llmResilience.isCallPermitted()) {
+                lastException = new IllegalStateException("LLM circuit breaker open");
+                System.err.println("⚡ LLM circuit breaker open, path langsung memakai fallback");
+                break;
+            }
             try {
                 System.out.println("🤖 Calling AI API (attempt " + attempt + "/" + retries + ")");
 
@@ -474,15 +1196,17 @@ public class BpmnResultService {
                 Map<String, String> result = apiService.generate_bpmn(stepsForGPT, context);
 
                 // Validasi hasil AI
-                if (result != null && !result.isEmpty() &&
-                        result.containsKey("description") &&
-                        !result.get("description").startsWith("❌")) {
+                if (isValidAiResult(result)) {
 
                     System.out.println("✅ AI API call successful on attempt " + attempt);
                     return result;
-                } else {
-                    throw new RuntimeException("AI returned invalid or error response");
                 }
+                if (ApiService.isTransportError(result)) {
+                    lastException = new IllegalStateException(result.get("description"));
+                    System.err.println("⚡ AI API gagal di transport (sudah di-retry), path langsung memakai fallback");
+                    break;
+                }
+                throw new RuntimeException("AI returned invalid or error response");
 
             } catch (Exception e) {
                 lastException = e;
@@ -490,7 +1214,7 @@ public class BpmnResultService {
 
                 if (attempt < retries) {
                     try {
-                        Thread.sleep(1000 * attempt); // Exponential backoff
+                        Thread.sleep(llmResilience.backoffMillis(attempt)); // exponential backoff + jitter
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
                         break;
@@ -501,13 +1225,18 @@ public class BpmnResultService {
 
         // Jika semua attempt gagal, return fallback response
         System.err.println("❌ All AI API attempts failed, using fallback response");
+        return aiFallback(stepsForGPT, lastException != null ? lastException.getMessage() : "Unknown error");
+    }
+
+    /** Hasil pengganti berformat hasil AI (langkah = label jalur), ditandai "fallback". */
+    private Map<String, String> aiFallback(List<String> stepsForGPT, String reason) {
         Map<String, String> fallback = new HashMap<>();
         fallback.put("summary", "Pengujian alur proses (fallback)");
-        fallback.put("description", "Skenario dibuat otomatis karena AI tidak tersedia: " +
-                (lastException != null ? lastException.getMessage() : "Unknown error"));
+        fallback.put("description", "Skenario dibuat otomatis karena AI tidak tersedia: " + reason);
         fallback.put("scenario_step", String.join("\n", stepsForGPT));
         fallback.put("input_data", "{\"test\": \"data\"}");
         fallback.put("expected_result", "{\"status\": \"success\"}");
+        fallback.put("fallback", "true");
         return fallback;
     }
 
@@ -63,24 +63,60 @@ public class BpmnService {
         return Paths.get(uploadDir).resolve(storedFileName);
     }
 
+    /** Satu analisis per request: scan elemen, lane, graf & path dipakai bersama. */
+    public ModelAnalysis analyze(BpmnModelInstance modelInstance) {
+        return new ModelAnalysis(modelInstance);
+    }
+
     public List<List<String>> findAllPaths(BpmnModelInstance modelInstance) {
         return dfsService.findAllPaths(modelInstance);
     }
 
+    public List<List<String>> findAllPaths(ModelAnalysis analysis) {
+        return dfsService.findAllPaths(analysis);
+    }
+
+    public DfsService.PathPage findPathsPage(BpmnModelInstance modelInstance, String cursor, int limit) {
+        return dfsService.findPathsPage(modelInstance, new DfsService.Options(), cursor, limit);
+    }
+
+    public DfsService.PathEstimate estimatePathCount(BpmnModelInstance modelInstance) {
+        return dfsService.estimatePathCount(modelInstance, new DfsService.Options());
+    }
+
+    public DfsService.PathEstimate estimatePathCount(ModelAnalysis analysis) {
+        return dfsService.estimatePathCount(analysis, new DfsService.Options());
+    }
+
+    /** Stream path sebagai label (nama node, fallback ke tipe elemen) langsung dari DFS. */
+    public void streamPathLabels(BpmnModelInstance modelInstance, java.util.function.Consumer<List<String>> sink) {
+        dfsService.streamAllPathLabels(modelInstance, new DfsService.Options(), node -> {
+            String name = node.getName();
+            return (name != null && !name.isBlank()) ? name : node.getElementType().getTypeName();
+        }, sink);
+    }
+
     public List<List<String>> PathsWithLane(BpmnModelInstance modelInstance) {
         return dfsService.findAllPathsWithActor(modelInstance);
     }
 
+    public List<List<String>> PathsWithLane(ModelAnalysis analysis) {
+        return dfsService.findAllPathsWithActor(analysis);
+    }
+
     public List<Map<String, Object>> generateTestScenarios(
             BpmnModelInstance modelInstance,
             Map<String, String> taskToLane
     ) {
-        List<List<String>> paths = findAllPaths(modelInstance);
+        return generateTestScenarios(analyze(modelInstance), taskToLane);
+    }
 
-        Map<String, FlowNode> nodeMap = new HashMap<>();
-        for (FlowNode node : modelInstance.getModelElementsByType(FlowNode.class)) {
-            nodeMap.put(node.getId(), node);
-        }
+    public List<Map<String, Object>> generateTestScenarios(
+            ModelAnalysis analysis,
+            Map<String, String> taskToLane
+    ) {
+        List<List<String>> paths = findAllPaths(analysis);
+        Map<String, FlowNode> nodeMap = analysis.nodeById();
 
         List<Map<String, Object>> scenarios = new ArrayList<>();
         boolean hasLanes = (taskToLane != null && !taskToLane.isEmpty());
@@ -139,20 +175,9 @@ public class BpmnService {
             String bpmnXml,
             com.example.bpmn_generator.entity.User owner
     ) throws IOException {
-        String originalFileName = file.getOriginalFilename();
-        String storedFileName = java.util.UUID.randomUUID() + "_" + originalFileName;
-
-        java.nio.file.Path uploadPath = java.nio.file.Paths.get(uploadDir);
-        if (!java.nio.file.Files.exists(uploadPath)) {
-            java.nio.file.Files.createDirectories(uploadPath);
-        }
-
-        java.nio.file.Path filePath = uploadPath.resolve(storedFileName);
-        java.nio.file.Files.copy(file.getInputStream(), filePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-
         BpmnFile bpmnFile = new BpmnFile();
-        bpmnFile.setOriginalFileName(originalFileName);
-        bpmnFile.setStoredFileName(storedFileName);
+        bpmnFile.setOriginalFileName(file.getOriginalFilename());
+        bpmnFile.setStoredFileName(storeUpload(file));
         bpmnFile.setUploadedAt(java.time.LocalDateTime.now());
         bpmnFile.setElementsJson(elementsJson);
         bpmnFile.setPathsJson(paths);
@@ -162,6 +187,46 @@ public class BpmnService {
         return bpmnRepository.save(bpmnFile);
     }
 
+    /**
+     * Upload versi baru model ke file yang sudah ada. BpmnResult lama tidak dihapus supaya generate
+     * berikutnya hanya memproses path yang berubah (lihat BpmnResultService incremental); file upload lama
+     * di disk dihapus setelah record menunjuk ke upload baru.
+     */
+    public BpmnFile replaceModel(
+            BpmnFile existing,
+            MultipartFile file,
+            List<Map<String, Object>> elementsJson,
+            List<String> paths,
+            List<Map<String, Object>> testScenarios,
+            String bpmnXml
+    ) throws IOException {
+        String previousStoredFileName = existing.getStoredFileName();
+        existing.setOriginalFileName(file.getOriginalFilename());
+        existing.setStoredFileName(storeUpload(file));
+        existing.setUploadedAt(java.time.LocalDateTime.now());
+        existing.setElementsJson(elementsJson);
+        existing.setPathsJson(paths);
+        existing.setTestScenariosJson(testScenarios);
+        existing.setBpmnXml(bpmnXml);
+        existing.setScenarioReady(false);
+        BpmnFile saved = bpmnRepository.save(existing);
+        deletePhysicalFileIfExists(previousStoredFileName);
+        return saved;
+    }
+
+    private String storeUpload(MultipartFile file) throws IOException {
+        String storedFileName = java.util.UUID.randomUUID() + "_" + file.getOriginalFilename();
+
+        java.nio.file.Path uploadPath = java.nio.file.Paths.get(uploadDir);
+        if (!java.nio.file.Files.exists(uploadPath)) {
+            java.nio.file.Files.createDirectories(uploadPath);
+        }
+
+        java.nio.file.Path filePath = uploadPath.resolve(storedFileName);
+        java.nio.file.Files.copy(file.getInputStream(), filePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        return storedFileName;
+    }
+
     public String toXml(BpmnModelInstance modelInstance) {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         Bpmn.writeModelToStream(outputStream, modelInstance);
@@ -191,11 +256,13 @@ public class BpmnService {
         return new ArrayList<>(actors);
     }
 
-    private Map<String, String> buildNodeToLaneMapping(BpmnModelInstance modelInstance) {
+    private Map<String, String> buildNodeToLaneMapping(ModelAnalysis analysis) {
+        if (analysis.nodeToLane != null) return analysis.nodeToLane;
+        BpmnModelInstance modelInstance = analysis.getModel();
         Map<String, String> nodeToLane = new HashMap<>();
 
         // PRIORITAS 1: Lane standar (getModelElementsByType - global)
-        for (Lane lane : modelInstance.getModelElementsByType(Lane.class)) {
+        for (Lane lane : analysis.lanes()) {
             String laneName = lane.getName();
             if (laneName == null || laneName.isBlank()) continue;
             String ln = laneName.trim();
@@ -207,7 +274,7 @@ public class BpmnService {
         }
 
         // PRIORITAS 1.5: Untuk setiap lane, cari SubProcess dan assign semua isinya
-        for (Lane lane : modelInstance.getModelElementsByType(Lane.class)) {
+        for (Lane lane : analysis.lanes()) {
             String laneName = lane.getName();
             if (laneName == null || laneName.isBlank()) continue;
             String ln = laneName.trim();
@@ -221,7 +288,7 @@ public class BpmnService {
         }
 
         // PRIORITAS 1.6: EventSubProcess - subprocess yang triggered by events
-        for (Process proc : modelInstance.getModelElementsByType(Process.class)) {
+        for (Process proc : analysis.processes()) {
             for (FlowElement element : proc.getFlowElements()) {
                 if (element instanceof SubProcess) {
                     SubProcess sp = (SubProcess) element;
@@ -237,7 +304,7 @@ public class BpmnService {
         }
 
         // PRIORITAS 2: Lane via Process → LaneSet → Lane (nested structure)
-        for (Process proc : modelInstance.getModelElementsByType(Process.class)) {
+        for (Process proc : analysis.processes()) {
             Collection<LaneSet> laneSets = proc.getLaneSets();
             if (laneSets != null && !laneSets.isEmpty()) {
                 for (LaneSet ls : laneSets) {
@@ -260,7 +327,7 @@ public class BpmnService {
         }
 
         // PRIORITAS 3: Participant (Pool) → Process → FlowElements
-        for (Participant participant : modelInstance.getModelElementsByType(Participant.class)) {
+        for (Participant participant : analysis.participants()) {
             String participantName = participant.getName();
             if (participantName == null || participantName.isBlank()) continue;
             String poolName = participantName.trim();
@@ -289,7 +356,7 @@ public class BpmnService {
 
         // PRIORITAS 4.5: Global scan untuk special subprocess types
         // Handle CallActivity, Transaction, EventSubProcess, AdHoc SubProcess
-        for (SubProcess sp : modelInstance.getModelElementsByType(SubProcess.class)) {
+        for (SubProcess sp : analysis.subProcesses()) {
             String spLane = nodeToLane.get(sp.getId());
             if (spLane == null || spLane.isBlank()) continue;
 
@@ -298,7 +365,7 @@ public class BpmnService {
         }
 
         // PRIORITAS 4.6: CallActivity - assign lane from parent context
-        for (CallActivity ca : modelInstance.getModelElementsByType(CallActivity.class)) {
+        for (CallActivity ca : analysis.callActivities()) {
             if (nodeToLane.containsKey(ca.getId())) {
                 // Already mapped, skip
                 continue;
@@ -312,16 +379,16 @@ public class BpmnService {
         }
 
         // PRIORITAS 4.7: Transaction - special type of subprocess
-        for (Transaction tx : modelInstance.getModelElementsByType(Transaction.class)) {
+        for (Transaction tx : analysis.transactions()) {
             String txLane = nodeToLane.get(tx.getId());
             if (txLane != null && !txLane.isBlank()) {
                 assignLaneToAllElements(tx.getFlowElements(), txLane, nodeToLane);
             }
         }
-        for (Process proc : modelInstance.getModelElementsByType(Process.class)) {
+        for (Process proc : analysis.processes()) {
             // Skip jika process ini sudah di-handle via participant
             boolean hasParticipant = false;
-            for (Participant p : modelInstance.getModelElementsByType(Participant.class)) {
+            for (Participant p : analysis.participants()) {
                 if (proc.equals(p.getProcess())) {
                     hasParticipant = true;
                     break;
@@ -338,12 +405,12 @@ public class BpmnService {
 
         // Debug log
         System.out.println("=== COMPREHENSIVE LANE MAPPING DEBUG ===");
-        System.out.println("Total Lanes (global): " + modelInstance.getModelElementsByType(Lane.class).size());
-        System.out.println("Total Participants: " + modelInstance.getModelElementsByType(Participant.class).size());
-        System.out.println("Total Processes: " + modelInstance.getModelElementsByType(Process.class).size());
-        System.out.println("Total SubProcesses: " + modelInstance.getModelElementsByType(SubProcess.class).size());
-        System.out.println("Total CallActivities: " + modelInstance.getModelElementsByType(CallActivity.class).size());
-        System.out.println("Total Transactions: " + modelInstance.getModelElementsByType(Transaction.class).size());
+        System.out.println("Total Lanes (global): " + analysis.lanes().size());
+        System.out.println("Total Participants: " + analysis.participants().size());
+        System.out.println("Total Processes: " + analysis.processes().size());
+        System.out.println("Total SubProcesses: " + analysis.subProcesses().size());
+        System.out.println("Total CallActivities: " + analysis.callActivities().size());
+        System.out.println("Total Transactions: " + analysis.transactions().size());
         System.out.println("Total mapped nodes: " + nodeToLane.size());
 
         if (!nodeToLane.isEmpty()) {
@@ -354,7 +421,7 @@ public class BpmnService {
         }
 
         // Analisis coverage
-        int totalFlowNodes = modelInstance.getModelElementsByType(FlowNode.class).size();
+        int totalFlowNodes = analysis.flowNodes().size();
         int mappedNodes = nodeToLane.size();
         double coverage = totalFlowNodes > 0 ? (mappedNodes * 100.0 / totalFlowNodes) : 0;
         System.out.println(String.format("\nCoverage: %d/%d nodes (%.1f%%)",
@@ -363,7 +430,7 @@ public class BpmnService {
         // Detail unmapped nodes
         if (coverage < 100) {
             System.out.println("\n⚠️ UNMAPPED NODES:");
-            for (FlowNode node : modelInstance.getModelElementsByType(FlowNode.class)) {
+            for (FlowNode node : analysis.flowNodes()) {
                 if (!nodeToLane.containsKey(node.getId())) {
                     String name = node.getName() != null ? node.getName() : node.getId();
                     String type = node.getElementType().getTypeName();
@@ -372,6 +439,7 @@ public class BpmnService {
             }
         }
 
+        analysis.nodeToLane = nodeToLane;
         return nodeToLane;
     }
 
@@ -467,19 +535,20 @@ public class BpmnService {
 
     public BpmnFile parseAndSaveFile(MultipartFile file) throws IOException {
         BpmnModelInstance modelInstance = Bpmn.readModelFromStream(file.getInputStream());
+        ModelAnalysis analysis = analyze(modelInstance);
 
-        dfsService.printTaskTypeAnalysis(modelInstance);
+        dfsService.printTaskTypeAnalysis(analysis);
 
-        List<List<String>> pathsWithActors = dfsService.findAllPathsWithActor(modelInstance);
+        List<List<String>> pathsWithActors = dfsService.findAllPathsWithActor(analysis);
         List<String> pathStrings = pathsWithActors.stream()
                 .map(p -> String.join(" -> ", p))
                 .collect(Collectors.toList());
 
-        Map<String, String> nodeToLane = buildNodeToLaneMapping(modelInstance);
+        Map<String, String> nodeToLane = buildNodeToLaneMapping(analysis);
+        Map<String, String> taskTypes = taskTypes(analysis);
 
         List<Map<String, Object>> elementsJson = new ArrayList<>();
-        Map<String, String> taskTypes = new HashMap<>();
-        for (FlowNode node : modelInstance.getModelElementsByType(FlowNode.class)) {
+        for (FlowNode node : analysis.flowNodes()) {
             Map<String, Object> el = new LinkedHashMap<>();
             el.put("id", node.getId());
             el.put("name", node.getName() != null ? node.getName() : "");
@@ -488,31 +557,45 @@ public class BpmnService {
             String laneName = nodeToLane.get(node.getId());
             if (laneName != null && !laneName.isBlank()) el.put("lane", laneName);
 
-            String taskType = determineTaskType(node, laneName);
-            el.put("task_type", taskType);
-
-            taskTypes.put(node.getId(), taskType);
+            el.put("task_type", taskTypes.get(node.getId()));
             elementsJson.add(el);
         }
 
         List<Map<String, Object>> scenarios = generateTestScenariosWithTaskTypes(
-                modelInstance, nodeToLane, taskTypes);
+                analysis, nodeToLane, taskTypes);
         // 🔑 ambil current user
         com.example.bpmn_generator.entity.User owner = getCurrentUser();
         return saveAndReturnEntity(file, elementsJson, pathStrings, scenarios, toXml(modelInstance), owner);
     }
 
+    /** node → HUMAN / SYSTEM berdasarkan lane hasil buildNodeToLaneMapping; di-cache di analysis. */
+    private Map<String, String> taskTypes(ModelAnalysis analysis) {
+        if (analysis.taskTypes == null) {
+            Map<String, String> nodeToLane = buildNodeToLaneMapping(analysis);
+            Map<String, String> taskTypes = new HashMap<>();
+            for (FlowNode node : analysis.flowNodes()) {
+                taskTypes.put(node.getId(), determineTaskType(node, nodeToLane.get(node.getId())));
+            }
+            analysis.taskTypes = taskTypes;
+        }
+        return analysis.taskTypes;
+    }
+
     public List<Map<String, Object>> generateTestScenariosWithTaskTypes(
             BpmnModelInstance modelInstance,
             Map<String, String> taskToLane,
             Map<String, String> taskTypes
     ) {
-        List<List<String>> paths = findAllPaths(modelInstance);
+        return generateTestScenariosWithTaskTypes(analyze(modelInstance), taskToLane, taskTypes);
+    }
 
-        Map<String, FlowNode> nodeMap = new HashMap<>();
-        for (FlowNode node : modelInstance.getModelElementsByType(FlowNode.class)) {
-            nodeMap.put(node.getId(), node);
-        }
+    public List<Map<String, Object>> generateTestScenariosWithTaskTypes(
+            ModelAnalysis analysis,
+            Map<String, String> taskToLane,
+            Map<String, String> taskTypes
+    ) {
+        List<List<String>> paths = findAllPaths(analysis);
+        Map<String, FlowNode> nodeMap = analysis.nodeById();
 
         List<Map<String, Object>> scenarios = new ArrayList<>();
         boolean hasLanes = (taskToLane != null && !taskToLane.isEmpty());
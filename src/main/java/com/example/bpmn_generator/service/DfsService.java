@@ -4,14 +4,30 @@ import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.*;
 import org.camunda.bpm.model.bpmn.instance.Process;
 import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class DfsService {
 
+    /** Worker ForkJoin untuk enumerasi path dengan Options default (1 = sekuensial). */
+    @Value("${dfs.parallelism:1}")
+    private int parallelism = 1;
+
     /* ===================== Options ===================== */
 
     public static final class Options {
@@ -36,6 +52,13 @@ public class DfsService {
         public int messageFanoutCap = 4;        // cap eksplorasi message flow per node
         public int revisitWindow = 25;          // larang revisit node yang muncul dalam W langkah terakhir
 
+        /** Mode paralel (ForkJoinPool): jumlah worker; 1 = sekuensial. Hanya untuk streamAllPaths/findAllPaths. */
+        public int parallelism = 1;
+        /** Split task di root start & fork XOR / event-exclusive selama kedalaman path < nilai ini. */
+        public int parallelSplitDepth = 16;
+        /** true = hasil paralel digabung berurutan (identik dgn sekuensial); false = emit langsung, urutan bebas. */
+        public boolean orderedMerge = true;
+
         public Options() {}
 
         public Options maxVisitsPerNode(int v){ this.maxVisitsPerNode = Math.max(1, v); return this; }
@@ -54,6 +77,11 @@ public class DfsService {
         public Options boundaryFanoutCap(int v){ this.boundaryFanoutCap = Math.max(1, v); return this; }
         public Options messageFanoutCap(int v){ this.messageFanoutCap = Math.max(1, v); return this; }
         public Options revisitWindow(int v){ this.revisitWindow = Math.max(1, v); return this; }
+
+        // setters paralel
+        public Options parallelism(int v){ this.parallelism = Math.max(1, v); return this; }
+        public Options parallelSplitDepth(int v){ this.parallelSplitDepth = Math.max(0, v); return this; }
+        public Options orderedMerge(boolean v){ this.orderedMerge = v; return this; }
     }
 
     /* ===================== Structures for annotated paths ===================== */
@@ -86,33 +114,185 @@ public class DfsService {
         }
     }
 
+    /** Satu halaman hasil enumerasi + cursor untuk melanjutkan (null = enumerasi selesai). */
+    public static final class PathPage {
+        public List<List<String>> paths;
+        public String nextCursor;
+        public long emitted;       // total path yang sudah diemit sampai halaman ini
+        public boolean timedOut;   // halaman dipotong timeLimitMillis; nextCursor tetap melanjutkan enumerasi
+        public PathPage(List<List<String>> paths, String nextCursor, long emitted, boolean timedOut) {
+            this.paths = paths;
+            this.nextCursor = nextCursor;
+            this.emitted = emitted;
+            this.timedOut = timedOut;
+        }
+    }
+
+    /** Hasil estimatePathCount: jumlah path tanpa enumerasi + seberapa bisa dipercaya angkanya. */
+    public static final class PathEstimate {
+        public long count;             // path yang akan diemit DFS tanpa batas maxPaths (saturasi di Long.MAX_VALUE)
+        public long expectedPaths;     // min(count, maxPaths) → perkiraan ukuran hasil findAllPaths
+        public boolean exceedsMaxPaths;
+        public boolean exact;
+        public String bound;           // "EXACT" | "LOWER" (loop dipotong) | "UPPER" (maxDepth diabaikan) | "APPROX"
+        public int longestPath;        // jumlah node pada path terpanjang (-1 = tidak ada path)
+        public int states;             // state (node × mode) yang terjangkau dari start
+        public int cyclicComponents;   // SCC berisi loop
+        public List<String> notes = new ArrayList<>();
+    }
+
     /* ===================== Public API ===================== */
 
     public List<List<String>> findAllPaths(BpmnModelInstance model) {
-        return findAllPaths(model, new Options());
+        return findAllPaths(model, defaultOptions());
+    }
+
+    /** Options default + parallelism dari konfigurasi (dfs.parallelism). */
+    public Options defaultOptions() {
+        return new Options().parallelism(parallelism);
     }
 
     public List<List<String>> findAllPaths(BpmnModelInstance model, Options opt) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        return findAllPaths(new ModelAnalysis(model), opt);
+    }
+
+    /** Path dengan Options default, di-cache di analysis (dipakai bersama scenario, actor path, dst). */
+    public List<List<String>> findAllPaths(ModelAnalysis analysis) {
+        if (analysis.paths == null) analysis.paths = findAllPaths(analysis, defaultOptions());
+        return analysis.paths;
+    }
+
+    public List<List<String>> findAllPaths(ModelAnalysis analysis, Options opt) {
         List<List<String>> out = new ArrayList<>(256);
-        streamAllPaths(model, opt, out::add);
+        streamAllPaths(analysis, opt, out::add);
         return out;
     }
 
     public void streamAllPaths(BpmnModelInstance model, Options opt, Consumer<List<String>> sink) {
         if (model == null) throw new IllegalArgumentException("modelInstance null");
+        streamAllPaths(new ModelAnalysis(model), opt, sink);
+    }
+
+    public void streamAllPaths(ModelAnalysis analysis, Options opt, Consumer<List<String>> sink) {
         final long deadline = System.nanoTime() + opt.timeLimitMillis * 1_000_000L;
 
-        Graph g = buildGraph(model, opt);
+        Graph g = graphOf(analysis, opt);
 
-        Deque<String> path = new ArrayDeque<>(128);
-        Set<String> visitedDepthKey = new HashSet<>(2048);
-        Map<String, Integer> visitCount = new HashMap<>(1024);
+        VisitState vs = new VisitState(g.size, 128);
 
-        Counter counter = new Counter();
-        for (StartEvent s : g.rootStarts) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsRoot(g, s.getId(), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        if (opt.parallelism > 1) {
+            streamParallel(g, vs, sink, deadline, opt);
+            return;
         }
+
+        drain(new PathWalker(g, g.rootStarts, vs, new Counter(null), deadline, opt, sink), sink);
+    }
+
+    /**
+     * Enumerasi lazy & resumable: path dihitung satu per satu saat {@code next()} dipanggil,
+     * state DFS disimpan di stack eksplisit sehingga bisa dilanjutkan kapan saja.
+     * Selalu sekuensial (Options.parallelism diabaikan).
+     */
+    public Iterator<List<String>> iteratePaths(BpmnModelInstance model, Options opt) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        final long deadline = System.nanoTime() + opt.timeLimitMillis * 1_000_000L;
+
+        Graph g = buildGraph(new ModelAnalysis(model), opt);
+        PathWalker walker = new PathWalker(g, g.rootStarts, new VisitState(g.size, 128), new Counter(null), deadline, opt, null);
+
+        return new Iterator<>() {
+            private List<String> lookahead;
+
+            @Override
+            public boolean hasNext() {
+                if (lookahead == null) lookahead = walker.next();
+                return lookahead != null;
+            }
+
+            @Override
+            public List<String> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                List<String> p = lookahead;
+                lookahead = null;
+                return p;
+            }
+        };
+    }
+
+    /**
+     * Seperti streamAllPaths (sekuensial), tapi node langsung diemit sebagai label.
+     * Label dihitung sekali per node ke array index → label, jadi tidak ada lookup per langkah.
+     */
+    public void streamAllPathLabels(BpmnModelInstance model, Options opt,
+                                    Function<FlowNode, String> labeler, Consumer<List<String>> sink) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        final long deadline = System.nanoTime() + opt.timeLimitMillis * 1_000_000L;
+
+        Graph g = buildGraph(new ModelAnalysis(model), opt);
+        String[] labels = new String[g.size];
+        for (int v = 0; v < g.size; v++) labels[v] = labeler.apply(g.nodes[v]);
+
+        PathWalker walker = new PathWalker(g, g.rootStarts, new VisitState(g.size, 128), new Counter(null), deadline, opt, null);
+        walker.names = labels;
+        drain(walker, sink);
+    }
+
+    private static void drain(PathWalker walker, Consumer<List<String>> sink) {
+        for (List<String> p = walker.next(); p != null; p = walker.next()) sink.accept(p);
+    }
+
+    /**
+     * Enumerasi per halaman. {@code cursor} = null untuk halaman pertama; selanjutnya pakai
+     * {@link PathPage#nextCursor}. Cursor menyimpan frontier DFS (posisi tiap frame stack),
+     * sehingga halaman berikutnya lanjut dari titik terakhir tanpa mengulang enumerasi.
+     * timeLimitMillis berlaku per halaman: halaman yang terpotong deadline tetap mengembalikan cursor (frontier
+     * belum habis), hanya walker yang habis / maxPaths yang menutup enumerasi. maxPaths berlaku total lintas halaman.
+     */
+    public PathPage findPathsPage(BpmnModelInstance model, Options opt, String cursor, int limit) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        if (limit <= 0) throw new IllegalArgumentException("limit harus > 0");
+        final long deadline = System.nanoTime() + opt.timeLimitMillis * 1_000_000L;
+
+        Graph g = buildGraph(new ModelAnalysis(model), opt);
+        int fingerprint = fingerprint(g, opt);
+        Counter counter = new Counter(null);
+        PathWalker walker = new PathWalker(g, g.rootStarts, new VisitState(g.size, 128), counter, deadline, opt, null);
+        if (cursor != null && !cursor.isBlank()) walker.restore(cursor, fingerprint);
+
+        List<List<String>> page = new ArrayList<>(Math.min(limit, 1024));
+        List<String> p = null;
+        while (page.size() < limit && (p = walker.next()) != null) page.add(p);
+
+        // halaman tidak penuh / walker habis → tidak ada lanjutan; berhenti karena deadline → lanjut dari frontier
+        boolean timedOut = walker.stoppedByDeadline();
+        boolean done = !timedOut && ((p == null) || walker.isFinished());
+        return new PathPage(page, done ? null : walker.snapshot(fingerprint), counter.paths, timedOut);
+    }
+
+    /** Sidik model + opsi yang memengaruhi urutan DFS; cursor hanya valid untuk kombinasi yang sama. */
+    private static int fingerprint(Graph g, Options opt) {
+        int h = Arrays.hashCode(g.ids);
+        h = 31 * h + Arrays.hashCode(g.outAdj);
+        h = 31 * h + Objects.hash(opt.maxVisitsPerNode, opt.maxPaths, opt.includeBoundary, opt.includeMessageFlow,
+                opt.strictGatewaySemantics, opt.inclusiveConservativeJoin, opt.inclusiveMaxSubsets,
+                opt.eventParallelFanoutCap, opt.maxDepth, opt.genericFanoutCap, opt.boundaryFanoutCap,
+                opt.messageFanoutCap, opt.revisitWindow);
+        return h;
+    }
+
+    /**
+     * Estimasi jumlah path tanpa enumerasi (DP atas graf terkondensasi), untuk memilih cap / paging
+     * sebelum enumerasi atau generate LLM. maxPaths & timeLimitMillis tidak membatasi hitungan;
+     * {@link PathEstimate#expectedPaths} sudah memperhitungkan maxPaths.
+     */
+    public PathEstimate estimatePathCount(BpmnModelInstance model, Options opt) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        return estimatePathCount(new ModelAnalysis(model), opt);
+    }
+
+    public PathEstimate estimatePathCount(ModelAnalysis analysis, Options opt) {
+        return new PathEstimator(graphOf(analysis, opt), opt).run();
     }
 
     /** ====== NEW: annotated variants ====== */
@@ -131,29 +311,33 @@ public class DfsService {
         if (model == null) throw new IllegalArgumentException("modelInstance null");
         final long deadline = System.nanoTime() + opt.timeLimitMillis * 1_000_000L;
 
-        Graph g = buildGraph(model, opt);
+        Graph g = buildGraph(new ModelAnalysis(model), opt);
 
-        Deque<String> path = new ArrayDeque<>(128);
-        Set<String> visitedDepthKey = new HashSet<>(2048);
-        Map<String, Integer> visitCount = new HashMap<>(1024);
+        VisitState vs = new VisitState(g.size, 128);
         List<Group> groups = new ArrayList<>();
 
-        Counter counter = new Counter();
-        for (StartEvent s : g.rootStarts) {
+        Counter counter = new Counter(null);
+        for (int s : g.rootStarts) {
             if (overBudget(counter, deadline, opt)) break;
-            dfsRootAnn(g, s.getId(), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            dfsRootAnn(g, s, vs, groups, sink, counter, deadline, opt);
         }
     }
 
     public List<List<String>> findAllPathsWithActor(BpmnModelInstance model) {
-        List<List<String>> raw = findAllPaths(model);
-        Map<String, String> nodeToLane = mapNodeToLane(model);
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        return findAllPathsWithActor(new ModelAnalysis(model));
+    }
+
+    public List<List<String>> findAllPathsWithActor(ModelAnalysis analysis) {
+        List<List<String>> raw = findAllPaths(analysis);
+        Map<String, String> nodeToLane = mapNodeToLane(analysis);
+        Map<String, FlowNode> nodeById = analysis.nodeById();
 
         List<List<String>> out = new ArrayList<>(raw.size());
         for (List<String> p : raw) {
             List<String> labeled = new ArrayList<>(p.size());
             for (String id : p) {
-                FlowNode n = (FlowNode) model.getModelElementById(id);
+                FlowNode n = nodeById.get(id);
                 if (n == null) continue;
                 String lane = nodeToLane.get(id);
                 String actor = determineActor(n, lane);
@@ -166,659 +350,1092 @@ public class DfsService {
         return out;
     }
 
-    /* ===================== DFS (root) — plain ===================== */
+    /* ===================== DFS (plain) — explicit stack ===================== */
+
+    private static final int MODE_ROOT = 0;
+    private static final int MODE_INSIDE = 1;
+    private static final byte CURSOR_VERSION = 1;
+
+    /**
+     * Mesin DFS plain dengan stack eksplisit (pengganti dfsRoot / dfsInsideSP / go* rekursif).
+     * Tiap Frame = satu node yang sedang dikunjungi (atau satu fork AND/OR) beserta antrean
+     * "panggilan anak" berupa rentang CSR. Frame di-pool per kedalaman dan dipakai ulang.
+     * next() berhenti tiap kali satu path diemit → enumerasi bisa dijeda & dilanjutkan.
+     */
+    private final class PathWalker {
+        private final Graph g;
+        private final Options opt;
+        private final Counter counter;
+        private final long deadline;
+        /** Sink untuk task paralel saat fork XOR dipecah (null bila sekuensial). */
+        private final Consumer<List<String>> splitSink;
+
+        private Frame[] frames = new Frame[64];
+        private int depth;
+        private boolean finished;
+        /** Walker berhenti karena deadline (frontier masih utuh), bukan karena habis / maxPaths. */
+        private boolean deadlineHit;
+        /** Sudah melangkah minimal sekali → deadline yang sangat kecil tetap membuat tiap halaman maju. */
+        private boolean progressed;
+        /** Nama yang diemit per node (default: id node). */
+        String[] names;
+
+        PathWalker(Graph g, int[] starts, VisitState vs, Counter counter, long deadline, Options opt,
+                   Consumer<List<String>> splitSink) {
+            this.g = g;
+            this.opt = opt;
+            this.counter = counter;
+            this.deadline = deadline;
+            this.splitSink = splitSink;
+            this.names = g.ids;
+            push(Frame.SEED, vs).addRange(starts, 0, starts.length, MODE_ROOT, -1, vs);
+        }
+
+        /** Path berikutnya, atau null bila enumerasi selesai / budget habis. */
+        List<String> next() {
+            while (!finished && depth > 0) {
+                Frame f = frames[depth - 1];
+                if (f.rangeIdx < f.rangeCount) {
+                    int r = f.rangeIdx;
+                    if (f.pos >= f.rangeTo[r]) {
+                        if (++f.rangeIdx < f.rangeCount) f.pos = f.rangeFrom[f.rangeIdx];
+                        continue;
+                    }
+                    // budget dicek sebelum f.pos++ → frontier tetap bisa dilanjutkan lewat cursor
+                    if (stopForBudget()) break;
+                    int target = f.rangeAdj[r][f.pos++];
+                    List<String> emitted = visit(target, f.rangeMode[r], f.rangeSp[r], f.rangeVs[r]);
+                    if (emitted != null) return emitted;
+                    continue;
+                }
+                if (f.type == Frame.FORK && hasNextSelection(f)) {
+                    if (stopForBudget()) break;
+                    prepareSelection(f);
+                    continue;
+                }
+                pop();
+            }
+            finished = true;
+            return null;
+        }
 
-    private void dfsRoot(
-            Graph g, String currentId,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-            Consumer<List<String>> sink, Counter counter, long deadline, Options opt
-    ) {
-        if (currentId == null || overBudget(counter, deadline, opt)) return;
-        if (!enterNode(currentId, path, visitedDepthKey, visitCount, opt)) return;
+        private List<String> visit(int cur, int mode, int parentSp, VisitState vs) {
+            if (!enterNode(cur, vs, opt)) return null;
 
-        FlowNode cur = g.nodeById.get(currentId);
+            int kind = g.kind[cur];
+            int gw = gatewayType(kind);
+            boolean inside = (mode == MODE_INSIDE);
 
-        // EndEvent (root)
-        if (cur instanceof EndEvent && !g.insideSubprocess.contains(currentId)) {
-            sink.accept(new ArrayList<>(path));
-            counter.paths++;
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
-            return;
+            // EndEvent (root)
+            if (!inside && (kind & K_END) != 0 && (kind & K_INSIDE_SP) == 0) {
+                List<String> path = counter.tryEmit(opt) ? vs.toNames(names) : null;
+                leaveNode(vs);
+                return path;
+            }
+
+            Frame f = push(Frame.NODE, vs);
+
+            // EndEvent milik SubProcess induk → lanjut outgoing & message SubProcess di level root
+            if (inside && (kind & K_END) != 0 && g.parentSp[cur] == parentSp) {
+                f.addRange(g.outAdj, g.outStart[parentSp], g.outStart[parentSp + 1], MODE_ROOT, -1, vs);
+                if (opt.includeMessageFlow) {
+                    f.addRange(g.messageAdj, g.messageStart[parentSp], g.messageStart[parentSp + 1], MODE_ROOT, -1, vs);
+                }
+                return null;
+            }
+
+            // Event Sub-Process: skip aman (jangan expand, teruskan alur keluar)
+            if ((kind & K_EVENT_SP) != 0) {
+                addOutgoing(f, cur, mode, parentSp, vs);
+                if (opt.includeMessageFlow) addMessage(f, cur, vs);
+                return null;
+            }
+
+            // SubProcess
+            if ((kind & K_SUBPROCESS) != 0) {
+                int from = g.spStartStart[cur], to = g.spStartStart[cur + 1];
+                if (from < to) {
+                    f.addRange(g.spStartAdj, from, to, MODE_INSIDE, cur, vs);
+                } else {
+                    addOutgoing(f, cur, mode, parentSp, vs);
+                    if (inside && opt.includeBoundary) addBoundary(f, cur, mode, parentSp, vs);
+                    if (opt.includeMessageFlow) addMessage(f, cur, vs);
+                }
+                return null;
+            }
+
+            // Inclusive / Parallel Gateway
+            if ((gw == GW_INCLUSIVE || gw == GW_PARALLEL) && opt.strictGatewaySemantics) {
+                if (g.outDegree(cur) > 1) {
+                    GatewayType type = (gw == GW_PARALLEL) ? GatewayType.PARALLEL : GatewayType.INCLUSIVE;
+                    startFork(cur, type, g.outgoingOf(cur, Integer.MAX_VALUE), vs);
+                } else {
+                    addOutgoing(f, cur, mode, parentSp, vs);
+                }
+                return null;
+            }
+
+            // Event-Based Gateway (Parallel): terapkan eventParallelFanoutCap
+            if (gw == GW_EVENT_PARALLEL) {
+                startFork(cur, GatewayType.PARALLEL, g.outgoingOf(cur, opt.eventParallelFanoutCap), vs);
+                return null;
+            }
+
+            // Exclusive Event / XOR — di level root boleh dipecah ke task paralel
+            if (gw == GW_EVENT_EXCLUSIVE || isExclusiveFork(g, cur)) {
+                if (!inside && counter.canSplit(vs.size)) {
+                    int from = g.outStart[cur];
+                    int limit = Math.min(g.outStart[cur + 1], from + opt.genericFanoutCap);
+                    forkBranches(g, Arrays.copyOfRange(g.outAdj, from, limit), vs, splitSink, counter, deadline, opt);
+                } else {
+                    addOutgoing(f, cur, mode, parentSp, vs);
+                }
+                return null;
+            }
+
+            // Node biasa
+            addOutgoing(f, cur, mode, parentSp, vs);
+            if (opt.includeBoundary) addBoundary(f, cur, mode, parentSp, vs);
+            if (opt.includeMessageFlow) addMessage(f, cur, vs);
+            return null;
         }
 
-        // Event Sub-Process: skip aman (jangan expand, teruskan alur keluar)
-        if (cur instanceof SubProcess && g.eventSubProcesses.contains(cur.getId())) {
-            goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            if (opt.includeMessageFlow) goMessage(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
-            return;
+        private void addOutgoing(Frame f, int node, int mode, int parentSp, VisitState vs) {
+            int from = g.outStart[node];
+            f.addRange(g.outAdj, from, Math.min(g.outStart[node + 1], from + opt.genericFanoutCap), mode, parentSp, vs);
         }
 
-        // SubProcess
-        if (cur instanceof SubProcess) {
-            List<String> subStarts = g.subprocessStarts.get(currentId);
-            if (subStarts != null && !subStarts.isEmpty()) {
-                for (String s : subStarts) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsInsideSP(g, s, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                }
-            } else {
-                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                if (opt.includeMessageFlow) goMessage(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        private void addBoundary(Frame f, int node, int mode, int parentSp, VisitState vs) {
+            int from = g.boundaryStart[node];
+            f.addRange(g.boundaryAdj, from, Math.min(g.boundaryStart[node + 1], from + opt.boundaryFanoutCap), mode, parentSp, vs);
+        }
+
+        /** Message flow selalu lanjut di level root (juga dari dalam SubProcess). */
+        private void addMessage(Frame f, int node, VisitState vs) {
+            int from = g.messageStart[node];
+            f.addRange(g.messageAdj, from, Math.min(g.messageStart[node + 1], from + opt.messageFanoutCap), MODE_ROOT, -1, vs);
+        }
+
+        private void startFork(int fork, GatewayType type, int[] branchStarts, VisitState vs) {
+            if (branchStarts.length == 0) return;
+            Frame f = push(Frame.FORK, vs);
+            f.fork = fork;
+            f.gwType = type;
+            f.branchStarts = branchStarts;
+            f.selections = computeSelections(type, branchStarts, opt);
+        }
+
+        /** Masih ada subset cabang berikutnya; false = fork selesai. */
+        private boolean hasNextSelection(Frame f) {
+            return !f.done && f.selIdx < f.selections.size();
+        }
+
+        /** Budget monoton: maxPaths habis → selesai; deadline → berhenti sementara (lihat {@link #deadlineHit}). */
+        private boolean stopForBudget() {
+            if (counter.exhausted(opt)) return true;
+            if (progressed && System.nanoTime() > deadline) {
+                deadlineHit = true;
+                return true;
             }
+            progressed = true;
+            return false;
         }
-        // Inclusive Gateway handling
-        else if (cur instanceof InclusiveGateway && opt.strictGatewaySemantics) {
-            int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-            int inCount = (cur.getIncoming() != null) ? cur.getIncoming().size() : 0;
 
-            if (outCount > 1) {
-                handleForkWithJoin(g, currentId, GatewayType.INCLUSIVE, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            } else if (inCount > 1 && outCount == 1) {
-                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            } else {
-                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        private void prepareSelection(Frame f) {
+            int[] selected = f.selections.get(f.selIdx++);
+            f.clearRanges();
+
+            List<int[]> segs = resolveJoinSegments(g, f.fork, f.gwType, f.branchStarts, selected, opt);
+            if (segs == null) {
+                // fallback: eksplor tiap cabang apa adanya, lalu subset berikutnya
+                f.addRange(selected, 0, selected.length, MODE_ROOT, -1, f.vs);
+                return;
+            }
+
+            f.done = true;
+            int join = segs.get(0)[segs.get(0).length - 1];
+            VisitState merged = mergeSegments(f.vs, segs, f.fork, opt);
+
+            // (3) Pastikan join hadir; fallback jika tidak
+            if (merged.indexOf(join) < 0) {
+                f.addRange(selected, 0, selected.length, MODE_ROOT, -1, f.vs);
+                return;
             }
+
+            // Lanjut dari JOIN (outgoing tanpa cap, boundary & message dengan cap)
+            f.addRange(g.outAdj, g.outStart[join], g.outStart[join + 1], MODE_ROOT, -1, merged);
+            if (opt.includeBoundary) addBoundary(f, join, MODE_ROOT, -1, merged);
+            if (opt.includeMessageFlow) addMessage(f, join, merged);
         }
-        // Parallel Gateway
-        else if (cur instanceof ParallelGateway && opt.strictGatewaySemantics) {
-            int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-            int inCount = (cur.getIncoming() != null) ? cur.getIncoming().size() : 0;
 
-            if (outCount > 1) {
-                handleForkWithJoin(g, currentId, GatewayType.PARALLEL, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            } else if (inCount > 1 && outCount <= 1) {
-                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            } else {
-                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        boolean isFinished() {
+            return finished || depth == 0;
+        }
+
+        boolean stoppedByDeadline() {
+            return deadlineHit;
+        }
+
+        /* ---------- cursor (frontier DFS) ---------- */
+
+        /** Serialisasi frontier: (rangeIdx, pos, selIdx) per frame + jumlah path yang sudah diemit. */
+        String snapshot(int fingerprint) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + depth * 12);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(CURSOR_VERSION);
+                out.writeInt(fingerprint);
+                out.writeLong(counter.paths);
+                out.writeInt(depth);
+                for (int i = 0; i < depth; i++) {
+                    Frame f = frames[i];
+                    out.writeInt(f.rangeIdx);
+                    out.writeInt(f.pos);
+                    out.writeInt(f.selIdx);
+                }
+                out.flush();
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
             }
         }
-        // Event-Based Gateway
-        else if (isEventBasedGateway(cur)) {
-            if (isEventBasedParallel(cur)) {
-                // (1) Terapkan eventParallelFanoutCap via limited handle
-                List<String> outs = new ArrayList<>(g.outgoing.getOrDefault(currentId, Collections.emptyList()));
-                if (outs.size() > opt.eventParallelFanoutCap) {
-                    outs = outs.subList(0, opt.eventParallelFanoutCap);
+
+        /**
+         * Bangun ulang stack dari cursor: hanya node di sepanjang frontier yang dikunjungi ulang
+         * (O(kedalaman)), path yang sudah diemit tidak dihitung lagi.
+         */
+        void restore(String cursor, int fingerprint) {
+            int[] cur = decodeCursor(cursor, fingerprint);
+
+            int n = cur.length / 3;
+            if (n == 0) { finished = true; return; }
+            applyCursor(frames[0], cur, 0);
+            while (depth < n) {
+                Frame f = frames[depth - 1];
+                int r = f.rangeIdx;
+                if (r >= f.rangeCount || f.pos <= f.rangeFrom[r]) throw new IllegalArgumentException("Cursor tidak valid");
+                int before = depth;
+                visit(f.rangeAdj[r][f.pos - 1], f.rangeMode[r], f.rangeSp[r], f.rangeVs[r]);
+                if (depth <= before || depth > n) throw new IllegalArgumentException("Cursor tidak valid");
+                for (int i = before; i < depth; i++) applyCursor(frames[i], cur, i);
+            }
+        }
+
+        private int[] decodeCursor(String cursor, int fingerprint) {
+            DataInputStream in;
+            try {
+                in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Cursor tidak valid", e);
+            }
+            try {
+                if (in.readByte() != CURSOR_VERSION || in.readInt() != fingerprint) {
+                    throw new IllegalArgumentException("Cursor tidak cocok dengan model / opsi ini");
                 }
-                handleForkWithJoinLimited(
-                        g, currentId, GatewayType.PARALLEL, outs,
-                        path, visitedDepthKey, visitCount, sink, counter, deadline, opt
-                );
-            } else {
-                // Exclusive Event
-                List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-                int lim = Math.min(outs.size(), opt.genericFanoutCap);
-                for (int i = 0; i < lim; i++) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsRoot(g, outs.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                long paths = in.readLong();
+                if (paths < 0 || paths > opt.maxPaths) throw new IllegalArgumentException("Cursor tidak valid");
+                counter.paths = paths;
+                // frame = seed + satu per node di path (≤ maxDepth) + satu per fork AND/OR di path itu
+                int n = in.readInt();
+                if (n < 0 || n > 2 * opt.maxDepth + 1 || in.available() != n * 12L) {
+                    throw new IllegalArgumentException("Cursor tidak valid");
                 }
+                int[] cur = new int[n * 3];
+                for (int i = 0; i < cur.length; i++) cur[i] = in.readInt();
+                return cur;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cursor tidak valid", e);
             }
         }
-        else if (isExclusiveFork(cur, g)) {
-            // XOR
-            List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-            int lim = Math.min(outs.size(), opt.genericFanoutCap);
-            for (int i = 0; i < lim; i++) {
-                if (overBudget(counter, deadline, opt)) break;
-                dfsRoot(g, outs.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+
+        private void applyCursor(Frame f, int[] cur, int i) {
+            int rangeIdx = cur[i * 3], pos = cur[i * 3 + 1], selIdx = cur[i * 3 + 2];
+            if (f.type == Frame.FORK && selIdx > 0) {
+                if (selIdx > f.selections.size()) throw new IllegalArgumentException("Cursor tidak valid");
+                f.selIdx = selIdx - 1;
+                prepareSelection(f);
             }
-        } else {
-            // Node biasa
-            goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            if (opt.includeBoundary) goBoundary(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            if (opt.includeMessageFlow) goMessage(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            boolean ok = rangeIdx >= 0 && rangeIdx <= f.rangeCount
+                    && (rangeIdx == f.rangeCount || (pos >= f.rangeFrom[rangeIdx] && pos <= f.rangeTo[rangeIdx]));
+            if (!ok) throw new IllegalArgumentException("Cursor tidak valid");
+            f.rangeIdx = rangeIdx;
+            f.pos = pos;
+        }
+
+        private Frame push(int type, VisitState vs) {
+            if (depth == frames.length) frames = Arrays.copyOf(frames, depth * 2);
+            Frame f = frames[depth];
+            if (f == null) frames[depth] = f = new Frame();
+            f.reset(type, vs);
+            depth++;
+            return f;
+        }
+
+        private void pop() {
+            Frame f = frames[--depth];
+            if (f.type == Frame.NODE) leaveNode(f.vs);
+            f.release();
+        }
+    }
+
+    /** Frame stack DFS (di-pool oleh PathWalker). Maksimal 3 rentang anak: outgoing / boundary / message. */
+    private static final class Frame {
+        static final int SEED = 0, NODE = 1, FORK = 2;
+
+        int type;
+        VisitState vs;
+
+        final int[][] rangeAdj = new int[3][];
+        final int[] rangeFrom = new int[3];
+        final int[] rangeTo = new int[3];
+        final int[] rangeMode = new int[3];
+        final int[] rangeSp = new int[3];
+        final VisitState[] rangeVs = new VisitState[3];
+        int rangeCount, rangeIdx, pos;
+
+        // khusus FORK (AND / OR)
+        int fork;
+        GatewayType gwType;
+        int[] branchStarts;
+        List<int[]> selections;
+        int selIdx;
+        boolean done;
+
+        void reset(int type, VisitState vs) {
+            this.type = type;
+            this.vs = vs;
+            clearRanges();
+            selIdx = 0;
+            done = false;
         }
 
-        leaveNode(currentId, path, visitedDepthKey, visitCount);
+        void clearRanges() {
+            rangeCount = 0;
+            rangeIdx = 0;
+            pos = 0;
+        }
+
+        void addRange(int[] adj, int from, int to, int mode, int sp, VisitState target) {
+            int r = rangeCount++;
+            rangeAdj[r] = adj;
+            rangeFrom[r] = from;
+            rangeTo[r] = to;
+            rangeMode[r] = mode;
+            rangeSp[r] = sp;
+            rangeVs[r] = target;
+            if (r == 0) pos = from;
+        }
+
+        void release() {
+            vs = null;
+            Arrays.fill(rangeAdj, null);
+            Arrays.fill(rangeVs, null);
+            branchStarts = null;
+            selections = null;
+            gwType = null;
+        }
     }
 
     /* ===================== DFS (root) — annotated ===================== */
 
     private void dfsRootAnn(
-            Graph g, String currentId,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Graph g, int cur,
+            VisitState vs,
             List<Group> groups, Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt
     ) {
-        if (currentId == null || overBudget(counter, deadline, opt)) return;
-        if (!enterNode(currentId, path, visitedDepthKey, visitCount, opt)) return;
+        if (overBudget(counter, deadline, opt)) return;
+        if (!enterNode(cur, vs, opt)) return;
 
-        FlowNode cur = g.nodeById.get(currentId);
+        int kind = g.kind[cur];
+        int gw = gatewayType(kind);
 
-        if (cur instanceof EndEvent && !g.insideSubprocess.contains(currentId)) {
-            sink.accept(new AnnotatedPath(new ArrayList<>(path), new ArrayList<>(groups)));
-            counter.paths++;
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
+        if ((kind & K_END) != 0 && (kind & K_INSIDE_SP) == 0) {
+            if (counter.tryEmit(opt)) sink.accept(new AnnotatedPath(vs.toIds(g), new ArrayList<>(groups)));
+            leaveNode(vs);
             return;
         }
 
-        if (cur instanceof SubProcess && g.eventSubProcesses.contains(cur.getId())) {
-            goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            if (opt.includeMessageFlow) goMessageAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
+        if ((kind & K_EVENT_SP) != 0) {
+            goOutgoingAnn(g, cur, vs, groups, sink, counter, deadline, opt);
+            if (opt.includeMessageFlow) goMessageAnn(g, cur, vs, groups, sink, counter, deadline, opt);
+            leaveNode(vs);
             return;
         }
 
-        if (cur instanceof SubProcess) {
-            List<String> subStarts = g.subprocessStarts.get(currentId);
-            if (subStarts != null && !subStarts.isEmpty()) {
-                for (String s : subStarts) {
+        if ((kind & K_SUBPROCESS) != 0) {
+            int from = g.spStartStart[cur], to = g.spStartStart[cur + 1];
+            if (from < to) {
+                for (int i = from; i < to; i++) {
                     if (overBudget(counter, deadline, opt)) break;
-                    dfsInsideSPAnn(g, s, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                    dfsInsideSPAnn(g, g.spStartAdj[i], cur, vs, groups, sink, counter, deadline, opt);
                 }
             } else {
-                goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                if (opt.includeMessageFlow) goMessageAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                goOutgoingAnn(g, cur, vs, groups, sink, counter, deadline, opt);
+                if (opt.includeMessageFlow) goMessageAnn(g, cur, vs, groups, sink, counter, deadline, opt);
             }
         }
         // Inclusive
-        else if (cur instanceof InclusiveGateway && opt.strictGatewaySemantics) {
-            int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-            int inCount = (cur.getIncoming() != null) ? cur.getIncoming().size() : 0;
-
-            if (outCount > 1) {
-                handleForkWithJoinAnn(g, currentId, GatewayType.INCLUSIVE, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            } else if (inCount > 1 && outCount == 1) {
-                goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+        else if (gw == GW_INCLUSIVE && opt.strictGatewaySemantics) {
+            if (g.outDegree(cur) > 1) {
+                handleForkWithJoinAnn(g, cur, GatewayType.INCLUSIVE, vs, groups, sink, counter, deadline, opt);
             } else {
-                goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                goOutgoingAnn(g, cur, vs, groups, sink, counter, deadline, opt);
             }
         }
         // Parallel
-        else if (cur instanceof ParallelGateway && opt.strictGatewaySemantics) {
-            int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-            int inCount = (cur.getIncoming() != null) ? cur.getIncoming().size() : 0;
-
-            if (outCount > 1) {
-                handleForkWithJoinAnn(g, currentId, GatewayType.PARALLEL, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            } else if (inCount > 1 && outCount <= 1) {
-                goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+        else if (gw == GW_PARALLEL && opt.strictGatewaySemantics) {
+            if (g.outDegree(cur) > 1) {
+                handleForkWithJoinAnn(g, cur, GatewayType.PARALLEL, vs, groups, sink, counter, deadline, opt);
             } else {
-                goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                goOutgoingAnn(g, cur, vs, groups, sink, counter, deadline, opt);
             }
         }
-        // Event-Based
-        else if (isEventBasedGateway(cur)) {
-            if (isEventBasedParallel(cur)) {
-                List<String> outs = new ArrayList<>(g.outgoing.getOrDefault(currentId, Collections.emptyList()));
-                if (outs.size() > opt.eventParallelFanoutCap) {
-                    outs = outs.subList(0, opt.eventParallelFanoutCap);
-                }
-                handleForkWithJoinLimitedAnn(
-                        g, currentId, GatewayType.PARALLEL, outs,
-                        path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt
-                );
-            } else {
-                List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-                int lim = Math.min(outs.size(), opt.genericFanoutCap);
-                for (int i = 0; i < lim; i++) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsRootAnn(g, outs.get(i), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                }
-            }
+        // Event-Based (Parallel)
+        else if (gw == GW_EVENT_PARALLEL) {
+            handleForkWithJoinLimitedAnn(
+                    g, cur, GatewayType.PARALLEL, g.outgoingOf(cur, opt.eventParallelFanoutCap),
+                    vs, groups, sink, counter, deadline, opt
+            );
         }
-        else if (isExclusiveFork(cur, g)) {
-            List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-            int lim = Math.min(outs.size(), opt.genericFanoutCap);
-            for (int i = 0; i < lim; i++) {
-                if (overBudget(counter, deadline, opt)) break;
-                dfsRootAnn(g, outs.get(i), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            }
+        else if (gw == GW_EVENT_EXCLUSIVE || isExclusiveFork(g, cur)) {
+            goOutgoingAnn(g, cur, vs, groups, sink, counter, deadline, opt);
         } else {
-            goOutgoingAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            if (opt.includeBoundary) goBoundaryAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            if (opt.includeMessageFlow) goMessageAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            goOutgoingAnn(g, cur, vs, groups, sink, counter, deadline, opt);
+            if (opt.includeBoundary) goBoundaryAnn(g, cur, vs, groups, sink, counter, deadline, opt);
+            if (opt.includeMessageFlow) goMessageAnn(g, cur, vs, groups, sink, counter, deadline, opt);
         }
 
-        leaveNode(currentId, path, visitedDepthKey, visitCount);
+        leaveNode(vs);
     }
 
-    /* ===================== DFS (inside SubProcess) — plain ===================== */
+    /* ===================== DFS (inside SubProcess) — annotated ===================== */
 
-    private void dfsInsideSP(
-            Graph g, String currentId, String parentSpId,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-            Consumer<List<String>> sink, Counter counter, long deadline, Options opt
+    private void dfsInsideSPAnn(
+            Graph g, int cur, int parentSp,
+            VisitState vs,
+            List<Group> groups, Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt
     ) {
-        if (currentId == null || overBudget(counter, deadline, opt)) return;
-        if (!enterNode(currentId, path, visitedDepthKey, visitCount, opt)) return;
+        if (overBudget(counter, deadline, opt)) return;
+        if (!enterNode(cur, vs, opt)) return;
 
-        FlowNode cur = g.nodeById.get(currentId);
+        int kind = g.kind[cur];
+        int gw = gatewayType(kind);
 
-        if (cur instanceof EndEvent && g.isParentOf(parentSpId, currentId)) {
-            for (String tgt : g.outgoing.getOrDefault(parentSpId, Collections.emptyList())) {
+        if ((kind & K_END) != 0 && g.parentSp[cur] == parentSp) {
+            for (int i = g.outStart[parentSp]; i < g.outStart[parentSp + 1]; i++) {
                 if (overBudget(counter, deadline, opt)) break;
-                dfsRoot(g, tgt, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                dfsRootAnn(g, g.outAdj[i], vs, groups, sink, counter, deadline, opt);
             }
             if (opt.includeMessageFlow) {
-                for (String tgt : g.messageTargets.getOrDefault(parentSpId, Collections.emptyList())) {
+                for (int i = g.messageStart[parentSp]; i < g.messageStart[parentSp + 1]; i++) {
                     if (overBudget(counter, deadline, opt)) break;
-                    dfsRoot(g, tgt, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                    dfsRootAnn(g, g.messageAdj[i], vs, groups, sink, counter, deadline, opt);
                 }
             }
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
+            leaveNode(vs);
             return;
         }
 
-        if (cur instanceof SubProcess && g.eventSubProcesses.contains(cur.getId())) {
-            goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            if (opt.includeMessageFlow) goMessageCrossToRoot(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
+        if ((kind & K_EVENT_SP) != 0) {
+            goOutgoingInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
+            if (opt.includeMessageFlow) goMessageCrossToRootAnn(g, cur, vs, groups, sink, counter, deadline, opt);
+            leaveNode(vs);
             return;
         }
 
-        if (cur instanceof SubProcess) {
-            List<String> subStarts = g.subprocessStarts.get(currentId);
-            if (subStarts != null && !subStarts.isEmpty()) {
-                for (String s : subStarts) {
+        if ((kind & K_SUBPROCESS) != 0) {
+            int from = g.spStartStart[cur], to = g.spStartStart[cur + 1];
+            if (from < to) {
+                for (int i = from; i < to; i++) {
                     if (overBudget(counter, deadline, opt)) break;
-                    dfsInsideSP(g, s, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                    dfsInsideSPAnn(g, g.spStartAdj[i], cur, vs, groups, sink, counter, deadline, opt);
                 }
             } else {
-                goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                if (opt.includeBoundary) goBoundaryInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                if (opt.includeMessageFlow) goMessageCrossToRoot(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                goOutgoingInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
+                if (opt.includeBoundary) goBoundaryInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
+                if (opt.includeMessageFlow) goMessageCrossToRootAnn(g, cur, vs, groups, sink, counter, deadline, opt);
             }
         } else {
-            if (cur instanceof InclusiveGateway && opt.strictGatewaySemantics) {
-                int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-                if (outCount > 1) {
-                    handleForkWithJoin(g, currentId, GatewayType.INCLUSIVE, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            if (gw == GW_INCLUSIVE && opt.strictGatewaySemantics) {
+                if (g.outDegree(cur) > 1) {
+                    handleForkWithJoinAnn(g, cur, GatewayType.INCLUSIVE, vs, groups, sink, counter, deadline, opt);
                 } else {
-                    goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                    goOutgoingInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
                 }
-            } else if (cur instanceof ParallelGateway && opt.strictGatewaySemantics) {
-                int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-                if (outCount > 1) {
-                    handleForkWithJoin(g, currentId, GatewayType.PARALLEL, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            } else if (gw == GW_PARALLEL && opt.strictGatewaySemantics) {
+                if (g.outDegree(cur) > 1) {
+                    handleForkWithJoinAnn(g, cur, GatewayType.PARALLEL, vs, groups, sink, counter, deadline, opt);
                 } else {
-                    goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                }
-            } else if (isEventBasedGateway(cur)) {
-                if (isEventBasedParallel(cur)) {
-                    List<String> outs = new ArrayList<>(g.outgoing.getOrDefault(currentId, Collections.emptyList()));
-                    if (outs.size() > opt.eventParallelFanoutCap) {
-                        outs = outs.subList(0, opt.eventParallelFanoutCap);
-                    }
-                    handleForkWithJoinLimited(
-                            g, currentId, GatewayType.PARALLEL, outs,
-                            path, visitedDepthKey, visitCount, sink, counter, deadline, opt
-                    );
-                } else {
-                    List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-                    int lim = Math.min(outs.size(), opt.genericFanoutCap);
-                    for (int i = 0; i < lim; i++) {
-                        if (overBudget(counter, deadline, opt)) break;
-                        dfsInsideSP(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                    }
-                }
-            } else if (isExclusiveFork(cur, g)) {
-                List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-                int lim = Math.min(outs.size(), opt.genericFanoutCap);
-                for (int i = 0; i < lim; i++) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsInsideSP(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                    goOutgoingInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
                 }
+            } else if (gw == GW_EVENT_PARALLEL) {
+                handleForkWithJoinLimitedAnn(
+                        g, cur, GatewayType.PARALLEL, g.outgoingOf(cur, opt.eventParallelFanoutCap),
+                        vs, groups, sink, counter, deadline, opt
+                );
+            } else if (gw == GW_EVENT_EXCLUSIVE || isExclusiveFork(g, cur)) {
+                goOutgoingInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
             } else {
-                goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                if (opt.includeBoundary) goBoundaryInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                if (opt.includeMessageFlow) goMessageCrossToRoot(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                goOutgoingInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
+                if (opt.includeBoundary) goBoundaryInsideAnn(g, cur, parentSp, vs, groups, sink, counter, deadline, opt);
+                if (opt.includeMessageFlow) goMessageCrossToRootAnn(g, cur, vs, groups, sink, counter, deadline, opt);
             }
         }
 
-        leaveNode(currentId, path, visitedDepthKey, visitCount);
+        leaveNode(vs);
     }
 
-    /* ===================== DFS (inside SubProcess) — annotated ===================== */
-
-    private void dfsInsideSPAnn(
-            Graph g, String currentId, String parentSpId,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-            List<Group> groups, Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt
-    ) {
-        if (currentId == null || overBudget(counter, deadline, opt)) return;
-        if (!enterNode(currentId, path, visitedDepthKey, visitCount, opt)) return;
-
-        FlowNode cur = g.nodeById.get(currentId);
+    /* ===================== Path count estimation ===================== */
+
+    private static final byte ST_NODE = 0, ST_TERMINAL = 1, ST_MERGE = 2;
+    private static final int EST_MASK_MAX_SCC = 62;          // SCC loop dihitung per subset node (bitmask long)
+    private static final int EST_MASK_BUDGET = 200_000;      // batas entri memo subset per SCC
+    private static final long EST_HISTOGRAM_CELLS = 2_000_000;
+
+    /**
+     * DP jumlah path atas graf state yang transisinya sama dengan PathWalker.visit:
+     * state = (node, mode ROOT/INSIDE, SubProcess induk), ditambah state MERGE untuk fork AND/OR
+     * yang join-nya ketemu (panjang = node segmen yang digabung, lanjut dari outgoing join).
+     * Cap fan-out, urutan subset Inclusive (inclusiveMaxSubsets) dan fallback fork ikut tercermin.
+     *
+     * SCC diproses sink dulu (id komponen Tarjan) sehingga tiap state dihitung sekali:
+     * - komponen tunggal: jumlah path penerus (self-loop selalu terpotong revisit window);
+     * - loop dengan node < revisitWindow tidak bisa diulang → path = simple path dalam SCC,
+     *   dihitung DP (state, subset SCC yang sudah dilewati); SCC besar → LOWER (back edge dibuang);
+     * - path terpanjang > maxDepth → dihitung ulang per panjang path bila graf acyclic, selain itu UPPER.
+     */
+    private final class PathEstimator {
+        private final Graph g;
+        private final Options opt;
+
+        private final Map<Long, Integer> stateIds = new HashMap<>();
+        private int[] stNode = new int[64], stMode = new int[64], stSp = new int[64], stLen = new int[64];
+        private byte[] stType = new byte[64];
+        private boolean[] stFork = new boolean[64];
+        private int states;
+        private final EdgeList edges = new EdgeList();
+
+        private int[] start, adj, comp, order;
+        private long[] count;
+        private int[] longest;
+        private boolean loopsCut, depthIgnored, approx;
+        private final PathEstimate est = new PathEstimate();
+
+        PathEstimator(Graph g, Options opt) {
+            this.g = g;
+            this.opt = opt;
+        }
+
+        PathEstimate run() {
+            int[] roots = new int[g.rootStarts.length];
+            for (int i = 0; i < roots.length; i++) roots[i] = state(g.rootStarts[i], MODE_ROOT, -1);
+            for (int s = 0; s < states; s++) expand(s);   // states tumbuh selama loop (BFS)
+
+            start = new int[states + 1];
+            adj = edges.toCsr(states, start);
+            comp = new int[states];
+            order = new int[states];
+            int components = stronglyConnected(states, start, adj, comp, order);
+
+            count = new long[states];
+            longest = new int[states];
+            boolean acyclic = true;
+            for (int i = 0; i < states; ) {
+                int j = i;
+                while (j < states && comp[order[j]] == comp[order[i]]) j++;
+                if (j - i == 1) {
+                    countSingle(order[i]);
+                } else {
+                    acyclic = false;
+                    est.cyclicComponents++;
+                    countComponent(Arrays.copyOfRange(order, i, j));
+                }
+                i = j;
+            }
 
-        if (cur instanceof EndEvent && g.isParentOf(parentSpId, currentId)) {
-            for (String tgt : g.outgoing.getOrDefault(parentSpId, Collections.emptyList())) {
-                if (overBudget(counter, deadline, opt)) break;
-                dfsRootAnn(g, tgt, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            long total = 0;
+            int maxLen = -1;
+            for (int r : roots) {
+                total = satAdd(total, count[r]);
+                if (count[r] > 0) maxLen = Math.max(maxLen, longest[r]);
             }
-            if (opt.includeMessageFlow) {
-                for (String tgt : g.messageTargets.getOrDefault(parentSpId, Collections.emptyList())) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsRootAnn(g, tgt, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+
+            if (maxLen > opt.maxDepth) {
+                if (acyclic && (long) states * (opt.maxDepth + 1) <= EST_HISTOGRAM_CELLS) {
+                    total = countByLength(roots);
+                } else {
+                    depthIgnored = true;
+                    est.notes.add("Path terpanjang " + maxLen + " node > maxDepth " + opt.maxDepth
+                            + ": path yang terpotong ikut terhitung");
                 }
             }
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
-            return;
+            if (multiModeNodes()) approx = true;
+
+            est.count = total;
+            est.expectedPaths = Math.min(total, opt.maxPaths);
+            est.exceedsMaxPaths = total > opt.maxPaths;
+            est.longestPath = maxLen;
+            est.states = states;
+            est.exact = !loopsCut && !depthIgnored && !approx;
+            est.bound = est.exact ? "EXACT"
+                    : (approx || (loopsCut && depthIgnored)) ? "APPROX"
+                    : loopsCut ? "LOWER" : "UPPER";
+            return est;
+        }
+
+        /* ---------- graf state ---------- */
+
+        private int state(int node, int mode, int sp) {
+            long key = ((long) node << 32) | ((long) mode << 31) | (sp + 1);
+            Integer id = stateIds.get(key);
+            if (id != null) return id;
+            int kind = g.kind[node];
+            boolean rootEnd = mode == MODE_ROOT && (kind & K_END) != 0 && (kind & K_INSIDE_SP) == 0;
+            return newState(key, node, mode, sp, rootEnd ? ST_TERMINAL : ST_NODE, 1);
+        }
+
+        private int mergeState(int join, int len) {
+            long key = -(((long) join << 32) | len) - 1;
+            Integer id = stateIds.get(key);
+            return id != null ? id : newState(key, join, MODE_ROOT, -1, ST_MERGE, len);
+        }
+
+        private int newState(long key, int node, int mode, int sp, byte type, int len) {
+            if (states == stNode.length) {
+                int cap = states * 2;
+                stNode = Arrays.copyOf(stNode, cap);
+                stMode = Arrays.copyOf(stMode, cap);
+                stSp = Arrays.copyOf(stSp, cap);
+                stLen = Arrays.copyOf(stLen, cap);
+                stType = Arrays.copyOf(stType, cap);
+                stFork = Arrays.copyOf(stFork, cap);
+            }
+            int id = states++;
+            stNode[id] = node; stMode[id] = mode; stSp[id] = sp; stType[id] = type; stLen[id] = len;
+            stateIds.put(key, id);
+            return id;
         }
 
-        if (cur instanceof SubProcess && g.eventSubProcesses.contains(cur.getId())) {
-            goOutgoingInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            if (opt.includeMessageFlow) goMessageCrossToRootAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-            leaveNode(currentId, path, visitedDepthKey, visitCount);
-            return;
+        private void range(int s, int[] targets, int from, int to, int mode, int sp) {
+            for (int i = from; i < to; i++) edges.add(s, state(targets[i], mode, sp));
         }
 
-        if (cur instanceof SubProcess) {
-            List<String> subStarts = g.subprocessStarts.get(currentId);
-            if (subStarts != null && !subStarts.isEmpty()) {
-                for (String s : subStarts) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsInsideSPAnn(g, s, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+        private void outgoing(int s, int node, int mode, int sp) {
+            int from = g.outStart[node];
+            range(s, g.outAdj, from, Math.min(g.outStart[node + 1], from + opt.genericFanoutCap), mode, sp);
+        }
+
+        private void boundary(int s, int node, int mode, int sp) {
+            int from = g.boundaryStart[node];
+            range(s, g.boundaryAdj, from, Math.min(g.boundaryStart[node + 1], from + opt.boundaryFanoutCap), mode, sp);
+        }
+
+        private void message(int s, int node) {
+            int from = g.messageStart[node];
+            range(s, g.messageAdj, from, Math.min(g.messageStart[node + 1], from + opt.messageFanoutCap), MODE_ROOT, -1);
+        }
+
+        /** Penerus state s — cerminan PathWalker.visit / prepareSelection. */
+        private void expand(int s) {
+            int cur = stNode[s];
+            if (stType[s] == ST_TERMINAL) return;
+            if (stType[s] == ST_MERGE) {
+                range(s, g.outAdj, g.outStart[cur], g.outStart[cur + 1], MODE_ROOT, -1);
+                if (opt.includeBoundary) boundary(s, cur, MODE_ROOT, -1);
+                if (opt.includeMessageFlow) message(s, cur);
+                return;
+            }
+
+            int mode = stMode[s], parentSp = stSp[s];
+            int kind = g.kind[cur];
+            int gw = gatewayType(kind);
+            boolean inside = (mode == MODE_INSIDE);
+
+            if (inside && (kind & K_END) != 0 && g.parentSp[cur] == parentSp) {
+                range(s, g.outAdj, g.outStart[parentSp], g.outStart[parentSp + 1], MODE_ROOT, -1);
+                if (opt.includeMessageFlow) {
+                    range(s, g.messageAdj, g.messageStart[parentSp], g.messageStart[parentSp + 1], MODE_ROOT, -1);
                 }
-            } else {
-                goOutgoingInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                if (opt.includeBoundary) goBoundaryInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                if (opt.includeMessageFlow) goMessageCrossToRootAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                return;
             }
-        } else {
-            if (cur instanceof InclusiveGateway && opt.strictGatewaySemantics) {
-                int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-                if (outCount > 1) {
-                    handleForkWithJoinAnn(g, currentId, GatewayType.INCLUSIVE, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            if ((kind & K_EVENT_SP) != 0) {
+                outgoing(s, cur, mode, parentSp);
+                if (opt.includeMessageFlow) message(s, cur);
+                return;
+            }
+            if ((kind & K_SUBPROCESS) != 0) {
+                int from = g.spStartStart[cur], to = g.spStartStart[cur + 1];
+                if (from < to) {
+                    range(s, g.spStartAdj, from, to, MODE_INSIDE, cur);
                 } else {
-                    goOutgoingInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                    outgoing(s, cur, mode, parentSp);
+                    if (inside && opt.includeBoundary) boundary(s, cur, mode, parentSp);
+                    if (opt.includeMessageFlow) message(s, cur);
                 }
-            } else if (cur instanceof ParallelGateway && opt.strictGatewaySemantics) {
-                int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
-                if (outCount > 1) {
-                    handleForkWithJoinAnn(g, currentId, GatewayType.PARALLEL, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                return;
+            }
+            if ((gw == GW_INCLUSIVE || gw == GW_PARALLEL) && opt.strictGatewaySemantics) {
+                if (g.outDegree(cur) > 1) {
+                    GatewayType type = (gw == GW_PARALLEL) ? GatewayType.PARALLEL : GatewayType.INCLUSIVE;
+                    fork(s, cur, type, g.outgoingOf(cur, Integer.MAX_VALUE));
                 } else {
-                    goOutgoingInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                    outgoing(s, cur, mode, parentSp);
                 }
-            } else if (isEventBasedGateway(cur)) {
-                if (isEventBasedParallel(cur)) {
-                    List<String> outs = new ArrayList<>(g.outgoing.getOrDefault(currentId, Collections.emptyList()));
-                    if (outs.size() > opt.eventParallelFanoutCap) {
-                        outs = outs.subList(0, opt.eventParallelFanoutCap);
-                    }
-                    handleForkWithJoinLimitedAnn(
-                            g, currentId, GatewayType.PARALLEL, outs,
-                            path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt
-                    );
-                } else {
-                    List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-                    int lim = Math.min(outs.size(), opt.genericFanoutCap);
-                    for (int i = 0; i < lim; i++) {
-                        if (overBudget(counter, deadline, opt)) break;
-                        dfsInsideSPAnn(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                    }
+                return;
+            }
+            if (gw == GW_EVENT_PARALLEL) {
+                fork(s, cur, GatewayType.PARALLEL, g.outgoingOf(cur, opt.eventParallelFanoutCap));
+                return;
+            }
+            if (gw == GW_EVENT_EXCLUSIVE || isExclusiveFork(g, cur)) {
+                outgoing(s, cur, mode, parentSp);
+                return;
+            }
+            outgoing(s, cur, mode, parentSp);
+            if (opt.includeBoundary) boundary(s, cur, mode, parentSp);
+            if (opt.includeMessageFlow) message(s, cur);
+        }
+
+        /** Subset tanpa join → cabang dieksplor apa adanya; subset pertama yang punya join → MERGE, lalu selesai. */
+        private void fork(int s, int fork, GatewayType type, int[] branchStarts) {
+            if (branchStarts.length == 0) return;
+            stFork[s] = true;
+            for (int[] selected : computeSelections(type, branchStarts, opt)) {
+                List<int[]> segs = resolveJoinSegments(g, fork, type, branchStarts, selected, opt);
+                if (segs == null) {
+                    range(s, selected, 0, selected.length, MODE_ROOT, -1);
+                    continue;
                 }
-            } else if (isExclusiveFork(cur, g)) {
-                List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
-                int lim = Math.min(outs.size(), opt.genericFanoutCap);
-                for (int i = 0; i < lim; i++) {
-                    if (overBudget(counter, deadline, opt)) break;
-                    dfsInsideSPAnn(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                int join = segs.get(0)[segs.get(0).length - 1];
+                edges.add(s, mergeState(join, mergedLength(segs, fork)));
+                return;
+            }
+        }
+
+        /** Jumlah node yang ditambahkan mergeSegments (tanpa fork, dibatasi maxVisitsPerNode). */
+        private int mergedLength(List<int[]> segs, int fork) {
+            Map<Integer, Integer> seen = new HashMap<>();
+            int added = 0;
+            for (int[] seg : segs) {
+                for (int nid : seg) {
+                    if (nid != fork && seen.merge(nid, 1, Integer::sum) <= opt.maxVisitsPerNode) added++;
                 }
-            } else {
-                goOutgoingInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                if (opt.includeBoundary) goBoundaryInsideAnn(g, currentId, parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                if (opt.includeMessageFlow) goMessageCrossToRootAnn(g, currentId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
             }
+            return added;
         }
 
-        leaveNode(currentId, path, visitedDepthKey, visitCount);
-    }
+        /** Node yang muncul sebagai beberapa state (mode berbeda) bisa terulang di satu path tanpa terdeteksi. */
+        private boolean multiModeNodes() {
+            int[] seen = new int[g.size];
+            for (int s = 0; s < states; s++) {
+                if (stType[s] == ST_MERGE) continue;
+                if (seen[stNode[s]]++ > 0) {
+                    est.notes.add("Node " + g.ids[stNode[s]] + " terjangkau di lebih dari satu mode (root / dalam SubProcess)");
+                    return true;
+                }
+            }
+            return false;
+        }
 
-    /* ===================== Fork → Join (AND / OR) — plain ===================== */
+        /* ---------- DP ---------- */
 
-    private enum GatewayType { PARALLEL, INCLUSIVE }
+        private void countSingle(int s) {
+            if (stType[s] == ST_TERMINAL) {
+                count[s] = 1;
+                longest[s] = stLen[s];
+                return;
+            }
+            long c = 0;
+            int len = -1;
+            for (int i = start[s]; i < start[s + 1]; i++) {
+                int t = adj[i];
+                if (t == s) {
+                    // self-loop: terpotong revisit window, kecuali window dimatikan
+                    if (opt.revisitWindow <= 0 && opt.maxVisitsPerNode > 1) cutLoop("self-loop di " + g.ids[stNode[s]]);
+                    continue;
+                }
+                c = satAdd(c, count[t]);
+                if (count[t] > 0) len = Math.max(len, longest[t]);
+            }
+            count[s] = c;
+            longest[s] = len < 0 ? -1 : len + stLen[s];
+        }
 
-    private void handleForkWithJoin(
-            Graph g, String forkId, GatewayType type,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-            Consumer<List<String>> sink, Counter counter, long deadline, Options opt
-    ) {
-        List<String> branchStarts = g.outgoing.getOrDefault(forkId, Collections.emptyList());
-        handleForkWithJoinLimited(g, forkId, type, branchStarts, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-    }
+        private void countComponent(int[] members) {
+            int k = members.length;
+            String head = g.ids[stNode[members[0]]];
+            if (opt.revisitWindow <= 0 || k >= opt.revisitWindow) {
+                cutLoop("Loop di sekitar " + head + " (" + k + " state) bisa diulang; hanya simple path yang dihitung");
+            }
+            for (int m : members) {
+                if (stFork[m] || stType[m] == ST_MERGE) {
+                    approx = true;
+                    est.notes.add("Fork AND/OR di dalam loop (" + g.ids[stNode[m]] + "): segmen join tidak ikut dicek revisit");
+                    break;
+                }
+            }
 
-    /** (2) Versi LIMITED: menerima subset branchStarts (dipakai untuk EBG parallel + cap) */
-    private void handleForkWithJoinLimited(
-            Graph g, String forkId, GatewayType type, List<String> branchStarts,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-            Consumer<List<String>> sink, Counter counter, long deadline, Options opt
-    ) {
-        if (branchStarts == null || branchStarts.isEmpty()) return;
+            if (k <= EST_MASK_MAX_SCC && countBySubsets(members)) return;
+
+            // Fallback: buang back edge (urutan pop Tarjan: penerus DFS lebih dulu) → simple path saja
+            cutLoop("SCC " + head + " terlalu besar (" + k + " state); back edge diabaikan");
+            int[] local = localIndex(members);
+            for (int i = 0; i < k; i++) {
+                int s = members[i];
+                long c = 0;
+                int len = -1;
+                for (int e = start[s]; e < start[s + 1]; e++) {
+                    int t = adj[e];
+                    if (comp[t] == comp[s] && local[t] >= i) continue;
+                    c = satAdd(c, count[t]);
+                    if (count[t] > 0) len = Math.max(len, longest[t]);
+                }
+                count[s] = c;
+                longest[s] = len < 0 ? -1 : len + stLen[s];
+            }
+        }
 
-        // kumpulan cabang yang dieksekusi
-        List<List<String>> selections = computeSelections(type, branchStarts, opt);
+        private Map<Integer, Integer> localOf;
+        private List<Map<Long, long[]>> memo;
+        private int memoSize;
 
-        // Precompute jarak (BFS) dari tiap cabang
-        Map<String, Map<String,Integer>> distByStart = new HashMap<>();
-        for (String s : branchStarts) distByStart.put(s, bfsDistances(g, s));
+        /** DP (state, subset SCC yang sudah dilewati); false bila memo melewati budget. */
+        private boolean countBySubsets(int[] members) {
+            localOf = new HashMap<>();
+            memo = new ArrayList<>(members.length);
+            for (int i = 0; i < members.length; i++) {
+                localOf.put(members[i], i);
+                memo.add(new HashMap<>());
+            }
+            memoSize = 0;
+            long[][] res = new long[members.length][];
+            for (int i = 0; i < members.length; i++) {
+                res[i] = simplePaths(members[i], 1L << i);
+                if (res[i] == null) return false;
+            }
+            for (int i = 0; i < members.length; i++) {
+                count[members[i]] = res[i][0];
+                longest[members[i]] = (int) res[i][1];
+            }
+            return true;
+        }
+
+        /** {count, longest} path dari s bila node SCC di {@code visited} sudah ada di path. */
+        private long[] simplePaths(int s, long visited) {
+            int ls = localOf.get(s);
+            long[] hit = memo.get(ls).get(visited);
+            if (hit != null) return hit;
+            if (++memoSize > EST_MASK_BUDGET) return null;
+
+            long c = 0;
+            long len = -1;
+            for (int e = start[s]; e < start[s + 1]; e++) {
+                int t = adj[e];
+                long tc, tl;
+                if (comp[t] != comp[s]) {
+                    tc = count[t];
+                    tl = longest[t];
+                } else {
+                    long bit = 1L << localOf.get(t);
+                    if ((visited & bit) != 0) continue;   // revisit < window → terpotong
+                    long[] sub = simplePaths(t, visited | bit);
+                    if (sub == null) return null;
+                    tc = sub[0];
+                    tl = sub[1];
+                }
+                c = satAdd(c, tc);
+                if (tc > 0) len = Math.max(len, tl);
+            }
+            long[] out = {c, len < 0 ? -1 : len + stLen[s]};
+            memo.get(ls).put(visited, out);
+            return out;
+        }
+
+        /** Hitung ulang per panjang path (graf acyclic): hanya path dengan ≤ maxDepth node. */
+        private long countByLength(int[] roots) {
+            int max = opt.maxDepth;
+            long[][] hist = new long[states][];
+            for (int s : order) {   // acyclic: urutan pop = sink dulu
+                long[] h = new long[max + 1];
+                int len = stLen[s];
+                if (stType[s] == ST_TERMINAL) {
+                    if (len <= max) h[len] = 1;
+                } else {
+                    for (int e = start[s]; e < start[s + 1]; e++) {
+                        if (adj[e] == s) continue;
+                        long[] th = hist[adj[e]];
+                        for (int l = 0; l + len <= max; l++) {
+                            if (th[l] != 0) h[l + len] = satAdd(h[l + len], th[l]);
+                        }
+                    }
+                }
+                hist[s] = h;
+            }
+            long total = 0;
+            for (int r : roots) {
+                for (long v : hist[r]) total = satAdd(total, v);
+            }
+            est.notes.add("Path dengan > " + max + " node (maxDepth) tidak dihitung");
+            return total;
+        }
 
-        for (List<String> selected : selections) {
-            if (overBudget(counter, deadline, opt)) break;
+        private int[] localIndex(int[] members) {
+            int[] local = new int[states];
+            for (int i = 0; i < members.length; i++) local[members[i]] = i;
+            return local;
+        }
 
-            // Join kandidat (4) longgarkan incoming-size untuk subset 1 cabang
-            List<String> joinCandidates = findJoinCandidates(g, forkId, type, selected, distByStart);
+        private void cutLoop(String note) {
+            if (est.notes.size() < 20) est.notes.add(note);
+            loopsCut = true;
+        }
+    }
 
-            if (type == GatewayType.INCLUSIVE && opt.inclusiveConservativeJoin) {
-                List<String> notSelected = new ArrayList<>(branchStarts);
-                notSelected.removeAll(selected);
-                joinCandidates.removeIf(j -> canAnyReach(g, notSelected, j));
-            }
+    private static long satAdd(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
 
-            if (!joinCandidates.isEmpty()) {
-                String joinId = pickBestJoin(joinCandidates, selected, distByStart);
+    /* ===================== Fork → Join (AND / OR) — plain ===================== */
 
-                // shortest path tiap cabang → join
-                List<List<String>> segs = new ArrayList<>(selected.size());
-                for (String s : selected) {
-                    List<String> sp = shortestPathTo(g, s, joinId);
-                    if (sp == null || sp.isEmpty()) { segs.clear(); break; }
-                    segs.add(sp);
-                }
-                if (!segs.isEmpty()) {
-                    // gabungkan segmen
-                    segs.sort(Comparator.comparing(a -> a.get(0)));
+    private enum GatewayType { PARALLEL, INCLUSIVE }
 
-                    Deque<String> mergedPath = new ArrayDeque<>(path);
-                    Set<String> newVisited = new HashSet<>(visitedDepthKey);
-                    Map<String,Integer> newVisits = new HashMap<>(visitCount);
+    /**
+     * Cari join terbaik untuk subset cabang {@code selected}, lalu shortest segment tiap cabang → join
+     * (terurut by id node pertama). null = tidak ada join yang cocok → caller fallback eksplor per cabang.
+     * Node terakhir tiap segmen adalah join.
+     */
+    private List<int[]> resolveJoinSegments(Graph g, int fork, GatewayType type, int[] branchStarts,
+                                            int[] selected, Options opt) {
+        // Join kandidat (4) longgarkan incoming-size untuk subset 1 cabang
+        int[] joinCandidates = findJoinCandidates(g, fork, type, selected);
 
-                    for (List<String> seg : segs) {
-                        for (String nid : seg) {
-                            if (nid.equals(forkId)) continue;
+        if (type == GatewayType.INCLUSIVE && opt.inclusiveConservativeJoin) {
+            joinCandidates = dropReachableFromUnselected(g, joinCandidates, branchStarts, selected);
+        }
+        if (joinCandidates.length == 0) return null;
 
-                            // PATCH: izinkan duplikasi terkontrol
-                            String depthKey = nid + "#" + mergedPath.size();
-                            if (newVisited.contains(depthKey)) continue;
+        int join = pickBestJoin(g, joinCandidates, selected);
 
-                            int cnt = newVisits.getOrDefault(nid, 0);
-                            if (cnt >= opt.maxVisitsPerNode) continue;
+        // shortest path tiap cabang → join
+        List<int[]> segs = new ArrayList<>(selected.length);
+        for (int s : selected) {
+            int[] sp = g.joins.segment(g, s, join);
+            if (sp.length == 0) return null;
+            segs.add(sp);
+        }
+        if (segs.isEmpty()) return null;
 
-                            mergedPath.addLast(nid);
-                            newVisited.add(depthKey);
-                            newVisits.put(nid, cnt + 1);
-                        }
-                    }
+        segs.sort(Comparator.comparing(a -> g.ids[a[0]]));
+        return segs;
+    }
 
-                    // (3) Pastikan join hadir; fallback jika tidak
-                    int idxJoin = indexOfDeque(mergedPath, joinId);
-                    if (idxJoin < 0) {
-                        for (String s : selected) {
-                            if (overBudget(counter, deadline, opt)) break;
-                            dfsRoot(g, s, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-                        }
-                        return;
-                    }
+    /** Gabungkan segmen ke salinan VisitState (tanpa fork, dengan batas maxVisitsPerNode). */
+    private VisitState mergeSegments(VisitState vs, List<int[]> segs, int fork, Options opt) {
+        VisitState merged = vs.copy();
+        for (int[] seg : segs) {
+            for (int nid : seg) {
+                if (nid == fork) continue;
 
-                    // Lanjut dari JOIN
-                    for (String out : g.outgoing.getOrDefault(joinId, Collections.emptyList())) {
-                        if (overBudget(counter, deadline, opt)) break;
-                        dfsRoot(g, out, mergedPath, newVisited, newVisits, sink, counter, deadline, opt);
-                    }
-                    if (opt.includeBoundary) {
-                        List<String> bes = g.boundary.getOrDefault(joinId, Collections.emptyList());
-                        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
-                        for (int i = 0; i < blim; i++) {
-                            if (overBudget(counter, deadline, opt)) break;
-                            dfsRoot(g, bes.get(i), mergedPath, newVisited, newVisits, sink, counter, deadline, opt);
-                        }
-                    }
-                    if (opt.includeMessageFlow) {
-                        List<String> tgts = g.messageTargets.getOrDefault(joinId, Collections.emptyList());
-                        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
-                        for (int i = 0; i < mlim; i++) {
-                            if (overBudget(counter, deadline, opt)) break;
-                            dfsRoot(g, tgts.get(i), mergedPath, newVisited, newVisits, sink, counter, deadline, opt);
-                        }
-                    }
-                    return;
-                }
-            }
+                // PATCH: izinkan duplikasi terkontrol
+                if (merged.occupies(nid, merged.size)) continue;
+                if (merged.count[nid] >= opt.maxVisitsPerNode) continue;
 
-            // fallback: eksplor tiap cabang apa adanya
-            for (String s : selected) {
-                if (overBudget(counter, deadline, opt)) break;
-                dfsRoot(g, s, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                merged.push(nid);
             }
         }
+        return merged;
     }
 
     /* ===================== Fork → Join (AND / OR) — annotated ===================== */
 
     private void handleForkWithJoinAnn(
-            Graph g, String forkId, GatewayType type,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Graph g, int fork, GatewayType type,
+            VisitState vs,
             List<Group> groups, Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt
     ) {
-        List<String> branchStarts = g.outgoing.getOrDefault(forkId, Collections.emptyList());
-        handleForkWithJoinLimitedAnn(g, forkId, type, branchStarts, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+        int[] branchStarts = g.outgoingOf(fork, Integer.MAX_VALUE);
+        handleForkWithJoinLimitedAnn(g, fork, type, branchStarts, vs, groups, sink, counter, deadline, opt);
     }
 
     /** (2) Versi LIMITED — annotated */
     private void handleForkWithJoinLimitedAnn(
-            Graph g, String forkId, GatewayType type, List<String> branchStarts,
-            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Graph g, int fork, GatewayType type, int[] branchStarts,
+            VisitState vs,
             List<Group> groups, Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt
     ) {
-        if (branchStarts == null || branchStarts.isEmpty()) return;
-
-        List<List<String>> selections = computeSelections(type, branchStarts, opt);
+        if (branchStarts.length == 0) return;
 
-        Map<String, Map<String,Integer>> distByStart = new HashMap<>();
-        for (String s : branchStarts) distByStart.put(s, bfsDistances(g, s));
+        List<int[]> selections = computeSelections(type, branchStarts, opt);
 
-        for (List<String> selected : selections) {
+        for (int[] selected : selections) {
             if (overBudget(counter, deadline, opt)) break;
 
-            List<String> joinCandidates = findJoinCandidates(g, forkId, type, selected, distByStart);
-            if (type == GatewayType.INCLUSIVE && opt.inclusiveConservativeJoin) {
-                List<String> notSelected = new ArrayList<>(branchStarts);
-                notSelected.removeAll(selected);
-                joinCandidates.removeIf(j -> canAnyReach(g, notSelected, j));
-            }
+            List<int[]> segs = resolveJoinSegments(g, fork, type, branchStarts, selected, opt);
+            if (segs != null) {
+                int join = segs.get(0)[segs.get(0).length - 1];
+                String forkId = g.ids[fork];
+                int idxFork = vs.indexOf(fork);
 
-            if (!joinCandidates.isEmpty()) {
-                String joinId = pickBestJoin(joinCandidates, selected, distByStart);
+                VisitState merged = mergeSegments(vs, segs, fork, opt);
 
-                List<List<String>> segs = new ArrayList<>(selected.size());
-                for (String s : selected) {
-                    List<String> sp = shortestPathTo(g, s, joinId);
-                    if (sp == null || sp.isEmpty()) { segs.clear(); break; }
-                    segs.add(sp);
-                }
-                if (!segs.isEmpty()) {
-                    segs.sort(Comparator.comparing(a -> a.get(0)));
-
-                    Deque<String> mergedPath = new ArrayDeque<>(path);
-                    Set<String> newVisited = new HashSet<>(visitedDepthKey);
-                    Map<String,Integer> newVisits = new HashMap<>(visitCount);
-
-                    int idxFork = indexOfDeque(mergedPath, forkId);
-
-                    for (List<String> seg : segs) {
-                        for (String nid : seg) {
-                            if (nid.equals(forkId)) continue;
-
-                            // PATCH: izinkan duplikasi terkontrol
-                            String depthKey = nid + "#" + mergedPath.size();
-                            if (newVisited.contains(depthKey)) continue;
-
-                            int cnt = newVisits.getOrDefault(nid, 0);
-                            if (cnt >= opt.maxVisitsPerNode) continue;
-
-                            mergedPath.addLast(nid);
-                            newVisited.add(depthKey);
-                            newVisits.put(nid, cnt + 1);
-                        }
-                    }
-
-                    int idxJoin = indexOfDeque(mergedPath, joinId);
-                    if (idxJoin < 0) {
-                        // (3) Fallback jika join tidak hadir
-                        for (String s : selected) {
-                            if (overBudget(counter, deadline, opt)) break;
-                            dfsRootAnn(g, s, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-                        }
-                        return;
-                    }
-
-                    // Siapkan branches
-                    List<List<String>> branches = new ArrayList<>();
-                    for (List<String> seg : segs) {
-                        List<String> b = new ArrayList<>();
-                        for (String nid : seg) {
-                            if (nid.equals(forkId)) continue;
-                            b.add(nid);
-                        }
-                        branches.add(b);
-                    }
-                    List<Group> newGroups = new ArrayList<>(groups);
-                    newGroups.add(new Group(
-                            (type == GatewayType.PARALLEL ? "PARALLEL" : "INCLUSIVE"),
-                            forkId, joinId,
-                            idxFork, idxJoin,
-                            branches
-                    ));
-
-                    // Lanjut dari JOIN
-                    for (String out : g.outgoing.getOrDefault(joinId, Collections.emptyList())) {
+                String joinId = g.ids[join];
+                int idxJoin = merged.indexOf(join);
+                if (idxJoin < 0) {
+                    // (3) Fallback jika join tidak hadir
+                    for (int s : selected) {
                         if (overBudget(counter, deadline, opt)) break;
-                        dfsRootAnn(g, out, mergedPath, newVisited, newVisits, newGroups, sink, counter, deadline, opt);
-                    }
-                    if (opt.includeBoundary) {
-                        List<String> bes = g.boundary.getOrDefault(joinId, Collections.emptyList());
-                        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
-                        for (int i = 0; i < blim; i++) {
-                            if (overBudget(counter, deadline, opt)) break;
-                            dfsRootAnn(g, bes.get(i), mergedPath, newVisited, newVisits, newGroups, sink, counter, deadline, opt);
-                        }
-                    }
-                    if (opt.includeMessageFlow) {
-                        List<String> tgts = g.messageTargets.getOrDefault(joinId, Collections.emptyList());
-                        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
-                        for (int i = 0; i < mlim; i++) {
-                            if (overBudget(counter, deadline, opt)) break;
-                            dfsRootAnn(g, tgts.get(i), mergedPath, newVisited, newVisits, newGroups, sink, counter, deadline, opt);
-                        }
+                        dfsRootAnn(g, s, vs, groups, sink, counter, deadline, opt);
                     }
                     return;
                 }
+
+                // Siapkan branches
+                List<List<String>> branches = new ArrayList<>();
+                for (int[] seg : segs) {
+                    List<String> b = new ArrayList<>();
+                    for (int nid : seg) {
+                        if (nid == fork) continue;
+                        b.add(g.ids[nid]);
+                    }
+                    branches.add(b);
+                }
+                List<Group> newGroups = new ArrayList<>(groups);
+                newGroups.add(new Group(
+                        (type == GatewayType.PARALLEL ? "PARALLEL" : "INCLUSIVE"),
+                        forkId, joinId,
+                        idxFork, idxJoin,
+                        branches
+                ));
+
+                // Lanjut dari JOIN
+                for (int i = g.outStart[join]; i < g.outStart[join + 1]; i++) {
+                    if (overBudget(counter, deadline, opt)) break;
+                    dfsRootAnn(g, g.outAdj[i], merged, newGroups, sink, counter, deadline, opt);
+                }
+                if (opt.includeBoundary) {
+                    goBoundaryAnn(g, join, merged, newGroups, sink, counter, deadline, opt);
+                }
+                if (opt.includeMessageFlow) {
+                    goMessageAnn(g, join, merged, newGroups, sink, counter, deadline, opt);
+                }
+                return;
             }
 
             // fallback
-            for (String s : selected) {
+            for (int s : selected) {
                 if (overBudget(counter, deadline, opt)) break;
-                dfsRootAnn(g, s, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+                dfsRootAnn(g, s, vs, groups, sink, counter, deadline, opt);
             }
         }
     }
 
-    private List<List<String>> computeSelections(GatewayType type, List<String> branchStarts, Options opt) {
-        List<List<String>> selections = new ArrayList<>();
+    private List<int[]> computeSelections(GatewayType type, int[] branchStarts, Options opt) {
+        List<int[]> selections = new ArrayList<>();
         if (type == GatewayType.PARALLEL) {
-            selections.add(new ArrayList<>(branchStarts)); // semua cabang
+            selections.add(branchStarts.clone()); // semua cabang
         } else {
-            int n = branchStarts.size();
+            int n = branchStarts.length;
             if (n <= 0) return selections;
 
             // Urutkan subset dari yang paling sedikit cabang → paling banyak
@@ -827,69 +1444,46 @@ public class DfsService {
             masks.sort(Comparator.comparingInt(Integer::bitCount));
 
             int emitted = 0;
+            boolean hasAll = false;
             for (int mask : masks) {
                 if (emitted >= opt.inclusiveMaxSubsets) break;
-                List<String> sel = new ArrayList<>();
-                for (int i = 0; i < n; i++) if ((mask & (1 << i)) != 0) sel.add(branchStarts.get(i));
+                int[] sel = new int[Integer.bitCount(mask)];
+                for (int i = 0, k = 0; i < n; i++) if ((mask & (1 << i)) != 0) sel[k++] = branchStarts[i];
+                hasAll |= Arrays.equals(sel, branchStarts);
                 selections.add(sel);
                 emitted++;
             }
-            if (!branchStarts.isEmpty() && !selections.contains(branchStarts) && selections.size() >= opt.inclusiveMaxSubsets) {
-                selections.add(new ArrayList<>(branchStarts));
+            if (!hasAll && selections.size() >= opt.inclusiveMaxSubsets) {
+                selections.add(branchStarts.clone());
             }
         }
         return selections;
     }
 
-    private int indexOfDeque(Deque<String> dq, String id) {
-        int i = 0;
-        for (String s : dq) { if (Objects.equals(s, id)) return i; i++; }
-        return -1;
-    }
-
-    private List<String> findJoinCandidates(
-            Graph g, String forkId, GatewayType type,
-            List<String> starts, Map<String, Map<String,Integer>> distByStart
-    ) {
-        Set<String> candidates = new HashSet<>();
-        for (FlowNode n : g.nodeById.values()) {
-            if (!(n instanceof Gateway) || n.getId().equals(forkId)) continue;
-            if (n.getIncoming() == null) continue;
-
-            // (4) Longgarkan syarat incoming-size bila subset hanya 1 cabang (untuk Inclusive)
-            int inSize = n.getIncoming().size();
-            boolean requireMultiIn = (type == GatewayType.PARALLEL) || (starts.size() > 1);
-            if (requireMultiIn && inSize <= 1) continue;
+    private int[] findJoinCandidates(Graph g, int fork, GatewayType type, int[] starts) {
+        // (4) Longgarkan syarat incoming-size bila subset hanya 1 cabang (untuk Inclusive)
+        boolean requireMultiIn = (type == GatewayType.PARALLEL) || (starts.length > 1);
+        int[] candidates = g.joins.candidates(g, fork, type, requireMultiIn);
 
-            boolean typeMatch = (type == GatewayType.PARALLEL && n instanceof ParallelGateway)
-                    || (type == GatewayType.INCLUSIVE && n instanceof InclusiveGateway);
-            if (!typeMatch) continue;
-            candidates.add(n.getId());
-        }
-
-        List<String> result = new ArrayList<>();
-        for (String j : candidates) {
+        int[] result = new int[candidates.length];
+        int size = 0;
+        for (int j : candidates) {
             boolean ok = true;
-            for (String s : starts) {
-                Map<String,Integer> d = distByStart.get(s);
-                if (d == null || !d.containsKey(j)) { ok = false; break; }
-                if (d.get(j) <= 0) { ok = false; break; }
+            for (int s : starts) {
+                if (g.joins.dist(g, s)[j] <= 0) { ok = false; break; }
             }
-            if (ok) result.add(j);
+            if (ok) result[size++] = j;
         }
-        return result;
+        return Arrays.copyOf(result, size);
     }
 
-    private String pickBestJoin(
-            List<String> joins, List<String> starts,
-            Map<String, Map<String,Integer>> distByStart
-    ) {
-        String best = null; int bestScore = Integer.MAX_VALUE;
-        for (String j : joins) {
+    private int pickBestJoin(Graph g, int[] joins, int[] starts) {
+        int best = -1; int bestScore = Integer.MAX_VALUE;
+        for (int j : joins) {
             int sum = 0; boolean ok = true;
-            for (String s : starts) {
-                Integer d = distByStart.getOrDefault(s, Collections.emptyMap()).get(j);
-                if (d == null) { ok = false; break; }
+            for (int s : starts) {
+                int d = g.joins.dist(g, s)[j];
+                if (d < 0) { ok = false; break; }
                 sum += d;
             }
             if (ok && sum < bestScore) { bestScore = sum; best = j; }
@@ -897,72 +1491,81 @@ public class DfsService {
         return best;
     }
 
-    private boolean canAnyReach(Graph g, List<String> starts, String targetId) {
-        for (String s : starts) {
-            if (isReachable(g, s, targetId, new HashSet<>())) return true;
+    /** Inclusive Join konservatif: buang join yang masih bisa dicapai cabang yang TIDAK terpilih. */
+    private int[] dropReachableFromUnselected(Graph g, int[] joins, int[] branchStarts, int[] selected) {
+        int[] notSelected = new int[branchStarts.length];
+        int ns = 0;
+        outer:
+        for (int s : branchStarts) {
+            for (int t : selected) if (t == s) continue outer;
+            notSelected[ns++] = s;
+        }
+        notSelected = Arrays.copyOf(notSelected, ns);
+
+        int[] kept = new int[joins.length];
+        int size = 0;
+        for (int j : joins) if (!canAnyReach(g, notSelected, j)) kept[size++] = j;
+        return Arrays.copyOf(kept, size);
+    }
+
+    private boolean canAnyReach(Graph g, int[] starts, int target) {
+        Reachability reach = g.reachability();
+        for (int s : starts) {
+            if (reach.reaches(s, target)) return true;
         }
         return false;
     }
 
-    private Map<String,Integer> bfsDistances(Graph g, String startId) {
-        Map<String,Integer> dist = new HashMap<>();
-        ArrayDeque<String> q = new ArrayDeque<>();
-        dist.put(startId, 0); q.add(startId);
-        while (!q.isEmpty()) {
-            String u = q.poll();
-            int du = dist.get(u);
-            for (String v : g.outgoing.getOrDefault(u, Collections.emptyList())) {
-                if (!dist.containsKey(v)) { dist.put(v, du + 1); q.add(v); }
+    /** Jarak BFS (jumlah edge) dari startId ke tiap node; -1 = tidak terjangkau. */
+    private static int[] bfsDistances(Graph g, int start) {
+        int[] dist = new int[g.size];
+        Arrays.fill(dist, -1);
+        int[] q = new int[g.size];
+        int head = 0, tail = 0;
+        dist[start] = 0; q[tail++] = start;
+        while (head < tail) {
+            int u = q[head++];
+            for (int i = g.outStart[u]; i < g.outStart[u + 1]; i++) {
+                int v = g.outAdj[i];
+                if (dist[v] < 0) { dist[v] = dist[u] + 1; q[tail++] = v; }
             }
         }
         return dist;
     }
 
-    private List<String> shortestPathTo(Graph g, String startId, String targetId) {
-        Map<String,String> prev = new HashMap<>();
-        ArrayDeque<String> q = new ArrayDeque<>();
-        Set<String> seen = new HashSet<>();
-        q.add(startId); seen.add(startId);
-        while (!q.isEmpty()) {
-            String u = q.poll();
-            if (u.equals(targetId)) break;
-            for (String v : g.outgoing.getOrDefault(u, Collections.emptyList())) {
-                if (seen.add(v)) { prev.put(v, u); q.add(v); }
+    private static int[] shortestPathTo(Graph g, int start, int target) {
+        int[] prev = new int[g.size];
+        Arrays.fill(prev, -1);
+        boolean[] seen = new boolean[g.size];
+        int[] q = new int[g.size];
+        int head = 0, tail = 0;
+        q[tail++] = start; seen[start] = true;
+        while (head < tail) {
+            int u = q[head++];
+            if (u == target) break;
+            for (int i = g.outStart[u]; i < g.outStart[u + 1]; i++) {
+                int v = g.outAdj[i];
+                if (!seen[v]) { seen[v] = true; prev[v] = u; q[tail++] = v; }
             }
         }
-        if (!startId.equals(targetId) && !prev.containsKey(targetId)) return null;
-        ArrayDeque<String> stack = new ArrayDeque<>();
-        String cur = targetId; stack.addFirst(cur);
-        while (!cur.equals(startId)) {
-            cur = prev.get(cur);
-            if (cur == null) return null;
-            stack.addFirst(cur);
-        }
-        return new ArrayList<>(stack);
+        if (start != target && prev[target] < 0) return null;
+        int len = 1;
+        for (int cur = target; cur != start; cur = prev[cur]) len++;
+        int[] out = new int[len];
+        for (int cur = target, k = len - 1; k >= 0; cur = (k > 0 ? prev[cur] : cur), k--) out[k] = cur;
+        return out;
     }
 
-    private boolean isReachable(Graph g, String from, String to, Set<String> visited) {
-        if (from.equals(to)) return true;
-        if (visited.contains(from)) return false;
-        visited.add(from);
-        for (String next : g.outgoing.getOrDefault(from, Collections.emptyList())) {
-            if (isReachable(g, next, to, visited)) return true;
-        }
-        return false;
-    }
 
     /* ===================== Gateway Predicates ===================== */
 
-    private boolean isExclusiveFork(FlowNode node, Graph g) {
-        boolean xor = (node instanceof ExclusiveGateway) &&
-                g.outgoing.getOrDefault(node.getId(), Collections.emptyList()).size() > 1;
-        boolean evbExclusive = isEventBasedExclusive(node) &&
-                g.outgoing.getOrDefault(node.getId(), Collections.emptyList()).size() > 1;
-        return xor || evbExclusive;
+    private static int gatewayType(int kind) {
+        return (kind >>> GW_SHIFT) & GW_MASK;
     }
 
-    private boolean isEventBasedGateway(FlowNode n) {
-        return n instanceof EventBasedGateway;
+    private boolean isExclusiveFork(Graph g, int node) {
+        int gw = gatewayType(g.kind[node]);
+        return (gw == GW_EXCLUSIVE || gw == GW_EVENT_EXCLUSIVE) && g.outDegree(node) > 1;
     }
 
     // Lebih kokoh: coba enum via refleksi, fallback ke attribute string
@@ -977,258 +1580,457 @@ public class DfsService {
         return t.equalsIgnoreCase("Parallel");
     }
 
-    private boolean isEventBasedExclusive(FlowNode n) {
-        if (!(n instanceof EventBasedGateway)) return false;
-        try {
-            Object enumVal = n.getClass().getMethod("getEventGatewayType").invoke(n);
-            if (enumVal != null) return enumVal.toString().equalsIgnoreCase("Exclusive");
-            return true; // null → default Exclusive
-        } catch (Exception ignore) {}
-        String t = ((EventBasedGateway) n).getAttributeValue("eventGatewayType");
-        return (t == null || t.isBlank()) || t.equalsIgnoreCase("Exclusive");
-    }
-
-    /* ===================== Flow helpers — plain ===================== */
-
-    private void goOutgoing(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                            Map<String, Integer> visitCount, Consumer<List<String>> sink,
-                            Counter counter, long deadline, Options opt) {
-        List<String> outs = g.outgoing.getOrDefault(nodeId, Collections.emptyList());
-        int limit = Math.min(outs.size(), opt.genericFanoutCap);
-        for (int i = 0; i < limit; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsRoot(g, outs.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-        }
-    }
-
-    private void goBoundary(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                            Map<String, Integer> visitCount, Consumer<List<String>> sink,
-                            Counter counter, long deadline, Options opt) {
-        List<String> bes = g.boundary.getOrDefault(nodeId, Collections.emptyList());
-        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
-        for (int i = 0; i < blim; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsRoot(g, bes.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-        }
-    }
-
-    private void goMessage(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                           Map<String, Integer> visitCount, Consumer<List<String>> sink,
-                           Counter counter, long deadline, Options opt) {
-        List<String> tgts = g.messageTargets.getOrDefault(nodeId, Collections.emptyList());
-        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
-        for (int i = 0; i < mlim; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsRoot(g, tgts.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-        }
-    }
-
-    private void goOutgoingInside(Graph g, String nodeId, String parentSpId, Deque<String> path,
-                                  Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-                                  Consumer<List<String>> sink, Counter counter, long deadline, Options opt) {
-        List<String> outs = g.outgoing.getOrDefault(nodeId, Collections.emptyList());
-        int limit = Math.min(outs.size(), opt.genericFanoutCap);
-        for (int i = 0; i < limit; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsInsideSP(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-        }
-    }
-
-    private void goBoundaryInside(Graph g, String nodeId, String parentSpId, Deque<String> path,
-                                  Set<String> visitedDepthKey, Map<String, Integer> visitCount,
-                                  Consumer<List<String>> sink, Counter counter, long deadline, Options opt) {
-        List<String> bes = g.boundary.getOrDefault(nodeId, Collections.emptyList());
-        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
-        for (int i = 0; i < blim; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsInsideSP(g, bes.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-        }
-    }
-
-    private void goMessageCrossToRoot(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                                      Map<String, Integer> visitCount, Consumer<List<String>> sink,
-                                      Counter counter, long deadline, Options opt) {
-        List<String> tgts = g.messageTargets.getOrDefault(nodeId, Collections.emptyList());
-        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
-        for (int i = 0; i < mlim; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsRoot(g, tgts.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
-        }
-    }
-
     /* ===================== Flow helpers — annotated ===================== */
 
-    private void goOutgoingAnn(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                               Map<String, Integer> visitCount, List<Group> groups,
+    private void goOutgoingAnn(Graph g, int node, VisitState vs, List<Group> groups,
                                Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt) {
-        List<String> outs = g.outgoing.getOrDefault(nodeId, Collections.emptyList());
-        int limit = Math.min(outs.size(), opt.genericFanoutCap);
-        for (int i = 0; i < limit; i++) {
+        int from = g.outStart[node];
+        int limit = Math.min(g.outStart[node + 1], from + opt.genericFanoutCap);
+        for (int i = from; i < limit; i++) {
             if (overBudget(counter, deadline, opt)) break;
-            dfsRootAnn(g, outs.get(i), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            dfsRootAnn(g, g.outAdj[i], vs, groups, sink, counter, deadline, opt);
         }
     }
 
-    private void goBoundaryAnn(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                               Map<String, Integer> visitCount, List<Group> groups,
+    private void goBoundaryAnn(Graph g, int node, VisitState vs, List<Group> groups,
                                Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt) {
-        List<String> bes = g.boundary.getOrDefault(nodeId, Collections.emptyList());
-        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
-        for (int i = 0; i < blim; i++) {
+        int from = g.boundaryStart[node];
+        int blim = Math.min(g.boundaryStart[node + 1], from + opt.boundaryFanoutCap);
+        for (int i = from; i < blim; i++) {
             if (overBudget(counter, deadline, opt)) break;
-            dfsRootAnn(g, bes.get(i), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            dfsRootAnn(g, g.boundaryAdj[i], vs, groups, sink, counter, deadline, opt);
         }
     }
 
-    private void goMessageAnn(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                              Map<String, Integer> visitCount, List<Group> groups,
+    private void goMessageAnn(Graph g, int node, VisitState vs, List<Group> groups,
                               Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt) {
-        List<String> tgts = g.messageTargets.getOrDefault(nodeId, Collections.emptyList());
-        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
-        for (int i = 0; i < mlim; i++) {
+        int from = g.messageStart[node];
+        int mlim = Math.min(g.messageStart[node + 1], from + opt.messageFanoutCap);
+        for (int i = from; i < mlim; i++) {
             if (overBudget(counter, deadline, opt)) break;
-            dfsRootAnn(g, tgts.get(i), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            dfsRootAnn(g, g.messageAdj[i], vs, groups, sink, counter, deadline, opt);
         }
     }
 
-    private void goOutgoingInsideAnn(Graph g, String nodeId, String parentSpId, Deque<String> path,
-                                     Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+    private void goOutgoingInsideAnn(Graph g, int node, int parentSp, VisitState vs,
                                      List<Group> groups, Consumer<AnnotatedPath> sink,
                                      Counter counter, long deadline, Options opt) {
-        List<String> outs = g.outgoing.getOrDefault(nodeId, Collections.emptyList());
-        int limit = Math.min(outs.size(), opt.genericFanoutCap);
-        for (int i = 0; i < limit; i++) {
+        int from = g.outStart[node];
+        int limit = Math.min(g.outStart[node + 1], from + opt.genericFanoutCap);
+        for (int i = from; i < limit; i++) {
             if (overBudget(counter, deadline, opt)) break;
-            dfsInsideSPAnn(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            dfsInsideSPAnn(g, g.outAdj[i], parentSp, vs, groups, sink, counter, deadline, opt);
         }
     }
 
-    private void goBoundaryInsideAnn(Graph g, String nodeId, String parentSpId, Deque<String> path,
-                                     Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+    private void goBoundaryInsideAnn(Graph g, int node, int parentSp, VisitState vs,
                                      List<Group> groups, Consumer<AnnotatedPath> sink,
                                      Counter counter, long deadline, Options opt) {
-        List<String> bes = g.boundary.getOrDefault(nodeId, Collections.emptyList());
-        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
-        for (int i = 0; i < blim; i++) {
+        int from = g.boundaryStart[node];
+        int blim = Math.min(g.boundaryStart[node + 1], from + opt.boundaryFanoutCap);
+        for (int i = from; i < blim; i++) {
             if (overBudget(counter, deadline, opt)) break;
-            dfsInsideSPAnn(g, bes.get(i), parentSpId, path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
+            dfsInsideSPAnn(g, g.boundaryAdj[i], parentSp, vs, groups, sink, counter, deadline, opt);
         }
     }
 
-    private void goMessageCrossToRootAnn(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
-                                         Map<String, Integer> visitCount, List<Group> groups,
+    private void goMessageCrossToRootAnn(Graph g, int node, VisitState vs, List<Group> groups,
                                          Consumer<AnnotatedPath> sink, Counter counter, long deadline, Options opt) {
-        List<String> tgts = g.messageTargets.getOrDefault(nodeId, Collections.emptyList());
-        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
-        for (int i = 0; i < mlim; i++) {
-            if (overBudget(counter, deadline, opt)) break;
-            dfsRootAnn(g, tgts.get(i), path, visitedDepthKey, visitCount, groups, sink, counter, deadline, opt);
-        }
+        goMessageAnn(g, node, vs, groups, sink, counter, deadline, opt);
     }
 
     /* ===================== Enter/Leave & Budget ===================== */
 
-    private boolean enterNode(String currentId, Deque<String> path, Set<String> visitedDepthKey,
-                              Map<String, Integer> visitCount, Options opt) {
-        if (path.size() >= opt.maxDepth) return false;
+    private boolean enterNode(int node, VisitState vs, Options opt) {
+        if (vs.size >= opt.maxDepth) return false;
+
+        // revisit window: posisi kemunculan terakhir node harus di luar W langkah terakhir
+        int last = vs.lastPos[node];
+        if (opt.revisitWindow > 0 && last >= 0 && last >= vs.size - opt.revisitWindow) return false;
+
+        if (vs.count[node] >= opt.maxVisitsPerNode) return false;
+        if (vs.occupies(node, vs.size)) return false;
+
+        vs.push(node);
+        return true;
+    }
+
+    private void leaveNode(VisitState vs) {
+        vs.pop();
+    }
 
-        if (opt.revisitWindow > 0) {
-            int seen = 0;
-            for (Iterator<String> it = path.descendingIterator(); it.hasNext() && seen < opt.revisitWindow; seen++) {
-                if (Objects.equals(it.next(), currentId)) return false;
+    /**
+     * State kunjungan DFS tanpa alokasi per langkah.
+     * - path      : int[] node (dipakai ulang, tumbuh bila perlu)
+     * - count     : jumlah kemunculan node di path (pengganti Map visitCount)
+     * - lastPos   : posisi kemunculan terakhir node di path (-1 = tidak ada);
+     *               prevPos[d] menyimpan nilai lama saat node didorong ke depth d,
+     *               sehingga cek revisit window jadi O(1) tanpa menelusuri path.
+     * Kunjungan node×depth ("id#depth") selalu identik dengan pasangan (path[d], d),
+     * jadi cukup dicek langsung dari array path.
+     */
+    private static final class VisitState {
+        int[] path;
+        int[] prevPos;
+        final int[] count;
+        final int[] lastPos;
+        int size;
+
+        VisitState(int nodes, int capacity) {
+            path = new int[capacity];
+            prevPos = new int[capacity];
+            count = new int[nodes];
+            lastPos = new int[nodes];
+            Arrays.fill(lastPos, -1);
+        }
+
+        private VisitState(VisitState o) {
+            path = o.path.clone();
+            prevPos = o.prevPos.clone();
+            count = o.count.clone();
+            lastPos = o.lastPos.clone();
+            size = o.size;
+        }
+
+        VisitState copy() { return new VisitState(this); }
+
+        boolean occupies(int node, int depth) {
+            return depth < size && path[depth] == node;
+        }
+
+        void push(int node) {
+            if (size == path.length) {
+                path = Arrays.copyOf(path, size * 2);
+                prevPos = Arrays.copyOf(prevPos, size * 2);
             }
+            path[size] = node;
+            prevPos[size] = lastPos[node];
+            lastPos[node] = size;
+            count[node]++;
+            size++;
         }
 
-        int cnt = visitCount.getOrDefault(currentId, 0);
-        if (cnt >= opt.maxVisitsPerNode) return false;
+        void pop() {
+            int node = path[--size];
+            lastPos[node] = prevPos[size];
+            count[node]--;
+        }
 
-        String depthKey = currentId + "#" + path.size();
-        if (visitedDepthKey.contains(depthKey)) return false;
+        int indexOf(int node) {
+            for (int i = 0; i < size; i++) if (path[i] == node) return i;
+            return -1;
+        }
 
-        path.addLast(currentId);
-        visitedDepthKey.add(depthKey);
-        visitCount.put(currentId, cnt + 1);
-        return true;
+        List<String> toIds(Graph g) {
+            return toNames(g.ids);
+        }
+
+        List<String> toNames(String[] names) {
+            List<String> out = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) out.add(names[path[i]]);
+            return out;
+        }
     }
 
-    private void leaveNode(String currentId, Deque<String> path, Set<String> visitedDepthKey,
-                           Map<String, Integer> visitCount) {
-        String depthKey = currentId + "#" + (path.size() - 1);
-        visitedDepthKey.remove(depthKey);
-        path.removeLast();
-        int cnt = visitCount.getOrDefault(currentId, 0);
-        if (cnt <= 1) visitCount.remove(currentId); else visitCount.put(currentId, cnt - 1);
+    /**
+     * Budget path. Sekuensial: hitungan lokal biasa. Paralel tanpa ordered merge: budget bersama
+     * via AtomicLong. Paralel ordered: budget juga bersama — task berhenti begitu path yang pasti
+     * mendahuluinya dalam urutan DFS (Chunk sebelumnya + isi Chunk sendiri) sudah mencapai maxPaths;
+     * sisa kelebihan dipotong saat merge, supaya urutan & isi sama dengan mode sekuensial.
+     */
+    private static final class Counter {
+        long paths = 0;
+        final ParallelCtx par;
+        /** Buffer task ini (hanya mode ordered). */
+        final Chunk chunk;
+        private boolean stopped;
+        private int checks;
+
+        Counter(ParallelCtx par) { this(par, null); }
+
+        Counter(ParallelCtx par, Chunk chunk) {
+            this.par = par;
+            this.chunk = chunk;
+        }
+
+        private boolean shared() { return par != null && !par.ordered; }
+
+        boolean exhausted(Options opt) {
+            if (chunk != null) {
+                // hitung ulang berkala: batas bawah hanya naik, cukup dicek tiap beberapa langkah
+                if (!stopped && (checks++ & 63) == 0) stopped = chunk.pathsUpTo() >= opt.maxPaths;
+                return stopped;
+            }
+            return (shared() ? par.emitted.get() : paths) >= opt.maxPaths;
+        }
+
+        boolean tryEmit(Options opt) {
+            if (chunk != null) {
+                if (!stopped) stopped = chunk.pathsUpTo() >= opt.maxPaths;
+                return !stopped;
+            }
+            long n = shared() ? par.emitted.getAndIncrement() : paths++;
+            return n < opt.maxPaths;
+        }
+
+        boolean canSplit(int depth) {
+            return par != null && depth < par.splitDepth;
+        }
     }
 
-    private static final class Counter { long paths = 0; }
     private boolean overBudget(Counter c, long deadline, Options opt) {
-        if (c.paths >= opt.maxPaths) return true;
+        if (c.exhausted(opt)) return true;
         return System.nanoTime() > deadline;
     }
 
-    /* ===================== Graph build ===================== */
+    /* ===================== Parallel (ForkJoin) ===================== */
 
-    private Graph buildGraph(BpmnModelInstance model, Options opt) {
-        Graph g = new Graph();
+    private static final class ParallelCtx {
+        final int splitDepth;
+        final boolean ordered;
+        final AtomicLong emitted = new AtomicLong();
 
-        for (FlowNode n : model.getModelElementsByType(FlowNode.class)) {
-            g.nodeById.put(n.getId(), n);
-            if (isInsideSubProcess(n)) g.insideSubprocess.add(n.getId());
+        ParallelCtx(Options opt) {
+            this.splitDepth = opt.parallelSplitDepth;
+            this.ordered = opt.orderedMerge;
         }
+    }
 
-        for (StartEvent s : model.getModelElementsByType(StartEvent.class)) {
-            if (!g.insideSubprocess.contains(s.getId())) g.rootStarts.add(s);
+    /**
+     * Buffer hasil ordered merge: isinya path (List&lt;String&gt;) atau Chunk anak, sesuai urutan DFS.
+     * items hanya diubah oleh task pemilik; {@code total} (path di subtree) dibaca task lain untuk budget.
+     */
+    private static final class Chunk implements Consumer<List<String>> {
+        final List<Object> items = new ArrayList<>();
+        final AtomicLong total = new AtomicLong();
+        private final Chunk parent;
+        /** Chunk saudara sebelumnya di parent (urutan DFS). */
+        private final Chunk prev;
+        /** Path langsung milik parent yang sudah ada sebelum Chunk ini dibuat. */
+        private final long directBefore;
+        private long direct;
+        private Chunk lastChild;
+
+        Chunk() { this(null, null, 0); }
+
+        private Chunk(Chunk parent, Chunk prev, long directBefore) {
+            this.parent = parent;
+            this.prev = prev;
+            this.directBefore = directBefore;
+        }
+
+        @Override
+        public void accept(List<String> path) {
+            items.add(path);
+            direct++;
+            for (Chunk c = this; c != null; c = c.parent) c.total.incrementAndGet();
+        }
+
+        Chunk child() {
+            Chunk c = new Chunk(this, lastChild, direct);
+            lastChild = c;
+            items.add(c);
+            return c;
+        }
+
+        /**
+         * Batas bawah jumlah path yang mendahului path berikutnya dari Chunk ini: isi Chunk sendiri +
+         * semua yang sudah ada di Chunk sebelumnya pada tiap level. Hanya bisa naik.
+         */
+        long pathsUpTo() {
+            long n = total.get();
+            for (Chunk c = this; c.parent != null; c = c.parent) {
+                n += c.directBefore;
+                for (Chunk s = c.prev; s != null; s = s.prev) n += s.total.get();
+            }
+            return n;
         }
-        if (g.rootStarts.isEmpty()) throw new IllegalStateException("Tidak ada StartEvent di level root.");
 
-        for (FlowNode n : g.nodeById.values()) {
-            List<String> outs = new ArrayList<>();
-            for (SequenceFlow sf : n.getOutgoing()) {
+        @SuppressWarnings("unchecked")
+        long drainTo(Consumer<List<String>> sink, long remaining) {
+            for (Object o : items) {
+                if (remaining <= 0) break;
+                if (o instanceof Chunk) {
+                    remaining = ((Chunk) o).drainTo(sink, remaining);
+                } else {
+                    sink.accept((List<String>) o);
+                    remaining--;
+                }
+            }
+            return remaining;
+        }
+    }
+
+    private void streamParallel(Graph g, VisitState vs, Consumer<List<String>> sink, long deadline, Options opt) {
+        ParallelCtx ctx = new ParallelCtx(opt);
+        Chunk root = ctx.ordered ? new Chunk() : null;
+        Counter counter = new Counter(ctx, root);
+
+        Object lock = new Object();
+        Consumer<List<String>> taskSink = ctx.ordered ? root : p -> { synchronized (lock) { sink.accept(p); } };
+
+        ForkJoinPool pool = new ForkJoinPool(opt.parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    forkBranches(g, g.rootStarts, vs, taskSink, counter, deadline, opt);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        if (root != null) root.drainTo(sink, opt.maxPaths);
+    }
+
+    /** Jalankan DFS untuk tiap target sebagai task terpisah, masing-masing dengan salinan VisitState. */
+    private void forkBranches(Graph g, int[] targets, VisitState vs, Consumer<List<String>> sink,
+                              Counter counter, long deadline, Options opt) {
+        List<RecursiveAction> tasks = new ArrayList<>(targets.length);
+        for (int t : targets) {
+            if (overBudget(counter, deadline, opt)) break;
+            VisitState copy = vs.copy();
+            Chunk childChunk = (sink instanceof Chunk) ? ((Chunk) sink).child() : null;
+            Consumer<List<String>> childSink = childChunk != null ? childChunk : sink;
+            Counter childCounter = counter.shared() ? counter : new Counter(counter.par, childChunk);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    drain(new PathWalker(g, new int[]{ t }, copy, childCounter, deadline, opt, childSink), childSink);
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /* ===================== Graph build ===================== */
+
+    /**
+     * Kompilasi model sekali di awal: id → int padat, tipe node → byte flag,
+     * dan semua relasi (outgoing, boundary, message, start SubProcess) → CSR.
+     * DFS setelah ini tidak lagi menyentuh HashMap / instanceof per langkah.
+     */
+    /** Graf hanya bergantung pada includeBoundary & includeMessageFlow → di-cache per kombinasi di analysis. */
+    private Graph graphOf(ModelAnalysis analysis, Options opt) {
+        int key = (opt.includeBoundary ? 1 : 0) | (opt.includeMessageFlow ? 2 : 0);
+        if (analysis.graphKey != key) {
+            analysis.graph = buildGraph(analysis, opt);
+            analysis.graphKey = key;
+        }
+        return analysis.graph;
+    }
+
+    private Graph buildGraph(ModelAnalysis analysis, Options opt) {
+        List<FlowNode> all = analysis.flowNodes();
+        int n = all.size();
+        Graph g = new Graph(n);
+
+        int idx = 0;
+        for (FlowNode node : all) {
+            g.indexOf.put(node.getId(), idx);
+            g.ids[idx] = node.getId();
+            g.nodes[idx] = node;
+            g.kind[idx] = classify(node);
+            g.inDegree[idx] = (node.getIncoming() != null) ? node.getIncoming().size() : 0;
+            idx++;
+        }
+
+        EdgeList roots = new EdgeList();
+        for (StartEvent s : analysis.startEvents()) {
+            Integer v = g.indexOf.get(s.getId());
+            if (v != null && (g.kind[v] & K_INSIDE_SP) == 0) roots.add(0, v);
+        }
+        if (roots.size == 0) throw new IllegalStateException("Tidak ada StartEvent di level root.");
+        g.rootStarts = Arrays.copyOf(roots.dst, roots.size);
+
+        // Outgoing: langsung dalam urutan node (CSR)
+        EdgeList outs = new EdgeList();
+        int gwCount = 0;
+        for (int v = 0; v < n; v++) {
+            g.outStart[v] = outs.size;
+            for (SequenceFlow sf : g.nodes[v].getOutgoing()) {
                 FlowNode tgt = sf.getTarget();
-                if (tgt != null) outs.add(tgt.getId());
+                if (tgt == null) continue;
+                Integer t = g.indexOf.get(tgt.getId());
+                if (t != null) outs.add(v, t);
             }
-            if (!outs.isEmpty()) g.outgoing.put(n.getId(), outs);
+            if (gatewayType(g.kind[v]) != GW_NONE) gwCount++;
+        }
+        g.outStart[n] = outs.size;
+        g.outAdj = Arrays.copyOf(outs.dst, outs.size);
 
-            if (n instanceof Gateway) g.allGateways.add((Gateway) n);
+        // Gateway dalam urutan iterasi indexOf (dipakai findJoinCandidates)
+        g.gatewaysInMapOrder = new int[gwCount];
+        int gi = 0;
+        for (int v : g.indexOf.values()) {
+            if (gatewayType(g.kind[v]) != GW_NONE) g.gatewaysInMapOrder[gi++] = v;
         }
 
+        EdgeList boundary = new EdgeList();
         if (opt.includeBoundary) {
-            for (BoundaryEvent be : model.getModelElementsByType(BoundaryEvent.class)) {
+            for (BoundaryEvent be : analysis.boundaryEvents()) {
                 if (be.getAttachedTo() == null) continue;
-                String hostId = be.getAttachedTo().getId();
-                g.boundary.computeIfAbsent(hostId, k -> new ArrayList<>()).add(be.getId());
+                Integer host = g.indexOf.get(be.getAttachedTo().getId());
+                Integer b = g.indexOf.get(be.getId());
+                if (host != null && b != null) boundary.add(host, b);
             }
         }
-
-        for (SubProcess sp : model.getModelElementsByType(SubProcess.class)) {
-            if (isEventSubProcess(sp)) {
-                g.eventSubProcesses.add(sp.getId());
-                continue;
+        g.boundaryStart = new int[n + 1];
+        g.boundaryAdj = boundary.toCsr(n, g.boundaryStart);
+
+        EdgeList spStarts = new EdgeList();
+        Arrays.fill(g.parentSp, -1);
+        for (SubProcess sp : analysis.subProcesses()) {
+            if (isEventSubProcess(sp)) continue;
+            Integer p = g.indexOf.get(sp.getId());
+            if (p == null) continue;
+            for (FlowElement e : sp.getFlowElements()) {
+                if (!(e instanceof FlowNode)) continue;
+                Integer c = g.indexOf.get(e.getId());
+                if (c == null) continue;
+                g.parentSp[c] = p;
+                if (e instanceof StartEvent) spStarts.add(p, c);
             }
-            List<String> starts = new ArrayList<>();
-            for (FlowElement e : sp.getFlowElements()) if (e instanceof StartEvent) starts.add(e.getId());
-            if (!starts.isEmpty()) g.subprocessStarts.put(sp.getId(), starts);
-
-            g.spChildren.computeIfAbsent(sp.getId(), k -> new HashSet<>());
-            for (FlowElement e : sp.getFlowElements())
-                if (e instanceof FlowNode) g.spChildren.get(sp.getId()).add(e.getId());
         }
+        g.spStartStart = new int[n + 1];
+        g.spStartAdj = spStarts.toCsr(n, g.spStartStart);
 
+        EdgeList messages = new EdgeList();
         if (opt.includeMessageFlow) {
-            for (MessageFlow mf : model.getModelElementsByType(MessageFlow.class)) {
+            for (MessageFlow mf : analysis.messageFlows()) {
                 InteractionNode src = mf.getSource();
                 InteractionNode tgt = mf.getTarget();
                 if (src instanceof FlowNode && tgt instanceof FlowNode) {
-                    String sId = ((FlowNode) src).getId();
-                    String tId = ((FlowNode) tgt).getId();
-                    g.messageTargets.computeIfAbsent(sId, k -> new ArrayList<>()).add(tId);
+                    Integer s = g.indexOf.get(((FlowNode) src).getId());
+                    Integer t = g.indexOf.get(((FlowNode) tgt).getId());
+                    if (s != null && t != null) messages.add(s, t);
                 }
             }
         }
+        g.messageStart = new int[n + 1];
+        g.messageAdj = messages.toCsr(n, g.messageStart);
 
         return g;
     }
 
+    private byte classify(FlowNode node) {
+        int k = 0;
+        if (node instanceof EndEvent) k |= K_END;
+        if (isInsideSubProcess(node)) k |= K_INSIDE_SP;
+        if (node instanceof SubProcess) {
+            k |= isEventSubProcess((SubProcess) node) ? K_EVENT_SP : K_SUBPROCESS;
+        }
+
+        int gw = GW_NONE;
+        if (node instanceof EventBasedGateway) gw = isEventBasedParallel(node) ? GW_EVENT_PARALLEL : GW_EVENT_EXCLUSIVE;
+        else if (node instanceof ParallelGateway) gw = GW_PARALLEL;
+        else if (node instanceof InclusiveGateway) gw = GW_INCLUSIVE;
+        else if (node instanceof ExclusiveGateway) gw = GW_EXCLUSIVE;
+        else if (node instanceof Gateway) gw = GW_OTHER;
+        return (byte) (k | (gw << GW_SHIFT));
+    }
+
     private boolean isInsideSubProcess(FlowNode node) {
         ModelElementInstance p = node.getParentElement();
         while (p != null) {
@@ -1240,12 +2042,14 @@ public class DfsService {
 
     /* ===================== Lane / Actor ===================== */
 
-    private Map<String, String> mapNodeToLane(BpmnModelInstance model) {
+    /** node → lane/pool/process untuk label aktor; di-cache di analysis. */
+    private Map<String, String> mapNodeToLane(ModelAnalysis analysis) {
+        if (analysis.actorLanes != null) return analysis.actorLanes;
         Map<String, String> nodeToLane = new HashMap<>(512);
         Map<String, String> processToPool = new HashMap<>(32);
         Map<String, String> nodeToProcess = new HashMap<>(1024);
 
-        for (Participant p : model.getModelElementsByType(Participant.class)) {
+        for (Participant p : analysis.participants()) {
             Process proc = p.getProcess();
             if (proc != null) {
                 String pool = safeTrim(p.getName());
@@ -1254,17 +2058,17 @@ public class DfsService {
             }
         }
 
-        for (Process proc : model.getModelElementsByType(Process.class)) {
+        for (Process proc : analysis.processes()) {
             for (FlowElement e : proc.getFlowElements())
                 if (e instanceof FlowNode) nodeToProcess.put(e.getId(), proc.getId());
         }
 
-        for (Lane lane : model.getModelElementsByType(Lane.class)) {
+        for (Lane lane : analysis.lanes()) {
             String ln = safeTrim(lane.getName());
             if (ln == null) continue;
             for (FlowNode n : lane.getFlowNodeRefs()) nodeToLane.put(n.getId(), ln);
         }
-        for (Process proc : model.getModelElementsByType(Process.class)) {
+        for (Process proc : analysis.processes()) {
             Collection<LaneSet> lsets = proc.getLaneSets();
             if (lsets == null) continue;
             for (LaneSet ls : lsets) for (Lane lane : ls.getLanes()) {
@@ -1274,7 +2078,7 @@ public class DfsService {
             }
         }
 
-        for (SubProcess sp : model.getModelElementsByType(SubProcess.class)) {
+        for (SubProcess sp : analysis.subProcesses()) {
             String ln = nodeToLane.get(sp.getId());
             if (isBlank(ln)) continue;
             assignLaneRecursive(sp, ln, nodeToLane);
@@ -1293,7 +2097,7 @@ public class DfsService {
             }
         }
 
-        for (Process proc : model.getModelElementsByType(Process.class)) {
+        for (Process proc : analysis.processes()) {
             String procName = safeTrim(proc.getName());
             if (procName == null) continue;
             boolean hasAnyLane = false;
@@ -1306,14 +2110,13 @@ public class DfsService {
             }
         }
 
-        Map<String, FlowNode> nodeById = new HashMap<>();
-        for (FlowNode n : model.getModelElementsByType(FlowNode.class)) nodeById.put(n.getId(), n);
-        for (FlowNode n : nodeById.values()) {
+        for (FlowNode n : analysis.nodeById().values()) {
             if (nodeToLane.containsKey(n.getId())) continue;
             String ln = inferFromNeighbors(n, nodeToLane);
             if (!isBlank(ln)) nodeToLane.put(n.getId(), ln);
         }
 
+        analysis.actorLanes = nodeToLane;
         return nodeToLane;
     }
 
@@ -1334,35 +2137,265 @@ public class DfsService {
 
     /* ===================== Graph Holder ===================== */
 
-    private static final class Graph {
-        final Map<String, FlowNode> nodeById = new HashMap<>(1024);
-        final Set<String> insideSubprocess = new HashSet<>(512);
-        final List<StartEvent> rootStarts = new ArrayList<>(16);
+    private static final int K_END        = 1;
+    private static final int K_INSIDE_SP  = 1 << 1;
+    private static final int K_SUBPROCESS = 1 << 2;
+    private static final int K_EVENT_SP   = 1 << 3;
+
+    private static final int GW_SHIFT = 4;
+    private static final int GW_MASK  = 7;
+    private static final int GW_NONE            = 0;
+    private static final int GW_EXCLUSIVE       = 1;
+    private static final int GW_INCLUSIVE       = 2;
+    private static final int GW_PARALLEL        = 3;
+    private static final int GW_EVENT_EXCLUSIVE = 4;
+    private static final int GW_EVENT_PARALLEL  = 5;
+    private static final int GW_OTHER           = 6;
+
+    /** Graf terkompilasi: node = index 0..size-1, relasi disimpan sebagai CSR (start[v]..start[v+1]). */
+    static final class Graph {
+        final int size;
+        final Map<String, Integer> indexOf = new HashMap<>(1024);
+        final String[] ids;
+        final FlowNode[] nodes;
+        final byte[] kind;
+        final int[] inDegree;
+        final int[] parentSp;        // SubProcess induk langsung (bukan event SP), -1 = root
+
+        int[] rootStarts;
+        int[] gatewaysInMapOrder;
+
+        final int[] outStart;
+        int[] outAdj;
+        int[] boundaryStart, boundaryAdj;
+        int[] messageStart, messageAdj;
+        int[] spStartStart, spStartAdj;
+
+        final JoinIndex joins = new JoinIndex();
+        private volatile Reachability reachability;
+
+        Graph(int n) {
+            size = n;
+            ids = new String[n];
+            nodes = new FlowNode[n];
+            kind = new byte[n];
+            inDegree = new int[n];
+            parentSp = new int[n];
+            outStart = new int[n + 1];
+        }
+
+        int outDegree(int v) { return outStart[v + 1] - outStart[v]; }
+
+        /** Index reachability (SCC + bitset), dibangun sekali saat pertama dibutuhkan. */
+        Reachability reachability() {
+            Reachability r = reachability;
+            if (r == null) {
+                synchronized (this) {
+                    r = reachability;
+                    if (r == null) reachability = r = new Reachability(this);
+                }
+            }
+            return r;
+        }
 
-        final Map<String, List<String>> outgoing = new HashMap<>(1024);
-        final Map<String, List<String>> boundary = new HashMap<>(256);
-        final Map<String, List<String>> messageTargets = new HashMap<>(512);
+        /** Salinan target outgoing v, dibatasi {@code cap} elemen pertama. */
+        int[] outgoingOf(int v, int cap) {
+            int from = outStart[v];
+            int len = Math.min(outStart[v + 1] - from, Math.max(cap, 0));
+            return Arrays.copyOfRange(outAdj, from, from + len);
+        }
+    }
 
-        final Map<String, List<String>> subprocessStarts = new HashMap<>(128);
-        final Map<String, Set<String>> spChildren = new HashMap<>(128);
+    /**
+     * Index fork→join per Graph, diisi lazy saat pertama dipakai lalu dipakai ulang selama enumerasi:
+     * - dist      : jarak BFS dari node cabang ke semua node
+     * - segments  : shortest path cabang → join (kosong = tidak terjangkau)
+     * - candidates: kandidat join per (fork, tipe, requireMultiIn) dalam urutan tie-break aslinya
+     * Map concurrent karena Graph juga dipakai bersama oleh mode paralel.
+     */
+    private static final class JoinIndex {
+        private static final int[] NONE = new int[0];
+
+        private final Map<Integer, int[]> dist = new ConcurrentHashMap<>();
+        private final Map<Long, int[]> segments = new ConcurrentHashMap<>();
+        private final Map<Long, int[]> candidates = new ConcurrentHashMap<>();
+
+        int[] dist(Graph g, int start) {
+            return dist.computeIfAbsent(start, s -> bfsDistances(g, s));
+        }
+
+        int[] segment(Graph g, int start, int join) {
+            long key = ((long) start << 32) | (join & 0xffffffffL);
+            return segments.computeIfAbsent(key, k -> {
+                int[] sp = shortestPathTo(g, start, join);
+                return sp == null ? NONE : sp;
+            });
+        }
+
+        int[] candidates(Graph g, int fork, GatewayType type, boolean requireMultiIn) {
+            long key = ((long) fork << 2) | (type.ordinal() << 1) | (requireMultiIn ? 1 : 0);
+            return candidates.computeIfAbsent(key, k -> {
+                int wanted = (type == GatewayType.PARALLEL) ? GW_PARALLEL : GW_INCLUSIVE;
+
+                // HashSet<String> sengaja dipertahankan: urutan iterasinya menentukan tie-break di pickBestJoin
+                Set<String> ids = new HashSet<>();
+                for (int n : g.gatewaysInMapOrder) {
+                    if (n == fork) continue;
+                    if (requireMultiIn && g.inDegree[n] <= 1) continue;
+                    if (gatewayType(g.kind[n]) != wanted) continue;
+                    ids.add(g.ids[n]);
+                }
+                int[] out = new int[ids.size()];
+                int i = 0;
+                for (String id : ids) out[i++] = g.indexOf.get(id);
+                return out;
+            });
+        }
+    }
 
-        final List<Gateway> allGateways = new ArrayList<>(256);
+    /**
+     * Reachability transitif lewat sequence flow: graf dikondensasi jadi SCC (Tarjan iteratif),
+     * lalu tiap komponen menyimpan bitset komponen yang bisa dicapainya (termasuk dirinya sendiri).
+     * Query reaches(a, b) = O(1), tanpa rekursi sehingga aman untuk model besar.
+     */
+    private static final class Reachability {
+        final int[] comp;          // node → id komponen
+        final int components;      // id komponen diberikan dalam urutan topologis terbalik (sink dulu)
+        final int[] compStart;     // CSR DAG kondensasi: komponen → komponen penerus (unik)
+        final int[] compAdj;
+        private final long[][] reach;
+
+        Reachability(Graph g) {
+            int n = g.size;
+            comp = new int[n];
+            Arrays.fill(comp, -1);
+
+            int[] order = new int[n];
+            int c = stronglyConnected(n, g.outStart, g.outAdj, comp, order);
+            components = c;
+
+            // DAG kondensasi (edge antar komponen, tanpa duplikat)
+            EdgeList dag = new EdgeList();
+            int[] seenFrom = new int[c];
+            Arrays.fill(seenFrom, -1);
+            for (int v : order) {
+                int k = comp[v];
+                for (int i = g.outStart[v]; i < g.outStart[v + 1]; i++) {
+                    int d = comp[g.outAdj[i]];
+                    if (d != k && seenFrom[d] != k) { seenFrom[d] = k; dag.add(k, d); }
+                }
+            }
+            compStart = new int[c + 1];
+            compAdj = dag.toCsr(c, compStart);
+
+            // Penerus selalu punya id lebih kecil → cukup satu pass naik
+            int words = (c + 63) >>> 6;
+            reach = new long[c][];
+            for (int k = 0; k < c; k++) {
+                long[] bits = new long[words];
+                bits[k >>> 6] |= 1L << k;
+                for (int i = compStart[k]; i < compStart[k + 1]; i++) {
+                    long[] succ = reach[compAdj[i]];
+                    for (int w = 0; w < words; w++) bits[w] |= succ[w];
+                }
+                reach[k] = bits;
+            }
+        }
 
-        // Event Sub-Process (triggeredByEvent=true)
-        final Set<String> eventSubProcesses = new HashSet<>(64);
+        boolean reaches(int from, int to) {
+            int t = comp[to];
+            return (reach[comp[from]][t >>> 6] & (1L << t)) != 0;
+        }
+    }
 
-        boolean isParentOf(String spId, String childNodeId) {
-            Set<String> children = spChildren.get(spId);
-            return children != null && children.contains(childNodeId);
+    /**
+     * Tarjan iteratif atas graf CSR (start/adj). comp[v] = id komponen, diberikan dalam urutan topologis
+     * terbalik (sink dulu); order = node dalam urutan pop, anggota satu komponen selalu bersebelahan.
+     * Return jumlah komponen.
+     */
+    private static int stronglyConnected(int n, int[] start, int[] adj, int[] comp, int[] order) {
+        int[] index = new int[n], low = new int[n], edgePos = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n], call = new int[n];
+        int sp = 0, counter = 0, c = 0, popped = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            int depth = 0;
+            call[depth++] = root;
+            index[root] = low[root] = counter++;
+            edgePos[root] = start[root];
+            stack[sp++] = root; onStack[root] = true;
+
+            while (depth > 0) {
+                int v = call[depth - 1];
+                if (edgePos[v] < start[v + 1]) {
+                    int w = adj[edgePos[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        edgePos[w] = start[w];
+                        stack[sp++] = w; onStack[w] = true;
+                        call[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        comp[w] = c;
+                        order[popped++] = w;
+                    } while (w != v);
+                    c++;
+                }
+                depth--;
+                if (depth > 0) {
+                    int parent = call[depth - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Daftar edge (src, dst) yang bisa tumbuh; dikonversi ke CSR dengan counting sort stabil. */
+    private static final class EdgeList {
+        int[] src = new int[16];
+        int[] dst = new int[16];
+        int size;
+
+        void add(int s, int d) {
+            if (size == src.length) {
+                src = Arrays.copyOf(src, size * 2);
+                dst = Arrays.copyOf(dst, size * 2);
+            }
+            src[size] = s; dst[size] = d; size++;
+        }
+
+        int[] toCsr(int n, int[] start) {
+            for (int i = 0; i < size; i++) start[src[i] + 1]++;
+            for (int v = 0; v < n; v++) start[v + 1] += start[v];
+            int[] adj = new int[size];
+            int[] fill = Arrays.copyOf(start, n);
+            for (int i = 0; i < size; i++) adj[fill[src[i]]++] = dst[i];
+            return adj;
         }
     }
 
     /* ===================== Debug ===================== */
 
     public void printTaskTypeAnalysis(BpmnModelInstance model) {
-        Map<String, String> nodeToLane = mapNodeToLane(model);
+        printTaskTypeAnalysis(new ModelAnalysis(model));
+    }
+
+    public void printTaskTypeAnalysis(ModelAnalysis analysis) {
+        Map<String, String> nodeToLane = mapNodeToLane(analysis);
         System.out.println("=== TASK TYPE ANALYSIS ===");
-        for (FlowNode node : model.getModelElementsByType(FlowNode.class)) {
+        for (FlowNode node : analysis.flowNodes()) {
             String type = node.getElementType().getTypeName();
             String name = node.getName() != null ? node.getName() : "N/A";
             String lane = nodeToLane.get(node.getId());
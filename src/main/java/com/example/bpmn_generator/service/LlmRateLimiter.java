@@ -0,0 +1,69 @@
+package com.example.bpmn_generator.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token bucket untuk kuota OpenAI: requests-per-minute (RPM) & tokens-per-minute (TPM).
+ * Kedua bucket terisi kontinu dengan kapasitas = kuota per menit; {@link #acquire(long)} memblok
+ * sampai 1 request + estimasi token tersedia. Satu instance per aplikasi (= satu API key),
+ * dipakai bersama semua thread generate. Kuota <= 0 berarti tidak dibatasi.
+ */
+@Component
+public class LlmRateLimiter {
+
+    private final long requestsPerMinute;
+    private final long tokensPerMinute;
+
+    private double requests;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public LlmRateLimiter(@Value("${llm.rate-limit.requests-per-minute:500}") long requestsPerMinute,
+                          @Value("${llm.rate-limit.tokens-per-minute:30000}") long tokensPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.requests = Math.max(requestsPerMinute, 0);
+        this.tokens = Math.max(tokensPerMinute, 0);
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Tunggu kuota untuk satu request dengan estimasi {@code estimatedTokens} (prompt + max_tokens).
+     * Return jumlah token yang dipesan → kirim balik ke {@link #settle(long, long)} setelah response.
+     */
+    public long acquire(long estimatedTokens) throws InterruptedException {
+        long want = tokensPerMinute > 0 ? Math.min(Math.max(estimatedTokens, 0), tokensPerMinute) : 0;
+        synchronized (this) {
+            while (true) {
+                refill();
+                boolean reqOk = requestsPerMinute <= 0 || requests >= 1;
+                boolean tokOk = tokensPerMinute <= 0 || tokens >= want;
+                if (reqOk && tokOk) {
+                    if (requestsPerMinute > 0) requests -= 1;
+                    if (tokensPerMinute > 0) tokens -= want;
+                    return want;
+                }
+                double waitReq = reqOk ? 0 : (1 - requests) * 60_000.0 / requestsPerMinute;
+                double waitTok = tokOk ? 0 : (want - tokens) * 60_000.0 / tokensPerMinute;
+                wait(Math.max(1, (long) Math.ceil(Math.max(waitReq, waitTok))));
+            }
+        }
+    }
+
+    /** Koreksi bucket dengan pemakaian aktual (usage.total_tokens); selisih lebih dikembalikan. */
+    public synchronized void settle(long reserved, long actualTokens) {
+        if (tokensPerMinute <= 0 || actualTokens < 0) return;
+        refill();
+        tokens = Math.min(tokensPerMinute, tokens + (reserved - actualTokens));
+        if (actualTokens < reserved) notifyAll();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double minutes = (now - lastRefillNanos) / 60_000_000_000.0;
+        lastRefillNanos = now;
+        if (requestsPerMinute > 0) requests = Math.min(requestsPerMinute, requests + minutes * requestsPerMinute);
+        if (tokensPerMinute > 0) tokens = Math.min(tokensPerMinute, tokens + minutes * tokensPerMinute);
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.bpmn_generator.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lapisan resilience untuk request HTTP ke LLM (dipakai ApiService):
+ * - retry dengan exponential backoff + full jitter untuk error sementara (429, 408, 5xx, timeout/koneksi);
+ * - Retry-After pada 429/503 dihormati dan berlaku global, jadi semua thread menunggu jendela yang sama;
+ * - circuit breaker: setelah N kegagalan berturut-turut request langsung ditolak (fail fast ke fallback)
+ *   selama open-seconds, lalu satu request percobaan (half-open) menentukan tutup/buka lagi;
+ * - hedging opsional: jika request belum selesai melewati p95 latency, kirim request kedua dan pakai yang lebih dulu selesai.
+ */
+@Component
+public class LlmResilience {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Dilempar saat circuit breaker open; pemanggil langsung pakai fallback. */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    @Value("${llm.resilience.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${llm.resilience.base-backoff-ms:500}")
+    private long baseBackoffMs;
+
+    @Value("${llm.resilience.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+
+    /** Retry-After lebih lama dari ini → tidak ditunggu, request dianggap gagal. */
+    @Value("${llm.resilience.max-retry-after-seconds:120}")
+    private long maxRetryAfterSeconds;
+
+    @Value("${llm.resilience.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${llm.resilience.breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${llm.resilience.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    /** Sampel latency minimum sebelum p95 dipakai sebagai ambang hedging. */
+    @Value("${llm.resilience.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    /** Batas bawah ambang hedging, supaya request cepat tidak ikut digandakan. */
+    @Value("${llm.resilience.hedge.min-delay-ms:1000}")
+    private long hedgeMinDelayMs;
+
+    private static final int LATENCY_WINDOW = 200;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    private volatile long throttledUntilNanos;
+
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount;
+    private int latencyNext;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private final ExecutorService hedgePool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "llm-hedge-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    @PreDestroy
+    void shutdownHedgePool() {
+        hedgePool.shutdownNow();
+    }
+
+    /**
+     * Jalankan {@code call} dengan retry/backoff/circuit breaker. {@code hedge} hanya untuk request
+     * yang aman diulang paralel (bukan streaming). Exception terakhir dilempar ulang jika semua attempt gagal.
+     */
+    public <T> T call(Callable<T> call, boolean hedge) throws InterruptedException {
+        calls.incrementAndGet();
+        for (int attempt = 1; ; attempt++) {
+            awaitThrottleWindow();
+            acquirePermission();
+            try {
+                T result = attempt(call, hedge);
+                onSuccess();
+                return result;
+            } catch (InterruptedException ie) {
+                releaseProbe();
+                throw ie;
+            } catch (Exception e) {
+                boolean retryable = isRetryable(e);
+                onFailure(e, retryable);
+                long retryAfterMs = retryAfterMillis(e);
+                if (!retryable || attempt >= maxAttempts || retryAfterMs > maxRetryAfterSeconds * 1000
+                        || !isCallPermitted()) {
+                    throw propagate(e);
+                }
+                long waitMs = Math.max(retryAfterMs, backoffMillis(attempt));
+                if (retryAfterMs > 0) {
+                    throttled.incrementAndGet();
+                    // satu 429 menahan semua thread: mereka menunggu jendela yang sama, bukan retry sendiri-sendiri
+                    long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMs);
+                    if (until > throttledUntilNanos) throttledUntilNanos = until;
+                }
+                retries.incrementAndGet();
+                System.err.println("🔁 LLM request gagal (" + describe(e) + "), retry " + attempt + "/" + (maxAttempts - 1)
+                        + " dalam " + waitMs + " ms");
+                Thread.sleep(waitMs);
+            }
+        }
+    }
+
+    /** Backoff full jitter: acak di [0, min(max, base * 2^(attempt-1))]. */
+    public long backoffMillis(int attempt) {
+        long cap = Math.min(maxBackoffMs, baseBackoffMs << Math.min(20, Math.max(0, attempt - 1)));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /** false jika circuit breaker sedang open (request akan langsung ditolak). */
+    public synchronized boolean isCallPermitted() {
+        return state != State.OPEN || System.nanoTime() - openedAtNanos >= TimeUnit.SECONDS.toNanos(openSeconds);
+    }
+
+    private synchronized void acquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < TimeUnit.SECONDS.toNanos(openSeconds)) {
+                shortCircuited.incrementAndGet();
+                throw new CircuitOpenException("LLM circuit breaker open, request ditolak tanpa memanggil API");
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+            System.out.println("🟡 LLM circuit breaker half-open, mengirim request percobaan");
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                shortCircuited.incrementAndGet();
+                throw new CircuitOpenException("LLM circuit breaker half-open, menunggu hasil request percobaan");
+            }
+            probeInFlight = true;
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) System.out.println("🟢 LLM circuit breaker closed");
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    private synchronized void onFailure(Exception e, boolean retryable) {
+        probeInFlight = false;
+        // hanya gangguan provider (5xx/timeout/koneksi) yang menghitung; 429 = throttling, 4xx lain = request salah
+        if (!retryable || statusOf(e) == 429) {
+            if (state == State.HALF_OPEN) state = State.CLOSED;
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                System.err.println("🔴 LLM circuit breaker open selama " + openSeconds + " s setelah "
+                        + consecutiveFailures + " kegagalan berturut-turut");
+            }
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    private void awaitThrottleWindow() throws InterruptedException {
+        long waitNanos = throttledUntilNanos - System.nanoTime();
+        if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    private <T> T attempt(Callable<T> call, boolean hedge) throws Exception {
+        long p95 = (hedge && hedgeEnabled) ? p95Millis() : -1;
+        if (p95 < 0) return timed(call);
+        long thresholdMs = Math.max(p95, hedgeMinDelayMs);
+
+        ExecutorCompletionService<T> ecs = new ExecutorCompletionService<>(hedgePool);
+        List<Future<T>> running = new ArrayList<>(2);
+        try {
+            running.add(ecs.submit(() -> timed(call)));
+            Future<T> done = ecs.poll(thresholdMs, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                hedges.incrementAndGet();
+                running.add(ecs.submit(() -> timed(call)));
+                done = ecs.take();
+            }
+            try {
+                T result = done.get();
+                if (running.size() > 1 && done == running.get(1)) hedgeWins.incrementAndGet();
+                return result;
+            } catch (ExecutionException first) {
+                // request pertama yang selesai gagal → tunggu yang lain jika masih jalan
+                if (running.size() < 2) throw unwrap(first);
+                try {
+                    return ecs.take().get();
+                } catch (ExecutionException second) {
+                    throw unwrap(second);
+                }
+            }
+        } finally {
+            for (Future<T> f : running) f.cancel(true);
+        }
+    }
+
+    private <T> T timed(Callable<T> call) throws Exception {
+        long start = System.nanoTime();
+        T result = call.call();
+        recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    private synchronized void recordLatency(long ms) {
+        latencies[latencyNext] = ms;
+        latencyNext = (latencyNext + 1) % LATENCY_WINDOW;
+        if (latencyCount < LATENCY_WINDOW) latencyCount++;
+    }
+
+    /** p95 latency request sukses terakhir, atau -1 jika sampel belum cukup. */
+    synchronized long p95Millis() {
+        if (latencyCount < Math.max(1, hedgeMinSamples)) return -1;
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(latencyCount * 0.95) - 1];
+    }
+
+    static boolean isRetryable(Throwable e) {
+        int status = statusOf(e);
+        if (status > 0) return status == 408 || status == 429 || status >= 500;
+        return e instanceof ResourceAccessException || e instanceof IOException;
+    }
+
+    private static int statusOf(Throwable e) {
+        return (e instanceof RestClientResponseException r) ? r.getStatusCode().value() : -1;
+    }
+
+    /** Retry-After (detik atau HTTP-date) / retry-after-ms dari response error, 0 jika tidak ada. */
+    static long retryAfterMillis(Throwable e) {
+        if (!(e instanceof RestClientResponseException r) || r.getResponseHeaders() == null) return 0;
+        HttpHeaders headers = r.getResponseHeaders();
+        try {
+            String ms = headers.getFirst("retry-after-ms");
+            if (ms != null) return Math.max(0, (long) Double.parseDouble(ms.trim()));
+            String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (value == null || value.isBlank()) return 0;
+            value = value.trim();
+            if (value.chars().allMatch(Character::isDigit)) return Long.parseLong(value) * 1000;
+            ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (RuntimeException ignored) {
+            return 0;
+        }
+    }
+
+    private static String describe(Exception e) {
+        int status = statusOf(e);
+        return status > 0 ? "HTTP " + status : e.getClass().getSimpleName();
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        return (e.getCause() instanceof Exception cause) ? cause : e;
+    }
+
+    private static RuntimeException propagate(Exception e) {
+        return (e instanceof RuntimeException re) ? re : new IllegalStateException(e.getMessage(), e);
+    }
+
+    /** Status breaker dan counter sejak aplikasi start. */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("state", state.name());
+        out.put("consecutiveFailures", consecutiveFailures);
+        out.put("calls", calls.get());
+        out.put("retries", retries.get());
+        out.put("throttled", throttled.get());
+        out.put("shortCircuited", shortCircuited.get());
+        out.put("hedgeEnabled", hedgeEnabled);
+        out.put("hedges", hedges.get());
+        out.put("hedgeWins", hedgeWins.get());
+        long p95 = p95Millis();
+        out.put("p95Ms", p95 >= 0 ? p95 : null);
+        return out;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.bpmn_generator.service;
+
+import com.example.bpmn_generator.entity.LlmCacheEntry;
+import com.example.bpmn_generator.repository.LlmCacheRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache response LLM dengan key fingerprint prompt (content-addressed).
+ * Dua tier: LRU di memori (cepat, per instance) → tabel llm_cache di Postgres (persisten, lintas restart).
+ * Entry kedaluwarsa setelah TTL; ukuran dibatasi per tier (LRU di memori, last_hit_at di DB).
+ * Hit di memori tetap memperbarui last_hit_at di DB (async, paling sering sekali per touch-interval
+ * per entry) supaya entry yang sering dipakai tidak ikut terhapus oleh batas ukuran DB.
+ *
+ * Error database tidak pernah menggagalkan generate: cache dianggap miss dan request tetap ke OpenAI.
+ */
+@Service
+public class LlmResponseCache {
+
+    @Autowired
+    private LlmCacheRepository cacheRepository;
+
+    @Value("${llm.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.cache.memory-entries:1000}")
+    private int memoryEntries;
+
+    @Value("${llm.cache.max-db-entries:50000}")
+    private long maxDbEntries;
+
+    @Value("${llm.cache.ttl-hours:168}")
+    private long ttlHours;
+
+    /** Jarak minimum antar update last_hit_at untuk entry yang terus di-hit dari memori. */
+    @Value("${llm.cache.touch-interval-seconds:60}")
+    private long touchIntervalSeconds;
+
+    /** Jarak minimum antar pembersihan TTL/ukuran di DB (dijalankan oportunistik saat put). */
+    private static final long PURGE_INTERVAL_MS = 10 * 60_000L;
+
+    /** Field mutable dijaga lock {@code memory}. */
+    private static final class MemoryEntry {
+        final String content;
+        final long createdAtMs;
+        long lastTouchMs;
+        long pendingHits;
+
+        MemoryEntry(String content, long createdAtMs, long lastTouchMs) {
+            this.content = content;
+            this.createdAtMs = createdAtMs;
+            this.lastTouchMs = lastTouchMs;
+        }
+    }
+
+    /** Update last_hit_at dari hit memori, di luar thread generate. */
+    private final ExecutorService touchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "llm-cache-touch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+            if (size() > memoryEntries) {
+                memoryEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong dbHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong dbEvictions = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long lastPurgeMs;
+
+    /** SHA-256 hex dari semua parameter yang menentukan output. */
+    public String fingerprint(String model, double temperature, int maxTokens, String systemPrompt, String userPrompt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            // pemisah \0 supaya batas antar field tidak ambigu
+            for (String part : new String[]{model, Double.toString(temperature), Integer.toString(maxTokens), systemPrompt, userPrompt}) {
+                md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 tidak tersedia", e);
+        }
+    }
+
+    /** Konten response untuk fingerprint, atau null jika miss / kedaluwarsa / cache nonaktif. */
+    public String get(String fingerprint) {
+        if (!enabled) return null;
+        long ttlMs = ttlHours * 3_600_000L;
+        long now = System.currentTimeMillis();
+
+        synchronized (memory) {
+            MemoryEntry hit = memory.get(fingerprint);
+            if (hit != null) {
+                if (now - hit.createdAtMs <= ttlMs) {
+                    memoryHits.incrementAndGet();
+                    hit.pendingHits++;
+                    if (now - hit.lastTouchMs >= touchIntervalSeconds * 1000L) {
+                        touchAsync(fingerprint, hit.pendingHits);
+                        hit.pendingHits = 0;
+                        hit.lastTouchMs = now;
+                    }
+                    return hit.content;
+                }
+                memory.remove(fingerprint);
+            }
+        }
+
+        try {
+            Optional<LlmCacheEntry> row = cacheRepository.findById(fingerprint);
+            if (row.isPresent()) {
+                LlmCacheEntry entry = row.get();
+                if (entry.getCreatedAt().isAfter(LocalDateTime.now().minusHours(ttlHours))) {
+                    cacheRepository.touch(fingerprint, LocalDateTime.now(), 1);
+                    long createdMs = entry.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    synchronized (memory) {
+                        memory.put(fingerprint, new MemoryEntry(entry.getContent(), createdMs, now));
+                    }
+                    dbHits.incrementAndGet();
+                    return entry.getContent();
+                }
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            System.err.println("⚠️ LLM cache DB read gagal: " + e.getMessage());
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void touchAsync(String fingerprint, long hits) {
+        try {
+            touchExecutor.execute(() -> {
+                try {
+                    cacheRepository.touch(fingerprint, LocalDateTime.now(), hits);
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                    System.err.println("⚠️ LLM cache DB touch gagal: " + e.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public void put(String fingerprint, String model, String content) {
+        if (!enabled || content == null || content.isBlank()) return;
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            memory.put(fingerprint, new MemoryEntry(content, now, now));
+        }
+        puts.incrementAndGet();
+        try {
+            cacheRepository.save(new LlmCacheEntry(fingerprint, model, content));
+            purgeIfDue();
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            System.err.println("⚠️ LLM cache DB write gagal: " + e.getMessage());
+        }
+    }
+
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurgeMs < PURGE_INTERVAL_MS) return;
+        synchronized (this) {
+            if (now - lastPurgeMs < PURGE_INTERVAL_MS) return;
+            lastPurgeMs = now;
+        }
+        int expired = cacheRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(ttlHours));
+        int overflow = cacheRepository.deleteBeyondNewest(maxDbEntries);
+        dbEvictions.addAndGet(expired + overflow);
+        if (expired + overflow > 0) {
+            System.out.println("🧹 LLM cache: " + expired + " entry kedaluwarsa, " + overflow + " entry lebih dari batas dihapus");
+        }
+    }
+
+    /** Hapus semua entry (memori + DB). */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        cacheRepository.deleteAllInBatch();
+    }
+
+    /** Metrik hit/miss sejak aplikasi start. */
+    public Map<String, Object> stats() {
+        long hits = memoryHits.get() + dbHits.get();
+        long lookups = hits + misses.get();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("memoryHits", memoryHits.get());
+        out.put("dbHits", dbHits.get());
+        out.put("misses", misses.get());
+        out.put("hitRate", lookups > 0 ? Math.round(hits * 1000.0 / lookups) / 10.0 : 0.0);
+        out.put("puts", puts.get());
+        out.put("memoryEvictions", memoryEvictions.get());
+        out.put("dbEvictions", dbEvictions.get());
+        out.put("errors", errors.get());
+        synchronized (memory) {
+            out.put("memoryEntries", memory.size());
+        }
+        out.put("memoryCapacity", memoryEntries);
+        out.put("ttlHours", ttlHours);
+        return out;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.bpmn_generator.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hitung token secara lokal dengan BPE o200k_base (tokenizer gpt-4o, jtokkit), tanpa request ke API.
+ * Dipakai untuk budget prompt, ukuran max_tokens dan reservasi kuota TPM.
+ */
+@Component
+public class LlmTokenizer {
+
+    /** Overhead format chat: ±3 token per pesan (system + user) + 3 token awal balasan. */
+    private static final int CHAT_OVERHEAD_TOKENS = 9;
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.O200K_BASE);
+
+    public int count(String text) {
+        return (text == null || text.isEmpty()) ? 0 : encoding.countTokens(text);
+    }
+
+    /** Token input satu chat completion (system prompt + prompt user). */
+    public int countChat(String systemPrompt, String prompt) {
+        return count(systemPrompt) + count(prompt) + CHAT_OVERHEAD_TOKENS;
+    }
+}
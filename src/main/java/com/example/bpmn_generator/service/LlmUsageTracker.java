@@ -0,0 +1,280 @@
+package com.example.bpmn_generator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Akuntansi biaya LLM per panggilan ApiService (token prompt/completion, latency, retry) yang diagregasi per
+ * BpmnFile dan per user, plus kuota per user yang ditegakkan scheduler generate (BpmnResultService):
+ * - maks request LLM bersamaan per user di generationPool bersama, supaya satu model besar tidak memakai
+ *   seluruh pool dan kuota RPM/TPM organisasi;
+ * - maks token per user dalam jendela waktu; job baru ditolak dan job berjalan berhenti setelah kuota habis.
+ *
+ * Atribusi lewat ThreadLocal ({@link #attribute(Long, String)}) di thread yang memanggil ApiService.
+ * Agregat hanya di memori (hilang saat restart); counter yang sama juga dikirim ke Micrometer (llm.*) tanpa tag user
+ * supaya jumlah time series tidak tumbuh per user. Angka per user hanya lewat endpoint /llm/usage/me.
+ */
+@Component
+public class LlmUsageTracker {
+
+    /** Dilempar saat kuota token user habis. */
+    public static class QuotaExceededException extends RuntimeException {
+        public QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /** Request LLM bersamaan per user; 0 = tanpa batas. */
+    @Value("${llm.quota.user.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    /** Token (prompt + completion) per user per jendela; 0 = tanpa batas. */
+    @Value("${llm.quota.user.max-tokens:0}")
+    private long maxTokens;
+
+    @Value("${llm.quota.user.window-hours:24}")
+    private long windowHours;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private record Attribution(Long fileId, String username) {
+    }
+
+    /** Mengembalikan atribusi sebelumnya saat ditutup. */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final ThreadLocal<Attribution> CURRENT = new ThreadLocal<>();
+
+    /** Agregat panggilan; dipakai untuk global, per file dan per user. */
+    private static final class Usage {
+        private long calls;
+        private long failedCalls;
+        private long attempts;
+        private long promptTokens;
+        private long completionTokens;
+        private long latencyMs;
+        private long maxLatencyMs;
+        private long lastCallAt;
+
+        synchronized void add(int callAttempts, long prompt, long completion, long latency, boolean success) {
+            calls++;
+            if (!success) failedCalls++;
+            attempts += callAttempts;
+            promptTokens += prompt;
+            completionTokens += completion;
+            latencyMs += latency;
+            maxLatencyMs = Math.max(maxLatencyMs, latency);
+            lastCallAt = System.currentTimeMillis();
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("calls", calls);
+            out.put("failedCalls", failedCalls);
+            out.put("retries", Math.max(0, attempts - calls));
+            out.put("promptTokens", promptTokens);
+            out.put("completionTokens", completionTokens);
+            out.put("totalTokens", promptTokens + completionTokens);
+            out.put("totalLatencyMs", latencyMs);
+            out.put("avgLatencyMs", calls > 0 ? latencyMs / calls : 0);
+            out.put("maxLatencyMs", maxLatencyMs);
+            out.put("lastCallAt", lastCallAt > 0 ? lastCallAt : null);
+            return out;
+        }
+    }
+
+    /** Agregat user + slot request bersamaan + token di jendela kuota berjalan. */
+    private final class UserState {
+        final Usage usage = new Usage();
+        final Semaphore slots = new Semaphore(Math.max(1, maxConcurrentRequests), true);
+        final AtomicInteger inFlight = new AtomicInteger();
+        long windowStart = System.currentTimeMillis();
+        long windowTokens;
+
+        synchronized long tokensInWindow() {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= TimeUnit.HOURS.toMillis(windowHours)) {
+                windowStart = now;
+                windowTokens = 0;
+            }
+            return windowTokens;
+        }
+
+        synchronized void addTokens(long tokens) {
+            tokensInWindow();
+            windowTokens += tokens;
+        }
+
+        synchronized long windowResetsAt() {
+            return windowStart + TimeUnit.HOURS.toMillis(windowHours);
+        }
+    }
+
+    private final Usage total = new Usage();
+    private final Map<Long, Usage> byFile = new ConcurrentHashMap<>();
+    private final Map<String, UserState> byUser = new ConcurrentHashMap<>();
+
+    /**
+     * Satu panggilan ApiService (termasuk retry/hedging di LlmResilience). {@link #attempt()} dan
+     * {@link #tokens(long, long)} bisa dipanggil dari thread hedging; {@link #finish(boolean)} dari thread pemanggil.
+     */
+    public final class Call {
+        private final String kind;
+        private final Attribution attribution = CURRENT.get();
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong completionTokens = new AtomicLong();
+
+        private Call(String kind) {
+            this.kind = kind;
+        }
+
+        public void attempt() {
+            attempts.incrementAndGet();
+        }
+
+        public void tokens(long prompt, long completion) {
+            promptTokens.addAndGet(Math.max(0, prompt));
+            completionTokens.addAndGet(Math.max(0, completion));
+        }
+
+        public void finish(boolean success) {
+            record(this, (System.nanoTime() - startNanos) / 1_000_000, success);
+        }
+    }
+
+    /** Mulai mencatat satu panggilan dengan atribusi thread saat ini. */
+    public Call start(ScenarioGenerator.Kind kind) {
+        return new Call(kind.name().toLowerCase());
+    }
+
+    /** Panggilan LLM di thread ini sampai scope ditutup dicatat untuk file dan user ini. */
+    public Scope attribute(Long fileId, String username) {
+        Attribution previous = CURRENT.get();
+        CURRENT.set(new Attribution(fileId, username));
+        return () -> {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        };
+    }
+
+    private void record(Call call, long latencyMs, boolean success) {
+        int attempts = Math.max(1, call.attempts.get());
+        long prompt = call.promptTokens.get();
+        long completion = call.completionTokens.get();
+        total.add(attempts, prompt, completion, latencyMs, success);
+
+        Attribution attribution = call.attribution;
+        if (attribution != null && attribution.fileId() != null) {
+            byFile.computeIfAbsent(attribution.fileId(), id -> new Usage()).add(attempts, prompt, completion, latencyMs, success);
+        }
+        if (attribution != null && attribution.username() != null) {
+            UserState state = user(attribution.username());
+            state.usage.add(attempts, prompt, completion, latencyMs, success);
+            state.addTokens(prompt + completion);
+        }
+
+        if (meterRegistry != null) {
+            Counter.builder("llm.calls").tag("kind", call.kind)
+                    .tag("outcome", success ? "success" : "failure").register(meterRegistry).increment();
+            Counter.builder("llm.retries").register(meterRegistry).increment(attempts - 1);
+            Counter.builder("llm.tokens").tag("type", "prompt").register(meterRegistry).increment(prompt);
+            Counter.builder("llm.tokens").tag("type", "completion").register(meterRegistry).increment(completion);
+            Timer.builder("llm.call.latency").tag("kind", call.kind).register(meterRegistry)
+                    .record(latencyMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private UserState user(String username) {
+        return byUser.computeIfAbsent(username, u -> new UserState());
+    }
+
+    /** Lempar {@link QuotaExceededException} jika kuota token user di jendela berjalan sudah habis. */
+    public void checkTokenQuota(String username) {
+        if (username == null || maxTokens <= 0) return;
+        long used = user(username).tokensInWindow();
+        if (used >= maxTokens) {
+            throw new QuotaExceededException("Kuota token LLM user " + username + " habis (" + used + "/" + maxTokens
+                    + " token dalam " + windowHours + " jam)");
+        }
+    }
+
+    public boolean isTokenQuotaExceeded(String username) {
+        try {
+            checkTokenQuota(username);
+            return false;
+        } catch (QuotaExceededException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Ambil satu slot request LLM user; false jika belum dapat dalam {@code timeout}. Selalu true tanpa batas
+     * concurrency atau tanpa user. Setiap slot yang didapat wajib dilepas dengan {@link #releaseSlot(String)}.
+     */
+    public boolean tryAcquireSlot(String username, long timeout, TimeUnit unit) throws InterruptedException {
+        if (username == null || maxConcurrentRequests <= 0) return true;
+        UserState state = user(username);
+        if (!state.slots.tryAcquire(timeout, unit)) return false;
+        state.inFlight.incrementAndGet();
+        return true;
+    }
+
+    public void releaseSlot(String username) {
+        if (username == null || maxConcurrentRequests <= 0) return;
+        UserState state = user(username);
+        state.inFlight.decrementAndGet();
+        state.slots.release();
+    }
+
+    /** Agregat satu file sejak aplikasi start. */
+    public Map<String, Object> fileUsage(Long fileId) {
+        Usage usage = byFile.get(fileId);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("fileId", fileId);
+        out.putAll((usage != null ? usage : new Usage()).snapshot());
+        return out;
+    }
+
+    /** Agregat user sejak aplikasi start beserta status kuota. */
+    public Map<String, Object> userUsage(String username) {
+        UserState state = user(username);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("username", username);
+        out.putAll(state.usage.snapshot());
+
+        Map<String, Object> quota = new LinkedHashMap<>();
+        quota.put("maxConcurrentRequests", maxConcurrentRequests > 0 ? maxConcurrentRequests : null);
+        quota.put("inFlightRequests", state.inFlight.get());
+        quota.put("maxTokens", maxTokens > 0 ? maxTokens : null);
+        quota.put("tokensInWindow", state.tokensInWindow());
+        quota.put("windowHours", windowHours);
+        quota.put("windowResetsAt", state.windowResetsAt());
+        out.put("quota", quota);
+        return out;
+    }
+
+    /** Total semua panggilan sejak aplikasi start (tanpa rincian user lain). */
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>(total.snapshot());
+        out.put("files", byFile.size());
+        out.put("users", byUser.size());
+        return out;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.bpmn_generator.service;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.bpmn.instance.Process;
+
+import java.util.*;
+
+/**
+ * Analisis satu model BPMN yang dipakai bersama selama satu request (upload / parse):
+ * tiap tipe elemen cukup di-scan sekali lewat getModelElementsByType, lalu tabel node, lane,
+ * aktor, task type, graf DFS dan path di-cache di sini dan dibaca semua consumer
+ * (BpmnController, BpmnService, DfsService).
+ *
+ * Semua field dihitung lazy. Tidak thread-safe: buat satu instance per request.
+ * List/Map yang dikembalikan adalah cache bersama → jangan dimodifikasi.
+ */
+public class ModelAnalysis {
+
+    private final BpmnModelInstance model;
+
+    // hasil scan per tipe (urutan = urutan getModelElementsByType)
+    private List<FlowNode> flowNodes;
+    private Map<String, FlowNode> nodeById;
+    private List<FlowElement> flowElements;
+    private List<Lane> lanes;
+    private List<Participant> participants;
+    private List<Process> processes;
+    private List<SubProcess> subProcesses;
+    private List<MessageFlow> messageFlows;
+    // turunan dari flowNodes (tipe tanpa subtype → urutan sama dengan scan per tipe)
+    private List<StartEvent> startEvents;
+    private List<BoundaryEvent> boundaryEvents;
+    private List<CallActivity> callActivities;
+    private List<Transaction> transactions;
+
+    // turunan (diisi oleh service pemiliknya)
+    private Map<String, String> laneRefs;
+    Map<String, String> nodeToLane;      // BpmnService.buildNodeToLaneMapping
+    Map<String, String> actorLanes;      // DfsService.mapNodeToLane
+    Map<String, String> taskTypes;       // BpmnService.determineTaskType per node
+    List<List<String>> paths;            // DfsService.findAllPaths dengan Options default
+    DfsService.Graph graph;              // graf terkompilasi untuk graphKey
+    int graphKey = -1;
+
+    public ModelAnalysis(BpmnModelInstance model) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        this.model = model;
+    }
+
+    public BpmnModelInstance getModel() {
+        return model;
+    }
+
+    public List<FlowNode> flowNodes() {
+        if (flowNodes == null) flowNodes = new ArrayList<>(model.getModelElementsByType(FlowNode.class));
+        return flowNodes;
+    }
+
+    public Map<String, FlowNode> nodeById() {
+        if (nodeById == null) {
+            nodeById = new HashMap<>();
+            for (FlowNode n : flowNodes()) nodeById.put(n.getId(), n);
+        }
+        return nodeById;
+    }
+
+    public List<FlowElement> flowElements() {
+        if (flowElements == null) flowElements = new ArrayList<>(model.getModelElementsByType(FlowElement.class));
+        return flowElements;
+    }
+
+    public List<Lane> lanes() {
+        if (lanes == null) lanes = new ArrayList<>(model.getModelElementsByType(Lane.class));
+        return lanes;
+    }
+
+    public List<Participant> participants() {
+        if (participants == null) participants = new ArrayList<>(model.getModelElementsByType(Participant.class));
+        return participants;
+    }
+
+    public List<Process> processes() {
+        if (processes == null) processes = new ArrayList<>(model.getModelElementsByType(Process.class));
+        return processes;
+    }
+
+    public List<SubProcess> subProcesses() {
+        if (subProcesses == null) subProcesses = new ArrayList<>(model.getModelElementsByType(SubProcess.class));
+        return subProcesses;
+    }
+
+    public List<MessageFlow> messageFlows() {
+        if (messageFlows == null) messageFlows = new ArrayList<>(model.getModelElementsByType(MessageFlow.class));
+        return messageFlows;
+    }
+
+    public List<StartEvent> startEvents() {
+        if (startEvents == null) startEvents = nodesOf(StartEvent.class);
+        return startEvents;
+    }
+
+    public List<BoundaryEvent> boundaryEvents() {
+        if (boundaryEvents == null) boundaryEvents = nodesOf(BoundaryEvent.class);
+        return boundaryEvents;
+    }
+
+    public List<CallActivity> callActivities() {
+        if (callActivities == null) callActivities = nodesOf(CallActivity.class);
+        return callActivities;
+    }
+
+    public List<Transaction> transactions() {
+        if (transactions == null) transactions = nodesOf(Transaction.class);
+        return transactions;
+    }
+
+    /** node → nama lane dari Lane.flowNodeRefs (tanpa fallback pool/process). */
+    public Map<String, String> laneRefs() {
+        if (laneRefs == null) {
+            laneRefs = new HashMap<>();
+            for (Lane lane : lanes()) {
+                String laneName = lane.getName();
+                if (laneName == null || laneName.isBlank()) continue;
+                for (FlowNode node : lane.getFlowNodeRefs()) {
+                    laneRefs.put(node.getId(), laneName.trim());
+                }
+            }
+        }
+        return laneRefs;
+    }
+
+    public boolean hasLanes() {
+        return !lanes().isEmpty();
+    }
+
+    private <T extends FlowNode> List<T> nodesOf(Class<T> type) {
+        List<T> out = new ArrayList<>();
+        for (FlowNode n : flowNodes()) if (type.isInstance(n)) out.add(type.cast(n));
+        return out;
+    }
+}
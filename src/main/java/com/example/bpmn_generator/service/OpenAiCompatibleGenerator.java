@@ -0,0 +1,184 @@
+package com.example.bpmn_generator.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.*;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Backend chat-completions OpenAI (POST JSON, SSE untuk streaming). Dipakai untuk api.openai.com maupun
+ * server lokal yang kompatibel (llama.cpp server, vLLM, Ollama /v1); API key boleh kosong untuk server lokal.
+ */
+public class OpenAiCompatibleGenerator implements ScenarioGenerator {
+
+    private final String name;
+    private final String endpoint;
+    private final String apiKey;
+    private final String model;
+    private final boolean rateLimited;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public OpenAiCompatibleGenerator(String name, String endpoint, String apiKey, String model,
+                                     boolean rateLimited, RestTemplate restTemplate) {
+        this.name = name;
+        this.endpoint = endpoint;
+        this.apiKey = hasText(apiKey) && !apiKey.startsWith("${") ? apiKey : null;
+        this.model = model;
+        this.rateLimited = rateLimited;
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    /** OpenAI butuh API key (rateLimited = backend berbayar); server lokal cukup endpoint. */
+    @Override
+    public boolean isConfigured() {
+        return hasText(endpoint) && (apiKey != null || !rateLimited);
+    }
+
+    @Override
+    public boolean isRateLimited() {
+        return rateLimited;
+    }
+
+    @Override
+    public Completion complete(Request request) {
+        System.out.println("🚀 DEBUG: Sending request to " + name + " (" + model + ")...");
+
+        // 🔍 DEBUG: Make API call with detailed logging
+        ResponseEntity<Map> response = restTemplate.postForEntity(endpoint, chatRequest(request, false), Map.class);
+
+        System.out.println("✅ DEBUG: API call successful!");
+        System.out.println("🔍 DEBUG: Response status: " + response.getStatusCode());
+
+        // 🔍 DEBUG: Log response structure
+        Map responseBody = response.getBody();
+        if (responseBody == null) return new Completion(null, -1, -1);
+        System.out.println("🔍 DEBUG: Response keys: " + responseBody.keySet());
+
+        long promptTokens = -1;
+        long completionTokens = -1;
+        if (responseBody.get("usage") instanceof Map usage) {
+            if (usage.get("prompt_tokens") instanceof Number used) promptTokens = used.longValue();
+            if (usage.get("completion_tokens") instanceof Number used) completionTokens = used.longValue();
+        }
+
+        if (!(responseBody.get("choices") instanceof List<?> choices) || choices.isEmpty()) {
+            return new Completion(null, promptTokens, completionTokens);
+        }
+        System.out.println("🔍 DEBUG: Choices count: " + choices.size());
+
+        if (!(choices.get(0) instanceof Map firstChoice) || !(firstChoice.get("message") instanceof Map message)
+                || message.get("content") == null) {
+            return new Completion(null, promptTokens, completionTokens);
+        }
+        String content = message.get("content").toString();
+        System.out.println("🔍 DEBUG: Content length: " + content.length());
+        System.out.println("🔍 DEBUG: Content preview: " + content.substring(0, Math.min(300, content.length())));
+        return new Completion(content, promptTokens, completionTokens);
+    }
+
+    /**
+     * Chat completion dengan {@code stream=true}: baca event SSE "data: {...}" baris per baris dan teruskan
+     * delta konten. Usage dari chunk terakhir (stream_options.include_usage) dikembalikan untuk settle kuota dan akuntansi.
+     * Event error di tengah stream dilempar sebagai IOException (sama seperti koneksi yang terputus).
+     */
+    @Override
+    public Completion stream(Request request, Consumer<String> onDelta) {
+        StringBuilder text = new StringBuilder();
+        long[] usedTokens = {-1, -1};   // prompt, completion
+
+        System.out.println("🚀 DEBUG: Streaming request to " + name + " (" + model + ")...");
+        long startNanos = System.nanoTime();
+        restTemplate.execute(endpoint, HttpMethod.POST, restTemplate.httpEntityCallback(chatRequest(request, true)), response -> {
+            readCompletionStream(response.getBody(), delta -> {
+                text.append(delta);
+                onDelta.accept(delta);
+            }, usedTokens, startNanos);
+            return null;
+        });
+
+        System.out.println("✅ DEBUG: Stream selesai dalam " + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+        return new Completion(text.toString(), usedTokens[0], usedTokens[1]);
+    }
+
+    private void readCompletionStream(InputStream body, Consumer<String> onDelta, long[] usedTokens,
+                                      long startNanos) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        boolean first = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data:")) continue;   // komentar ": ...", baris kosong, event:
+            String data = line.substring(5).trim();
+            if (data.equals("[DONE]")) break;
+            if (data.isEmpty()) continue;
+
+            JsonNode chunk = objectMapper.readTree(data);
+            // error di tengah stream (mis. overloaded) dikirim sebagai event biasa, bukan status HTTP
+            if (chunk.hasNonNull("error")) {
+                JsonNode error = chunk.path("error");
+                throw new IOException("Stream " + name + " error: " + error.path("message").asText(error.toString()));
+            }
+            JsonNode usage = chunk.path("usage");
+            if (usage.path("prompt_tokens").isNumber()) usedTokens[0] = usage.path("prompt_tokens").asLong();
+            if (usage.path("completion_tokens").isNumber()) usedTokens[1] = usage.path("completion_tokens").asLong();
+
+            JsonNode delta = chunk.path("choices").path(0).path("delta").path("content");
+            if (delta.isTextual()) {
+                if (first) {
+                    System.out.println("⚡ DEBUG: Token pertama setelah " + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+                    first = false;
+                }
+                onDelta.accept(delta.asText());
+            }
+        }
+    }
+
+    private HttpEntity<Map<String, Object>> chatRequest(Request request, boolean stream) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (apiKey != null) headers.setBearerAuth(apiKey);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", model);
+        body.put("temperature", request.temperature());
+        body.put("max_tokens", request.maxTokens());
+        body.put("messages", List.of(
+                Map.of("role", "system", "content", request.systemPrompt()),
+                Map.of("role", "user", "content", request.prompt())
+        ));
+        if (request.responseSchema() != null) {
+            body.put("response_format", Map.of("type", "json_schema", "json_schema", Map.of(
+                    "name", request.kind().name().toLowerCase(),
+                    "strict", true,
+                    "schema", request.responseSchema())));
+        }
+        if (stream) {
+            body.put("stream", true);
+            body.put("stream_options", Map.of("include_usage", true));
+            headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+        }
+        return new HttpEntity<>(body, headers);
+    }
+
+    private static boolean hasText(String s) {
+        return s != null && !s.isBlank();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bpmn_generator.service;
+
+import java.util.*;
+
+/**
+ * Trie prefix atas langkah GPT semua path satu file. Path hasil DFS biasanya berbagi prefix panjang
+ * (start → … → gateway pertama), jadi narasi untuk prefix bersama cukup di-generate sekali.
+ *
+ * Node "naratif" = titik cabang (≥ 2 anak dan dilalui ≥ 2 path) dengan kedalaman ≥ minSharedSteps.
+ * Narasi node naratif dibangun dari narasi node naratif di atasnya + langkah tambahan, sehingga
+ * prefix bertingkat juga tidak di-generate ulang.
+ */
+final class PrefixTrie {
+
+    static final class Node {
+        final Node parent;
+        final String step;
+        final int depth;
+        int count;
+        final Map<String, Node> children = new LinkedHashMap<>();
+
+        Node(Node parent, String step, int depth) {
+            this.parent = parent;
+            this.step = step;
+            this.depth = depth;
+        }
+    }
+
+    private final Node root = new Node(null, null, 0);
+    private final int minSharedSteps;
+    private final Node[] sharedByPath;
+
+    /** {@code stepsPerPath} boleh berisi null (path tanpa steps tidak ikut trie). */
+    PrefixTrie(List<List<String>> stepsPerPath, int minSharedSteps) {
+        this.minSharedSteps = Math.max(1, minSharedSteps);
+        this.sharedByPath = new Node[stepsPerPath.size()];
+
+        for (List<String> steps : stepsPerPath) {
+            if (steps == null) continue;
+            Node n = root;
+            for (String step : steps) {
+                Node parent = n;
+                n = parent.children.computeIfAbsent(step, s -> new Node(parent, s, parent.depth + 1));
+                n.count++;
+            }
+        }
+
+        // prefix bersama terdalam per path: naratif dan masih menyisakan minimal satu langkah
+        for (int i = 0; i < stepsPerPath.size(); i++) {
+            List<String> steps = stepsPerPath.get(i);
+            if (steps == null) continue;
+            Node n = root;
+            for (int d = 0; d < steps.size() - 1; d++) {
+                n = n.children.get(steps.get(d));
+                if (isNarrated(n)) sharedByPath[i] = n;
+            }
+        }
+    }
+
+    boolean isNarrated(Node n) {
+        return n != null && n != root && n.depth >= minSharedSteps && n.count >= 2 && n.children.size() >= 2;
+    }
+
+    /** Prefix bersama terdalam untuk path ke-i, atau null jika path tidak berbagi prefix yang cukup panjang. */
+    Node sharedPrefix(int pathIndex) {
+        return sharedByPath[pathIndex];
+    }
+
+    /** Node naratif terdekat di atas {@code n}, atau null. */
+    Node narratedAncestor(Node n) {
+        for (Node p = n.parent; p != null; p = p.parent) {
+            if (isNarrated(p)) return p;
+        }
+        return null;
+    }
+
+    /** Langkah dari root sampai {@code n}. */
+    List<String> steps(Node n) {
+        String[] out = new String[n.depth];
+        for (Node p = n; p != root; p = p.parent) out[p.depth - 1] = p.step;
+        return Arrays.asList(out);
+    }
+
+    /** Jumlah path yang memakai prefix bersama. */
+    int sharedPathCount() {
+        int c = 0;
+        for (Node n : sharedByPath) if (n != null) c++;
+        return c;
+    }
+
+    /** Jumlah langkah yang tidak perlu dinarasikan ulang (Σ kedalaman prefix − narasi unik prefix). */
+    long savedSteps() {
+        long reused = 0;
+        Set<Node> narrated = new HashSet<>();
+        for (Node n : sharedByPath) {
+            if (n == null) continue;
+            reused += n.depth;
+            for (Node p = n; p != null; p = narratedAncestor(p)) narrated.add(p);
+        }
+        long unique = 0;
+        for (Node n : narrated) {
+            Node base = narratedAncestor(n);
+            unique += n.depth - (base != null ? base.depth : 0);
+        }
+        return reused - unique;
+    }
+}
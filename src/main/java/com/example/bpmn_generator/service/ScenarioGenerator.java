@@ -0,0 +1,57 @@
+package com.example.bpmn_generator.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Backend LLM yang dipakai ApiService. Prompt, cache, rate limit dan retry tetap di ApiService;
+ * backend hanya mengirim satu chat completion dan mengembalikan teksnya.
+ *
+ * Implementasi (lihat LlmProviderConfig): "openai", "local" (server OpenAI-compatible, mis. llama.cpp)
+ * dan "stub" (deterministik di dalam proses, untuk benchmark offline). Dipilih lewat llm.provider / llm.provider.bulk.
+ */
+public interface ScenarioGenerator {
+
+    /** Jenis prompt yang dikirim ApiService; REPAIR = perbaikan field structured output yang tidak valid. */
+    enum Kind { SCENARIO, BATCH, NARRATIVE, PREFIXED, REPAIR }
+
+    /**
+     * Satu chat completion. {@code responseSchema} (JSON schema, lihat ScenarioSchema) meminta structured output;
+     * null = teks bebas berformat section. {@code paths} (label langkah per jalur) dan {@code firstStep} (nomor
+     * langkah pertama yang harus ditulis) hanya dibaca backend yang tidak memahami prompt, yaitu stub.
+     */
+    record Request(Kind kind, String systemPrompt, String prompt, int maxTokens, double temperature,
+                   List<List<String>> paths, int firstStep, Map<String, Object> responseSchema) {
+    }
+
+    /** Konten balasan dan token prompt/completion dari usage (-1 jika backend tidak melaporkan). */
+    record Completion(String content, long promptTokens, long completionTokens) {
+
+        /** Total token untuk settle kuota; -1 jika usage tidak lengkap. */
+        public long totalTokens() {
+            return (promptTokens < 0 || completionTokens < 0) ? -1 : promptTokens + completionTokens;
+        }
+    }
+
+    /** Nama provider untuk llm.provider. */
+    String name();
+
+    /** Nama model; bagian dari fingerprint cache. */
+    String model();
+
+    boolean isConfigured();
+
+    /** Kuota RPM/TPM (LlmRateLimiter) hanya berlaku untuk backend berbayar. */
+    boolean isRateLimited();
+
+    /** Response boleh disimpan di LlmResponseCache. */
+    default boolean isCacheable() {
+        return true;
+    }
+
+    Completion complete(Request request) throws Exception;
+
+    /** Seperti {@link #complete(Request)}, tetapi setiap potongan teks dikirim ke {@code onDelta} begitu diterima. */
+    Completion stream(Request request, Consumer<String> onDelta) throws Exception;
+}
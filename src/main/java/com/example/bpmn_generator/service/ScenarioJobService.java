@@ -0,0 +1,367 @@
+package com.example.bpmn_generator.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Job generate scenario di background: POST langsung dapat jobId, worker pool menjalankan
+ * {@link BpmnResultService#generateScenario(Long, BpmnResultService.GenerationListener)}, dan progress
+ * (path selesai / total, fallback, ETA) bisa di-poll atau di-stream lewat SSE.
+ *
+ * Registry job hanya di memori: job hilang saat restart, job selesai dibuang setelah jobs.retention.
+ */
+@Service
+public class ScenarioJobService {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /** File sedang dipakai job generate atau generate ulang path lain; request baru ditolak (409). */
+    public static class FileBusyException extends RuntimeException {
+        public FileBusyException(String message) {
+            super(message);
+        }
+    }
+
+    @Autowired
+    private BpmnResultService bpmnResultService;
+
+    @Autowired
+    private LlmUsageTracker usageTracker;
+
+    /** Jumlah file yang di-generate bersamaan (request LLM per file tetap dibatasi generationPool). */
+    @Value("${llm.jobs.workers:2}")
+    private int workers;
+
+    @Value("${llm.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${llm.jobs.sse-timeout-minutes:30}")
+    private long sseTimeoutMinutes;
+
+    /** Jumlah generate ulang satu path (streaming) yang berjalan bersamaan. */
+    @Value("${llm.stream.workers:4}")
+    private int streamWorkers;
+
+    private final Map<String, ScenarioJob> jobs = new ConcurrentHashMap<>();
+    /** File yang sedang generate ulang satu path (streaming); dicek & diubah di bawah lock yang sama dengan submit. */
+    private final Set<Long> activeStreams = new HashSet<>();
+    private ExecutorService jobPool;
+    private ExecutorService streamPool;
+
+    @PostConstruct
+    void initJobPool() {
+        AtomicInteger seq = new AtomicInteger();
+        jobPool = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "scenario-job-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger streamSeq = new AtomicInteger();
+        streamPool = Executors.newFixedThreadPool(Math.max(1, streamWorkers), r -> {
+            Thread t = new Thread(r, "scenario-stream-" + streamSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdownJobPool() {
+        jobs.values().forEach(ScenarioJob::requestCancel);
+        jobPool.shutdownNow();
+        streamPool.shutdownNow();
+    }
+
+    /** State satu job. Counter diupdate dari thread generate, dibaca dari thread request. */
+    public static class ScenarioJob implements BpmnResultService.GenerationListener {
+        private final String id = UUID.randomUUID().toString();
+        private final Long fileId;
+        private final String owner;
+        private final boolean forceFull;   // true → semua path di-generate ulang (tanpa reuse incremental)
+        private final long createdAt = System.currentTimeMillis();
+        private volatile Status status = Status.QUEUED;
+        private volatile int total = -1;
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger reused = new AtomicInteger();
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile boolean cancelRequested;
+        private volatile String error;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        ScenarioJob(Long fileId, String owner, boolean forceFull) {
+            this.fileId = fileId;
+            this.owner = owner;
+            this.forceFull = forceFull;
+        }
+
+        public String getId() { return id; }
+        public Long getFileId() { return fileId; }
+        public String getOwner() { return owner; }
+        public Status getStatus() { return status; }
+
+        public boolean isFinished() {
+            return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+        }
+
+        void requestCancel() {
+            cancelRequested = true;
+        }
+
+        @Override
+        public void onStart(int totalPaths) {
+            total = totalPaths;
+            startedAt = System.currentTimeMillis();
+            publish("progress");
+        }
+
+        @Override
+        public void onPathDone(int index, boolean fallback) {
+            done.incrementAndGet();
+            if (fallback) failed.incrementAndGet();
+            publish("progress");
+        }
+
+        @Override
+        public void onPathReused(int index) {
+            done.incrementAndGet();
+            reused.incrementAndGet();
+            publish("progress");
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelRequested;
+        }
+
+        /** Snapshot untuk response JSON / event SSE. */
+        public Map<String, Object> snapshot() {
+            int doneNow = done.get();
+            long now = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("jobId", id);
+            out.put("fileId", fileId);
+            out.put("status", status.name());
+            out.put("total", total >= 0 ? total : null);
+            out.put("done", doneNow);
+            out.put("failed", failed.get());
+            out.put("reused", reused.get());
+            out.put("percent", total > 0 ? Math.round(doneNow * 1000.0 / total) / 10.0 : (isFinished() ? 100.0 : 0.0));
+            out.put("elapsedMs", startedAt > 0 ? now - startedAt : 0);
+            // ETA: rata-rata waktu per path yang benar-benar di-generate × sisa path
+            Long eta = null;
+            int generated = doneNow - reused.get();
+            if (status == Status.RUNNING && generated > 0 && total > doneNow) {
+                eta = (now - startedAt) * (total - doneNow) / generated / 1000;
+            }
+            out.put("etaSeconds", eta);
+            out.put("cancelRequested", cancelRequested);
+            out.put("error", error);
+            return out;
+        }
+
+        private void publish(String event) {
+            if (emitters.isEmpty()) return;
+            Map<String, Object> data = snapshot();
+            for (SseEmitter emitter : emitters) {
+                try {
+                    synchronized (emitter) {
+                        emitter.send(SseEmitter.event().name(event).data(data));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // client putus → lepas emitter
+                    emitters.remove(emitter);
+                }
+            }
+        }
+
+        private void finish(Status finalStatus) {
+            finishedAt = System.currentTimeMillis();
+            status = finalStatus;
+            publish("done");
+            for (SseEmitter emitter : emitters) emitter.complete();
+            emitters.clear();
+        }
+    }
+
+    /** Antrikan generate untuk file. Jika file sudah punya job aktif, job itu yang dikembalikan. */
+    public ScenarioJob submit(Long fileId, String owner) {
+        return submit(fileId, owner, false);
+    }
+
+    /**
+     * Seperti {@link #submit(Long, String)}; {@code forceFull} mematikan reuse hasil path yang tidak berubah.
+     * Melempar {@link LlmUsageTracker.QuotaExceededException} jika kuota token {@code owner} sudah habis, dan
+     * {@link FileBusyException} jika path file ini sedang di-generate ulang (hasilnya akan saling menimpa).
+     */
+    public synchronized ScenarioJob submit(Long fileId, String owner, boolean forceFull) {
+        evictExpired();
+        ScenarioJob active = activeJobForFile(fileId);
+        if (active != null) return active;
+        if (activeStreams.contains(fileId)) {
+            throw new FileBusyException("Path file " + fileId + " sedang di-generate ulang");
+        }
+        usageTracker.checkTokenQuota(owner);
+
+        ScenarioJob job = new ScenarioJob(fileId, owner, forceFull);
+        jobs.put(job.getId(), job);
+        jobPool.submit(() -> run(job));
+        System.out.println("📥 Job " + job.getId() + " diantrikan untuk file " + fileId);
+        return job;
+    }
+
+    private void run(ScenarioJob job) {
+        if (job.cancelRequested) {
+            job.finish(Status.CANCELLED);
+            return;
+        }
+        job.status = Status.RUNNING;
+        job.publish("progress");
+        try {
+            boolean ok = bpmnResultService.generateScenario(job.fileId, job, job.forceFull);
+            if (!ok && !job.cancelRequested && usageTracker.isTokenQuotaExceeded(job.owner)) {
+                job.error = "Kuota token LLM habis; path yang sudah selesai dipakai ulang pada generate berikutnya";
+            }
+            job.finish(ok ? Status.COMPLETED : job.cancelRequested ? Status.CANCELLED : Status.FAILED);
+        } catch (Exception e) {
+            System.err.println("❌ Job " + job.getId() + " gagal: " + e.getMessage());
+            job.error = e.getMessage();
+            job.finish(job.cancelRequested ? Status.CANCELLED : Status.FAILED);
+        }
+        System.out.println("🏁 Job " + job.getId() + " selesai: " + job.status);
+    }
+
+    public Optional<ScenarioJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /** Job yang belum selesai untuk file ini, atau null. */
+    public ScenarioJob activeJobForFile(Long fileId) {
+        return jobs.values().stream()
+                .filter(j -> j.fileId.equals(fileId) && !j.isFinished())
+                .findFirst().orElse(null);
+    }
+
+    /** File sedang dipakai job generate atau generate ulang path. */
+    public synchronized boolean isFileBusy(Long fileId) {
+        return activeJobForFile(fileId) != null || activeStreams.contains(fileId);
+    }
+
+    /** Job terbaru untuk file (aktif atau sudah selesai). */
+    public Optional<ScenarioJob> latestJobForFile(Long fileId) {
+        return jobs.values().stream()
+                .filter(j -> j.fileId.equals(fileId))
+                .max(Comparator.comparingLong(j -> j.createdAt));
+    }
+
+    /**
+     * Minta pembatalan. Path yang sedang dikirim ke LLM dibiarkan selesai, sisanya dilewati;
+     * hasil lama file tidak dihapus. Return false jika job sudah selesai.
+     */
+    public boolean cancel(ScenarioJob job) {
+        if (job.isFinished()) return false;
+        job.requestCancel();
+        job.publish("progress");
+        System.out.println("⏹️ Pembatalan diminta untuk job " + job.getId());
+        return true;
+    }
+
+    /** SSE: kirim snapshot saat ini, lalu event "progress" per path dan "done" di akhir. */
+    public SseEmitter subscribe(ScenarioJob job) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMinutes * 60_000L);
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(e -> job.emitters.remove(emitter));
+        try {
+            if (job.isFinished()) {
+                emitter.send(SseEmitter.event().name("done").data(job.snapshot()));
+                emitter.complete();
+                return emitter;
+            }
+            job.emitters.add(emitter);
+            synchronized (emitter) {
+                emitter.send(SseEmitter.event().name("progress").data(job.snapshot()));
+            }
+            // job bisa selesai di antara cek & add → pastikan stream tetap ditutup
+            if (job.isFinished()) {
+                job.emitters.remove(emitter);
+                emitter.send(SseEmitter.event().name("done").data(job.snapshot()));
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // client putus, atau finish() sudah menutup emitter ini
+            job.emitters.remove(emitter);
+        }
+        return emitter;
+    }
+
+    /**
+     * Generate ulang satu path dengan response LLM streaming. SSE: event "section" ({section, content}) per section
+     * yang selesai, lalu "done" (scenario final yang sudah disimpan) atau "error". Melempar
+     * {@link FileBusyException} jika file punya job aktif atau path lain sedang di-generate ulang; file tetap
+     * terdaftar sampai generate ulang selesai sehingga {@link #submit} menolak job baru selama itu.
+     */
+    public SseEmitter streamPath(Long fileId, String pathId) {
+        synchronized (this) {
+            if (isFileBusy(fileId)) throw new FileBusyException("File " + fileId + " sedang di-generate");
+            activeStreams.add(fileId);
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMinutes * 60_000L);
+        try {
+            streamPool.submit(() -> streamPath(fileId, pathId, emitter));
+        } catch (RuntimeException e) {
+            releaseStream(fileId);
+            throw e;
+        }
+        return emitter;
+    }
+
+    private void streamPath(Long fileId, String pathId, SseEmitter emitter) {
+        try {
+            Map<String, Object> scenario = bpmnResultService.regeneratePathStreaming(fileId, pathId, (section, content) -> {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("section", section);
+                data.put("content", content);
+                sendQuietly(emitter, "section", data);
+            });
+            sendQuietly(emitter, "done", scenario);
+            emitter.complete();
+        } catch (Exception e) {
+            System.err.println("❌ Streaming path " + pathId + " file " + fileId + " gagal: " + e.getMessage());
+            sendQuietly(emitter, "error", Map.of("message", String.valueOf(e.getMessage())));
+            emitter.complete();
+        } finally {
+            releaseStream(fileId);
+        }
+    }
+
+    private synchronized void releaseStream(Long fileId) {
+        activeStreams.remove(fileId);
+    }
+
+    /** Client yang putus tidak menghentikan generate; hasil tetap disimpan. */
+    private static void sendQuietly(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // client putus
+        }
+    }
+
+    private void evictExpired() {
+        long cutoff = System.currentTimeMillis() - retentionMinutes * 60_000L;
+        jobs.values().removeIf(j -> j.isFinished() && j.finishedAt < cutoff);
+    }
+}
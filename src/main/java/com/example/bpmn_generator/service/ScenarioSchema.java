@@ -0,0 +1,197 @@
+package com.example.bpmn_generator.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.*;
+
+/**
+ * JSON schema untuk structured output (response_format json_schema) beserta validatornya.
+ *
+ * Schema dan validator dibangun sekali dari tabel {@link #FIELDS}, sehingga keduanya tidak bisa berbeda.
+ * Schema mengikuti batasan strict mode OpenAI: semua field wajib dan additionalProperties false. Karena itu
+ * input_data/expected_result dikirim sebagai string berisi objek JSON, lalu validator memastikan string itu
+ * benar-benar objek. Hasil validasi berupa field → alasan, supaya hanya field yang salah yang diminta ulang.
+ */
+final class ScenarioSchema {
+
+    static final String SUMMARY = "summary";
+    static final String DESCRIPTION = "description";
+    static final String STEPS = "scenario_steps";
+    static final String INPUT_DATA = "input_data";
+    static final String EXPECTED_RESULT = "expected_result";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Aturan satu field: null jika valid, selain itu alasan singkat untuk prompt perbaikan. */
+    private interface Rule {
+        String check(JsonNode value, int expectedSteps);
+    }
+
+    private record Field(String name, Map<String, Object> schema, Rule rule) {
+    }
+
+    private static final List<Field> FIELDS = List.of(
+            new Field(SUMMARY, text("Satu paragraf ringkasan naratif alur jalur dari awal hingga akhir"),
+                    (value, steps) -> nonBlank(value)),
+            new Field(DESCRIPTION, text("Deskripsi skenario pengujian yang naratif, tanpa format [Lane]"),
+                    (value, steps) -> nonBlank(value)),
+            new Field(STEPS, ordered(
+                    "type", "array",
+                    "description", "Satu kalimat naratif per langkah jalur, berurutan, tanpa nomor",
+                    "items", ordered("type", "string")),
+                    ScenarioSchema::checkSteps),
+            new Field(INPUT_DATA, text("Contoh data input: objek JSON yang di-encode sebagai string"),
+                    (value, steps) -> jsonObject(value)),
+            new Field(EXPECTED_RESULT, text("Expected result: objek JSON (status, message, data) yang di-encode sebagai string"),
+                    (value, steps) -> jsonObject(value))
+    );
+
+    private static final Map<String, Field> BY_NAME = new LinkedHashMap<>();
+
+    static {
+        for (Field field : FIELDS) BY_NAME.put(field.name(), field);
+    }
+
+    private static final Map<String, Object> SCENARIO_SCHEMA = objectSchema(BY_NAME.keySet(), ordered());
+
+    private static final Map<String, Object> BATCH_SCHEMA = objectSchema(List.of("paths"), ordered("paths", ordered(
+            "type", "array",
+            "items", objectSchema(BY_NAME.keySet(), ordered("path", ordered(
+                    "type", "integer", "description", "Nomor jalur sesuai daftar JALUR"))))));
+
+    private ScenarioSchema() {
+    }
+
+    /** Schema satu skenario. */
+    static Map<String, Object> scenario() {
+        return SCENARIO_SCHEMA;
+    }
+
+    /** Schema batch: {"paths": [{"path": n, ...skenario}]}. */
+    static Map<String, Object> batch() {
+        return BATCH_SCHEMA;
+    }
+
+    /** Schema hanya berisi {@code fields}, untuk request perbaikan. */
+    static Map<String, Object> subset(Collection<String> fields) {
+        return objectSchema(fields, ordered());
+    }
+
+    static Set<String> fieldNames() {
+        return Collections.unmodifiableSet(BY_NAME.keySet());
+    }
+
+    /** Parse response; null jika bukan objek JSON (tidak bisa diperbaiki per field). */
+    static ObjectNode read(String content) {
+        if (content == null || content.isBlank()) return null;
+        try {
+            JsonNode node = MAPPER.readTree(content.trim());
+            return (node instanceof ObjectNode object) ? object : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Field yang tidak valid (urut sesuai schema) beserta alasannya; kosong = valid. */
+    static Map<String, String> validate(JsonNode node, int expectedSteps) {
+        Map<String, String> invalid = new LinkedHashMap<>();
+        for (Field field : FIELDS) {
+            JsonNode value = node.get(field.name());
+            String reason = (value == null || value.isNull()) ? "tidak ada" : field.rule().check(value, expectedSteps);
+            if (reason != null) invalid.put(field.name(), reason);
+        }
+        return invalid;
+    }
+
+    /**
+     * Hasil dengan key generate_bpmn (summary, description, scenario_step "1. ...", input_data, expected_result).
+     * Field yang masih tidak valid menjadi kosong / "{}" seperti parser section.
+     */
+    static Map<String, String> toSections(JsonNode node) {
+        Map<String, String> sections = new HashMap<>();
+        sections.put("summary", nonBlank(node.path(SUMMARY)) == null ? node.get(SUMMARY).asText().trim() : "");
+        sections.put("description", nonBlank(node.path(DESCRIPTION)) == null ? node.get(DESCRIPTION).asText().trim() : "");
+
+        StringBuilder steps = new StringBuilder();
+        int number = 1;
+        for (JsonNode step : node.path(STEPS)) {
+            String text = stripNumber(step.asText());
+            if (text.isEmpty()) continue;
+            if (steps.length() > 0) steps.append('\n');
+            steps.append(number++).append(". ").append(text);
+        }
+        sections.put("scenario_step", steps.toString());
+        sections.put("input_data", jsonText(node.get(INPUT_DATA)));
+        sections.put("expected_result", jsonText(node.get(EXPECTED_RESULT)));
+        return sections;
+    }
+
+    private static String checkSteps(JsonNode value, int expectedSteps) {
+        if (!value.isArray()) return "harus array string";
+        int count = 0;
+        for (JsonNode step : value) {
+            if (!step.isTextual() || stripNumber(step.asText()).isEmpty()) return "langkah ke-" + (count + 1) + " kosong";
+            count++;
+        }
+        if (expectedSteps > 0 && count != expectedSteps) {
+            return "harus tepat " + expectedSteps + " langkah, diterima " + count;
+        }
+        return null;
+    }
+
+    private static String nonBlank(JsonNode value) {
+        return (value.isTextual() && !value.asText().isBlank()) ? null : "harus teks tidak kosong";
+    }
+
+    /** String berisi objek JSON; objek langsung juga diterima (backend tanpa strict mode). */
+    private static String jsonObject(JsonNode value) {
+        if (value.isObject()) return null;
+        if (!value.isTextual()) return "harus string berisi objek JSON";
+        JsonNode parsed = read(value.asText());
+        return (parsed != null) ? null : "bukan objek JSON yang valid";
+    }
+
+    private static String jsonText(JsonNode value) {
+        if (value == null) return "{}";
+        if (value.isObject()) return value.toString();
+        return (jsonObject(value) == null) ? value.asText().trim() : "{}";
+    }
+
+    private static String stripNumber(String step) {
+        String text = step.trim();
+        int digits = 0;
+        while (digits < text.length() && Character.isDigit(text.charAt(digits))) digits++;
+        if (digits > 0 && digits < text.length() && text.charAt(digits) == '.') text = text.substring(digits + 1).trim();
+        return text;
+    }
+
+    private static Map<String, Object> text(String description) {
+        return ordered("type", "string", "description", description);
+    }
+
+    /**
+     * Map berurutan sesuai argumen (key, value, ...). Schema ikut fingerprint cache lewat toString(), jadi urutan key
+     * tidak boleh bergantung pada Map.of yang urutan iterasinya berubah antar JVM.
+     */
+    private static Map<String, Object> ordered(Object... keyValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int k = 0; k < keyValues.length; k += 2) map.put((String) keyValues[k], keyValues[k + 1]);
+        return map;
+    }
+
+    private static Map<String, Object> objectSchema(Collection<String> fields, Map<String, Object> extra) {
+        Map<String, Object> properties = new LinkedHashMap<>(extra);
+        for (String name : fields) {
+            Field field = BY_NAME.get(name);
+            properties.put(name, field != null ? field.schema() : extra.get(name));
+        }
+        Map<String, Object> schema = new LinkedHashMap<>();
+        schema.put("type", "object");
+        schema.put("properties", properties);
+        schema.put("required", new ArrayList<>(properties.keySet()));
+        schema.put("additionalProperties", false);
+        return schema;
+    }
+}
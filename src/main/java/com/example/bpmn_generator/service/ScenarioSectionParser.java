@@ -0,0 +1,305 @@
+package com.example.bpmn_generator.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Parser satu kali jalan untuk output GPT berformat section (===SUMMARY===, ===DESKRIPSI===, ===SCENARIO_STEP===,
+ * ===INPUT_DATA===, ===EXPECTED_RESULT===), tanpa regex. Teks bisa diumpankan per potongan token (streaming)
+ * atau sekaligus lewat {@link #parse(String)}.
+ *
+ * Setiap baris dipindai tepat sekali langsung dari buffer input: marker dicari di baris tersebut (boleh di tengah
+ * baris), lalu isinya dibersihkan sesuai section dan ditulis ke buffer hasil section itu. Section dikirim ke
+ * {@code onSection} begitu marker berikutnya ditemukan, section terakhir saat {@link #finish()}.
+ *
+ * Aturan pembersihan sama dengan parser lama di ApiService:
+ * - summary: span **tebal** dan ```kode``` dibuang, *miring* dibuka, spasi/baris baru dirapatkan jadi satu spasi
+ * - description: span **tebal**, ```kode``` dan contoh "- Jika jalur: a → b" dibuang, baris kosong dilewati
+ * - scenario_step: "**" dan ```kode``` dibuang, penomoran ("1.", "-", tanpa nomor) diseragamkan 1..n
+ * - input_data / expected_result: pagar ```json dibuang; bukan objek {...} → "{}"
+ *
+ * Nama section dipetakan ke key hasil generate_bpmn (summary, description, scenario_step, input_data, expected_result);
+ * marker lain (===END_PATH===, ===PATH 2===) tetap memutus section tetapi tidak dikirim. Jika section muncul
+ * dua kali, yang pertama dipakai.
+ */
+final class ScenarioSectionParser {
+
+    private static final Map<String, String> SECTION_KEYS = Map.of(
+            "SUMMARY", "summary",
+            "DESKRIPSI", "description",
+            "DESCRIPTION", "description",
+            "SCENARIO_STEP", "scenario_step",
+            "INPUT_DATA", "input_data",
+            "EXPECTED_RESULT", "expected_result"
+    );
+
+    private static final String[] KEYS = {"summary", "description", "scenario_step", "input_data", "expected_result"};
+
+    private static final String JIKA_JALUR = "- Jika jalur:";
+
+    private final BiConsumer<String, String> onSection;
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder line = new StringBuilder();
+    private final Map<String, String> sections = new LinkedHashMap<>();
+    private int lineStart;
+    private Section current;
+    private boolean finished;
+
+    ScenarioSectionParser(BiConsumer<String, String> onSection) {
+        this.onSection = onSection;
+    }
+
+    /** Parse seluruh output sekaligus; selalu berisi kelima key (section yang tidak ada: "" atau "{}"). */
+    static Map<String, String> parse(String output) {
+        ScenarioSectionParser parser = new ScenarioSectionParser((key, value) -> { });
+        parser.feed(output);
+        parser.finish();
+        return parser.sections();
+    }
+
+    /** Umpankan potongan teks berikutnya (boleh memotong baris atau marker di tengah). */
+    void feed(CharSequence chunk) {
+        if (chunk == null || chunk.length() == 0 || finished) return;
+        int from = text.length();
+        text.append(chunk);
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                processLine(lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    /** Akhir stream: proses sisa baris, kirim section terakhir dan lengkapi key yang tidak muncul. */
+    void finish() {
+        if (finished) return;
+        if (lineStart < text.length()) {
+            processLine(lineStart, text.length());
+            lineStart = text.length();
+        }
+        close();
+        for (String key : KEYS) {
+            sections.putIfAbsent(key, isJson(key) ? "{}" : "");
+        }
+        finished = true;
+    }
+
+    /** Seluruh teks yang sudah diumpankan. */
+    String text() {
+        return text.toString();
+    }
+
+    /** Section yang sudah selesai (bersih); lengkap dengan kelima key setelah {@link #finish()}. */
+    Map<String, String> sections() {
+        return Collections.unmodifiableMap(sections);
+    }
+
+    // 🔹 Satu baris: pecah di setiap marker, potongan di antaranya milik section yang sedang aktif
+    private void processLine(int from, int to) {
+        if (to > from && text.charAt(to - 1) == '\r') to--;
+        int segment = from;
+        int open = indexOf("===", from, to);
+        while (open >= 0) {
+            int close = indexOf("===", open + 3, to);
+            if (close < 0) break;
+            String name = markerName(open + 3, close);
+            if (name == null) {
+                open = indexOf("===", open + 1, to);
+                continue;
+            }
+            if (open > segment) appendLine(segment, open);
+            close();
+            String key = SECTION_KEYS.get(name);
+            if (key != null) current = new Section(key, sections.containsKey(key));
+            segment = close + 3;
+            open = indexOf("===", segment, to);
+        }
+        if (segment < to || segment == from) appendLine(segment, to);
+    }
+
+    /** Nama marker di antara "===" dan "===": huruf besar/angka/spasi/underscore, minimal satu huruf. */
+    private String markerName(int from, int to) {
+        while (from < to && text.charAt(from) == ' ') from++;
+        while (to > from && text.charAt(to - 1) == ' ') to--;
+        if (from == to || to - from > 40) return null;
+        boolean letter = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') letter = true;
+            else if (!(c == '_' || c == ' ' || (c >= '0' && c <= '9'))) return null;
+        }
+        return letter ? text.substring(from, to) : null;
+    }
+
+    private void appendLine(int from, int to) {
+        if (current == null || current.duplicate) return;
+        switch (current.key) {
+            case "summary" -> appendSummaryLine(from, to);
+            case "description" -> appendDescriptionLine(from, to);
+            case "scenario_step" -> appendStepLine(from, to);
+            default -> appendJsonLine(from, to);
+        }
+    }
+
+    private void appendSummaryLine(int from, int to) {
+        scanLine(from, to, true, true);
+        StringBuilder out = current.out;
+        boolean space = out.length() > 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) out.append(' ');
+                out.append(c);
+                space = false;
+            }
+        }
+    }
+
+    private void appendDescriptionLine(int from, int to) {
+        scanLine(from, to, true, false);
+        int example = line.indexOf(JIKA_JALUR);
+        if (example >= 0 && line.indexOf("→", example) >= 0) line.setLength(example);
+        if (isBlank(line)) return;
+        if (current.out.length() > 0) current.out.append('\n');
+        current.out.append(line);
+    }
+
+    private void appendStepLine(int from, int to) {
+        scanLine(from, to, false, false);
+        int start = 0;
+        int end = line.length();
+        while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) end--;
+        if (start == end) return;
+
+        // "12. isi" atau "- isi" → isi; selain itu seluruh baris dianggap satu langkah
+        int digits = start;
+        while (digits < end && Character.isDigit(line.charAt(digits))) digits++;
+        if (digits > start && digits < end && line.charAt(digits) == '.') {
+            start = digits + 1;
+        } else if (line.charAt(start) == '-') {
+            start++;
+        }
+        while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+        if (start == end) return;
+
+        current.out.append(current.steps++).append(". ").append(line, start, end).append('\n');
+    }
+
+    private void appendJsonLine(int from, int to) {
+        current.out.append(text, from, to).append('\n');
+    }
+
+    /**
+     * Salin text[from, to) ke {@code line} sambil membuang ```kode``` dan markdown tebal: span **...** dibuang
+     * seluruhnya jika {@code dropBold}, selain itu hanya tanda "**"; *miring* dibuka jika {@code unwrapItalic}.
+     */
+    private void scanLine(int from, int to, boolean dropBold, boolean unwrapItalic) {
+        line.setLength(0);
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '`' && startsWith("```", i, to)) {
+                int end = indexOf("```", i + 3, to);
+                if (end >= 0) {
+                    i = end + 3;
+                    continue;
+                }
+            } else if (c == '*' && startsWith("**", i, to)) {
+                if (!dropBold) {
+                    i += 2;
+                    continue;
+                }
+                int end = indexOf("**", i + 2, to);
+                if (end >= 0) {
+                    i = end + 2;
+                    continue;
+                }
+            } else if (c == '*' && unwrapItalic) {
+                int end = indexOf("*", i + 2, to);
+                if (end >= 0) {
+                    line.append(text, i + 1, end);
+                    i = end + 1;
+                    continue;
+                }
+            }
+            line.append(c);
+            i++;
+        }
+    }
+
+    private void close() {
+        Section section = current;
+        current = null;
+        if (section == null || section.duplicate) return;
+        String value = isJson(section.key) ? cleanJson(section.out) : trim(section.out);
+        sections.put(section.key, value);
+        onSection.accept(section.key, value);
+    }
+
+    /** Isi section JSON tanpa pagar ```json; hanya objek {...} yang diterima. */
+    private static String cleanJson(StringBuilder out) {
+        StringBuilder json = new StringBuilder(out.length());
+        for (int i = 0; i < out.length(); i++) {
+            if (out.charAt(i) == '`' && i + 2 < out.length() && out.charAt(i + 1) == '`' && out.charAt(i + 2) == '`') {
+                i += 2;
+                if (i + 4 < out.length() && out.substring(i + 1, i + 5).equals("json")) i += 4;
+                continue;
+            }
+            json.append(out.charAt(i));
+        }
+        String value = trim(json);
+        return (value.startsWith("{") && value.endsWith("}")) ? value : "{}";
+    }
+
+    private static boolean isJson(String key) {
+        return key.equals("input_data") || key.equals("expected_result");
+    }
+
+    private boolean startsWith(String token, int at, int to) {
+        if (at + token.length() > to) return false;
+        for (int k = 0; k < token.length(); k++) {
+            if (text.charAt(at + k) != token.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(String token, int from, int to) {
+        for (int i = from; i + token.length() <= to; i++) {
+            if (startsWith(token, i, to)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static String trim(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && Character.isWhitespace(s.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) end--;
+        return s.subSequence(start, end).toString();
+    }
+
+    /** Section yang sedang dibaca; hasil bersihnya ditulis langsung ke {@code out}. */
+    private static final class Section {
+        final String key;
+        final boolean duplicate;
+        final StringBuilder out = new StringBuilder();
+        int steps = 1;
+
+        Section(String key, boolean duplicate) {
+            this.key = key;
+            this.duplicate = duplicate;
+        }
+    }
+}
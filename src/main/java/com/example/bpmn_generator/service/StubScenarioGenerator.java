@@ -0,0 +1,216 @@
+package com.example.bpmn_generator.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Backend palsu di dalam proses untuk benchmark pipeline generateScenario tanpa biaya API.
+ * Konten deterministik (dibangun dari label langkah di request, format section sama dengan prompt),
+ * latency dan error disuntikkan sesuai konfigurasi:
+ * - latency-ms ± jitter-ms sebelum response (untuk stream: sebelum potongan pertama)
+ * - error-rate: peluang IOException (dianggap gangguan jaringan, di-retry LlmResilience)
+ * - throttle-rate: peluang HTTP 429 dengan Retry-After throttle-retry-after-ms
+ * - invalid-field-rate: peluang satu field structured output dirusak (menguji perbaikan per field)
+ *
+ * Response tidak di-cache (benchmark harus selalu melewati backend) dan tidak memakai kuota RPM/TPM.
+ */
+public class StubScenarioGenerator implements ScenarioGenerator {
+
+    private static final int STREAM_CHUNK_CHARS = 24;
+
+    private final LlmTokenizer tokenizer;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double errorRate;
+    private final double throttleRate;
+    private final long throttleRetryAfterMs;
+    private final double invalidFieldRate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public StubScenarioGenerator(LlmTokenizer tokenizer, long latencyMs, long jitterMs, double errorRate,
+                                 double throttleRate, long throttleRetryAfterMs, double invalidFieldRate) {
+        this.tokenizer = tokenizer;
+        this.latencyMs = Math.max(0, latencyMs);
+        this.jitterMs = Math.max(0, jitterMs);
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.throttleRetryAfterMs = Math.max(0, throttleRetryAfterMs);
+        this.invalidFieldRate = invalidFieldRate;
+    }
+
+    @Override
+    public String name() {
+        return "stub";
+    }
+
+    @Override
+    public String model() {
+        return "stub";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+
+    @Override
+    public boolean isRateLimited() {
+        return false;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    public Completion complete(Request request) throws Exception {
+        simulateLatency();
+        injectFailure();
+        String content = render(request);
+        return completion(request, content);
+    }
+
+    @Override
+    public Completion stream(Request request, Consumer<String> onDelta) throws Exception {
+        simulateLatency();
+        injectFailure();
+        String content = render(request);
+        for (int i = 0; i < content.length(); i += STREAM_CHUNK_CHARS) {
+            onDelta.accept(content.substring(i, Math.min(content.length(), i + STREAM_CHUNK_CHARS)));
+        }
+        return completion(request, content);
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0);
+        if (delay > 0) Thread.sleep(delay);
+    }
+
+    private void injectFailure() throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < throttleRate) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("retry-after-ms", Long.toString(throttleRetryAfterMs));
+            throw new RestClientResponseException("429 Too Many Requests (stub)", 429, "Too Many Requests",
+                    headers, null, null);
+        }
+        if (roll < throttleRate + errorRate) {
+            throw new IOException("Koneksi stub terputus (error injection)");
+        }
+    }
+
+    /** Usage dihitung tokenizer lokal, seperti yang dilaporkan backend sungguhan. */
+    private Completion completion(Request request, String content) {
+        return new Completion(content, tokenizer.countChat(request.systemPrompt(), request.prompt()), tokenizer.count(content));
+    }
+
+    // 🔹 Konten sesuai format yang diminta prompt masing-masing jenis request
+    private String render(Request request) throws JsonProcessingException {
+        if (request.responseSchema() != null) return objectMapper.writeValueAsString(renderStructured(request));
+        List<List<String>> paths = request.paths();
+        return switch (request.kind()) {
+            case NARRATIVE -> "===SCENARIO_STEP===\n" + steps(paths.get(0), request.firstStep());
+            case BATCH -> {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < paths.size(); i++) {
+                    sb.append("===PATH ").append(i + 1).append("===\n")
+                            .append(scenario(paths.get(i), 1))
+                            .append("===END_PATH===\n\n");
+                }
+                yield sb.toString();
+            }
+            case SCENARIO, PREFIXED, REPAIR -> scenario(paths.get(0), request.firstStep());
+        };
+    }
+
+    /** Structured output: field sesuai schema request (REPAIR hanya berisi field yang diminta). */
+    private Map<String, Object> renderStructured(Request request) {
+        List<List<String>> paths = request.paths();
+        if (request.kind() == Kind.BATCH) {
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("path", i + 1);
+                item.putAll(structuredScenario(paths.get(i), true));
+                items.add(item);
+            }
+            return Map.of("paths", items);
+        }
+        Map<String, Object> scenario = structuredScenario(paths.get(0), request.kind() != Kind.REPAIR);
+        if (request.responseSchema().get("required") instanceof List<?> required) {
+            scenario.keySet().retainAll(required);
+        }
+        return scenario;
+    }
+
+    private Map<String, Object> structuredScenario(List<String> labels, boolean mayCorrupt) {
+        String first = activity(labels.get(0));
+        String last = activity(labels.get(labels.size() - 1));
+        List<String> steps = new ArrayList<>();
+        for (String line : steps(labels, 1).split("\n")) steps.add(line.substring(line.indexOf(". ") + 2));
+
+        Map<String, Object> scenario = new LinkedHashMap<>();
+        scenario.put("summary", "Skenario stub untuk jalur dari " + first + " sampai " + last + " (" + labels.size() + " langkah).");
+        scenario.put("description", "Pengujian alur yang dimulai dari " + first + " dan berakhir pada " + last + ".");
+        scenario.put("scenario_steps", steps);
+        scenario.put("input_data", "{\"path_hash\": \"" + Integer.toHexString(String.join(" -> ", labels).hashCode())
+                + "\", \"steps\": " + labels.size() + "}");
+        scenario.put("expected_result", "{\"status\": \"success\", \"message\": \"Proses berhasil\", \"data\": {}}");
+
+        if (mayCorrupt && ThreadLocalRandom.current().nextDouble() < invalidFieldRate) {
+            switch (ThreadLocalRandom.current().nextInt(3)) {
+                case 0 -> scenario.put("input_data", "path_hash: tidak dalam format JSON");
+                case 1 -> steps.remove(steps.size() - 1);
+                default -> scenario.put("summary", "");
+            }
+        }
+        return scenario;
+    }
+
+    private String scenario(List<String> labels, int firstStep) {
+        String first = activity(labels.get(0));
+        String last = activity(labels.get(labels.size() - 1));
+        return "===SUMMARY===\n"
+                + "Skenario stub untuk jalur dari " + first + " sampai " + last + " (" + labels.size() + " langkah).\n\n"
+                + "===DESKRIPSI===\n"
+                + "Pengujian alur yang dimulai dari " + first + ", melewati " + (labels.size() - 2)
+                + " langkah di tengah, dan berakhir pada " + last + ".\n\n"
+                + "===SCENARIO_STEP===\n"
+                + steps(labels, firstStep) + "\n"
+                + "===INPUT_DATA===\n"
+                + "{\n  \"path_hash\": \"" + Integer.toHexString(String.join(" -> ", labels).hashCode()) + "\",\n"
+                + "  \"steps\": " + labels.size() + "\n}\n\n"
+                + "===EXPECTED_RESULT===\n"
+                + "{\n  \"status\": \"success\",\n  \"message\": \"Proses berhasil\",\n  \"data\": {}\n}\n";
+    }
+
+    private String steps(List<String> labels, int firstStep) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = Math.max(1, firstStep); n <= labels.size(); n++) {
+            String label = labels.get(n - 1);
+            String lane = hasLane(label) ? label.substring(label.indexOf('['), label.indexOf(']') + 1) + " " : "";
+            sb.append(n).append(". ").append(lane).append("Melakukan langkah \"").append(activity(label))
+                    .append("\" sesuai prosedur dan memastikan hasilnya tercatat dengan benar\n");
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasLane(String label) {
+        int open = label.indexOf('[');
+        return open >= 0 && label.indexOf(']') > open;
+    }
+
+    /** Label tanpa bagian [Lane] (lane bisa di depan maupun di belakang nama aktivitas). */
+    private static String activity(String label) {
+        if (!hasLane(label)) return label.trim();
+        return (label.substring(0, label.indexOf('[')) + label.substring(label.indexOf(']') + 1)).trim();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.bpmn_generator.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RestTemplate LLM terhadap server HTTP lokal: deadline per request, response gzip (termasuk body error kosong)
+ * dan koneksi keep-alive yang dipakai ulang antar request.
+ */
+class LlmHttpClientConfigTest {
+
+    private HttpServer server;
+    private String url;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "llm-http-test");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+
+        LlmHttpClientConfig config = new LlmHttpClientConfig();
+        ReflectionTestUtils.setField(config, "connectTimeoutSeconds", 2L);
+        ReflectionTestUtils.setField(config, "requestTimeoutSeconds", 1L);
+        ReflectionTestUtils.setField(config, "poolSize", 4);
+        ReflectionTestUtils.setField(config, "keepAliveSeconds", 30L);
+        ReflectionTestUtils.setField(config, "http2", false);
+        ReflectionTestUtils.setField(config, "ioThreads", 2);
+        restTemplate = config.llmRestTemplate();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void requestPastDeadlineFails() {
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                respond(exchange, 200, "{}".getBytes(StandardCharsets.UTF_8), false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        long start = System.nanoTime();
+        try {
+            assertThrows(ResourceAccessException.class, () -> restTemplate.postForEntity(url, Map.of(), Map.class));
+        } finally {
+            release.countDown();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs < 3_000, "deadline 1 s, request berhenti setelah " + elapsedMs + " ms");
+    }
+
+    @Test
+    void gzipResponseIsDecoded() {
+        List<String> acceptEncoding = new CopyOnWriteArrayList<>();
+        server.createContext("/", exchange -> {
+            acceptEncoding.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+            respond(exchange, 200, gzip("{\"id\": \"chatcmpl-1\", \"ok\": true}"), true);
+        });
+
+        Map<?, ?> body = restTemplate.postForEntity(url, Map.of("model", "m"), Map.class).getBody();
+        assertNotNull(body);
+        assertEquals(true, body.get("ok"));
+        assertEquals(List.of("gzip"), acceptEncoding);
+    }
+
+    @Test
+    void emptyGzipErrorBodyKeepsStatusAndRetryAfter() {
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().set("Retry-After", "7");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+
+        RestClientResponseException e = assertThrows(RestClientResponseException.class,
+                () -> restTemplate.postForEntity(url, Map.of(), Map.class));
+        assertEquals(503, e.getStatusCode().value());
+        assertEquals("7", e.getResponseHeaders().getFirst("Retry-After"));
+    }
+
+    @Test
+    void keepAliveConnectionIsReused() {
+        List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            respond(exchange, 200, "{\"ok\": true}".getBytes(StandardCharsets.UTF_8), false);
+        });
+
+        for (int i = 0; i < 5; i++) restTemplate.postForEntity(url, Map.of("n", i), Map.class);
+        assertEquals(5, clientPorts.size());
+        // koneksi kembali ke pool secara asinkron setelah body habis dibaca, jadi tidak dituntut tepat satu koneksi
+        assertTrue(clientPorts.stream().distinct().count() < clientPorts.size(), "port client " + clientPorts);
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body, boolean gzip) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
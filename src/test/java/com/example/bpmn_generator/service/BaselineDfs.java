@@ -0,0 +1,746 @@
+package com.example.bpmn_generator.service;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Enumerasi path DfsService versi awal (DFS rekursif, visit key String, graf HashMap), disalin apa adanya
+ * tanpa varian annotated / lane. Hanya dipakai sebagai referensi di DfsServiceDifferentialTest:
+ * DfsService (CSR, PathWalker, JoinIndex, Reachability) harus menghasilkan path yang sama persis.
+ */
+final class BaselineDfs {
+
+    List<List<String>> findAllPaths(BpmnModelInstance model, DfsService.Options opt) {
+        List<List<String>> out = new ArrayList<>(256);
+        streamAllPaths(model, opt, out::add);
+        return out;
+    }
+
+    void streamAllPaths(BpmnModelInstance model, DfsService.Options opt, Consumer<List<String>> sink) {
+        if (model == null) throw new IllegalArgumentException("modelInstance null");
+        final long deadline = System.nanoTime() + opt.timeLimitMillis * 1_000_000L;
+
+        Graph g = buildGraph(model, opt);
+
+        Deque<String> path = new ArrayDeque<>(128);
+        Set<String> visitedDepthKey = new HashSet<>(2048);
+        Map<String, Integer> visitCount = new HashMap<>(1024);
+
+        Counter counter = new Counter();
+        for (StartEvent s : g.rootStarts) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsRoot(g, s.getId(), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    /* ===================== DFS (root) — plain ===================== */
+
+    private void dfsRoot(
+            Graph g, String currentId,
+            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Consumer<List<String>> sink, Counter counter, long deadline, DfsService.Options opt
+    ) {
+        if (currentId == null || overBudget(counter, deadline, opt)) return;
+        if (!enterNode(currentId, path, visitedDepthKey, visitCount, opt)) return;
+
+        FlowNode cur = g.nodeById.get(currentId);
+
+        // EndEvent (root)
+        if (cur instanceof EndEvent && !g.insideSubprocess.contains(currentId)) {
+            sink.accept(new ArrayList<>(path));
+            counter.paths++;
+            leaveNode(currentId, path, visitedDepthKey, visitCount);
+            return;
+        }
+
+        // Event Sub-Process: skip aman (jangan expand, teruskan alur keluar)
+        if (cur instanceof SubProcess && g.eventSubProcesses.contains(cur.getId())) {
+            goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            if (opt.includeMessageFlow) goMessage(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            leaveNode(currentId, path, visitedDepthKey, visitCount);
+            return;
+        }
+
+        // SubProcess
+        if (cur instanceof SubProcess) {
+            List<String> subStarts = g.subprocessStarts.get(currentId);
+            if (subStarts != null && !subStarts.isEmpty()) {
+                for (String s : subStarts) {
+                    if (overBudget(counter, deadline, opt)) break;
+                    dfsInsideSP(g, s, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            } else {
+                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                if (opt.includeMessageFlow) goMessage(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        }
+        // Inclusive Gateway handling
+        else if (cur instanceof InclusiveGateway && opt.strictGatewaySemantics) {
+            int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
+            int inCount = (cur.getIncoming() != null) ? cur.getIncoming().size() : 0;
+
+            if (outCount > 1) {
+                handleForkWithJoin(g, currentId, GatewayType.INCLUSIVE, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            } else if (inCount > 1 && outCount == 1) {
+                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            } else {
+                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        }
+        // Parallel Gateway
+        else if (cur instanceof ParallelGateway && opt.strictGatewaySemantics) {
+            int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
+            int inCount = (cur.getIncoming() != null) ? cur.getIncoming().size() : 0;
+
+            if (outCount > 1) {
+                handleForkWithJoin(g, currentId, GatewayType.PARALLEL, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            } else if (inCount > 1 && outCount <= 1) {
+                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            } else {
+                goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        }
+        // Event-Based Gateway
+        else if (isEventBasedGateway(cur)) {
+            if (isEventBasedParallel(cur)) {
+                // (1) Terapkan eventParallelFanoutCap via limited handle
+                List<String> outs = new ArrayList<>(g.outgoing.getOrDefault(currentId, Collections.emptyList()));
+                if (outs.size() > opt.eventParallelFanoutCap) {
+                    outs = outs.subList(0, opt.eventParallelFanoutCap);
+                }
+                handleForkWithJoinLimited(
+                        g, currentId, GatewayType.PARALLEL, outs,
+                        path, visitedDepthKey, visitCount, sink, counter, deadline, opt
+                );
+            } else {
+                // Exclusive Event
+                List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
+                int lim = Math.min(outs.size(), opt.genericFanoutCap);
+                for (int i = 0; i < lim; i++) {
+                    if (overBudget(counter, deadline, opt)) break;
+                    dfsRoot(g, outs.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            }
+        }
+        else if (isExclusiveFork(cur, g)) {
+            // XOR
+            List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
+            int lim = Math.min(outs.size(), opt.genericFanoutCap);
+            for (int i = 0; i < lim; i++) {
+                if (overBudget(counter, deadline, opt)) break;
+                dfsRoot(g, outs.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        } else {
+            // Node biasa
+            goOutgoing(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            if (opt.includeBoundary) goBoundary(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            if (opt.includeMessageFlow) goMessage(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+
+        leaveNode(currentId, path, visitedDepthKey, visitCount);
+    }
+
+    /* ===================== DFS (inside SubProcess) — plain ===================== */
+
+    private void dfsInsideSP(
+            Graph g, String currentId, String parentSpId,
+            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Consumer<List<String>> sink, Counter counter, long deadline, DfsService.Options opt
+    ) {
+        if (currentId == null || overBudget(counter, deadline, opt)) return;
+        if (!enterNode(currentId, path, visitedDepthKey, visitCount, opt)) return;
+
+        FlowNode cur = g.nodeById.get(currentId);
+
+        if (cur instanceof EndEvent && g.isParentOf(parentSpId, currentId)) {
+            for (String tgt : g.outgoing.getOrDefault(parentSpId, Collections.emptyList())) {
+                if (overBudget(counter, deadline, opt)) break;
+                dfsRoot(g, tgt, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+            if (opt.includeMessageFlow) {
+                for (String tgt : g.messageTargets.getOrDefault(parentSpId, Collections.emptyList())) {
+                    if (overBudget(counter, deadline, opt)) break;
+                    dfsRoot(g, tgt, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            }
+            leaveNode(currentId, path, visitedDepthKey, visitCount);
+            return;
+        }
+
+        if (cur instanceof SubProcess && g.eventSubProcesses.contains(cur.getId())) {
+            goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            if (opt.includeMessageFlow) goMessageCrossToRoot(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            leaveNode(currentId, path, visitedDepthKey, visitCount);
+            return;
+        }
+
+        if (cur instanceof SubProcess) {
+            List<String> subStarts = g.subprocessStarts.get(currentId);
+            if (subStarts != null && !subStarts.isEmpty()) {
+                for (String s : subStarts) {
+                    if (overBudget(counter, deadline, opt)) break;
+                    dfsInsideSP(g, s, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            } else {
+                goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                if (opt.includeBoundary) goBoundaryInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                if (opt.includeMessageFlow) goMessageCrossToRoot(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        } else {
+            if (cur instanceof InclusiveGateway && opt.strictGatewaySemantics) {
+                int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
+                if (outCount > 1) {
+                    handleForkWithJoin(g, currentId, GatewayType.INCLUSIVE, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                } else {
+                    goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            } else if (cur instanceof ParallelGateway && opt.strictGatewaySemantics) {
+                int outCount = g.outgoing.getOrDefault(currentId, Collections.emptyList()).size();
+                if (outCount > 1) {
+                    handleForkWithJoin(g, currentId, GatewayType.PARALLEL, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                } else {
+                    goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            } else if (isEventBasedGateway(cur)) {
+                if (isEventBasedParallel(cur)) {
+                    List<String> outs = new ArrayList<>(g.outgoing.getOrDefault(currentId, Collections.emptyList()));
+                    if (outs.size() > opt.eventParallelFanoutCap) {
+                        outs = outs.subList(0, opt.eventParallelFanoutCap);
+                    }
+                    handleForkWithJoinLimited(
+                            g, currentId, GatewayType.PARALLEL, outs,
+                            path, visitedDepthKey, visitCount, sink, counter, deadline, opt
+                    );
+                } else {
+                    List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
+                    int lim = Math.min(outs.size(), opt.genericFanoutCap);
+                    for (int i = 0; i < lim; i++) {
+                        if (overBudget(counter, deadline, opt)) break;
+                        dfsInsideSP(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                    }
+                }
+            } else if (isExclusiveFork(cur, g)) {
+                List<String> outs = g.outgoing.getOrDefault(currentId, Collections.emptyList());
+                int lim = Math.min(outs.size(), opt.genericFanoutCap);
+                for (int i = 0; i < lim; i++) {
+                    if (overBudget(counter, deadline, opt)) break;
+                    dfsInsideSP(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                }
+            } else {
+                goOutgoingInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                if (opt.includeBoundary) goBoundaryInside(g, currentId, parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                if (opt.includeMessageFlow) goMessageCrossToRoot(g, currentId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        }
+
+        leaveNode(currentId, path, visitedDepthKey, visitCount);
+    }
+
+    /* ===================== Fork → Join (AND / OR) — plain ===================== */
+
+    private enum GatewayType { PARALLEL, INCLUSIVE }
+
+    private void handleForkWithJoin(
+            Graph g, String forkId, GatewayType type,
+            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Consumer<List<String>> sink, Counter counter, long deadline, DfsService.Options opt
+    ) {
+        List<String> branchStarts = g.outgoing.getOrDefault(forkId, Collections.emptyList());
+        handleForkWithJoinLimited(g, forkId, type, branchStarts, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+    }
+
+    /** (2) Versi LIMITED: menerima subset branchStarts (dipakai untuk EBG parallel + cap) */
+    private void handleForkWithJoinLimited(
+            Graph g, String forkId, GatewayType type, List<String> branchStarts,
+            Deque<String> path, Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+            Consumer<List<String>> sink, Counter counter, long deadline, DfsService.Options opt
+    ) {
+        if (branchStarts == null || branchStarts.isEmpty()) return;
+
+        // kumpulan cabang yang dieksekusi
+        List<List<String>> selections = computeSelections(type, branchStarts, opt);
+
+        // Precompute jarak (BFS) dari tiap cabang
+        Map<String, Map<String,Integer>> distByStart = new HashMap<>();
+        for (String s : branchStarts) distByStart.put(s, bfsDistances(g, s));
+
+        for (List<String> selected : selections) {
+            if (overBudget(counter, deadline, opt)) break;
+
+            // Join kandidat (4) longgarkan incoming-size untuk subset 1 cabang
+            List<String> joinCandidates = findJoinCandidates(g, forkId, type, selected, distByStart);
+
+            if (type == GatewayType.INCLUSIVE && opt.inclusiveConservativeJoin) {
+                List<String> notSelected = new ArrayList<>(branchStarts);
+                notSelected.removeAll(selected);
+                joinCandidates.removeIf(j -> canAnyReach(g, notSelected, j));
+            }
+
+            if (!joinCandidates.isEmpty()) {
+                String joinId = pickBestJoin(joinCandidates, selected, distByStart);
+
+                // shortest path tiap cabang → join
+                List<List<String>> segs = new ArrayList<>(selected.size());
+                for (String s : selected) {
+                    List<String> sp = shortestPathTo(g, s, joinId);
+                    if (sp == null || sp.isEmpty()) { segs.clear(); break; }
+                    segs.add(sp);
+                }
+                if (!segs.isEmpty()) {
+                    // gabungkan segmen
+                    segs.sort(Comparator.comparing(a -> a.get(0)));
+
+                    Deque<String> mergedPath = new ArrayDeque<>(path);
+                    Set<String> newVisited = new HashSet<>(visitedDepthKey);
+                    Map<String,Integer> newVisits = new HashMap<>(visitCount);
+
+                    for (List<String> seg : segs) {
+                        for (String nid : seg) {
+                            if (nid.equals(forkId)) continue;
+
+                            // PATCH: izinkan duplikasi terkontrol
+                            String depthKey = nid + "#" + mergedPath.size();
+                            if (newVisited.contains(depthKey)) continue;
+
+                            int cnt = newVisits.getOrDefault(nid, 0);
+                            if (cnt >= opt.maxVisitsPerNode) continue;
+
+                            mergedPath.addLast(nid);
+                            newVisited.add(depthKey);
+                            newVisits.put(nid, cnt + 1);
+                        }
+                    }
+
+                    // (3) Pastikan join hadir; fallback jika tidak
+                    int idxJoin = indexOfDeque(mergedPath, joinId);
+                    if (idxJoin < 0) {
+                        for (String s : selected) {
+                            if (overBudget(counter, deadline, opt)) break;
+                            dfsRoot(g, s, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+                        }
+                        return;
+                    }
+
+                    // Lanjut dari JOIN
+                    for (String out : g.outgoing.getOrDefault(joinId, Collections.emptyList())) {
+                        if (overBudget(counter, deadline, opt)) break;
+                        dfsRoot(g, out, mergedPath, newVisited, newVisits, sink, counter, deadline, opt);
+                    }
+                    if (opt.includeBoundary) {
+                        List<String> bes = g.boundary.getOrDefault(joinId, Collections.emptyList());
+                        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
+                        for (int i = 0; i < blim; i++) {
+                            if (overBudget(counter, deadline, opt)) break;
+                            dfsRoot(g, bes.get(i), mergedPath, newVisited, newVisits, sink, counter, deadline, opt);
+                        }
+                    }
+                    if (opt.includeMessageFlow) {
+                        List<String> tgts = g.messageTargets.getOrDefault(joinId, Collections.emptyList());
+                        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
+                        for (int i = 0; i < mlim; i++) {
+                            if (overBudget(counter, deadline, opt)) break;
+                            dfsRoot(g, tgts.get(i), mergedPath, newVisited, newVisits, sink, counter, deadline, opt);
+                        }
+                    }
+                    return;
+                }
+            }
+
+            // fallback: eksplor tiap cabang apa adanya
+            for (String s : selected) {
+                if (overBudget(counter, deadline, opt)) break;
+                dfsRoot(g, s, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+            }
+        }
+    }
+
+    private List<List<String>> computeSelections(GatewayType type, List<String> branchStarts, DfsService.Options opt) {
+        List<List<String>> selections = new ArrayList<>();
+        if (type == GatewayType.PARALLEL) {
+            selections.add(new ArrayList<>(branchStarts)); // semua cabang
+        } else {
+            int n = branchStarts.size();
+            if (n <= 0) return selections;
+
+            // Urutkan subset dari yang paling sedikit cabang → paling banyak
+            List<Integer> masks = new ArrayList<>();
+            for (int mask = 1; mask < (1 << n); mask++) masks.add(mask);
+            masks.sort(Comparator.comparingInt(Integer::bitCount));
+
+            int emitted = 0;
+            for (int mask : masks) {
+                if (emitted >= opt.inclusiveMaxSubsets) break;
+                List<String> sel = new ArrayList<>();
+                for (int i = 0; i < n; i++) if ((mask & (1 << i)) != 0) sel.add(branchStarts.get(i));
+                selections.add(sel);
+                emitted++;
+            }
+            if (!branchStarts.isEmpty() && !selections.contains(branchStarts) && selections.size() >= opt.inclusiveMaxSubsets) {
+                selections.add(new ArrayList<>(branchStarts));
+            }
+        }
+        return selections;
+    }
+
+    private int indexOfDeque(Deque<String> dq, String id) {
+        int i = 0;
+        for (String s : dq) { if (Objects.equals(s, id)) return i; i++; }
+        return -1;
+    }
+
+    private List<String> findJoinCandidates(
+            Graph g, String forkId, GatewayType type,
+            List<String> starts, Map<String, Map<String,Integer>> distByStart
+    ) {
+        Set<String> candidates = new HashSet<>();
+        for (FlowNode n : g.nodeById.values()) {
+            if (!(n instanceof Gateway) || n.getId().equals(forkId)) continue;
+            if (n.getIncoming() == null) continue;
+
+            // (4) Longgarkan syarat incoming-size bila subset hanya 1 cabang (untuk Inclusive)
+            int inSize = n.getIncoming().size();
+            boolean requireMultiIn = (type == GatewayType.PARALLEL) || (starts.size() > 1);
+            if (requireMultiIn && inSize <= 1) continue;
+
+            boolean typeMatch = (type == GatewayType.PARALLEL && n instanceof ParallelGateway)
+                    || (type == GatewayType.INCLUSIVE && n instanceof InclusiveGateway);
+            if (!typeMatch) continue;
+            candidates.add(n.getId());
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String j : candidates) {
+            boolean ok = true;
+            for (String s : starts) {
+                Map<String,Integer> d = distByStart.get(s);
+                if (d == null || !d.containsKey(j)) { ok = false; break; }
+                if (d.get(j) <= 0) { ok = false; break; }
+            }
+            if (ok) result.add(j);
+        }
+        return result;
+    }
+
+    private String pickBestJoin(
+            List<String> joins, List<String> starts,
+            Map<String, Map<String,Integer>> distByStart
+    ) {
+        String best = null; int bestScore = Integer.MAX_VALUE;
+        for (String j : joins) {
+            int sum = 0; boolean ok = true;
+            for (String s : starts) {
+                Integer d = distByStart.getOrDefault(s, Collections.emptyMap()).get(j);
+                if (d == null) { ok = false; break; }
+                sum += d;
+            }
+            if (ok && sum < bestScore) { bestScore = sum; best = j; }
+        }
+        return best;
+    }
+
+    private boolean canAnyReach(Graph g, List<String> starts, String targetId) {
+        for (String s : starts) {
+            if (isReachable(g, s, targetId, new HashSet<>())) return true;
+        }
+        return false;
+    }
+
+    private Map<String,Integer> bfsDistances(Graph g, String startId) {
+        Map<String,Integer> dist = new HashMap<>();
+        ArrayDeque<String> q = new ArrayDeque<>();
+        dist.put(startId, 0); q.add(startId);
+        while (!q.isEmpty()) {
+            String u = q.poll();
+            int du = dist.get(u);
+            for (String v : g.outgoing.getOrDefault(u, Collections.emptyList())) {
+                if (!dist.containsKey(v)) { dist.put(v, du + 1); q.add(v); }
+            }
+        }
+        return dist;
+    }
+
+    private List<String> shortestPathTo(Graph g, String startId, String targetId) {
+        Map<String,String> prev = new HashMap<>();
+        ArrayDeque<String> q = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        q.add(startId); seen.add(startId);
+        while (!q.isEmpty()) {
+            String u = q.poll();
+            if (u.equals(targetId)) break;
+            for (String v : g.outgoing.getOrDefault(u, Collections.emptyList())) {
+                if (seen.add(v)) { prev.put(v, u); q.add(v); }
+            }
+        }
+        if (!startId.equals(targetId) && !prev.containsKey(targetId)) return null;
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        String cur = targetId; stack.addFirst(cur);
+        while (!cur.equals(startId)) {
+            cur = prev.get(cur);
+            if (cur == null) return null;
+            stack.addFirst(cur);
+        }
+        return new ArrayList<>(stack);
+    }
+
+    private boolean isReachable(Graph g, String from, String to, Set<String> visited) {
+        if (from.equals(to)) return true;
+        if (visited.contains(from)) return false;
+        visited.add(from);
+        for (String next : g.outgoing.getOrDefault(from, Collections.emptyList())) {
+            if (isReachable(g, next, to, visited)) return true;
+        }
+        return false;
+    }
+
+    /* ===================== Gateway Predicates ===================== */
+
+    private boolean isExclusiveFork(FlowNode node, Graph g) {
+        boolean xor = (node instanceof ExclusiveGateway) &&
+                g.outgoing.getOrDefault(node.getId(), Collections.emptyList()).size() > 1;
+        boolean evbExclusive = isEventBasedExclusive(node) &&
+                g.outgoing.getOrDefault(node.getId(), Collections.emptyList()).size() > 1;
+        return xor || evbExclusive;
+    }
+
+    private boolean isEventBasedGateway(FlowNode n) {
+        return n instanceof EventBasedGateway;
+    }
+
+    // Lebih kokoh: coba enum via refleksi, fallback ke attribute string
+    private boolean isEventBasedParallel(FlowNode n) {
+        if (!(n instanceof EventBasedGateway)) return false;
+        try {
+            Object enumVal = n.getClass().getMethod("getEventGatewayType").invoke(n);
+            if (enumVal != null) return enumVal.toString().equalsIgnoreCase("Parallel");
+        } catch (Exception ignore) {}
+        String t = ((EventBasedGateway) n).getAttributeValue("eventGatewayType");
+        if (t == null || t.isBlank()) return false; // default Exclusive
+        return t.equalsIgnoreCase("Parallel");
+    }
+
+    private boolean isEventBasedExclusive(FlowNode n) {
+        if (!(n instanceof EventBasedGateway)) return false;
+        try {
+            Object enumVal = n.getClass().getMethod("getEventGatewayType").invoke(n);
+            if (enumVal != null) return enumVal.toString().equalsIgnoreCase("Exclusive");
+            return true; // null → default Exclusive
+        } catch (Exception ignore) {}
+        String t = ((EventBasedGateway) n).getAttributeValue("eventGatewayType");
+        return (t == null || t.isBlank()) || t.equalsIgnoreCase("Exclusive");
+    }
+
+    /* ===================== Flow helpers — plain ===================== */
+
+    private void goOutgoing(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
+                            Map<String, Integer> visitCount, Consumer<List<String>> sink,
+                            Counter counter, long deadline, DfsService.Options opt) {
+        List<String> outs = g.outgoing.getOrDefault(nodeId, Collections.emptyList());
+        int limit = Math.min(outs.size(), opt.genericFanoutCap);
+        for (int i = 0; i < limit; i++) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsRoot(g, outs.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    private void goBoundary(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
+                            Map<String, Integer> visitCount, Consumer<List<String>> sink,
+                            Counter counter, long deadline, DfsService.Options opt) {
+        List<String> bes = g.boundary.getOrDefault(nodeId, Collections.emptyList());
+        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
+        for (int i = 0; i < blim; i++) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsRoot(g, bes.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    private void goMessage(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
+                           Map<String, Integer> visitCount, Consumer<List<String>> sink,
+                           Counter counter, long deadline, DfsService.Options opt) {
+        List<String> tgts = g.messageTargets.getOrDefault(nodeId, Collections.emptyList());
+        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
+        for (int i = 0; i < mlim; i++) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsRoot(g, tgts.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    private void goOutgoingInside(Graph g, String nodeId, String parentSpId, Deque<String> path,
+                                  Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+                                  Consumer<List<String>> sink, Counter counter, long deadline, DfsService.Options opt) {
+        List<String> outs = g.outgoing.getOrDefault(nodeId, Collections.emptyList());
+        int limit = Math.min(outs.size(), opt.genericFanoutCap);
+        for (int i = 0; i < limit; i++) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsInsideSP(g, outs.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    private void goBoundaryInside(Graph g, String nodeId, String parentSpId, Deque<String> path,
+                                  Set<String> visitedDepthKey, Map<String, Integer> visitCount,
+                                  Consumer<List<String>> sink, Counter counter, long deadline, DfsService.Options opt) {
+        List<String> bes = g.boundary.getOrDefault(nodeId, Collections.emptyList());
+        int blim = Math.min(bes.size(), opt.boundaryFanoutCap);
+        for (int i = 0; i < blim; i++) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsInsideSP(g, bes.get(i), parentSpId, path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    private void goMessageCrossToRoot(Graph g, String nodeId, Deque<String> path, Set<String> visitedDepthKey,
+                                      Map<String, Integer> visitCount, Consumer<List<String>> sink,
+                                      Counter counter, long deadline, DfsService.Options opt) {
+        List<String> tgts = g.messageTargets.getOrDefault(nodeId, Collections.emptyList());
+        int mlim = Math.min(tgts.size(), opt.messageFanoutCap);
+        for (int i = 0; i < mlim; i++) {
+            if (overBudget(counter, deadline, opt)) break;
+            dfsRoot(g, tgts.get(i), path, visitedDepthKey, visitCount, sink, counter, deadline, opt);
+        }
+    }
+
+    /* ===================== Enter/Leave & Budget ===================== */
+
+    private boolean enterNode(String currentId, Deque<String> path, Set<String> visitedDepthKey,
+                              Map<String, Integer> visitCount, DfsService.Options opt) {
+        if (path.size() >= opt.maxDepth) return false;
+
+        if (opt.revisitWindow > 0) {
+            int seen = 0;
+            for (Iterator<String> it = path.descendingIterator(); it.hasNext() && seen < opt.revisitWindow; seen++) {
+                if (Objects.equals(it.next(), currentId)) return false;
+            }
+        }
+
+        int cnt = visitCount.getOrDefault(currentId, 0);
+        if (cnt >= opt.maxVisitsPerNode) return false;
+
+        String depthKey = currentId + "#" + path.size();
+        if (visitedDepthKey.contains(depthKey)) return false;
+
+        path.addLast(currentId);
+        visitedDepthKey.add(depthKey);
+        visitCount.put(currentId, cnt + 1);
+        return true;
+    }
+
+    private void leaveNode(String currentId, Deque<String> path, Set<String> visitedDepthKey,
+                           Map<String, Integer> visitCount) {
+        String depthKey = currentId + "#" + (path.size() - 1);
+        visitedDepthKey.remove(depthKey);
+        path.removeLast();
+        int cnt = visitCount.getOrDefault(currentId, 0);
+        if (cnt <= 1) visitCount.remove(currentId); else visitCount.put(currentId, cnt - 1);
+    }
+
+    private static final class Counter { long paths = 0; }
+    private boolean overBudget(Counter c, long deadline, DfsService.Options opt) {
+        if (c.paths >= opt.maxPaths) return true;
+        return System.nanoTime() > deadline;
+    }
+
+    /* ===================== Graph build ===================== */
+
+    private Graph buildGraph(BpmnModelInstance model, DfsService.Options opt) {
+        Graph g = new Graph();
+
+        for (FlowNode n : model.getModelElementsByType(FlowNode.class)) {
+            g.nodeById.put(n.getId(), n);
+            if (isInsideSubProcess(n)) g.insideSubprocess.add(n.getId());
+        }
+
+        for (StartEvent s : model.getModelElementsByType(StartEvent.class)) {
+            if (!g.insideSubprocess.contains(s.getId())) g.rootStarts.add(s);
+        }
+        if (g.rootStarts.isEmpty()) throw new IllegalStateException("Tidak ada StartEvent di level root.");
+
+        for (FlowNode n : g.nodeById.values()) {
+            List<String> outs = new ArrayList<>();
+            for (SequenceFlow sf : n.getOutgoing()) {
+                FlowNode tgt = sf.getTarget();
+                if (tgt != null) outs.add(tgt.getId());
+            }
+            if (!outs.isEmpty()) g.outgoing.put(n.getId(), outs);
+
+            if (n instanceof Gateway) g.allGateways.add((Gateway) n);
+        }
+
+        if (opt.includeBoundary) {
+            for (BoundaryEvent be : model.getModelElementsByType(BoundaryEvent.class)) {
+                if (be.getAttachedTo() == null) continue;
+                String hostId = be.getAttachedTo().getId();
+                g.boundary.computeIfAbsent(hostId, k -> new ArrayList<>()).add(be.getId());
+            }
+        }
+
+        for (SubProcess sp : model.getModelElementsByType(SubProcess.class)) {
+            if (isEventSubProcess(sp)) {
+                g.eventSubProcesses.add(sp.getId());
+                continue;
+            }
+            List<String> starts = new ArrayList<>();
+            for (FlowElement e : sp.getFlowElements()) if (e instanceof StartEvent) starts.add(e.getId());
+            if (!starts.isEmpty()) g.subprocessStarts.put(sp.getId(), starts);
+
+            g.spChildren.computeIfAbsent(sp.getId(), k -> new HashSet<>());
+            for (FlowElement e : sp.getFlowElements())
+                if (e instanceof FlowNode) g.spChildren.get(sp.getId()).add(e.getId());
+        }
+
+        if (opt.includeMessageFlow) {
+            for (MessageFlow mf : model.getModelElementsByType(MessageFlow.class)) {
+                InteractionNode src = mf.getSource();
+                InteractionNode tgt = mf.getTarget();
+                if (src instanceof FlowNode && tgt instanceof FlowNode) {
+                    String sId = ((FlowNode) src).getId();
+                    String tId = ((FlowNode) tgt).getId();
+                    g.messageTargets.computeIfAbsent(sId, k -> new ArrayList<>()).add(tId);
+                }
+            }
+        }
+
+        return g;
+    }
+
+    private boolean isInsideSubProcess(FlowNode node) {
+        ModelElementInstance p = node.getParentElement();
+        while (p != null) {
+            if (p instanceof SubProcess) return true;
+            p = p.getParentElement();
+        }
+        return false;
+    }
+
+    /* ===================== Graph Holder ===================== */
+
+    private static final class Graph {
+        final Map<String, FlowNode> nodeById = new HashMap<>(1024);
+        final Set<String> insideSubprocess = new HashSet<>(512);
+        final List<StartEvent> rootStarts = new ArrayList<>(16);
+
+        final Map<String, List<String>> outgoing = new HashMap<>(1024);
+        final Map<String, List<String>> boundary = new HashMap<>(256);
+        final Map<String, List<String>> messageTargets = new HashMap<>(512);
+
+        final Map<String, List<String>> subprocessStarts = new HashMap<>(128);
+        final Map<String, Set<String>> spChildren = new HashMap<>(128);
+
+        final List<Gateway> allGateways = new ArrayList<>(256);
+
+        // Event Sub-Process (triggeredByEvent=true)
+        final Set<String> eventSubProcesses = new HashSet<>(64);
+
+        boolean isParentOf(String spId, String childNodeId) {
+            Set<String> children = spChildren.get(spId);
+            return children != null && children.contains(childNodeId);
+        }
+    }
+
+    /** Deteksi Event Sub-Process (triggeredByEvent=true). */
+    private boolean isEventSubProcess(SubProcess sp) {
+        String trig = sp.getAttributeValue("triggeredByEvent");
+        return "true".equalsIgnoreCase(trig);
+    }
+}
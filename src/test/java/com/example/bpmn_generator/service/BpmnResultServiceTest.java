@@ -0,0 +1,419 @@
+package com.example.bpmn_generator.service;
+
+import com.example.bpmn_generator.entity.BpmnFile;
+import com.example.bpmn_generator.entity.BpmnResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * generateScenario incremental: hasil path yang fingerprint-nya sama dipakai ulang tanpa request LLM,
+ * path yang berubah di-generate ulang, dan tiap path akhirnya punya tepat satu baris final. Hasil checkpoint
+ * (pending) baru tampil setelah generate sukses dan dipakai ulang oleh generate berikutnya jika run gagal.
+ */
+class BpmnResultServiceTest {
+
+    private static final Long FILE_ID = 7L;
+
+    private final BpmnFile file = new BpmnFile();
+    private InMemoryBpmnStore store;
+    private FakeApi api;
+    private LlmUsageTracker tracker;
+    private BpmnResultService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(file, "id", FILE_ID);
+        file.setOriginalFileName("pemesanan.bpmn");
+        tasks("Isi formulir pesanan", "Verifikasi pembayaran", "Kirim barang");
+        file.setPathsJson(List.of("S -> T1 -> E", "S -> T2 -> E", "S -> T3 -> E"));
+
+        store = new InMemoryBpmnStore(file, "alice");
+        api = new FakeApi();
+        tracker = new LlmUsageTracker();
+        service = new BpmnResultService();
+        ReflectionTestUtils.setField(service, "bpmnResultRepository", store.results);
+        ReflectionTestUtils.setField(service, "bpmnRepository", store.files);
+        ReflectionTestUtils.setField(service, "apiService", api);
+        ReflectionTestUtils.setField(service, "llmResilience", new LlmResilience());
+        ReflectionTestUtils.setField(service, "usageTracker", tracker);
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(store));
+        ReflectionTestUtils.setField(service, "generationConcurrency", 2);
+        ReflectionTestUtils.setField(service, "prefixDedupEnabled", false);
+        ReflectionTestUtils.setField(service, "incrementalEnabled", true);
+        ReflectionTestUtils.setField(service, "persistChunkSize", 1);
+        ReflectionTestUtils.setField(service, "persistMaxDelayMs", 60_000L);
+        ReflectionTestUtils.setField(service, "slotWaitSeconds", 1L);
+        service.initGenerationPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdownGenerationPool();
+    }
+
+    @Test
+    void unchangedModelIsServedFromStoredResults() {
+        assertTrue(generate());
+        assertEquals(3, api.calls.get());
+        Map<String, Long> ids = idsByPath();
+
+        assertTrue(generate());
+        assertEquals(3, api.calls.get());
+        assertEquals(ids, idsByPath());
+        assertEquals(List.of("P1", "P2", "P3"), scenarioPathIds());
+    }
+
+    @Test
+    void renamedTaskRegeneratesOnlyPathsThatContainIt() {
+        assertTrue(generate());
+        Map<String, Long> before = idsByPath();
+
+        tasks("Isi formulir pesanan", "Verifikasi pembayaran manual", "Kirim barang");
+        assertTrue(generate());
+
+        assertEquals(4, api.calls.get());
+        assertTrue(api.lastLabels().contains("Verifikasi pembayaran manual"), api.lastLabels().toString());
+        Map<String, Long> after = idsByPath();
+        assertEquals(before.get("P1"), after.get("P1"));
+        assertEquals(before.get("P3"), after.get("P3"));
+        assertNotEquals(before.get("P2"), after.get("P2"));
+        assertEquals(3, store.rows().size(), "baris lama P2 harus terhapus");
+        assertTrue(summary("P2").contains("Verifikasi pembayaran manual"));
+    }
+
+    @Test
+    void reorderedPathsKeepTheirResultsUnderShiftedPathIds() {
+        assertTrue(generate());
+        Map<String, Long> before = idsByPath();
+        String firstSummary = summary("P1");
+
+        file.setPathsJson(List.of("S -> T3 -> E", "S -> T1 -> E", "S -> T2 -> E"));
+        assertTrue(generate());
+
+        assertEquals(3, api.calls.get());
+        Map<String, Long> after = idsByPath();
+        assertEquals(before.get("P3"), after.get("P1"));
+        assertEquals(before.get("P1"), after.get("P2"));
+        assertEquals(before.get("P2"), after.get("P3"));
+        assertEquals(firstSummary, summary("P2"));
+        assertEquals("S -> T3 -> E", file.getTestScenariosJson().get(0).get("scenario_path"));
+        assertEquals("P1", file.getTestScenariosJson().get(0).get("path_id"));
+    }
+
+    @Test
+    void duplicateFingerprintsReuseEachStoredRowOnce() {
+        file.setPathsJson(List.of("S -> T1 -> E", "S -> T1 -> E", "S -> T2 -> E"));
+        assertTrue(generate());
+        assertEquals(3, api.calls.get());
+        Map<String, Long> before = idsByPath();
+        assertEquals(3, new HashSet<>(before.values()).size());
+
+        assertTrue(generate());
+        assertEquals(3, api.calls.get());
+        assertEquals(new HashSet<>(before.values()), new HashSet<>(idsByPath().values()));
+
+        // satu duplikat hilang → satu barisnya dihapus, tanpa request LLM
+        file.setPathsJson(List.of("S -> T1 -> E", "S -> T2 -> E"));
+        assertTrue(generate());
+        assertEquals(3, api.calls.get());
+        assertEquals(2, store.rows().size());
+        assertTrue(Set.of(before.get("P1"), before.get("P2")).contains(idsByPath().get("P1")));
+        assertEquals(before.get("P3"), idsByPath().get("P2"));
+    }
+
+    @Test
+    void pendingRowsOfCancelledRunAreReusedAndPromoted() {
+        AtomicInteger done = new AtomicInteger();
+        boolean ok = service.generateScenario(FILE_ID, new BpmnResultService.GenerationListener() {
+            @Override
+            public void onPathDone(int index, boolean fallback) {
+                done.incrementAndGet();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return done.get() > 0;
+            }
+        }, false);
+        assertFalse(ok);
+
+        List<BpmnResult> pending = store.rows();
+        assertFalse(pending.isEmpty());
+        assertTrue(pending.stream().allMatch(BpmnResult::isPending));
+        assertTrue(service.getBpmnResultsByFileId(FILE_ID).isEmpty(), "checkpoint pending tidak boleh tampil");
+        int callsBefore = api.calls.get();
+
+        assertTrue(generate());
+
+        assertEquals(3 - pending.size(), api.calls.get() - callsBefore);
+        List<BpmnResult> rows = store.rows();
+        assertEquals(3, rows.size());
+        assertTrue(rows.stream().noneMatch(BpmnResult::isPending));
+        Set<Long> ids = new HashSet<>(idsByPath().values());
+        for (BpmnResult r : pending) assertTrue(ids.contains(r.getId()), "pending " + r.getId() + " tidak dipakai ulang");
+    }
+
+    @Test
+    void checkpointRowsStayHiddenUntilTheRunSucceeds() {
+        assertTrue(generate());
+        Map<String, Long> old = idsByPath();
+        List<Set<Long>> visibleDuringRun = new ArrayList<>();
+        List<Long> pendingDuringRun = new ArrayList<>();
+
+        assertTrue(service.generateScenario(FILE_ID, new BpmnResultService.GenerationListener() {
+            @Override
+            public synchronized void onPathDone(int index, boolean fallback) {
+                Set<Long> visible = new HashSet<>();
+                for (BpmnResult r : service.getBpmnResultsByFileId(FILE_ID)) visible.add(r.getId());
+                visibleDuringRun.add(visible);
+                pendingDuringRun.add(store.rows().stream().filter(BpmnResult::isPending).count());
+            }
+        }, true));
+
+        assertEquals(3, visibleDuringRun.size());
+        for (Set<Long> visible : visibleDuringRun) assertEquals(new HashSet<>(old.values()), visible);
+        assertTrue(pendingDuringRun.stream().allMatch(n -> n > 0), pendingDuringRun.toString());
+
+        List<BpmnResult> rows = store.rows();
+        assertEquals(3, rows.size());
+        assertTrue(rows.stream().noneMatch(BpmnResult::isPending));
+        for (Long id : idsByPath().values()) assertFalse(old.containsValue(id));
+    }
+
+    @Test
+    void failedCheckpointIsSavedByTheFinalTransaction() {
+        store.failNext("saveAll");
+
+        assertTrue(generate());
+
+        List<BpmnResult> rows = store.rows();
+        assertEquals(3, rows.size());
+        assertTrue(rows.stream().noneMatch(BpmnResult::isPending));
+        assertEquals(List.of("P1", "P2", "P3"), new ArrayList<>(idsByPath().keySet()));
+        assertEquals(3, api.calls.get());
+    }
+
+    @Test
+    void failedRunKeepsPreviousResultsAndResumesFromCheckpoint() {
+        assertTrue(generate());
+        Map<String, Long> before = idsByPath();
+        String oldSummary = summary("P2");
+
+        tasks("Isi formulir pesanan", "Verifikasi pembayaran manual", "Kirim barang");
+        store.failNext("promotePending");
+        assertFalse(generate());
+
+        assertEquals(4, api.calls.get());
+        assertEquals(before, idsByPath(), "hasil lama tetap tampil setelah transaksi akhir gagal");
+        assertEquals(oldSummary, summary("P2"));
+        List<BpmnResult> pending = store.rows().stream().filter(BpmnResult::isPending).toList();
+        assertEquals(1, pending.size());
+        assertFalse(file.isScenarioReady());
+
+        assertTrue(generate());
+
+        assertEquals(4, api.calls.get(), "path dari checkpoint tidak di-generate ulang");
+        Map<String, Long> after = idsByPath();
+        assertEquals(pending.get(0).getId(), after.get("P2"));
+        assertEquals(before.get("P1"), after.get("P1"));
+        assertEquals(before.get("P3"), after.get("P3"));
+        assertEquals(3, store.rows().size());
+        assertTrue(store.rows().stream().noneMatch(BpmnResult::isPending));
+        assertTrue(summary("P2").contains("Verifikasi pembayaran manual"));
+    }
+
+    @Test
+    void forceFullRegeneratesEveryPath() {
+        assertTrue(generate());
+        assertTrue(service.generateScenario(FILE_ID, BpmnResultService.GenerationListener.NONE, true));
+        assertEquals(6, api.calls.get());
+        assertEquals(3, store.rows().size());
+    }
+
+    @Test
+    void exhaustedTokenQuotaStopsRunBeforeAnyRequest() {
+        useTracker(2, 100);
+        LlmUsageTrackerTest.useTokens(tracker, "alice", 100);
+
+        assertFalse(generate());
+
+        assertEquals(0, api.calls.get());
+        assertTrue(store.rows().isEmpty());
+        assertFalse(file.isScenarioReady());
+    }
+
+    @Test
+    void tokenQuotaUsedUpMidRunStopsAndKeepsFinishedPathsPending() throws Exception {
+        restartPool(1);
+        useTracker(2, 100);
+        api.tokensPerCall = 100;
+
+        assertFalse(generate());
+
+        assertEquals(1, api.calls.get(), "grup berikutnya harus ditolak kuota sebelum request");
+        assertTrue(tracker.isTokenQuotaExceeded("alice"));
+        assertTrue(service.getBpmnResultsByFileId(FILE_ID).isEmpty());
+        assertEquals(1, store.rows().size());
+        assertTrue(store.rows().get(0).isPending());
+        waitUntil(() -> inFlight() == 0);
+    }
+
+    @Test
+    void cancelReleasesSlotsOfGroupsThatNeverStarted() throws Exception {
+        restartPool(1);
+        useTracker(3, 0);
+        api.gate = new CountDownLatch(1);
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        // 1 thread pool, 3 slot: grup 1 berjalan (tertahan di LLM), grup 2 dan 3 antre di pool dengan slot masing-masing
+        CompletableFuture<Boolean> run = CompletableFuture.supplyAsync(() -> service.generateScenario(FILE_ID,
+                new BpmnResultService.GenerationListener() {
+                    @Override
+                    public boolean isCancelled() {
+                        return cancelled.get();
+                    }
+                }, false));
+        waitUntil(() -> api.calls.get() == 1 && inFlight() == 3);
+
+        cancelled.set(true);
+        api.gate.countDown();
+
+        assertFalse(run.get(5, TimeUnit.SECONDS));
+        waitUntil(() -> inFlight() == 0);
+        assertEquals(1, api.calls.get());
+        assertTrue(tracker.tryAcquireSlot("alice", 0, TimeUnit.MILLISECONDS));
+    }
+
+    private boolean generate() {
+        return service.generateScenario(FILE_ID, BpmnResultService.GenerationListener.NONE, false);
+    }
+
+    /** Elemen S (start), T1..Tn (user task) dan E (end), seperti hasil parse model. */
+    private void tasks(String... names) {
+        List<Map<String, Object>> elements = new ArrayList<>();
+        elements.add(element("S", "Mulai", "startEvent"));
+        for (int i = 0; i < names.length; i++) elements.add(element("T" + (i + 1), names[i], "userTask"));
+        elements.add(element("E", "Selesai", "endEvent"));
+        file.setElementsJson(elements);
+    }
+
+    private static Map<String, Object> element(String id, String name, String type) {
+        Map<String, Object> element = new HashMap<>();
+        element.put("id", id);
+        element.put("name", name);
+        element.put("type", type);
+        element.put("lane", "Pelanggan");
+        return element;
+    }
+
+    private Map<String, Long> idsByPath() {
+        Map<String, Long> ids = new TreeMap<>();
+        for (BpmnResult r : service.getBpmnResultsByFileId(FILE_ID)) {
+            assertNull(ids.put(r.getPathId(), r.getId()), "pathId ganda: " + r.getPathId());
+        }
+        return ids;
+    }
+
+    private String summary(String pathId) {
+        return service.getBpmnResultByPathId(FILE_ID, pathId).orElseThrow().getSummary();
+    }
+
+    /** Kuota user pemilik file; request FakeApi tercatat di tracker ini. */
+    private void useTracker(int maxConcurrentRequests, long maxTokens) {
+        tracker = LlmUsageTrackerTest.tracker(maxConcurrentRequests, maxTokens);
+        api.tracker = tracker;
+        ReflectionTestUtils.setField(service, "usageTracker", tracker);
+    }
+
+    private void restartPool(int concurrency) {
+        service.shutdownGenerationPool();
+        ReflectionTestUtils.setField(service, "generationConcurrency", concurrency);
+        service.initGenerationPool();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int inFlight() {
+        return (Integer) ((Map<String, Object>) tracker.userUsage("alice").get("quota")).get("inFlightRequests");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "kondisi tidak tercapai dalam 5 detik");
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Object> scenarioPathIds() {
+        return file.getTestScenariosJson().stream().map(s -> s.get("path_id")).toList();
+    }
+
+    /**
+     * LLM palsu: hasil valid yang summary-nya memuat label path, menghitung request. Token tiap request dicatat
+     * ke {@code tracker} (atribusi thread pemanggil) seperti ApiService; {@code gate} menahan request.
+     */
+    static class FakeApi extends ApiService {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile LlmUsageTracker tracker;
+        volatile long tokensPerCall;
+        volatile CountDownLatch gate;
+        private final List<List<String>> labels = new ArrayList<>();
+
+        @Override
+        public Map<String, String> generate_bpmn(List<String> pathLabels, String context) {
+            calls.incrementAndGet();
+            synchronized (labels) {
+                labels.add(pathLabels);
+            }
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (tracker != null) {
+                LlmUsageTracker.Call call = tracker.start(ScenarioGenerator.Kind.SCENARIO);
+                call.tokens(tokensPerCall, 0);
+                call.finish(true);
+            }
+            Map<String, String> result = new HashMap<>();
+            result.put("summary", "Uji " + String.join(" / ", pathLabels));
+            result.put("description", "Pengguna menjalankan " + String.join(", ", pathLabels));
+            result.put("scenario_step", "1. Buka halaman pesanan\n2. Selesaikan langkah " + pathLabels.size());
+            result.put("input_data", "{\"pesanan\": \"A-1\"}");
+            result.put("expected_result", "{\"status\": \"success\"}");
+            return result;
+        }
+
+        @Override
+        public boolean isBatchEnabled() {
+            return false;
+        }
+
+        List<String> lastLabels() {
+            synchronized (labels) {
+                return labels.get(labels.size() - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.bpmn_generator.service;
+
+import com.example.bpmn_generator.entity.BpmnFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Upload ulang model ke file yang sama: record (dan hasil generate-nya) tetap, upload fisik lama diganti.
+ */
+class BpmnServiceTest {
+
+    private Path uploadDir;
+    private BpmnFile existing;
+    private BpmnService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        uploadDir = Files.createTempDirectory("bpmn-upload");
+        Files.writeString(uploadDir.resolve("lama_pemesanan.bpmn"), "<lama/>");
+
+        existing = new BpmnFile();
+        ReflectionTestUtils.setField(existing, "id", 7L);
+        existing.setOriginalFileName("pemesanan.bpmn");
+        existing.setStoredFileName("lama_pemesanan.bpmn");
+        existing.setPathsJson(List.of("S -> T1 -> E"));
+        existing.setScenarioReady(true);
+
+        service = new BpmnService();
+        ReflectionTestUtils.setField(service, "bpmnRepository", new InMemoryBpmnStore(existing, "alice").files);
+        ReflectionTestUtils.setField(service, "uploadDir", uploadDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Test
+    void replaceModelKeepsRecordAndSwapsUpload() throws IOException {
+        MockMultipartFile upload = new MockMultipartFile("file", "pemesanan-v2.bpmn", "text/xml",
+                "<baru/>".getBytes(StandardCharsets.UTF_8));
+        List<Map<String, Object>> elements = List.of(Map.of("id", "T1", "name", "Isi formulir", "type", "userTask"));
+
+        BpmnFile saved = service.replaceModel(existing, upload, elements,
+                List.of("S -> T1 -> E", "S -> T2 -> E"), List.of(), "<baru/>");
+
+        assertSame(existing, saved);
+        assertEquals("pemesanan-v2.bpmn", saved.getOriginalFileName());
+        assertEquals(List.of("S -> T1 -> E", "S -> T2 -> E"), saved.getPathsJson());
+        assertEquals(elements, saved.getElementsJson());
+        assertFalse(saved.isScenarioReady());
+
+        assertNotEquals("lama_pemesanan.bpmn", saved.getStoredFileName());
+        assertEquals("<baru/>", Files.readString(uploadDir.resolve(saved.getStoredFileName())));
+        assertFalse(Files.exists(uploadDir.resolve("lama_pemesanan.bpmn")), "upload lama harus terhapus");
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.bpmn_generator.service;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cursor dari client tidak dipercaya: jumlah frame, panjang buffer dan jumlah path yang tidak masuk akal
+ * ditolak dengan IllegalArgumentException (400 di controller), bukan alokasi besar atau enumerasi salah.
+ * Halaman yang terpotong deadline tetap memberi cursor, sehingga gabungan halaman = hasil tanpa paging.
+ */
+class DfsServiceCursorTest {
+
+    private final DfsService dfsService = new DfsService();
+    private final DfsService.Options opt = new DfsService.Options().maxPaths(50).maxDepth(40).timeLimitMillis(600_000);
+
+    // layout cursor: versi (1) | fingerprint (4) | paths (8) | frame (4) | 3 int per frame
+    private static final int PATHS_OFFSET = 5;
+    private static final int FRAMES_OFFSET = 13;
+
+    @Test
+    void validCursorResumesEnumeration() {
+        BpmnModelInstance model = branchyModel();
+        DfsService.PathPage page = dfsService.findPathsPage(model, opt, null, 1);
+        assertNotNull(page.nextCursor);
+        assertEquals(2L, dfsService.findPathsPage(model, opt, page.nextCursor, 1).emitted);
+    }
+
+    @Test
+    void pagesCutByDeadlineResumeToTheUnpagedResult() {
+        // 2^14 path: enumerasi penuh jauh lebih lama dari 1 ms, jadi halaman pasti terpotong deadline
+        BpmnModelInstance model = diamondChain(14);
+        DfsService.Options full = new DfsService.Options().maxPaths(20_000).maxDepth(200).timeLimitMillis(600_000);
+        DfsService.Options tight = new DfsService.Options().maxPaths(20_000).maxDepth(200).timeLimitMillis(1);
+        List<List<String>> expected = dfsService.findAllPaths(model, full);
+        assertEquals(1 << 14, expected.size());
+
+        int[] timedOut = new int[1];
+        assertEquals(expected, pageThrough(model, tight, timedOut));
+        assertTrue(timedOut[0] > 0);
+
+        // model acak (fork AND/OR, SubProcess, loop): titik potong mana pun tetap bisa dilanjutkan
+        for (long seed = 1; seed <= 30; seed++) {
+            BpmnModelInstance random = DfsServiceDifferentialTest.ModelGen.generate(seed);
+            DfsService.Options randomTight = new DfsService.Options().maxPaths(50).maxDepth(40).timeLimitMillis(1);
+            assertEquals(dfsService.findAllPaths(random, opt), pageThrough(random, randomTight, new int[1]), "seed " + seed);
+        }
+    }
+
+    /** Gabungan semua halaman (limit besar → halaman hanya berakhir karena deadline atau habis). */
+    private List<List<String>> pageThrough(BpmnModelInstance model, DfsService.Options options, int[] timedOut) {
+        List<List<String>> paged = new ArrayList<>();
+        String cursor = null;
+        for (int pages = 0; pages < 1_000_000; pages++) {
+            DfsService.PathPage page = dfsService.findPathsPage(model, options, cursor, 100_000);
+            paged.addAll(page.paths);
+            if (page.timedOut) {
+                timedOut[0]++;
+                assertNotNull(page.nextCursor, "halaman terpotong deadline harus bisa dilanjutkan");
+            }
+            if (page.nextCursor == null) return paged;
+            cursor = page.nextCursor;
+        }
+        throw new AssertionError("paging tidak selesai");
+    }
+
+    /** start → n × (XOR split → 2 task → XOR merge) → end. */
+    private static BpmnModelInstance diamondChain(int n) {
+        StringBuilder nodes = new StringBuilder("<startEvent id=\"start\"><outgoing>f_start</outgoing></startEvent>\n");
+        StringBuilder flows = new StringBuilder();
+        String previous = "start", previousFlow = "f_start";
+        for (int i = 0; i < n; i++) {
+            String split = "split_" + i, merge = "merge_" + i, a = "a_" + i, b = "b_" + i;
+            flows.append(flow(previousFlow, previous, split));
+            nodes.append(node("exclusiveGateway", split, previousFlow, "f_" + a, "f_" + b));
+            flows.append(flow("f_" + a, split, a)).append(flow("f_" + b, split, b));
+            nodes.append(node("task", a, "f_" + a, "f_" + a + "_m")).append(node("task", b, "f_" + b, "f_" + b + "_m"));
+            flows.append(flow("f_" + a + "_m", a, merge)).append(flow("f_" + b + "_m", b, merge));
+            nodes.append(node("exclusiveGateway", merge, "f_" + a + "_m", "f_" + b + "_m", "f_" + merge));
+            previous = merge;
+            previousFlow = "f_" + merge;
+        }
+        flows.append(flow(previousFlow, previous, "end"));
+        nodes.append("<endEvent id=\"end\"><incoming>").append(previousFlow).append("</incoming></endEvent>\n");
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" id=\"defs\" "
+                + "targetNamespace=\"http://example.com/dfs-test\">\n"
+                + "<process id=\"proc\" isExecutable=\"false\">\n" + nodes + flows + "</process>\n</definitions>\n";
+        return Bpmn.readModelFromStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Node dengan incoming (argumen pertama, atau dua pertama untuk merge) dan outgoing sisanya. */
+    private static String node(String tag, String id, String... flowIds) {
+        boolean merge = id.startsWith("merge_");
+        int incoming = merge ? 2 : 1;
+        StringBuilder out = new StringBuilder("<").append(tag).append(" id=\"").append(id).append("\" name=\"").append(id).append("\">");
+        for (int i = 0; i < flowIds.length; i++) {
+            String element = (i < incoming) ? "incoming" : "outgoing";
+            out.append('<').append(element).append('>').append(flowIds[i]).append("</").append(element).append('>');
+        }
+        return out.append("</").append(tag).append(">\n").toString();
+    }
+
+    private static String flow(String id, String source, String target) {
+        return "<sequenceFlow id=\"" + id + "\" sourceRef=\"" + source + "\" targetRef=\"" + target + "\"/>\n";
+    }
+
+    @Test
+    void rejectsPathCountOutsideBudget() {
+        BpmnModelInstance model = branchyModel();
+        byte[] cursor = firstCursor(model);
+        assertRejected(model, with(cursor, PATHS_OFFSET, ByteBuffer.allocate(8).putLong(-1).array()));
+        assertRejected(model, with(cursor, PATHS_OFFSET, ByteBuffer.allocate(8).putLong(opt.maxPaths + 1L).array()));
+    }
+
+    @Test
+    void rejectsFrameCountBeyondDepthOrBuffer() {
+        BpmnModelInstance model = branchyModel();
+        byte[] cursor = firstCursor(model);
+        int frames = ByteBuffer.wrap(cursor, FRAMES_OFFSET, 4).getInt();
+
+        assertRejected(model, with(cursor, FRAMES_OFFSET, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array()));
+        assertRejected(model, with(cursor, FRAMES_OFFSET, ByteBuffer.allocate(4).putInt(2 * opt.maxDepth + 2).array()));
+        assertRejected(model, with(cursor, FRAMES_OFFSET, ByteBuffer.allocate(4).putInt(frames + 1).array()));
+        assertRejected(model, with(cursor, FRAMES_OFFSET, ByteBuffer.allocate(4).putInt(-1).array()));
+        assertRejected(model, Arrays.copyOf(cursor, cursor.length - 4));
+        assertRejected(model, Arrays.copyOf(cursor, cursor.length + 12));
+    }
+
+    @Test
+    void rejectsGarbage() {
+        BpmnModelInstance model = branchyModel();
+        assertThrows(IllegalArgumentException.class, () -> dfsService.findPathsPage(model, opt, "bukan*cursor", 1));
+        assertRejected(model, new byte[]{ 1 });
+    }
+
+    private BpmnModelInstance branchyModel() {
+        for (long seed = 1; ; seed++) {
+            BpmnModelInstance model = DfsServiceDifferentialTest.ModelGen.generate(seed);
+            if (dfsService.findAllPaths(model, opt).size() >= 3) return model;
+        }
+    }
+
+    private byte[] firstCursor(BpmnModelInstance model) {
+        return Base64.getUrlDecoder().decode(dfsService.findPathsPage(model, opt, null, 1).nextCursor);
+    }
+
+    private static byte[] with(byte[] cursor, int offset, byte[] value) {
+        byte[] out = cursor.clone();
+        System.arraycopy(value, 0, out, offset, value.length);
+        return out;
+    }
+
+    private void assertRejected(BpmnModelInstance model, byte[] cursor) {
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(cursor);
+        assertThrows(IllegalArgumentException.class, () -> dfsService.findPathsPage(model, opt, encoded, 1));
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.bpmn_generator.service;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential test DfsService terhadap enumerasi awal ({@link BaselineDfs}) pada model BPMN acak dengan seed
+ * tetap: loop XOR, gateway AND/OR bersarang, SubProcess, boundary event dan message flow. Urutan & isi path
+ * harus identik, termasuk saat dipotong maxDepth / maxPaths, saat dibaca per halaman lewat cursor, dan
+ * pada mode paralel dengan ordered merge. Estimasi jumlah path dicek terhadap hasil enumerasi sesuai bound-nya.
+ */
+class DfsServiceDifferentialTest {
+
+    private static final int SEEDS = 60;
+    private static final int ESTIMATE_MAX_PATHS = 200_000;
+
+    private final DfsService dfsService = new DfsService();
+    private final BaselineDfs baseline = new BaselineDfs();
+
+    @Test
+    void matchesBaselineOnRandomModels() {
+        long total = 0;
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            DfsService.Options opt = options().maxPaths(5_000);
+            List<List<String>> expected = baseline.findAllPaths(model, opt);
+            assertEquals(expected, dfsService.findAllPaths(model, opt), "seed " + seed);
+            total += expected.size();
+        }
+        // pastikan generator memang menghasilkan model bercabang, bukan hanya satu jalur per model
+        assertTrue(total > 5L * SEEDS, "total path " + total);
+    }
+
+    @Test
+    void matchesBaselineWhenTruncated() {
+        List<DfsService.Options> variants = List.of(
+                options().maxPaths(1),
+                options().maxPaths(7),
+                options().maxDepth(6),
+                options().maxDepth(13).maxPaths(40),
+                options().maxVisitsPerNode(1).revisitWindow(2),
+                options().genericFanoutCap(2).boundaryFanoutCap(1).inclusiveMaxSubsets(2),
+                options().includeBoundary(false).includeMessageFlow(false),
+                options().inclusiveConservativeJoin(false).maxPaths(200)
+        );
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            for (int v = 0; v < variants.size(); v++) {
+                DfsService.Options opt = variants.get(v);
+                assertEquals(baseline.findAllPaths(model, opt), dfsService.findAllPaths(model, opt),
+                        "seed " + seed + " varian " + v);
+            }
+        }
+    }
+
+    @Test
+    void cursorPagesConcatenateToUnpagedResult() {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            for (DfsService.Options opt : List.of(options().maxPaths(500), options().maxPaths(5).maxDepth(20))) {
+                List<List<String>> unpaged = baseline.findAllPaths(model, opt);
+                for (int limit : new int[]{ 1, 3, 8 }) {
+                    List<List<String>> paged = new ArrayList<>();
+                    String cursor = null;
+                    int pages = 0;
+                    do {
+                        DfsService.PathPage page = dfsService.findPathsPage(model, opt, cursor, limit);
+                        assertTrue(page.paths.size() <= limit);
+                        paged.addAll(page.paths);
+                        assertEquals((long) paged.size(), page.emitted, "seed " + seed);
+                        cursor = page.nextCursor;
+                        assertTrue(++pages <= unpaged.size() + 1, "cursor tidak maju, seed " + seed);
+                    } while (cursor != null);
+                    assertEquals(unpaged, paged, "seed " + seed + " limit " + limit);
+                }
+            }
+        }
+    }
+
+    @Test
+    void firstTwoPagesArePrefixOfUnpagedResult() {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            DfsService.Options opt = options().maxPaths(500);
+            List<List<String>> unpaged = dfsService.findAllPaths(model, opt);
+
+            DfsService.PathPage page1 = dfsService.findPathsPage(model, opt, null, 2);
+            List<List<String>> both = new ArrayList<>(page1.paths);
+            if (page1.nextCursor != null) {
+                both.addAll(dfsService.findPathsPage(model, opt, page1.nextCursor, 3).paths);
+            }
+            assertEquals(unpaged.subList(0, Math.min(5, unpaged.size())), both, "seed " + seed);
+        }
+    }
+
+    @Test
+    void orderedParallelMatchesSequential() {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            for (int maxPaths : new int[]{ 1, 9, 5_000 }) {
+                List<List<String>> sequential = dfsService.findAllPaths(model, options().maxPaths(maxPaths));
+                DfsService.Options parallel = options().maxPaths(maxPaths).parallelism(4).parallelSplitDepth(8);
+                assertEquals(sequential, dfsService.findAllPaths(model, parallel), "seed " + seed + " maxPaths " + maxPaths);
+            }
+        }
+    }
+
+    @Test
+    void unorderedParallelKeepsPathSetWithinBudget() {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            List<List<String>> sequential = dfsService.findAllPaths(model, options().maxPaths(5_000));
+            DfsService.Options parallel = options().maxPaths(5_000).parallelism(4).orderedMerge(false);
+            List<List<String>> unordered = dfsService.findAllPaths(model, parallel);
+            assertEquals(new HashSet<>(sequential), new HashSet<>(unordered), "seed " + seed);
+            assertEquals(sequential.size(), unordered.size(), "seed " + seed);
+
+            DfsService.Options capped = options().maxPaths(3).parallelism(4).orderedMerge(false);
+            assertEquals(Math.min(3, sequential.size()), dfsService.findAllPaths(model, capped).size(), "seed " + seed);
+        }
+    }
+
+    @Test
+    void estimateAgreesWithEnumerationWithinItsBound() {
+        List<DfsService.Options> variants = List.of(
+                options(),
+                options().maxDepth(13),
+                options().maxVisitsPerNode(1).revisitWindow(2),
+                options().includeBoundary(false).includeMessageFlow(false),
+                options().genericFanoutCap(2).boundaryFanoutCap(1).inclusiveMaxSubsets(2)
+        );
+        Map<String, Integer> bounds = new TreeMap<>();
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            BpmnModelInstance model = ModelGen.generate(seed);
+            for (int v = 0; v < variants.size(); v++) {
+                DfsService.Options opt = variants.get(v).maxPaths(ESTIMATE_MAX_PATHS);
+                DfsService.PathEstimate estimate = dfsService.estimatePathCount(model, opt);
+                String where = "seed " + seed + " varian " + v + " bound " + estimate.bound + " " + estimate.notes;
+                assertEquals(Math.min(estimate.count, opt.maxPaths), estimate.expectedPaths, where);
+                assertEquals(estimate.count > opt.maxPaths, estimate.exceedsMaxPaths, where);
+                assertEquals("EXACT".equals(estimate.bound), estimate.exact, where);
+                if (estimate.exceedsMaxPaths) continue;   // enumerasi terpotong maxPaths, tidak bisa dibandingkan
+
+                long enumerated = dfsService.findAllPaths(model, opt).size();
+                switch (estimate.bound) {
+                    case "EXACT" -> assertEquals(enumerated, estimate.count, where);
+                    case "LOWER" -> assertTrue(estimate.count <= enumerated, where + ": " + estimate.count + " > " + enumerated);
+                    case "UPPER" -> assertTrue(estimate.count >= enumerated, where + ": " + estimate.count + " < " + enumerated);
+                    default -> assertEquals("APPROX", estimate.bound, where);
+                }
+                bounds.merge(estimate.bound, 1, Integer::sum);
+            }
+        }
+        // hitungan exact harus benar-benar tercapai pada sebagian besar model; LOWER/UPPER juga ikut teruji
+        assertTrue(bounds.getOrDefault("EXACT", 0) > SEEDS, "bound " + bounds);
+        assertTrue(bounds.containsKey("LOWER") && bounds.containsKey("UPPER"), "bound " + bounds);
+    }
+
+    /** Tanpa batas waktu efektif: hasil tidak boleh bergantung pada kecepatan mesin. */
+    private static DfsService.Options options() {
+        return new DfsService.Options().timeLimitMillis(600_000);
+    }
+
+    /**
+     * Generator model BPMN acak (XML → Bpmn.readModelFromStream) dari blok bersarang: task (kadang dengan
+     * boundary event), urutan, XOR split/merge, loop XOR, AND / OR fork-join, SubProcess, dan kadang
+     * pool kedua yang menerima message flow.
+     */
+    static final class ModelGen {
+
+        private record Block(String entry, String exit) {
+        }
+
+        private static final class Node {
+            final String id;
+            final String tag;
+            final String attributes;
+            final String definition;
+            final List<String> incoming = new ArrayList<>();
+            final List<String> outgoing = new ArrayList<>();
+
+            Node(String id, String tag, String attributes, String definition) {
+                this.id = id;
+                this.tag = tag;
+                this.attributes = attributes;
+                this.definition = definition;
+            }
+        }
+
+        private final Random random;
+        private final Map<String, Node> nodes = new LinkedHashMap<>();
+        /** scope (id process / SubProcess) → node & flow di dalamnya, berurutan. */
+        private final Map<String, List<String>> scopeNodes = new LinkedHashMap<>();
+        private final Map<String, StringBuilder> scopeFlows = new LinkedHashMap<>();
+        private final List<String> tasks = new ArrayList<>();
+        private int seq;
+
+        private ModelGen(long seed) {
+            this.random = new Random(seed);
+        }
+
+        static BpmnModelInstance generate(long seed) {
+            String xml = new ModelGen(seed).xml();
+            return Bpmn.readModelFromStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private String xml() {
+            String main = "proc_main";
+            scope(main);
+            String start = node(main, "startEvent", "", "");
+            String end = node(main, "endEvent", "", "");
+            String last = start;
+            for (int i = 0, blocks = 2 + random.nextInt(2); i < blocks; i++) {
+                Block body = block(main, 0);
+                flow(main, last, body.entry());
+                last = body.exit();
+            }
+            flow(main, last, end);
+            if (random.nextInt(4) == 0) {
+                // start kedua di root
+                String start2 = node(main, "startEvent", "", "");
+                flow(main, start2, tasks.isEmpty() ? end : tasks.get(random.nextInt(tasks.size())));
+            }
+
+            StringBuilder collaboration = new StringBuilder();
+            if (random.nextInt(3) == 0 && !tasks.isEmpty()) {
+                String other = "proc_other";
+                scope(other);
+                String otherStart = node(other, "startEvent", "", "");
+                String receive = node(other, "receiveTask", "", "");
+                String otherEnd = node(other, "endEvent", "", "");
+                flow(other, otherStart, receive);
+                flow(other, receive, otherEnd);
+                collaboration.append("  <collaboration id=\"collab\">\n")
+                        .append("    <participant id=\"part_main\" processRef=\"").append(main).append("\"/>\n")
+                        .append("    <participant id=\"part_other\" processRef=\"").append(other).append("\"/>\n");
+                int messages = 1 + random.nextInt(2);
+                for (int i = 0; i < messages; i++) {
+                    String source = tasks.get(random.nextInt(tasks.size()));
+                    collaboration.append("    <messageFlow id=\"msg_").append(i).append("\" sourceRef=\"").append(source)
+                            .append("\" targetRef=\"").append(receive).append("\"/>\n");
+                }
+                collaboration.append("  </collaboration>\n");
+            }
+
+            StringBuilder out = new StringBuilder();
+            out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                    .append("<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" id=\"defs\" ")
+                    .append("targetNamespace=\"http://example.com/dfs-test\">\n")
+                    .append(collaboration);
+            for (String scope : scopeNodes.keySet()) {
+                if (nodes.containsKey(scope)) continue;   // SubProcess dirender di dalam parent
+                out.append("  <process id=\"").append(scope).append("\" isExecutable=\"false\">\n")
+                        .append(render(scope))
+                        .append("  </process>\n");
+            }
+            return out.append("</definitions>\n").toString();
+        }
+
+        private Block block(String scope, int depth) {
+            int kind = random.nextInt(depth >= 3 ? 3 : 10);
+            switch (kind) {
+                case 3, 4: {
+                    Block first = block(scope, depth + 1);
+                    Block second = block(scope, depth + 1);
+                    flow(scope, first.exit(), second.entry());
+                    return new Block(first.entry(), second.exit());
+                }
+                case 5:
+                    return split(scope, depth, "exclusiveGateway");
+                case 6:
+                    return split(scope, depth, "parallelGateway");
+                case 7:
+                    return split(scope, depth, "inclusiveGateway");
+                case 8: {
+                    String sp = node(scope, "subProcess", "", "");
+                    scope(sp);
+                    String start = node(sp, "startEvent", "", "");
+                    Block body = block(sp, depth + 2);
+                    String end = node(sp, "endEvent", "", "");
+                    flow(sp, start, body.entry());
+                    flow(sp, body.exit(), end);
+                    return new Block(sp, sp);
+                }
+                case 9: {
+                    // loop: merge → body → split (kembali ke merge | lanjut)
+                    String merge = node(scope, "exclusiveGateway", "", "");
+                    Block body = block(scope, depth + 1);
+                    String split = node(scope, "exclusiveGateway", "", "");
+                    String next = task(scope);
+                    flow(scope, merge, body.entry());
+                    flow(scope, body.exit(), split);
+                    if (random.nextBoolean()) {
+                        flow(scope, split, merge);
+                        flow(scope, split, next);
+                    } else {
+                        flow(scope, split, next);
+                        flow(scope, split, merge);
+                    }
+                    return new Block(merge, next);
+                }
+                default: {
+                    String task = task(scope);
+                    if (random.nextInt(4) == 0) {
+                        String boundary = node(scope, "boundaryEvent", " attachedToRef=\"" + task + "\"",
+                                "<errorEventDefinition id=\"def_" + (++seq) + "\"/>");
+                        // boundary → end sendiri, atau bergabung lagi ke alur utama lewat task
+                        if (random.nextBoolean()) {
+                            flow(scope, boundary, node(scope, "endEvent", "", ""));
+                        } else {
+                            String handler = task(scope);
+                            flow(scope, boundary, handler);
+                            String after = node(scope, "exclusiveGateway", "", "");
+                            flow(scope, task, after);
+                            flow(scope, handler, after);
+                            return new Block(task, after);
+                        }
+                    }
+                    return new Block(task, task);
+                }
+            }
+        }
+
+        private Block split(String scope, int depth, String gateway) {
+            String fork = node(scope, gateway, "", "");
+            String join = node(scope, gateway, "", "");
+            int branches = 2 + random.nextInt(2);
+            for (int i = 0; i < branches; i++) {
+                if (gateway.equals("exclusiveGateway") && random.nextInt(5) == 0) {
+                    // cabang XOR langsung selesai
+                    flow(scope, fork, node(scope, "endEvent", "", ""));
+                    continue;
+                }
+                Block branch = block(scope, depth + 1);
+                flow(scope, fork, branch.entry());
+                flow(scope, branch.exit(), join);
+            }
+            if (nodes.get(join).incoming.isEmpty()) flow(scope, fork, join);
+            return new Block(fork, join);
+        }
+
+        private String task(String scope) {
+            String[] types = { "task", "userTask", "serviceTask", "manualTask" };
+            String id = node(scope, types[random.nextInt(types.length)], "", "");
+            if (scope.equals("proc_main")) tasks.add(id);
+            return id;
+        }
+
+        private void scope(String id) {
+            scopeNodes.put(id, new ArrayList<>());
+            scopeFlows.put(id, new StringBuilder());
+        }
+
+        private String node(String scope, String tag, String attributes, String definition) {
+            String id = tag + "_" + (++seq);
+            nodes.put(id, new Node(id, tag, attributes, definition));
+            scopeNodes.get(scope).add(id);
+            return id;
+        }
+
+        private void flow(String scope, String source, String target) {
+            String id = "flow_" + (++seq);
+            nodes.get(source).outgoing.add(id);
+            nodes.get(target).incoming.add(id);
+            scopeFlows.get(scope).append("<sequenceFlow id=\"").append(id).append("\" sourceRef=\"").append(source)
+                    .append("\" targetRef=\"").append(target).append("\"/>\n");
+        }
+
+        private String render(String scope) {
+            StringBuilder out = new StringBuilder();
+            for (String id : scopeNodes.get(scope)) {
+                Node n = nodes.get(id);
+                out.append('<').append(n.tag).append(" id=\"").append(id).append("\" name=\"").append(id).append('"')
+                        .append(n.attributes).append(">\n");
+                for (String f : n.incoming) out.append("<incoming>").append(f).append("</incoming>\n");
+                for (String f : n.outgoing) out.append("<outgoing>").append(f).append("</outgoing>\n");
+                out.append(n.definition);
+                if (scopeNodes.containsKey(id)) out.append(render(id));
+                out.append("</").append(n.tag).append(">\n");
+            }
+            return out.append(scopeFlows.get(scope)).toString();
+        }
+    }
+}
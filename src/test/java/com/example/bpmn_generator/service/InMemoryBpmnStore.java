@@ -0,0 +1,179 @@
+package com.example.bpmn_generator.service;
+
+import com.example.bpmn_generator.entity.BpmnFile;
+import com.example.bpmn_generator.entity.BpmnResult;
+import com.example.bpmn_generator.repository.BpmnRepository;
+import com.example.bpmn_generator.repository.BpmnResultRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * BpmnRepository + BpmnResultRepository + transaction manager di memori untuk test BpmnResultService.
+ *
+ * Meniru perilaku JPA yang dipakai service: id sequence diberikan saat persist dan tetap menempel di entity
+ * walau transaksinya rollback, baris yang dibaca adalah salinan (detached), save entity ber-id tanpa baris
+ * gagal seperti merge Hibernate 6.6 (OptimisticLockException), dan rollback mengembalikan semua baris.
+ */
+final class InMemoryBpmnStore implements PlatformTransactionManager {
+
+    final BpmnFile file;
+    final BpmnRepository files;
+    final BpmnResultRepository results;
+
+    private final String owner;
+    private final Map<Long, BpmnResult> rows = new TreeMap<>();
+    private Map<Long, BpmnResult> snapshot;   // non-null selama transaksi berjalan
+    private final Set<String> failNext = new HashSet<>();
+    private long sequence;
+
+    InMemoryBpmnStore(BpmnFile file, String owner) {
+        this.file = file;
+        this.owner = owner;
+        this.files = (BpmnRepository) Proxy.newProxyInstance(BpmnRepository.class.getClassLoader(),
+                new Class<?>[]{BpmnRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> file.getId().equals(args[0]) ? Optional.of(file) : Optional.empty();
+                    case "findOwnerUsername" -> Optional.ofNullable(owner);
+                    case "save" -> args[0];
+                    case "toString" -> "BpmnRepository(memori)";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        this.results = (BpmnResultRepository) Proxy.newProxyInstance(BpmnResultRepository.class.getClassLoader(),
+                new Class<?>[]{BpmnResultRepository.class}, (proxy, method, args) -> {
+                    synchronized (this) {
+                        return switch (method.getName()) {
+                            case "findByBpmnFileId" -> find(false, null);
+                            case "findByBpmnFileIdOrderByPathId" -> find(true, null);
+                            case "findByBpmnFileIdAndPathIdAndPendingFalse" ->
+                                    find(true, (String) args[1]).stream().findFirst();
+                            case "saveAll" -> saveAll((Iterable<?>) args[0]);
+                            case "save" -> saveAll(List.of(args[0])).get(0);
+                            case "deleteAllByIdInBatch" -> {
+                                for (Object id : (Iterable<?>) args[0]) rows.remove((Long) id);
+                                yield null;
+                            }
+                            case "promotePending" -> {
+                                failIfRequested("promotePending");
+                                int updated = 0;
+                                for (Object id : (Collection<?>) args[0]) {
+                                    BpmnResult row = rows.get((Long) id);
+                                    if (row != null && row.isPending()) {
+                                        row.setPending(false);
+                                        updated++;
+                                    }
+                                }
+                                yield updated;
+                            }
+                            case "toString" -> "BpmnResultRepository(memori)";
+                            default -> throw new UnsupportedOperationException(method.getName());
+                        };
+                    }
+                });
+    }
+
+    /**
+     * Panggilan berikutnya ke method repository ini gagal seperti koneksi DB yang putus. saveAll gagal setelah
+     * id diberikan ke entity (persist sudah jalan), sama seperti Hibernate.
+     */
+    synchronized void failNext(String method) {
+        failNext.add(method);
+    }
+
+    synchronized List<BpmnResult> rows() {
+        List<BpmnResult> copies = new ArrayList<>();
+        for (BpmnResult row : rows.values()) copies.add(copy(row));
+        return copies;
+    }
+
+    @Override
+    public synchronized TransactionStatus getTransaction(TransactionDefinition definition) {
+        if (snapshot != null) throw new IllegalStateException("transaksi bertingkat tidak didukung");
+        snapshot = new TreeMap<>();
+        for (Map.Entry<Long, BpmnResult> e : rows.entrySet()) snapshot.put(e.getKey(), copy(e.getValue()));
+        return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public synchronized void commit(TransactionStatus status) {
+        snapshot = null;
+    }
+
+    @Override
+    public synchronized void rollback(TransactionStatus status) {
+        rows.clear();
+        rows.putAll(snapshot);
+        snapshot = null;
+    }
+
+    private List<BpmnResult> find(boolean finalOnly, String pathId) {
+        List<BpmnResult> found = new ArrayList<>();
+        for (BpmnResult row : rows.values()) {
+            if (finalOnly && row.isPending()) continue;
+            if (pathId != null && !pathId.equals(row.getPathId())) continue;
+            found.add(copy(row));
+        }
+        if (finalOnly) found.sort(Comparator.comparing(BpmnResult::getPathId));
+        return found;
+    }
+
+    /** Satu saveAll = satu transaksi (seperti SimpleJpaRepository) kecuali sudah di dalam transaksi. */
+    private List<BpmnResult> saveAll(Iterable<?> entities) {
+        Map<Long, BpmnResult> before = new TreeMap<>(rows);
+        try {
+            List<BpmnResult> saved = new ArrayList<>();
+            for (Object entity : entities) {
+                BpmnResult result = (BpmnResult) entity;
+                if (result.getId() == null) {
+                    result.setId(++sequence);
+                } else if (!rows.containsKey(result.getId())) {
+                    throw new IllegalStateException("Row was updated or deleted by another transaction (id "
+                            + result.getId() + ")");
+                }
+                rows.put(result.getId(), copy(result));
+                saved.add(result);
+            }
+            failIfRequested("saveAll");
+            return saved;
+        } catch (RuntimeException e) {
+            if (snapshot == null) {
+                rows.clear();
+                rows.putAll(before);
+            }
+            throw e;
+        }
+    }
+
+    private void failIfRequested(String method) {
+        if (failNext.remove(method)) throw new IllegalStateException("koneksi database terputus (" + method + ")");
+    }
+
+    private static BpmnResult copy(BpmnResult source) {
+        BpmnResult copy = new BpmnResult();
+        copy.setId(source.getId());
+        copy.setBpmnFile(source.getBpmnFile());
+        copy.setPathId(source.getPathId());
+        copy.setPathKey(source.getPathKey());
+        copy.setPathFingerprint(source.getPathFingerprint());
+        copy.setPending(source.isPending());
+        copy.setSummary(source.getSummary());
+        copy.setDescription(source.getDescription());
+        copy.setScenarioStep(source.getScenarioStep());
+        copy.setTestData(source.getTestData());
+        copy.setExpectedResult(source.getExpectedResult());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.bpmn_generator.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Token bucket RPM/TPM: reservasi prompt + max_tokens dikoreksi dengan usage aktual, dan request yang gagal
+ * (settle dengan 0) mengembalikan seluruh reservasi sehingga request berikutnya tidak menunggu.
+ */
+class LlmRateLimiterTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "rate-limiter-test");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Test
+    void failedRequestRefundsWholeReservation() throws Exception {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 6_000);
+        long reserved = limiter.acquire(6_000);
+        assertEquals(6_000, reserved);
+
+        // tanpa refund, 6000 token baru tersedia lagi setelah ~1 menit
+        limiter.settle(reserved, 0);
+        assertEquals(6_000, acquireWithin(limiter, 6_000, 1_000));
+    }
+
+    @Test
+    void unusedReservationIsReturnedAndOveruseBlocks() throws Exception {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 6_000);
+        long reserved = limiter.acquire(6_000);
+        limiter.settle(reserved, 1_000);
+        assertEquals(5_000, acquireWithin(limiter, 5_000, 1_000));
+
+        // bucket kosong: request berikutnya menunggu refill (100 token/detik)
+        Future<Long> blocked = executor.submit(() -> limiter.acquire(3_000));
+        assertThrows(TimeoutException.class, () -> blocked.get(300, TimeUnit.MILLISECONDS));
+        blocked.cancel(true);
+    }
+
+    @Test
+    void requestsPerMinuteBlocksAfterBudget() throws Exception {
+        LlmRateLimiter limiter = new LlmRateLimiter(2, 0);
+        assertEquals(0, acquireWithin(limiter, 500, 1_000));
+        assertEquals(0, acquireWithin(limiter, 500, 1_000));
+
+        Future<Long> third = executor.submit(() -> limiter.acquire(500));
+        assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+        third.cancel(true);
+    }
+
+    @Test
+    void reservationIsCappedAtBucketSizeAndUnlimitedNeverBlocks() throws Exception {
+        assertEquals(6_000, acquireWithin(new LlmRateLimiter(0, 6_000), 50_000, 1_000));
+
+        LlmRateLimiter unlimited = new LlmRateLimiter(0, 0);
+        for (int i = 0; i < 1_000; i++) assertEquals(0, unlimited.acquire(100_000));
+        unlimited.settle(0, 100_000);
+    }
+
+    private long acquireWithin(LlmRateLimiter limiter, long tokens, long timeoutMs) throws Exception {
+        return executor.submit(() -> limiter.acquire(tokens)).get(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.bpmn_generator.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retry-After (berlaku global untuk semua thread), circuit breaker open → half-open → closed/open,
+ * dan hedging: request kedua yang lebih dulu selesai dipakai dan request pertama dibatalkan.
+ */
+class LlmResilienceTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "resilience-test");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Test
+    void retryAfterHoldsEveryThreadUntilTheWindowEnds() throws Exception {
+        LlmResilience resilience = resilience();
+        CountDownLatch throttled = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+
+        Future<String> first = executor.submit(() -> resilience.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throttled.countDown();
+                throw error(429, "Retry-After", "1");
+            }
+            return "ok";
+        }, false));
+        assertTrue(throttled.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        // thread lain yang masuk selama jendela Retry-After ikut menunggu, bukan langsung request
+        AtomicLong otherStartedAt = new AtomicLong();
+        String other = resilience.call(() -> {
+            otherStartedAt.set(System.nanoTime());
+            return "other";
+        }, false);
+
+        assertEquals("ok", first.get(5, TimeUnit.SECONDS));
+        assertEquals("other", other);
+        assertEquals(2, attempts.get());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(otherStartedAt.get() - start) >= 900,
+                "request lain dimulai sebelum Retry-After habis");
+        assertEquals(1L, resilience.stats().get("throttled"));
+    }
+
+    @Test
+    void retryAfterLongerThanLimitFailsWithoutWaiting() {
+        LlmResilience resilience = resilience();
+        ReflectionTestUtils.setField(resilience, "maxRetryAfterSeconds", 1L);
+        AtomicInteger attempts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        RestClientResponseException e = assertThrows(RestClientResponseException.class, () -> resilience.call(() -> {
+            attempts.incrementAndGet();
+            throw error(503, "Retry-After", "120");
+        }, false));
+        assertEquals(503, e.getStatusCode().value());
+        assertEquals(1, attempts.get());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+    }
+
+    @Test
+    void retryAfterFormats() {
+        assertEquals(3_000, LlmResilience.retryAfterMillis(error(429, "Retry-After", "3")));
+        assertEquals(250, LlmResilience.retryAfterMillis(error(429, "retry-after-ms", "250")));
+        assertEquals(0, LlmResilience.retryAfterMillis(error(429, "Retry-After", "besok")));
+        assertEquals(0, LlmResilience.retryAfterMillis(new IllegalStateException("bukan HTTP")));
+
+        String date = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        long ms = LlmResilience.retryAfterMillis(error(503, "Retry-After", date));
+        assertTrue(ms > 25_000 && ms <= 30_000, "HTTP-date → " + ms + " ms");
+    }
+
+    @Test
+    void breakerOpensAfterConsecutiveFailuresAndClosesAfterSuccessfulProbe() throws Exception {
+        LlmResilience resilience = resilience();
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        AtomicInteger invoked = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RestClientResponseException.class, () -> resilience.call(() -> {
+                invoked.incrementAndGet();
+                throw error(503, null, null);
+            }, false));
+        }
+        assertEquals("OPEN", resilience.stats().get("state"));
+        assertFalse(resilience.isCallPermitted());
+
+        // open: ditolak tanpa memanggil API
+        assertThrows(LlmResilience.CircuitOpenException.class, () -> resilience.call(() -> {
+            invoked.incrementAndGet();
+            return "tidak dipanggil";
+        }, false));
+        assertEquals(3, invoked.get());
+
+        Thread.sleep(1_100);
+        assertTrue(resilience.isCallPermitted());
+
+        // half-open: satu request percobaan; request lain ditolak selama percobaan berjalan
+        CountDownLatch probeStarted = new CountDownLatch(1);
+        CountDownLatch releaseProbe = new CountDownLatch(1);
+        Future<String> probe = executor.submit(() -> resilience.call(() -> {
+            probeStarted.countDown();
+            assertTrue(releaseProbe.await(5, TimeUnit.SECONDS));
+            return "probe";
+        }, false));
+        assertTrue(probeStarted.await(2, TimeUnit.SECONDS));
+        assertEquals("HALF_OPEN", resilience.stats().get("state"));
+        assertThrows(LlmResilience.CircuitOpenException.class, () -> resilience.call(() -> "kedua", false));
+
+        releaseProbe.countDown();
+        assertEquals("probe", probe.get(5, TimeUnit.SECONDS));
+        assertEquals("CLOSED", resilience.stats().get("state"));
+        assertEquals("lagi", resilience.call(() -> "lagi", false));
+    }
+
+    @Test
+    void failedProbeOpensTheBreakerAgain() throws Exception {
+        LlmResilience resilience = resilience();
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RestClientResponseException.class, () -> resilience.call(() -> {
+                throw error(500, null, null);
+            }, false));
+        }
+        Thread.sleep(1_100);
+
+        assertThrows(RestClientResponseException.class, () -> resilience.call(() -> {
+            throw error(502, null, null);
+        }, false));
+        assertEquals("OPEN", resilience.stats().get("state"));
+        assertThrows(LlmResilience.CircuitOpenException.class, () -> resilience.call(() -> "ditolak", false));
+    }
+
+    @Test
+    void throttlingAndClientErrorsDoNotOpenTheBreaker() {
+        LlmResilience resilience = resilience();
+        ReflectionTestUtils.setField(resilience, "maxRetryAfterSeconds", 0L);
+        for (int i = 0; i < 5; i++) {
+            assertThrows(RestClientResponseException.class, () -> resilience.call(() -> {
+                throw error(429, "Retry-After", "1");
+            }, false));
+            assertThrows(RestClientResponseException.class, () -> resilience.call(() -> {
+                throw error(400, null, null);
+            }, false));
+        }
+        assertEquals("CLOSED", resilience.stats().get("state"));
+    }
+
+    @Test
+    void hedgedRequestWinsWhenFirstIsSlow() throws Exception {
+        LlmResilience resilience = resilience();
+        ReflectionTestUtils.setField(resilience, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(resilience, "hedgeMinSamples", 5);
+        ReflectionTestUtils.setField(resilience, "hedgeMinDelayMs", 100L);
+        // p95 dari request cepat → ambang hedging = batas bawah 100 ms
+        for (int i = 0; i < 5; i++) assertEquals("cepat", resilience.call(() -> "cepat", true));
+
+        AtomicInteger invocation = new AtomicInteger();
+        CountDownLatch slowInterrupted = new CountDownLatch(1);
+        long start = System.nanoTime();
+        String result = resilience.call(() -> {
+            if (invocation.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    slowInterrupted.countDown();
+                    throw e;
+                }
+                return "lambat";
+            }
+            return "hedge";
+        }, true);
+
+        assertEquals("hedge", result);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+        assertTrue(slowInterrupted.await(2, TimeUnit.SECONDS), "request lambat tidak dibatalkan");
+        assertEquals(1L, resilience.stats().get("hedges"));
+        assertEquals(1L, resilience.stats().get("hedgeWins"));
+
+        // request yang tidak boleh digandakan (streaming) tidak di-hedge
+        AtomicInteger plain = new AtomicInteger();
+        assertEquals("sendiri", resilience.call(() -> {
+            plain.incrementAndGet();
+            Thread.sleep(300);
+            return "sendiri";
+        }, false));
+        assertEquals(1, plain.get());
+        assertEquals(1L, resilience.stats().get("hedges"));
+    }
+
+    private static LlmResilience resilience() {
+        LlmResilience resilience = new LlmResilience();
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 3);
+        ReflectionTestUtils.setField(resilience, "baseBackoffMs", 1L);
+        ReflectionTestUtils.setField(resilience, "maxBackoffMs", 5L);
+        ReflectionTestUtils.setField(resilience, "maxRetryAfterSeconds", 120L);
+        ReflectionTestUtils.setField(resilience, "failureThreshold", 3);
+        ReflectionTestUtils.setField(resilience, "openSeconds", 1L);
+        ReflectionTestUtils.setField(resilience, "hedgeEnabled", false);
+        ReflectionTestUtils.setField(resilience, "hedgeMinSamples", 20);
+        ReflectionTestUtils.setField(resilience, "hedgeMinDelayMs", 1_000L);
+        return resilience;
+    }
+
+    private static RestClientResponseException error(int status, String header, String value) {
+        HttpHeaders headers = new HttpHeaders();
+        if (header != null) headers.set(header, value);
+        return new RestClientResponseException("HTTP " + status, status, "", headers, new byte[0], StandardCharsets.UTF_8);
+    }
+}
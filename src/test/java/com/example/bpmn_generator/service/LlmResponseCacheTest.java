@@ -0,0 +1,97 @@
+package com.example.bpmn_generator.service;
+
+import com.example.bpmn_generator.entity.LlmCacheEntry;
+import com.example.bpmn_generator.repository.LlmCacheRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hit dari tier memori tetap memperbarui last_hit_at di DB (async, dibatasi touch-interval), supaya batas
+ * ukuran DB (urut last_hit_at) tidak menghapus entry yang justru paling sering dipakai.
+ */
+class LlmResponseCacheTest {
+
+    /** Panggilan touch(fingerprint, now, hits) yang diterima repository palsu. */
+    private final List<Object[]> touches = new CopyOnWriteArrayList<>();
+    private final Map<String, LlmCacheEntry> rows = new ConcurrentHashMap<>();
+
+    @Test
+    void memoryHitsTouchDbRowAfterInterval() throws Exception {
+        LlmResponseCache cache = cache(0);
+        cache.put("fp", "gpt-4o", "konten");
+
+        for (int i = 0; i < 3; i++) assertEquals("konten", cache.get("fp"));
+        awaitTouches(3);
+        assertEquals("fp", touches.get(0)[0]);
+        assertEquals(3L, touches.stream().mapToLong(t -> (Long) t[2]).sum());
+        assertEquals(3L, cache.stats().get("memoryHits"));
+    }
+
+    @Test
+    void memoryHitsWithinIntervalAreNotWrittenYet() throws Exception {
+        LlmResponseCache cache = cache(3_600);
+        cache.put("fp", "gpt-4o", "konten");
+        for (int i = 0; i < 50; i++) assertEquals("konten", cache.get("fp"));
+        Thread.sleep(100);
+        assertTrue(touches.isEmpty());
+    }
+
+    @Test
+    void dbHitTouchesOnceAndIsServedFromMemoryAfterwards() throws Exception {
+        LlmResponseCache cache = cache(3_600);
+        rows.put("fp", new LlmCacheEntry("fp", "gpt-4o", "dari db"));
+
+        assertEquals("dari db", cache.get("fp"));
+        assertEquals(1, touches.size());
+        assertEquals(1L, touches.get(0)[2]);
+
+        rows.clear();
+        assertEquals("dari db", cache.get("fp"));
+        assertEquals(1L, cache.stats().get("dbHits"));
+        assertEquals(1L, cache.stats().get("memoryHits"));
+    }
+
+    private LlmResponseCache cache(long touchIntervalSeconds) {
+        LlmResponseCache cache = new LlmResponseCache();
+        ReflectionTestUtils.setField(cache, "cacheRepository", repository());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "memoryEntries", 100);
+        ReflectionTestUtils.setField(cache, "maxDbEntries", 1_000L);
+        ReflectionTestUtils.setField(cache, "ttlHours", 24L);
+        ReflectionTestUtils.setField(cache, "touchIntervalSeconds", touchIntervalSeconds);
+        // purge tidak relevan di sini
+        ReflectionTestUtils.setField(cache, "lastPurgeMs", Long.MAX_VALUE / 2);
+        return cache;
+    }
+
+    private LlmCacheRepository repository() {
+        return (LlmCacheRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ LlmCacheRepository.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.ofNullable(rows.get((String) args[0]));
+                    case "touch" -> {
+                        touches.add(args.clone());
+                        yield 1;
+                    }
+                    case "save" -> args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private void awaitTouches(int hits) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (touches.stream().mapToLong(t -> (Long) t[2]).sum() < hits && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.bpmn_generator.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kuota per user: slot request LLM bersamaan dan token di jendela berjalan.
+ */
+class LlmUsageTrackerTest {
+
+    @Test
+    void slotsLimitConcurrentRequestsPerUser() throws Exception {
+        LlmUsageTracker tracker = tracker(2, 0);
+
+        assertTrue(tracker.tryAcquireSlot("alice", 0, TimeUnit.MILLISECONDS));
+        assertTrue(tracker.tryAcquireSlot("alice", 0, TimeUnit.MILLISECONDS));
+        assertFalse(tracker.tryAcquireSlot("alice", 10, TimeUnit.MILLISECONDS));
+        assertEquals(2, quota(tracker, "alice").get("inFlightRequests"));
+
+        // user lain punya slot sendiri
+        assertTrue(tracker.tryAcquireSlot("bob", 0, TimeUnit.MILLISECONDS));
+
+        tracker.releaseSlot("alice");
+        assertTrue(tracker.tryAcquireSlot("alice", 0, TimeUnit.MILLISECONDS));
+        tracker.releaseSlot("alice");
+        tracker.releaseSlot("alice");
+        tracker.releaseSlot("bob");
+        assertEquals(0, quota(tracker, "alice").get("inFlightRequests"));
+        assertEquals(0, quota(tracker, "bob").get("inFlightRequests"));
+    }
+
+    @Test
+    void slotsAreUnlimitedWithoutLimitOrUser() throws Exception {
+        LlmUsageTracker unlimited = tracker(0, 0);
+        for (int i = 0; i < 10; i++) assertTrue(unlimited.tryAcquireSlot("alice", 0, TimeUnit.MILLISECONDS));
+
+        LlmUsageTracker limited = tracker(1, 0);
+        assertTrue(limited.tryAcquireSlot(null, 0, TimeUnit.MILLISECONDS));
+        assertTrue(limited.tryAcquireSlot(null, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void tokenQuotaRejectsUserOnceWindowIsUsedUp() {
+        LlmUsageTracker tracker = tracker(0, 100);
+
+        useTokens(tracker, "alice", 60);
+        tracker.checkTokenQuota("alice");
+        assertFalse(tracker.isTokenQuotaExceeded("alice"));
+
+        useTokens(tracker, "alice", 40);
+        LlmUsageTracker.QuotaExceededException e = assertThrows(LlmUsageTracker.QuotaExceededException.class,
+                () -> tracker.checkTokenQuota("alice"));
+        assertTrue(e.getMessage().contains("100/100"), e.getMessage());
+        assertTrue(tracker.isTokenQuotaExceeded("alice"));
+        assertEquals(100L, quota(tracker, "alice").get("tokensInWindow"));
+
+        // user lain dan request tanpa user tidak terpengaruh
+        tracker.checkTokenQuota("bob");
+        tracker.checkTokenQuota(null);
+    }
+
+    @Test
+    void tokenWindowResetsAfterWindowHours() {
+        LlmUsageTracker tracker = tracker(0, 100);
+        useTokens(tracker, "alice", 150);
+        assertTrue(tracker.isTokenQuotaExceeded("alice"));
+
+        // jendela dimulai 25 jam lalu (window-hours 24)
+        Object state = ((Map<?, ?>) ReflectionTestUtils.getField(tracker, "byUser")).get("alice");
+        ReflectionTestUtils.setField(state, "windowStart", System.currentTimeMillis() - TimeUnit.HOURS.toMillis(25));
+
+        assertFalse(tracker.isTokenQuotaExceeded("alice"));
+        assertEquals(0L, quota(tracker, "alice").get("tokensInWindow"));
+        // total sejak start tetap tercatat
+        assertEquals(150L, tracker.userUsage("alice").get("totalTokens"));
+    }
+
+    static LlmUsageTracker tracker(int maxConcurrentRequests, long maxTokens) {
+        LlmUsageTracker tracker = new LlmUsageTracker();
+        ReflectionTestUtils.setField(tracker, "maxConcurrentRequests", maxConcurrentRequests);
+        ReflectionTestUtils.setField(tracker, "maxTokens", maxTokens);
+        ReflectionTestUtils.setField(tracker, "windowHours", 24L);
+        return tracker;
+    }
+
+    /** Satu panggilan LLM selesai atas nama {@code username} dengan {@code tokens} token prompt. */
+    static void useTokens(LlmUsageTracker tracker, String username, long tokens) {
+        try (LlmUsageTracker.Scope scope = tracker.attribute(1L, username)) {
+            LlmUsageTracker.Call call = tracker.start(ScenarioGenerator.Kind.SCENARIO);
+            call.tokens(tokens, 0);
+            call.finish(true);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> quota(LlmUsageTracker tracker, String username) {
+        return (Map<String, Object>) tracker.userUsage(username).get("quota");
+    }
+}
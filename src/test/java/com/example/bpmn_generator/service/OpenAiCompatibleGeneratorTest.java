@@ -0,0 +1,174 @@
+package com.example.bpmn_generator.service;
+
+import com.example.bpmn_generator.config.LlmHttpClientConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Backend OpenAI-compatible terhadap server HTTP lokal: response biasa, SSE yang terpotong di tengah baris
+ * (dan di tengah karakter UTF-8) antar read, berhenti di [DONE], serta error di tengah stream.
+ */
+class OpenAiCompatibleGeneratorTest {
+
+    private static final ScenarioGenerator.Request REQUEST = new ScenarioGenerator.Request(ScenarioGenerator.Kind.SCENARIO,
+            "system", "prompt", 100, 0.2, List.of(List.of("Mulai", "Selesai")), 1, null);
+
+    private HttpServer server;
+    private OpenAiCompatibleGenerator generator;
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "llm-sse-test");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+
+        LlmHttpClientConfig config = new LlmHttpClientConfig();
+        ReflectionTestUtils.setField(config, "connectTimeoutSeconds", 2L);
+        ReflectionTestUtils.setField(config, "requestTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(config, "poolSize", 4);
+        ReflectionTestUtils.setField(config, "keepAliveSeconds", 30L);
+        ReflectionTestUtils.setField(config, "http2", false);
+        ReflectionTestUtils.setField(config, "ioThreads", 2);
+        RestTemplate restTemplate = config.llmRestTemplate();
+
+        String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+        generator = new OpenAiCompatibleGenerator("local", endpoint, null, "test-model", false, restTemplate);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void completeReadsContentAndUsage() throws Exception {
+        server.createContext("/", exchange -> {
+            byte[] body = """
+                    {"choices": [{"message": {"role": "assistant", "content": "===SUMMARY===\\nRingkasan"}}],
+                     "usage": {"prompt_tokens": 12, "completion_tokens": 5}}
+                    """.getBytes(StandardCharsets.UTF_8);
+            requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        ScenarioGenerator.Completion completion = generator.complete(REQUEST);
+        assertEquals("===SUMMARY===\nRingkasan", completion.content());
+        assertEquals(17, completion.totalTokens());
+        assertTrue(requestBodies.get(0).contains("\"model\":\"test-model\""));
+        assertFalse(requestBodies.get(0).contains("\"stream\""));
+    }
+
+    @Test
+    void streamReassemblesEventsSplitAcrossReadsAndStopsAtDone() throws Exception {
+        String events = ": keep-alive\n\n"
+                + "event: message\n"
+                + delta("Halo") + delta(" dunia") + delta(" — selesai")
+                + "data: {\"choices\": [], \"usage\": {\"prompt_tokens\": 30, \"completion_tokens\": 3}}\n\n"
+                + "data: [DONE]\n\n"
+                + delta("SETELAH DONE");
+        // potong di tengah baris "data:", di tengah JSON dan di tengah karakter '—' (3 byte UTF-8)
+        byte[] bytes = events.getBytes(StandardCharsets.UTF_8);
+        int dash = events.substring(0, events.indexOf('—')).getBytes(StandardCharsets.UTF_8).length;
+        serveStream(bytes, List.of(3, 20, 41, dash + 1, dash + 2, bytes.length - 10), false);
+
+        List<String> deltas = Collections.synchronizedList(new ArrayList<>());
+        ScenarioGenerator.Completion completion = generator.stream(REQUEST, deltas::add);
+
+        assertEquals(List.of("Halo", " dunia", " — selesai"), deltas);
+        assertEquals("Halo dunia — selesai", completion.content());
+        assertEquals(30, completion.promptTokens());
+        assertEquals(3, completion.completionTokens());
+        assertTrue(requestBodies.get(0).contains("\"stream\":true"));
+        assertTrue(requestBodies.get(0).contains("\"include_usage\":true"));
+    }
+
+    @Test
+    void errorEventMidStreamFails() {
+        String events = delta("Langkah pertama")
+                + "data: {\"error\": {\"message\": \"model overloaded\", \"type\": \"server_error\"}}\n\n"
+                + "data: [DONE]\n\n";
+        serveStream(events.getBytes(StandardCharsets.UTF_8), List.of(), false);
+
+        List<String> deltas = Collections.synchronizedList(new ArrayList<>());
+        ResourceAccessException e = assertThrows(ResourceAccessException.class, () -> generator.stream(REQUEST, deltas::add));
+        assertTrue(e.getMessage().contains("model overloaded"), e.getMessage());
+        assertEquals(List.of("Langkah pertama"), deltas);
+    }
+
+    @Test
+    void connectionDroppedMidStreamFails() {
+        String events = delta("Langkah pertama") + "data: {\"choices\": [{\"delta\": {\"con";
+        serveStream(events.getBytes(StandardCharsets.UTF_8), List.of(), true);
+
+        List<String> deltas = Collections.synchronizedList(new ArrayList<>());
+        assertThrows(ResourceAccessException.class, () -> generator.stream(REQUEST, deltas::add));
+        assertEquals(List.of("Langkah pertama"), deltas);
+    }
+
+    private static String delta(String content) {
+        return "data: {\"choices\": [{\"index\": 0, \"delta\": {\"content\": \"" + content + "\"}}]}\n\n";
+    }
+
+    /**
+     * Kirim {@code bytes} sebagai text/event-stream, di-flush per potongan pada offset {@code cuts}. {@code truncate}:
+     * Content-Length lebih besar dari yang dikirim, lalu koneksi ditutup (server mati di tengah stream).
+     */
+    private void serveStream(byte[] bytes, List<Integer> cuts, boolean truncate) {
+        server.createContext("/", exchange -> {
+            requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, truncate ? bytes.length + 1_000 : 0);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                int from = 0;
+                for (int cut : cuts) {
+                    out.write(Arrays.copyOfRange(bytes, from, cut));
+                    out.flush();
+                    pause();
+                    from = cut;
+                }
+                out.write(Arrays.copyOfRange(bytes, from, bytes.length));
+                out.flush();
+                pause();
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.bpmn_generator.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Job generate penuh dan generate ulang path (streaming) untuk file yang sama saling menolak: keduanya menulis
+ * bpmn_results & testScenariosJson file itu, jadi cek + daftar dilakukan di bawah lock yang sama. Kuota token
+ * pemilik file dicek saat submit dan menjadi pesan error job yang berhenti karena kuota.
+ */
+class ScenarioJobServiceTest {
+
+    private final CountDownLatch releaseGenerate = new CountDownLatch(1);
+    private final CountDownLatch releaseStream = new CountDownLatch(1);
+    private final CountDownLatch generateStarted = new CountDownLatch(1);
+    private final CountDownLatch streamStarted = new CountDownLatch(1);
+
+    private final LlmUsageTracker tracker = LlmUsageTrackerTest.tracker(0, 100);
+    private volatile BooleanSupplier generateOutcome = () -> true;
+
+    private ScenarioJobService jobs;
+
+    @BeforeEach
+    void setUp() {
+        BpmnResultService results = new BpmnResultService() {
+            @Override
+            public boolean generateScenario(Long fileId, GenerationListener listener, boolean forceFull) {
+                generateStarted.countDown();
+                await(releaseGenerate);
+                return generateOutcome.getAsBoolean();
+            }
+
+            @Override
+            public Map<String, Object> regeneratePathStreaming(Long fileId, String pathId, BiConsumer<String, String> onSection) {
+                streamStarted.countDown();
+                await(releaseStream);
+                return Map.of("path_id", pathId);
+            }
+        };
+        jobs = new ScenarioJobService();
+        ReflectionTestUtils.setField(jobs, "bpmnResultService", results);
+        ReflectionTestUtils.setField(jobs, "usageTracker", tracker);
+        ReflectionTestUtils.setField(jobs, "workers", 2);
+        ReflectionTestUtils.setField(jobs, "streamWorkers", 2);
+        ReflectionTestUtils.setField(jobs, "retentionMinutes", 60L);
+        ReflectionTestUtils.setField(jobs, "sseTimeoutMinutes", 1L);
+        jobs.initJobPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseGenerate.countDown();
+        releaseStream.countDown();
+        jobs.shutdownJobPool();
+    }
+
+    @Test
+    void runningStreamRejectsJobAndSecondStreamForSameFile() throws Exception {
+        jobs.streamPath(1L, "P1");
+        assertTrue(streamStarted.await(2, TimeUnit.SECONDS));
+
+        assertThrows(ScenarioJobService.FileBusyException.class, () -> jobs.submit(1L, "alice"));
+        assertThrows(ScenarioJobService.FileBusyException.class, () -> jobs.streamPath(1L, "P2"));
+        assertTrue(jobs.isFileBusy(1L));
+        assertNull(jobs.activeJobForFile(1L));
+
+        // file lain tidak terpengaruh
+        assertNotNull(jobs.submit(2L, "alice"));
+
+        releaseStream.countDown();
+        waitUntil(() -> !jobs.isFileBusy(1L));
+        assertNotNull(jobs.submit(1L, "alice"));
+    }
+
+    @Test
+    void activeJobRejectsStreamUntilItFinishes() throws Exception {
+        ScenarioJobService.ScenarioJob job = jobs.submit(1L, "alice");
+        assertSame(job, jobs.submit(1L, "alice"));
+        assertThrows(ScenarioJobService.FileBusyException.class, () -> jobs.streamPath(1L, "P1"));
+
+        // baru diantrikan maupun sudah berjalan, job menahan file
+        assertTrue(generateStarted.await(2, TimeUnit.SECONDS));
+        assertThrows(ScenarioJobService.FileBusyException.class, () -> jobs.streamPath(1L, "P1"));
+
+        releaseGenerate.countDown();
+        waitUntil(job::isFinished);
+        assertEquals(ScenarioJobService.Status.COMPLETED, job.getStatus());
+        assertNotNull(jobs.streamPath(1L, "P1"));
+    }
+
+    @Test
+    void submitRejectsOwnerWithoutTokenQuota() {
+        LlmUsageTrackerTest.useTokens(tracker, "alice", 100);
+
+        assertThrows(LlmUsageTracker.QuotaExceededException.class, () -> jobs.submit(1L, "alice"));
+        assertNull(jobs.activeJobForFile(1L));
+        assertFalse(jobs.isFileBusy(1L));
+
+        assertNotNull(jobs.submit(1L, "bob"));
+    }
+
+    @Test
+    void jobStoppedByTokenQuotaFailsWithQuotaError() throws Exception {
+        // kuota habis di tengah generate → generateScenario berhenti dan mengembalikan false
+        generateOutcome = () -> {
+            LlmUsageTrackerTest.useTokens(tracker, "alice", 100);
+            return false;
+        };
+        releaseGenerate.countDown();
+
+        ScenarioJobService.ScenarioJob job = jobs.submit(1L, "alice");
+        waitUntil(job::isFinished);
+
+        assertEquals(ScenarioJobService.Status.FAILED, job.getStatus());
+        assertTrue(String.valueOf(job.snapshot().get("error")).startsWith("Kuota token LLM habis"),
+                String.valueOf(job.snapshot().get("error")));
+        assertThrows(LlmUsageTracker.QuotaExceededException.class, () -> jobs.submit(1L, "alice"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "kondisi tidak tercapai dalam 5 detik");
+            Thread.sleep(10);
+        }
+    }
+}
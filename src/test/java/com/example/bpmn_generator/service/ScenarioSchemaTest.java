@@ -0,0 +1,102 @@
+package com.example.bpmn_generator.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Validator structured output: hanya field yang salah yang dilaporkan (untuk request perbaikan),
+ * hasil valid dipetakan ke key generate_bpmn, dan teks schema (bagian fingerprint cache) stabil.
+ */
+class ScenarioSchemaTest {
+
+    private static final String VALID = """
+            {
+              "summary": "Ringkasan alur",
+              "description": "Deskripsi skenario",
+              "scenario_steps": ["1. [Admin] Membuka form", "Mengisi data pengajuan"],
+              "input_data": "{\\"nama\\": \\"Budi\\"}",
+              "expected_result": {"status": "success", "message": "ok", "data": {}}
+            }
+            """;
+
+    @Test
+    void validScenarioHasNoInvalidFields() {
+        ObjectNode node = ScenarioSchema.read(VALID);
+        assertNotNull(node);
+        assertTrue(ScenarioSchema.validate(node, 2).isEmpty());
+    }
+
+    @Test
+    void onlyInvalidFieldsAreReported() {
+        ObjectNode node = ScenarioSchema.read(VALID);
+        node.put("summary", " ");
+        node.put("input_data", "nama: Budi");
+        Map<String, String> invalid = ScenarioSchema.validate(node, 2);
+        assertEquals(List.of("summary", "input_data"), List.copyOf(invalid.keySet()));
+
+        // jumlah langkah harus sama dengan jalur
+        assertEquals(List.of("scenario_steps"), List.copyOf(ScenarioSchema.validate(ScenarioSchema.read(VALID), 3).keySet()));
+    }
+
+    @Test
+    void missingFieldsAndNonObjectResponses() {
+        assertEquals(ScenarioSchema.fieldNames(), ScenarioSchema.validate(ScenarioSchema.read("{}"), 1).keySet());
+        assertNull(ScenarioSchema.read("===SUMMARY===\nbukan JSON"));
+        assertNull(ScenarioSchema.read("[1, 2]"));
+        assertNull(ScenarioSchema.read(null));
+    }
+
+    @Test
+    void sectionsAreRenumberedAndInvalidJsonBecomesEmpty() {
+        ObjectNode node = ScenarioSchema.read(VALID);
+        node.put("expected_result", "status sukses");
+        Map<String, String> sections = ScenarioSchema.toSections(node);
+        assertEquals("1. [Admin] Membuka form\n2. Mengisi data pengajuan", sections.get("scenario_step"));
+        assertEquals("{\"nama\": \"Budi\"}", sections.get("input_data"));
+        assertEquals("{}", sections.get("expected_result"));
+        assertEquals("Ringkasan alur", sections.get("summary"));
+    }
+
+    @Test
+    void subsetSchemaIsStrict() {
+        Map<String, Object> schema = ScenarioSchema.subset(List.of("summary", "scenario_steps"));
+        assertEquals(List.of("summary", "scenario_steps"), schema.get("required"));
+        assertEquals(false, schema.get("additionalProperties"));
+        assertEquals(List.of("paths"), ScenarioSchema.batch().get("required"));
+    }
+
+    @Test
+    void schemaTextIsStableForCacheFingerprint() {
+        // toString() schema ikut di-hash ke fingerprint cache → harus sama persis di setiap JVM
+        assertEquals("{type=object, properties={summary={type=string, description=Satu paragraf ringkasan naratif"
+                        + " alur jalur dari awal hingga akhir}}, required=[summary], additionalProperties=false}",
+                ScenarioSchema.subset(List.of("summary")).toString());
+
+        Map<?, ?> properties = (Map<?, ?>) ScenarioSchema.scenario().get("properties");
+        assertEquals(List.of("type", "description", "items"), List.copyOf(((Map<?, ?>) properties.get("scenario_steps")).keySet()));
+        Map<?, ?> paths = (Map<?, ?>) ((Map<?, ?>) ScenarioSchema.batch().get("properties")).get("paths");
+        Map<?, ?> item = (Map<?, ?>) paths.get("items");
+        assertEquals(List.of("path", "summary", "description", "scenario_steps", "input_data", "expected_result"),
+                item.get("required"));
+        assertEquals(List.of("type", "description"), List.copyOf(((Map<?, ?>) ((Map<?, ?>) item.get("properties")).get("path")).keySet()));
+
+        assertInsertionOrdered(ScenarioSchema.scenario());
+        assertInsertionOrdered(ScenarioSchema.batch());
+    }
+
+    /** Semua map di schema harus LinkedHashMap; Map.of mengacak urutan iterasi per JVM. */
+    private static void assertInsertionOrdered(Object node) {
+        if (node instanceof Map<?, ?> map) {
+            assertInstanceOf(LinkedHashMap.class, map, "map tidak berurutan: " + map);
+            map.values().forEach(ScenarioSchemaTest::assertInsertionOrdered);
+        } else if (node instanceof List<?> list) {
+            list.forEach(ScenarioSchemaTest::assertInsertionOrdered);
+        }
+    }
+}
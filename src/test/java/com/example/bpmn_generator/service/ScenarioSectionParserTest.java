@@ -0,0 +1,173 @@
+package com.example.bpmn_generator.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Golden test: src/test/resources/llm-output/NAMA.txt (bentuk output GPT: markdown, marker inline, blok batch,
+ * section hilang/dobel) harus menghasilkan NAMA.expected.json. Fuzz test: potongan stream acak, CRLF dan
+ * input rusak tidak boleh mengubah hasil atau melempar exception.
+ */
+class ScenarioSectionParserTest {
+
+    private static final String[] CORPUS = {
+            "lanes-clean", "markdown-noise", "inline-markers", "english-bullets",
+            "missing-sections", "batch-block", "duplicate-sections", "narrative-only"
+    };
+
+    private static final List<String> KEYS = List.of("summary", "description", "scenario_step", "input_data", "expected_result");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "lanes-clean", "markdown-noise", "inline-markers", "english-bullets",
+            "missing-sections", "batch-block", "duplicate-sections", "narrative-only"
+    })
+    void matchesGoldenOutput(String name) throws IOException {
+        Map<String, String> expected = objectMapper.readValue(resource(name + ".expected.json"), new TypeReference<>() { });
+        assertEquals(expected, ScenarioSectionParser.parse(resource(name + ".txt")));
+    }
+
+    @Test
+    void randomStreamChunksGiveSameSections() throws IOException {
+        Random random = new Random(42);
+        for (String name : CORPUS) {
+            String output = resource(name + ".txt");
+            Map<String, String> expected = ScenarioSectionParser.parse(output);
+            for (int round = 0; round < 200; round++) {
+                Map<String, String> streamed = new HashMap<>();
+                ScenarioSectionParser parser = new ScenarioSectionParser(streamed::put);
+                for (int i = 0; i < output.length(); ) {
+                    int end = Math.min(output.length(), i + 1 + random.nextInt(12));
+                    parser.feed(output.substring(i, end));
+                    i = end;
+                }
+                parser.finish();
+                assertEquals(expected, parser.sections(), name + " round " + round);
+                assertEquals(output, parser.text());
+                // setiap section yang dikirim selama stream sama dengan hasil akhirnya
+                streamed.forEach((key, value) -> assertEquals(expected.get(key), value, name + " " + key));
+            }
+        }
+    }
+
+    @Test
+    void crlfLineEndingsGiveSameSections() throws IOException {
+        for (String name : CORPUS) {
+            String output = resource(name + ".txt");
+            assertEquals(ScenarioSectionParser.parse(output), ScenarioSectionParser.parse(output.replace("\n", "\r\n")), name);
+        }
+    }
+
+    @Test
+    void sectionIsEmittedWhenNextMarkerCompletes() {
+        List<String> emitted = new ArrayList<>();
+        ScenarioSectionParser parser = new ScenarioSectionParser((key, value) -> emitted.add(key + "=" + value));
+        parser.feed("===SUMMARY===\nRingkasan alur\n===DESK");
+        assertTrue(emitted.isEmpty());
+        parser.feed("RIPSI===\n");
+        assertEquals(List.of("summary=Ringkasan alur"), emitted);
+        parser.feed("Deskripsi tanpa newline di akhir");
+        parser.finish();
+        assertEquals(List.of("summary=Ringkasan alur", "description=Deskripsi tanpa newline di akhir"), emitted);
+    }
+
+    @Test
+    void emptyAndNullInputGiveDefaults() {
+        for (String output : Arrays.asList(null, "", "\n\n", "tanpa marker sama sekali")) {
+            Map<String, String> sections = ScenarioSectionParser.parse(output);
+            assertEquals(Set.copyOf(KEYS), sections.keySet());
+            assertEquals("", sections.get("summary"));
+            assertEquals("{}", sections.get("input_data"));
+        }
+    }
+
+    @Test
+    void fuzzedOutputKeepsInvariants() throws IOException {
+        String[] fragments = {
+                "===SUMMARY===", "===DESKRIPSI===", "===DESCRIPTION===", "===SCENARIO_STEP===", "===INPUT_DATA===",
+                "===EXPECTED_RESULT===", "===END_PATH===", "===PATH 2===", "=== SUMMARY ===", "====", "===",
+                "\n", "\r\n", "\n\n", " ", "**", "*", "```", "```json", "{", "}", "\"a\": 1", "1. ", "12.", "- ",
+                "- Jika jalur: A → B", "[Admin] ", "langkah", "Proses", "→", "\t", "é"
+        };
+        List<String> corpus = new ArrayList<>();
+        for (String name : CORPUS) corpus.add(resource(name + ".txt"));
+
+        Random random = new Random(7);
+        for (int round = 0; round < 3000; round++) {
+            StringBuilder output = new StringBuilder();
+            if (round % 2 == 0) {
+                // fragmen acak
+                int parts = random.nextInt(60);
+                for (int i = 0; i < parts; i++) output.append(fragments[random.nextInt(fragments.length)]);
+            } else {
+                // output nyata yang dirusak: hapus/sisip/potong di posisi acak
+                output.append(corpus.get(random.nextInt(corpus.size())));
+                for (int edits = random.nextInt(8); edits > 0 && output.length() > 0; edits--) {
+                    int at = random.nextInt(output.length());
+                    switch (random.nextInt(3)) {
+                        case 0 -> output.delete(at, Math.min(output.length(), at + 1 + random.nextInt(20)));
+                        case 1 -> output.insert(at, fragments[random.nextInt(fragments.length)]);
+                        default -> output.setLength(at);
+                    }
+                }
+            }
+            assertInvariants(output.toString(), random);
+        }
+    }
+
+    private void assertInvariants(String output, Random random) {
+        Map<String, String> sections = ScenarioSectionParser.parse(output);
+        assertEquals(Set.copyOf(KEYS), sections.keySet(), output);
+
+        for (String key : KEYS) {
+            String value = sections.get(key);
+            assertEquals(value.strip(), value, key + " tidak di-trim: " + output);
+            for (String marker : List.of("===SUMMARY===", "===DESKRIPSI===", "===SCENARIO_STEP===", "===INPUT_DATA===")) {
+                assertFalse(value.contains(marker), key + " berisi marker: " + output);
+            }
+        }
+        assertFalse(sections.get("summary").contains("\n"), output);
+        for (String key : List.of("input_data", "expected_result")) {
+            String json = sections.get(key);
+            assertTrue(json.equals("{}") || (json.startsWith("{") && json.endsWith("}")), key + ": " + json);
+            assertFalse(json.contains("```"), json);
+        }
+        String steps = sections.get("scenario_step");
+        if (!steps.isEmpty()) {
+            String[] lines = steps.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                assertTrue(lines[i].startsWith((i + 1) + ". ") && lines[i].length() > (i + 1 + ". ").length(),
+                        "langkah " + (i + 1) + ": " + lines[i]);
+            }
+        }
+
+        // potongan stream acak tidak mengubah hasil
+        ScenarioSectionParser parser = new ScenarioSectionParser((key, value) -> { });
+        for (int i = 0; i < output.length(); ) {
+            int end = Math.min(output.length(), i + 1 + random.nextInt(9));
+            parser.feed(output.substring(i, end));
+            i = end;
+        }
+        parser.finish();
+        assertEquals(sections, parser.sections(), output);
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = ScenarioSectionParserTest.class.getResourceAsStream("/llm-output/" + name)) {
+            assertNotNull(in, "resource " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}